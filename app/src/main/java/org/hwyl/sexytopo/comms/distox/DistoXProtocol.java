@@ -72,7 +72,9 @@ public abstract class DistoXProtocol {
         byte[] acknowledgePacket = createAcknowledgementPacket(packet);
         outStream.write(acknowledgePacket, 0, acknowledgePacket.length);
         outStream.flush();
-        Log.device("Ack'd Packet: " + describeAcknowledgementPacket(acknowledgePacket));
+        Log.device(
+                Log.Level.DEBUG,
+                () -> "Ack'd Packet: " + describeAcknowledgementPacket(acknowledgePacket));
     }
 
     protected void writeCommandPacket(DataOutputStream outStream, byte[] packet) throws Exception {
@@ -104,7 +106,7 @@ public abstract class DistoXProtocol {
         // }
         byte[] packet = new byte[8];
         inStream.readFully(packet, 0, 8);
-        Log.device("Read packet: " + describePacket(packet));
+        Log.device(Log.Level.DEBUG, () -> "Read packet: " + describePacket(packet));
 
         return packet;
     }
@@ -3,22 +3,35 @@ package org.hwyl.sexytopo.control;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.Intent;
-import android.os.AsyncTask;
-import androidx.documentfile.provider.DocumentFile;
+import android.os.Handler;
+import android.os.Looper;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import com.google.firebase.crashlytics.FirebaseCrashlytics;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.hwyl.sexytopo.SexyTopoConstants;
-import org.hwyl.sexytopo.control.io.IoUtils;
+import org.hwyl.sexytopo.control.io.IoScheduler;
+import org.hwyl.sexytopo.control.util.RingBuffer;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -34,51 +47,112 @@ public class Log {
     private static Context context;
 
     private static LocalBroadcastManager broadcastManager;
-    private static boolean hasFilesystemAccess = false;
+    private static Handler handler;
+    private static volatile boolean hasFilesystemAccess = false;
+
+    // Messages arrive from the instrument's thread as well as the UI thread, so neither log takes
+    // a lock when adding to it; and the log views are told about new messages at most once per
+    // frame, however many arrive
+    private static final long FRAME_INTERVAL_MS = 16;
 
     private static final int MAX_DEVICE_LOG_SIZE = 100;
-    private static Queue<Message> deviceLog = new LinkedList<>();
+    private static final RingBuffer<Message> deviceLog = new RingBuffer<>(MAX_DEVICE_LOG_SIZE);
+    private static final UpdateNotifier deviceLogNotifier =
+            new UpdateNotifier(SexyTopoConstants.DEVICE_LOG_UPDATED_EVENT);
 
     private static final int MAX_SYSTEM_LOG_SIZE = 1000;
-    private static Queue<Message> systemLog = new LinkedList<>();
+    private static final RingBuffer<Message> systemLog = new RingBuffer<>(MAX_SYSTEM_LOG_SIZE);
+    private static final UpdateNotifier systemLogNotifier =
+            new UpdateNotifier(SexyTopoConstants.SYSTEM_LOG_UPDATED_EVENT);
+    private static volatile List<Message> systemLogHistory = Collections.emptyList();
+
+    // The system log is kept on disk one message per line. Lines are appended in batches rather
+    // than rewriting the whole file for every message; once the file gets too big it's moved
+    // aside, replacing the previous one, so at most two files' worth is kept.
+    private static final String SYSTEM_LOG_FILENAME = "system.log";
+    private static final String OLD_SYSTEM_LOG_FILENAME = "system.log.1";
+    private static final String LEGACY_SYSTEM_LOG_FILENAME = "system.log.json";
+    private static final long MAX_SYSTEM_LOG_FILE_SIZE = 256 * 1024;
+    private static final String SYSTEM_LOG_QUEUE = "system log";
+
+    private static final int WRITE_BATCH_SIZE = 50;
+    private static final long WRITE_DELAY_MS = 5000;
+    private static final Queue<Message> unwrittenSystemLog = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger unwrittenCount = new AtomicInteger(0);
+    private static final AtomicBoolean isWriteScheduled = new AtomicBoolean(false);
+    private static final Runnable FLUSH = Log::flush;
+    // Only touched by jobs in the system log queue, which run one at a time
+    private static int writtenThisRunCount = 0;
+    private static boolean isSystemLogHistoryRequested = false;
 
     public enum LogType {
         SYSTEM,
         DEVICE
     }
 
+    /** How much gets logged: messages below the current level are dropped before being built. */
+    public enum Level {
+        DEBUG,
+        INFO,
+        ERROR
+    }
+
+    /** Builds a message, only called if the message is going to be logged. */
+    public interface MessageSupplier {
+        String get();
+    }
+
+    private static volatile Level level = Level.INFO;
+
     public static void setContext(Context context) {
         Log.context = context.getApplicationContext();
+        handler = new Handler(Looper.getMainLooper());
     }
 
     public static void setHasFilesystemAccess(boolean hasFilesystemAccess) {
         Log.hasFilesystemAccess = hasFilesystemAccess;
     }
 
-    public static synchronized void device(int stringId, Object... args) {
+    public static void setLevel(Level level) {
+        Log.level = level;
+    }
+
+    public static boolean isLoggable(Level messageLevel) {
+        return messageLevel.compareTo(level) >= 0;
+    }
+
+    public static void device(int stringId, Object... args) {
         if (context != null) {
             device(context.getString(stringId, args));
         }
     }
 
-    public static synchronized void device(String message) {
-
-        if (deviceLog.size() >= MAX_DEVICE_LOG_SIZE) {
-            deviceLog.remove();
+    /** For chatty device messages, e.g. a line per packet, that aren't always wanted. */
+    public static void device(Level messageLevel, MessageSupplier supplier) {
+        if (isLoggable(messageLevel)) {
+            device(supplier.get());
         }
+    }
+
+    public static void device(String message) {
         deviceLog.add(new Message(message));
-        broadcast(SexyTopoConstants.DEVICE_LOG_UPDATED_EVENT);
+        deviceLogNotifier.request();
         android.util.Log.i(SexyTopoConstants.TAG, message);
     }
 
-    public static synchronized void systemLog(String message, boolean isError) {
-
-        while (systemLog.size() >= MAX_SYSTEM_LOG_SIZE) {
-            systemLog.remove();
+    public static void systemLog(String message, boolean isError) {
+        Message logMessage = new Message(message, isError);
+        systemLog.add(logMessage);
+        systemLogNotifier.request();
+
+        if (hasFilesystemAccess && handler != null) {
+            unwrittenSystemLog.add(logMessage);
+            if (unwrittenCount.incrementAndGet() == WRITE_BATCH_SIZE) {
+                flush();
+            } else if (isWriteScheduled.compareAndSet(false, true)) {
+                handler.postDelayed(FLUSH, WRITE_DELAY_MS);
+            }
         }
-        systemLog.add(new Message(message, isError));
-        broadcast(SexyTopoConstants.SYSTEM_LOG_UPDATED_EVENT);
-        save(LogType.SYSTEM);
     }
 
     private static String getString(int stringId, Object... args) {
@@ -95,15 +169,26 @@ public class Log {
         return message;
     }
 
+    // The string resource versions only look up and format the string if the message is going
+    // to be logged, so pass the arguments rather than formatting them first
+
     public static void d(int stringId, Object... args) {
-        d(getString(stringId, args));
+        if (isLoggable(Level.DEBUG)) {
+            d(getString(stringId, args));
+        }
+    }
+
+    public static void d(MessageSupplier supplier) {
+        if (isLoggable(Level.DEBUG)) {
+            d(supplier.get());
+        }
     }
 
     public static void d(String message) {
-        // currently treating debug and info as the same, but at some point we might get around
-        // to treating them differently
-        android.util.Log.d(SexyTopoConstants.TAG, message);
-        systemLog(message, false);
+        if (isLoggable(Level.DEBUG)) {
+            android.util.Log.d(SexyTopoConstants.TAG, message);
+            systemLog(message, false);
+        }
     }
 
     public static void e(int stringId, Object... args) {
@@ -121,12 +206,22 @@ public class Log {
     }
 
     public static void i(int stringId, Object... args) {
-        i(getString(stringId, args));
+        if (isLoggable(Level.INFO)) {
+            i(getString(stringId, args));
+        }
+    }
+
+    public static void i(MessageSupplier supplier) {
+        if (isLoggable(Level.INFO)) {
+            i(supplier.get());
+        }
     }
 
     public static void i(String message) {
-        android.util.Log.i(SexyTopoConstants.TAG, message);
-        systemLog(message, false);
+        if (isLoggable(Level.INFO)) {
+            android.util.Log.i(SexyTopoConstants.TAG, message);
+            systemLog(message, false);
+        }
     }
 
     public static void broadcast(String event) {
@@ -142,80 +237,183 @@ public class Log {
         broadcastManager.sendBroadcast(intent);
     }
 
-    public static synchronized List<Message> getLog(LogType logType) {
-        try {
-            switch (logType) {
-                case SYSTEM:
-                    return new ArrayList<>(systemLog);
-                case DEVICE:
-                    return new ArrayList<>(deviceLog);
-                default:
-                    return new ArrayList<>();
-            }
+    public static List<Message> getLog(LogType logType) {
+        switch (logType) {
+            case SYSTEM:
+                return getSystemLog();
+            case DEVICE:
+                return deviceLog.toList();
+            default:
+                return new ArrayList<>();
+        }
+    }
 
-        } catch (Exception e) {
-            return new ArrayList<>();
+    private static List<Message> getSystemLog() {
+        List<Message> messages = new ArrayList<>(systemLogHistory);
+        messages.addAll(systemLog.toList());
+        if (messages.size() > MAX_SYSTEM_LOG_SIZE) {
+            return new ArrayList<>(
+                    messages.subList(messages.size() - MAX_SYSTEM_LOG_SIZE, messages.size()));
         }
+        return messages;
     }
 
     public static void clearDeviceLog() {
         deviceLog.clear();
-        broadcast(SexyTopoConstants.DEVICE_LOG_UPDATED_EVENT);
+        deviceLogNotifier.request();
+    }
+
+    /**
+     * Writes any system log messages that are still waiting in memory. Called when the app goes
+     * into the background, as it might not come back.
+     */
+    public static void flush() {
+        if (isWriteScheduled.getAndSet(false)) {
+            handler.removeCallbacks(FLUSH);
+        }
+        if (context == null || !hasFilesystemAccess || unwrittenSystemLog.isEmpty()) {
+            return;
+        }
+        // Each write takes everything waiting at the time, so only the latest is worth running
+        IoScheduler.getInstance().submitLatest(SYSTEM_LOG_QUEUE, task -> writeSystemLog(), null);
+    }
+
+    /**
+     * Reads the system log from earlier runs of the app in the background, the first time it's
+     * asked for (the log isn't needed until someone looks at it). A SYSTEM_LOG_UPDATED_EVENT is
+     * broadcast once it has been read.
+     */
+    public static synchronized void loadSystemLogHistory() {
+        if (context == null || isSystemLogHistoryRequested) {
+            return;
+        }
+        isSystemLogHistoryRequested = true;
+        // In the same queue as the writes, so nothing gets read twice or missed
+        IoScheduler.getInstance()
+                .submitInOrder(SYSTEM_LOG_QUEUE, task -> readSystemLogHistory(), null);
     }
 
-    public static void save(LogType logType) {
-        if (hasFilesystemAccess) {
-            new SaveLogTask().execute(logType);
+    private static File getSystemLogFile(String filename) {
+        return new File(context.getFilesDir(), filename);
+    }
+
+    private static Void writeSystemLog() {
+        List<Message> messages = new ArrayList<>();
+        Message unwritten;
+        while ((unwritten = unwrittenSystemLog.poll()) != null) {
+            messages.add(unwritten);
+            unwrittenCount.decrementAndGet();
+        }
+        if (messages.isEmpty()) {
+            return null;
         }
+
+        StringBuilder lines = new StringBuilder();
+        for (Message message : messages) {
+            lines.append(message.marshal()).append('\n');
+        }
+
+        try {
+            File logFile = getSystemLogFile(SYSTEM_LOG_FILENAME);
+            if (logFile.length() > MAX_SYSTEM_LOG_FILE_SIZE) {
+                File oldLogFile = getSystemLogFile(OLD_SYSTEM_LOG_FILENAME);
+                oldLogFile.delete();
+                logFile.renameTo(oldLogFile);
+                // Anything in the old format is older still
+                getSystemLogFile(LEGACY_SYSTEM_LOG_FILENAME).delete();
+            }
+            try (Writer writer =
+                    new OutputStreamWriter(
+                            new FileOutputStream(logFile, true), StandardCharsets.UTF_8)) {
+                writer.write(lines.toString());
+            }
+            writtenThisRunCount += messages.size();
+        } catch (Exception exception) {
+            // Not logged, as that would only add more to write
+            FirebaseCrashlytics.getInstance().recordException(exception);
+        }
+        return null;
     }
 
-    public static void load(LogType logType) {
+    private static Void readSystemLogHistory() {
+        List<Message> history = new ArrayList<>();
         try {
-            DocumentFile logFile = getLogFile(logType);
-            if (logFile.exists()) {
-                String content = IoUtils.slurpFile(context, logFile);
-                unmarshal(logType, content);
+            File legacyLogFile = getSystemLogFile(LEGACY_SYSTEM_LOG_FILENAME);
+            if (legacyLogFile.exists()) {
+                history.addAll(unmarshal(readFile(legacyLogFile)));
             }
+            readLines(getSystemLogFile(OLD_SYSTEM_LOG_FILENAME), history);
+            readLines(getSystemLogFile(SYSTEM_LOG_FILENAME), history);
         } catch (Exception exception) {
-            Log.e("Error loading " + logType + ": " + exception);
+            FirebaseCrashlytics.getInstance().recordException(exception);
         }
+
+        // The end of the files is what's been written this run, which is still in memory
+        int end = Math.max(0, history.size() - writtenThisRunCount);
+        int start = Math.max(0, end - MAX_SYSTEM_LOG_SIZE);
+        systemLogHistory = new ArrayList<>(history.subList(start, end));
+        systemLogNotifier.request();
+        return null;
     }
 
-    public static DocumentFile getLogFile(LogType logType) {
-        String filename = logType.toString().toLowerCase() + ".log.json";
-        File logFile = new File(context.getFilesDir(), filename);
-        return DocumentFile.fromFile(logFile);
+    private static String readFile(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+            input.readFully(bytes);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
     }
 
-    public static JSONArray marshal(LogType logType) {
-        JSONArray marshalled = new JSONArray();
-        List<Message> messages = getLog(logType);
-        for (Message message : messages) {
-            marshalled.put(message.marshal());
+    private static void readLines(File file, List<Message> messages) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader =
+                new BufferedReader(
+                        new InputStreamReader(
+                                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    messages.add(Message.unmarshal(new JSONObject(line)));
+                } catch (JSONException | ParseException exception) {
+                    // e.g. a line cut short when the app was killed mid-write; skip it
+                }
+            }
         }
-        return marshalled;
     }
 
-    public static void unmarshal(LogType logType, String text)
-            throws ParseException, JSONException {
+    private static List<Message> unmarshal(String text) throws ParseException, JSONException {
         JSONArray array = new JSONArray(text);
-        Queue<Message> log = new LinkedList<>();
-
+        List<Message> messages = new ArrayList<>();
         for (int i = 0; i < array.length(); i++) {
-            log.add(Message.unmarshal(array.getJSONObject(i)));
+            messages.add(Message.unmarshal(array.getJSONObject(i)));
         }
-
-        setLog(logType, log);
+        return messages;
     }
 
-    private static void setLog(LogType logType, Queue<Message> log) {
-        switch (logType) {
-            case SYSTEM:
-                systemLog = log;
-                break;
-            case DEVICE:
-                deviceLog = log;
-                break;
+    /**
+     * Broadcasts an event on the UI thread, once, a frame after it's first asked for; asking
+     * again before then makes no difference.
+     */
+    private static class UpdateNotifier implements Runnable {
+        private final String event;
+        private final AtomicBoolean isPending = new AtomicBoolean(false);
+
+        private UpdateNotifier(String event) {
+            this.event = event;
+        }
+
+        private void request() {
+            if (handler != null && isPending.compareAndSet(false, true)) {
+                handler.postDelayed(this, FRAME_INTERVAL_MS);
+            }
+        }
+
+        @Override
+        public void run() {
+            isPending.set(false);
+            broadcast(event);
         }
     }
 
@@ -270,26 +468,4 @@ public class Log {
             return new Message(timestamp, text, isError);
         }
     }
-
-    private static class SaveLogTask extends AsyncTask<LogType, Void, Void> {
-
-        @Override
-        protected Void doInBackground(LogType... logTypes) {
-
-            if (context == null) {
-                return null;
-            }
-
-            try {
-                LogType logType = logTypes[0];
-                JSONArray marshalled = marshal(logType);
-                String content = marshalled.toString(4);
-                DocumentFile logFile = getLogFile(logType);
-                IoUtils.saveToFile(context, logFile, content);
-            } catch (Exception exception) {
-                FirebaseCrashlytics.getInstance().recordException(exception);
-            }
-            return null;
-        }
-    }
 }
@@ -31,6 +31,7 @@ public class SexyTopo extends Application {
         GeneralPreferences.initialise(context);
         SketchPreferences.initialise(context);
         Log.setContext(context);
+        Log.setLevel(GeneralPreferences.getLogLevel());
 
         resources = getResources();
         Symbol.setResources(resources);
@@ -4,14 +4,15 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.os.AsyncTask;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import org.hwyl.sexytopo.R;
 import org.hwyl.sexytopo.SexyTopoConstants;
+import org.hwyl.sexytopo.control.io.IoScheduler;
 import org.hwyl.sexytopo.control.io.basic.Saver;
+import org.hwyl.sexytopo.control.io.basic.SurveySnapshot;
 import org.hwyl.sexytopo.control.util.InputMode;
 import org.hwyl.sexytopo.control.util.SurveyUpdater;
 import org.hwyl.sexytopo.model.calibration.CalibrationReading;
@@ -38,6 +39,22 @@ public class SurveyManager {
     // This should be created or loaded on startup
     private static Survey currentSurvey = new Survey();
 
+    private static final IoScheduler.Callback<SurveySnapshot> AUTOSAVE_CALLBACK =
+            new IoScheduler.Callback<SurveySnapshot>() {
+                @Override
+                public void onSuccess(SurveySnapshot snapshot) {
+                    // Back on the UI thread, so the survey can't change while it's marked
+                    snapshot.markWritten();
+                    Log.d(R.string.file_save_autosaved);
+                }
+
+                @Override
+                public void onError(Exception exception) {
+                    Log.e(R.string.file_save_autosave_error);
+                    Log.e(exception);
+                }
+            };
+
     private List<CalibrationReading> calibrationReadings = new ArrayList<>();
 
     public SurveyManager(Context Context) {
@@ -69,7 +86,17 @@ public class SurveyManager {
     }
 
     public void autosave() {
-        new AutosaveTask().execute(context);
+        if (!currentSurvey.isAutosaved()) {
+            // Taken here, so the survey can keep changing while it's written out
+            SurveySnapshot snapshot = new SurveySnapshot(currentSurvey);
+            IoScheduler.getInstance()
+                    .submitLatest(Saver.IO_QUEUE, task -> autosave(snapshot), AUTOSAVE_CALLBACK);
+        }
+    }
+
+    private SurveySnapshot autosave(SurveySnapshot snapshot) throws Exception {
+        Saver.autosave(context, snapshot);
+        return snapshot;
     }
 
     public InputMode getInputMode() {
@@ -133,24 +160,4 @@ public class SurveyManager {
             calibrationReadings.remove(calibrationReadings.size() - 1);
         }
     }
-
-    private static class AutosaveTask extends AsyncTask<Context, Void, Void> {
-
-        @Override
-        protected Void doInBackground(Context... contexts) {
-            Context context = contexts[0];
-            try {
-                if (!currentSurvey.isAutosaved()) {
-                    Saver.autosave(context, currentSurvey);
-                    Log.d(R.string.file_save_autosaved);
-                }
-                return null;
-
-            } catch (Exception e) {
-                Log.e(R.string.file_save_autosave_error);
-                Log.e(e);
-                return null;
-            }
-        }
-    }
 }
@@ -19,6 +19,7 @@ import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.android.material.textfield.TextInputLayout;
 import org.hwyl.sexytopo.R;
+import org.hwyl.sexytopo.control.Log;
 import org.hwyl.sexytopo.control.util.GeneralPreferences;
 
 public class SettingsActivity extends SexyTopoActivity
@@ -60,6 +61,8 @@ public class SettingsActivity extends SexyTopoActivity
                 (prefs, key) -> {
                     if ("pref_theme".equals(key)) {
                         setTheme();
+                    } else if ("pref_developer_mode".equals(key)) {
+                        Log.setLevel(GeneralPreferences.getLogLevel());
                     }
                 };
     }
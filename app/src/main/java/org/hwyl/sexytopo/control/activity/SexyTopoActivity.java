@@ -10,7 +10,6 @@ import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
@@ -54,14 +53,18 @@ import org.hwyl.sexytopo.control.SexyTopoPermissions;
 import org.hwyl.sexytopo.control.SurveyManager;
 import org.hwyl.sexytopo.control.components.DialogUtils;
 import org.hwyl.sexytopo.control.components.StationSelectorDialog;
+import org.hwyl.sexytopo.control.io.DirectoryCache;
+import org.hwyl.sexytopo.control.io.IoScheduler;
 import org.hwyl.sexytopo.control.io.IoUtils;
 import org.hwyl.sexytopo.control.io.StartLocation;
 import org.hwyl.sexytopo.control.io.SurveyDirectory;
 import org.hwyl.sexytopo.control.io.basic.Loader;
 import org.hwyl.sexytopo.control.io.basic.Saver;
+import org.hwyl.sexytopo.control.io.basic.SurveySnapshot;
 import org.hwyl.sexytopo.control.io.share.SurveyZipSharer;
 import org.hwyl.sexytopo.control.io.translation.Exporter;
 import org.hwyl.sexytopo.control.io.translation.ImportManager;
+import org.hwyl.sexytopo.control.io.translation.ParallelExporter;
 import org.hwyl.sexytopo.control.io.translation.SelectableExporters;
 import org.hwyl.sexytopo.control.table.LegDialogs;
 import org.hwyl.sexytopo.control.util.GeneralPreferences;
@@ -177,6 +180,12 @@ public abstract class SexyTopoActivity extends AppCompatActivity {
         getWindow().setNavigationBarColor(panelColor);
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        Log.flush();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
 
@@ -321,6 +330,9 @@ public abstract class SexyTopoActivity extends AppCompatActivity {
         } else if (itemId == R.id.action_file_export) {
             confirmToProceedIfNotSaved("requestExportSurvey");
             return true;
+        } else if (itemId == R.id.action_file_export_all) {
+            confirmToProceedIfNotSaved("requestExportAllFormats");
+            return true;
         } else if (itemId == R.id.action_file_share) {
             requestShareSurvey();
             return true;
@@ -445,11 +457,7 @@ public abstract class SexyTopoActivity extends AppCompatActivity {
         Survey survey = getSurvey();
         DocumentFile directory = SurveyDirectory.TOP.get(survey).getDocumentFile(this);
 
-        try {
-            restoreAutosave(directory);
-        } catch (Exception exception) {
-            showExceptionAndLog(R.string.file_autosave_load_error, exception);
-        }
+        restoreAutosave(directory);
     }
 
     @SuppressLint("UnusedDeclaration") // called through Reflection
@@ -593,9 +601,47 @@ public abstract class SexyTopoActivity extends AppCompatActivity {
                 .show();
     }
 
+    @SuppressLint("UnusedDeclaration")
+    public void requestExportAllFormats() { // public due to stupid Reflection requirements
+        Survey survey = getSurvey().createSnapshot();
+        IoScheduler.getInstance()
+                .submit(
+                        task -> exportAll(survey, task),
+                        new ReportingCallback<Void>(R.string.export_failed) {
+                            // One toast updated in place; separate ones would queue up
+                            private Toast progressToast;
+
+                            @Override
+                            public void onProgress(int done, int total) {
+                                String message =
+                                        getString(R.string.export_all_progress, done, total);
+                                if (progressToast == null) {
+                                    progressToast =
+                                            Toast.makeText(
+                                                    getApplicationContext(),
+                                                    message,
+                                                    Toast.LENGTH_SHORT);
+                                } else {
+                                    progressToast.setText(message);
+                                }
+                                progressToast.show();
+                            }
+
+                            @Override
+                            public void onSuccess(Void result) {
+                                showSimpleToast(R.string.export_successful);
+                            }
+                        });
+    }
+
     @SuppressLint("UnusedDeclaration")
     public void requestShareSurvey() {
-        new ShareTask().execute(this);
+        showSimpleToast(R.string.share_preparing);
+        Survey survey = getSurvey().createSnapshot();
+        IoScheduler.getInstance()
+                .submit(
+                        task -> new SurveyZipSharer().buildShareUri(this, survey),
+                        new ShareCallback());
     }
 
     public static String getVersionName(android.content.Context context) {
@@ -623,12 +669,15 @@ public abstract class SexyTopoActivity extends AppCompatActivity {
     }
 
     private void linkToStationInSurvey(DocumentFile directory) {
-        try {
-            Survey surveyToLink = Loader.loadSurvey(this, directory);
-            linkToStationInSurvey(surveyToLink);
-        } catch (Exception exception) {
-            showExceptionAndLog(R.string.file_load_survey_error, exception);
-        }
+        IoScheduler.getInstance()
+                .submit(
+                        task -> Loader.loadSurvey(this, directory),
+                        new ReportingCallback<Survey>(R.string.file_load_survey_error) {
+                            @Override
+                            public void onSuccess(Survey surveyToLink) {
+                                linkToStationInSurvey(surveyToLink);
+                            }
+                        });
     }
 
     private void linkToStationInSurvey(final Survey surveyToLink) {
@@ -683,18 +732,16 @@ public abstract class SexyTopoActivity extends AppCompatActivity {
             return;
         }
 
-        if (IoUtils.isDirectoryEmpty(directory)) {
-            survey.setDirectory(directory);
-            saveSurvey();
+        if (IoUtils.isDirectoryEmpty(this, directory)) {
+            saveSurveyTo(survey, directory);
 
-        } else if (IoUtils.isSurveyDirectory(directory)) {
+        } else if (IoUtils.isSurveyDirectory(this, directory)) {
             new MaterialAlertDialogBuilder(this)
                     .setTitle(R.string.file_save_overwrite_survey_title_question)
                     .setPositiveButton(
                             R.string.overwrite,
                             (dialogInterface, id) -> {
-                                survey.setDirectory(directory);
-                                saveSurvey();
+                                saveSurveyTo(survey, directory);
                             })
                     .setNegativeButton(R.string.cancel, null)
                     .show();
@@ -705,16 +752,30 @@ public abstract class SexyTopoActivity extends AppCompatActivity {
                     .setPositiveButton(
                             R.string.save,
                             (dialogInterface, id) -> {
-                                survey.setDirectory(directory);
-                                saveSurvey();
+                                saveSurveyTo(survey, directory);
                             })
                     .setNegativeButton(R.string.cancel, null)
                     .show();
         }
     }
 
+    private void saveSurveyTo(Survey survey, DocumentFile directory) {
+        survey.setDirectory(directory);
+        // nothing has been written to the new directory yet
+        survey.setSaved(false);
+        saveSurvey();
+    }
+
     protected void saveSurvey() {
-        new SaveTask().execute(this);
+        // Taken on the UI thread, so the survey can keep changing while it's written out
+        SurveySnapshot snapshot = new SurveySnapshot(getSurvey());
+        IoScheduler.getInstance()
+                .submitInOrder(Saver.IO_QUEUE, task -> save(snapshot), new SaveCallback());
+    }
+
+    private SurveySnapshot save(SurveySnapshot snapshot) throws Exception {
+        Saver.save(this, snapshot);
+        return snapshot;
     }
 
     /** This is used to set whether a survey will be reopened when opening SexyTopo */
@@ -979,24 +1040,36 @@ public abstract class SexyTopoActivity extends AppCompatActivity {
     }
 
     protected void loadSurvey(DocumentFile surveyDirectory) {
-        try {
-            Log.i(R.string.file_loading_survey, surveyDirectory.getName());
-            Survey survey = Loader.loadSurvey(SexyTopoActivity.this, surveyDirectory);
-            getSurveyManager().setCurrentSurvey(survey);
-            updateRememberedSurvey();
-            startActivity(PlanActivity.class);
-            showSimpleToast(R.string.file_loaded_survey, survey.getName());
+        Log.i(R.string.file_loading_survey, surveyDirectory.getName());
+        IoScheduler.getInstance()
+                .submit(
+                        task -> Loader.loadSurvey(this, surveyDirectory),
+                        new ReportingCallback<Survey>(R.string.file_load_survey_error) {
+                            @Override
+                            public void onSuccess(Survey survey) {
+                                getSurveyManager().setCurrentSurvey(survey);
+                                updateRememberedSurvey();
+                                startActivity(PlanActivity.class);
+                                showSimpleToast(R.string.file_loaded_survey, survey.getName());
+                                onSurveyLoadingFinished();
+                            }
 
-        } catch (Exception exception) {
-            showExceptionAndLog(R.string.file_load_survey_error, exception);
-        }
+                            @Override
+                            public void onError(Exception exception) {
+                                super.onError(exception);
+                                onSurveyLoadingFinished();
+                            }
+                        });
     }
 
+    /** Called once loadSurvey() or restoreAutosave() is done, whether or not it worked. */
+    protected void onSurveyLoadingFinished() {}
+
     public void deleteSurvey(DocumentFile directory) {
 
         boolean doesExist =
                 directory != null && IoUtils.doesDirectoryExist(this, directory.getUri());
-        boolean isSurvey = doesExist && !IoUtils.isSurveyDirectory(directory);
+        boolean isSurvey = doesExist && !IoUtils.isSurveyDirectory(this, directory);
 
         if (!isSurvey) {
             showSimpleToast(R.string.file_delete_error_not_survey);
@@ -1013,6 +1086,7 @@ public abstract class SexyTopoActivity extends AppCompatActivity {
                             try {
                                 String name = directory.getName();
                                 directory.delete();
+                                DirectoryCache.clear();
                                 showSimpleToast(R.string.file_delete_successful, name);
                             } catch (Exception e) {
                                 showExceptionAndLog(R.string.file_error_deleting_survey, e);
@@ -1022,23 +1096,44 @@ public abstract class SexyTopoActivity extends AppCompatActivity {
                 .show();
     }
 
-    protected void restoreAutosave(DocumentFile directory) throws Exception {
+    protected void restoreAutosave(DocumentFile directory) {
         Log.i(R.string.file_restoring_autosave);
-        Survey survey = Loader.loadAutosave(this, directory);
-        getSurveyManager().setCurrentSurvey(survey);
-        showSimpleToast(R.string.file_autosave_restored);
+        IoScheduler.getInstance()
+                .submit(
+                        task -> Loader.loadAutosave(this, directory),
+                        new ReportingCallback<Survey>(R.string.file_autosave_load_error) {
+                            @Override
+                            public void onSuccess(Survey survey) {
+                                getSurveyManager().setCurrentSurvey(survey);
+                                showSimpleToast(R.string.file_autosave_restored);
+                                onSurveyLoadingFinished();
+                            }
+
+                            @Override
+                            public void onError(Exception exception) {
+                                super.onError(exception);
+                                onSurveyLoadingFinished();
+                            }
+                        });
     }
 
     protected void importSurvey(DocumentFile file) {
-        try {
-            Survey survey = ImportManager.toSurvey(this, file);
-            survey.checkSurveyIntegrity();
-            getSurveyManager().setCurrentSurvey(survey);
-            showSimpleToast(R.string.import_successful);
+        IoScheduler.getInstance()
+                .submit(
+                        task -> importSurveyInBackground(file),
+                        new ReportingCallback<Survey>(R.string.import_failed) {
+                            @Override
+                            public void onSuccess(Survey survey) {
+                                getSurveyManager().setCurrentSurvey(survey);
+                                showSimpleToast(R.string.import_successful);
+                            }
+                        });
+    }
 
-        } catch (Exception exception) {
-            showExceptionAndLog(R.string.import_failed, exception);
-        }
+    private Survey importSurveyInBackground(DocumentFile file) throws Exception {
+        Survey survey = ImportManager.toSurvey(this, file);
+        survey.checkSurveyIntegrity();
+        return survey;
     }
 
     protected void exportSurvey(Exporter exporter) {
@@ -1046,14 +1141,27 @@ public abstract class SexyTopoActivity extends AppCompatActivity {
     }
 
     private void doExport(Exporter exporter) {
-        try {
-            Survey survey = getSurvey();
-            exporter.export(this, survey);
-            showSimpleToast(R.string.export_successful);
+        Survey survey = getSurvey().createSnapshot();
+        IoScheduler.getInstance()
+                .submit(
+                        task -> export(exporter, survey),
+                        new ReportingCallback<Void>(R.string.export_failed) {
+                            @Override
+                            public void onSuccess(Void result) {
+                                showSimpleToast(R.string.export_successful);
+                            }
+                        });
+    }
 
-        } catch (Exception exception) {
-            showExceptionAndLog(R.string.export_failed, exception);
-        }
+    private Void export(Exporter exporter, Survey survey) throws Exception {
+        exporter.export(this, survey);
+        return null;
+    }
+
+    private Void exportAll(Survey survey, IoScheduler.Task task) throws Exception {
+        ParallelExporter.exportAll(
+                this, survey, SelectableExporters.createExporters(), task::setProgress);
+        return null;
     }
 
     protected void confirmToProceed(
@@ -1317,66 +1425,70 @@ public abstract class SexyTopoActivity extends AppCompatActivity {
         return orientation == Configuration.ORIENTATION_PORTRAIT;
     }
 
-    private class SaveTask extends AsyncTask<android.content.Context, Void, Boolean> {
+    /** Whether callbacks from background work should still update this activity. */
+    private boolean isAlive() {
+        return !isFinishing() && !isDestroyed();
+    }
+
+    /** Reports any error with the given message. */
+    private abstract class ReportingCallback<T> implements IoScheduler.Callback<T> {
+
+        private final int errorId;
+
+        private ReportingCallback(int errorId) {
+            this.errorId = errorId;
+        }
 
         @Override
-        protected Boolean doInBackground(Context... contexts) {
-            try {
-                android.content.Context context = contexts[0];
-                Survey survey = getSurvey();
-                Saver.save(context, survey);
-                return true;
-            } catch (Exception exception) {
-                Log.e(exception);
-                try {
-                    FirebaseCrashlytics crashlytics = FirebaseCrashlytics.getInstance();
-                    crashlytics.recordException(exception);
-                    Log.e(exception);
-                } catch (Exception inner) {
-                    Log.e(inner);
-                }
-                return false;
-            }
+        public void onError(Exception exception) {
+            showExceptionAndLog(errorId, exception);
         }
 
         @Override
-        protected void onPostExecute(Boolean wasSuccessful) {
-            if (wasSuccessful) {
-                updateRememberedSurvey();
-                SexyTopoActivity.this.redraw();
-                showSimpleToast(R.string.file_survey_saved);
-            } else {
-                showSimpleToast(R.string.file_save_survey_error);
-            }
+        public boolean isWanted() {
+            return isAlive();
         }
     }
 
-    private class ShareTask extends AsyncTask<android.content.Context, Void, Uri> {
-
-        private Exception error = null;
+    /** Still called if this activity has gone, as the save happened anyway. */
+    private class SaveCallback implements IoScheduler.Callback<SurveySnapshot> {
 
         @Override
-        protected void onPreExecute() {
-            showSimpleToast(R.string.share_preparing);
+        public void onSuccess(SurveySnapshot snapshot) {
+            // Back on the UI thread, so the survey can't change while it's marked
+            snapshot.markWritten();
+            updateRememberedSurvey();
+            if (isAlive()) {
+                SexyTopoActivity.this.redraw();
+                showSimpleToast(R.string.file_survey_saved);
+            }
         }
 
         @Override
-        protected Uri doInBackground(android.content.Context... contexts) {
+        public void onError(Exception exception) {
+            Log.e(exception);
             try {
-                Survey survey = getSurvey();
-                return new SurveyZipSharer().buildShareUri(contexts[0], survey);
-            } catch (Exception e) {
-                error = e;
-                return null;
+                FirebaseCrashlytics crashlytics = FirebaseCrashlytics.getInstance();
+                crashlytics.recordException(exception);
+            } catch (Exception inner) {
+                Log.e(inner);
+            }
+            if (isAlive()) {
+                showSimpleToast(R.string.file_save_survey_error);
             }
         }
+    }
+
+    private class ShareCallback extends ReportingCallback<Uri> {
+
+        private ShareCallback() {
+            super(R.string.share_failed);
+        }
 
         @Override
-        protected void onPostExecute(Uri uri) {
+        public void onSuccess(Uri uri) {
             if (uri == null) {
-                showExceptionAndLog(
-                        R.string.share_failed,
-                        error != null ? error : new Exception("URI was null"));
+                onError(new Exception("URI was null"));
                 return;
             }
             Intent shareIntent = new Intent(Intent.ACTION_SEND);
@@ -4,11 +4,14 @@ import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
 import androidx.documentfile.provider.DocumentFile;
+import java.io.IOException;
+import java.util.List;
 import org.hwyl.sexytopo.R;
 import org.hwyl.sexytopo.control.Log;
 import org.hwyl.sexytopo.control.NewStationNotificationService;
 import org.hwyl.sexytopo.control.io.IoUtils;
 import org.hwyl.sexytopo.control.io.SurveyFile;
+import org.hwyl.sexytopo.control.io.basic.AutosaveJournal;
 import org.hwyl.sexytopo.control.util.GeneralPreferences;
 import org.hwyl.sexytopo.model.survey.Survey;
 
@@ -27,7 +30,6 @@ public class StartUpActivity extends SexyTopoActivity {
         super.onStart();
 
         hasStarted = true;
-        Log.load(Log.LogType.SYSTEM);
         Log.i("--------------------");
         Log.i(R.string.log_starting_up);
 
@@ -43,10 +45,6 @@ public class StartUpActivity extends SexyTopoActivity {
         }
 
         initialiseSurvey();
-
-        Intent intent = new Intent(this, DeviceActivity.class);
-        startActivity(intent);
-        finish();
     }
 
     protected void initialiseSurvey() {
@@ -57,21 +55,31 @@ public class StartUpActivity extends SexyTopoActivity {
                 startNewSurvey();
 
             } else {
+                // Loaded in the background; carries on in onSurveyLoadingFinished()
                 if (shouldWeRestoreAutosave(activeSurveyDirectory)) {
                     restoreAutosave(activeSurveyDirectory);
                 } else {
                     loadSurvey(activeSurveyDirectory);
                 }
+                return;
             }
 
         } catch (Exception exception) {
             Log.e(R.string.file_error_initialising_survey, exception.getMessage());
+        }
 
-        } finally {
-            if (getSurvey() == null) { // should be impossible
-                startNewSurvey();
-            }
+        onSurveyLoadingFinished();
+    }
+
+    @Override
+    protected void onSurveyLoadingFinished() {
+        if (getSurvey() == null) { // should be impossible
+            startNewSurvey();
         }
+
+        Intent intent = new Intent(this, DeviceActivity.class);
+        startActivity(intent);
+        finish();
     }
 
     public DocumentFile tryToFindActiveSurveyDirectory() {
@@ -101,11 +109,17 @@ public class StartUpActivity extends SexyTopoActivity {
         return surveyDirectory;
     }
 
-    private boolean shouldWeRestoreAutosave(DocumentFile surveyDirectory) {
+    private boolean shouldWeRestoreAutosave(DocumentFile surveyDirectory) throws IOException {
 
         Survey protoSurvey = new Survey();
         protoSurvey.setDirectory(surveyDirectory);
 
+        // A save leaves just the journal's header, so anything more is unsaved changes
+        List<String> journal = AutosaveJournal.read(this, protoSurvey);
+        if (journal != null && AutosaveJournal.hasUnsavedChanges(journal)) {
+            return true;
+        }
+
         boolean shouldRestoreAutosave = false;
 
         for (SurveyFile.SurveyFileType fileType : SurveyFile.ALL_DATA_TYPES) {
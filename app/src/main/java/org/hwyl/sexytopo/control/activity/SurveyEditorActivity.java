@@ -71,6 +71,7 @@ public abstract class SurveyEditorActivity extends SexyTopoActivity {
     public void onSetDirectionLeft(Station station) {
         if (station.getExtendedElevationDirection() != Direction.LEFT) {
             SurveyUpdater.setDirectionOfSubtree(station, Direction.LEFT);
+            getSurvey().setDataSaved(false);
             getSurveyManager().broadcastSurveyUpdated();
             invalidateView();
         }
@@ -79,6 +80,7 @@ public abstract class SurveyEditorActivity extends SexyTopoActivity {
     public void onSetDirectionRight(Station station) {
         if (station.getExtendedElevationDirection() != Direction.RIGHT) {
             SurveyUpdater.setDirectionOfSubtree(station, Direction.RIGHT);
+            getSurvey().setDataSaved(false);
             getSurveyManager().broadcastSurveyUpdated();
             invalidateView();
         }
@@ -264,6 +266,7 @@ public abstract class SurveyEditorActivity extends SexyTopoActivity {
                         (dialog, which) -> {
                             CharSequence inputText = input.getText();
                             station.setComment(inputText != null ? inputText.toString() : "");
+                            getSurvey().setDataSaved(false);
                             invalidateView();
                         })
                 .setNegativeButton(R.string.cancel, null);
@@ -296,6 +299,7 @@ public abstract class SurveyEditorActivity extends SexyTopoActivity {
                         (dialog, which) -> {
                             CharSequence inputText = input.getText();
                             leg.setComment(inputText != null ? inputText.toString() : "");
+                            getSurvey().setDataSaved(false);
                             getSurveyManager().broadcastSurveyUpdated();
                             invalidateView();
                         })
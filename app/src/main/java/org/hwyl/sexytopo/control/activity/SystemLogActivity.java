@@ -39,6 +39,8 @@ public class SystemLogActivity extends SexyTopoActivity {
         logFilter.addAction(SexyTopoConstants.SYSTEM_LOG_UPDATED_EVENT);
         broadcastManager.registerReceiver(logUpdateReceiver, logFilter);
         logUpdateReceiver.update();
+        // Earlier runs' messages turn up with a broadcast once they've been read
+        Log.loadSystemLogHistory();
     }
 
     @Override
@@ -6,22 +6,60 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Bundle;
 import android.util.TypedValue;
+import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.PopupMenu;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 import org.hwyl.sexytopo.R;
 import org.hwyl.sexytopo.SexyTopoConstants;
+import org.hwyl.sexytopo.control.Log;
+import org.hwyl.sexytopo.control.graph.ConnectedSurveys;
+import org.hwyl.sexytopo.control.io.IoScheduler;
+import org.hwyl.sexytopo.control.threed.PassageMesh;
+import org.hwyl.sexytopo.control.threed.PassageMeshBuilder;
+import org.hwyl.sexytopo.control.threed.Pick;
 import org.hwyl.sexytopo.control.threed.SurveyRenderer;
 import org.hwyl.sexytopo.control.threed.SurveyView3D;
 import org.hwyl.sexytopo.control.util.Space3DTransformer;
 import org.hwyl.sexytopo.model.graph.Coord3D;
 import org.hwyl.sexytopo.model.graph.Space;
+import org.hwyl.sexytopo.model.survey.Station;
 import org.hwyl.sexytopo.model.survey.Survey;
 
 public class ThreeDViewActivity extends SexyTopoActivity {
 
+    private static final String CONNECTION_QUEUE = "3D connected surveys";
+    private static final String MESH_QUEUE = "3D passage mesh";
+
     private SurveyView3D surveyView3D;
     private SurveyRenderer renderer;
     private final Space3DTransformer transformer = new Space3DTransformer();
 
+    // Passage walls are meshed off the UI thread; if the survey changes again while a mesh is
+    // being built, the snapshots waiting are merged and meshed together next
+    private IoScheduler.Task meshTask = null;
+    private final PassageMeshBuilder meshBuilder = new PassageMeshBuilder();
+    private final PassageMeshBuilder.Snapshotter meshSnapshotter =
+            new PassageMeshBuilder.Snapshotter();
+    private final AtomicReference<PassageMeshBuilder.Snapshot> surveyToMesh =
+            new AtomicReference<>();
+
+    // The connected surveys, positioned in the background (which may mean loading them) and only
+    // again when the way they join this survey changes. Positioning them isn't needed to show
+    // the survey itself, so it's drawn straight away and they're added when they're ready.
+    private Survey currentSurvey = null;
+    private Space<Coord3D> currentSpace = null;
+    private Map<Survey, Space<Coord3D>> connectedSpaces = new LinkedHashMap<>();
+    private Map<Station, ConnectedSurveys.ConnectionPoint> connectionLayout = null;
+    private IoScheduler.Task connectionTask = null;
+
     private final BroadcastReceiver surveyUpdateReceiver =
             new BroadcastReceiver() {
                 @Override
@@ -39,6 +77,7 @@ public class ThreeDViewActivity extends SexyTopoActivity {
 
         surveyView3D = findViewById(R.id.survey_view_3d);
         renderer = surveyView3D.getSurveyRenderer();
+        surveyView3D.setOnPickListener(this::onPick);
 
         applyThemeBackgroundColour();
         updateSurveyData();
@@ -62,6 +101,67 @@ public class ThreeDViewActivity extends SexyTopoActivity {
         LocalBroadcastManager.getInstance(this).unregisterReceiver(surveyUpdateReceiver);
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (connectionTask != null) {
+            connectionTask.cancel();
+        }
+        if (meshTask != null) {
+            meshTask.cancel();
+        }
+    }
+
+    private void onPick(Pick pick, float x, float y) {
+        if (pick == null) {
+            return;
+        }
+
+        // Other activities can only show stations in the current survey
+        if (pick.survey != getSurvey()) {
+            String name = pick.station.getName();
+            showSimpleToast(getString(R.string.context_jump_to_station_error, name));
+            return;
+        }
+
+        showStationMenu(pick.station, x, y);
+    }
+
+    private void showStationMenu(Station station, float x, float y) {
+        // Anchor the menu to an invisible view where the user tapped
+        ViewGroup decorView = (ViewGroup) getWindow().getDecorView();
+        int[] location = new int[2];
+        surveyView3D.getLocationOnScreen(location);
+
+        View anchor = new View(this);
+        FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(1, 1);
+        params.leftMargin = location[0] + (int) x;
+        params.topMargin = location[1] + (int) y;
+        anchor.setLayoutParams(params);
+        decorView.addView(anchor);
+
+        PopupMenu popup = new PopupMenu(this, anchor);
+        popup.inflate(R.menu.context_3d_station);
+        popup.getMenu().findItem(R.id.station_title).setTitle(station.getName());
+        popup.setOnMenuItemClickListener(item -> onStationMenuItemClick(item, station));
+        popup.setOnDismissListener(menu -> decorView.post(() -> decorView.removeView(anchor)));
+        popup.show();
+    }
+
+    private boolean onStationMenuItemClick(MenuItem item, Station station) {
+        int itemId = item.getItemId();
+        if (itemId == R.id.action_jump_to_plan) {
+            jumpToStation(station, PlanActivity.class);
+        } else if (itemId == R.id.action_jump_to_elevation) {
+            jumpToStation(station, ExtendedElevationActivity.class);
+        } else if (itemId == R.id.action_jump_to_table) {
+            jumpToStation(station, TableActivity.class);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
     private void applyThemeBackgroundColour() {
         TypedValue typedValue = new TypedValue();
         getTheme().resolveAttribute(android.R.attr.colorBackground, typedValue, true);
@@ -77,8 +177,144 @@ public class ThreeDViewActivity extends SexyTopoActivity {
         if (survey == null) {
             return;
         }
-        Space<Coord3D> space = transformer.transformTo3D(survey);
-        renderer.setSurveyData(space);
+        if (survey != currentSurvey) {
+            currentSurvey = survey;
+            connectedSpaces = new LinkedHashMap<>();
+            connectionLayout = null;
+        }
+        currentSpace = transformer.transformTo3D(survey);
+
+        if (!survey.areConnectionsLoaded()) {
+            if (connectionTask == null) {
+                positionConnectedSurveys(survey, currentSpace);
+            }
+        } else {
+            Map<Station, ConnectedSurveys.ConnectionPoint> layout =
+                    ConnectedSurveys.getConnectionLayout3D(survey, currentSpace);
+            if (!layout.equals(connectionLayout)) {
+                connectionLayout = layout;
+                positionConnectedSurveys(survey, currentSpace);
+            }
+        }
+
+        showSurveyData();
+    }
+
+    private void positionConnectedSurveys(Survey survey, Space<Coord3D> space) {
+        if (connectionTask != null) {
+            connectionTask.cancel();
+        }
+        connectionTask =
+                IoScheduler.getInstance()
+                        .submitLatest(
+                                CONNECTION_QUEUE,
+                                task -> getConnectedSpaces(survey, space),
+                                new ConnectionCallback(survey, space));
+    }
+
+    private static Map<Survey, Space<Coord3D>> getConnectedSpaces(
+            Survey survey, Space<Coord3D> space) {
+        Map<Survey, Space<Coord3D>> spaces =
+                ConnectedSurveys.getTranslatedConnectedSurveys3D(
+                        survey, space, new Space3DTransformer());
+        spaces.remove(survey);
+        return spaces;
+    }
+
+    private void showSurveyData() {
+        Survey survey = currentSurvey;
+        Map<Survey, Space<Coord3D>> spaces = new LinkedHashMap<>();
+        spaces.put(survey, currentSpace);
+        spaces.putAll(connectedSpaces);
+
+        renderer.setDebugMode(isDebugMode());
+        renderer.setSurveyData(
+                spaces,
+                survey,
+                new ArrayList<>(survey.getAllLegsInChronoOrder()),
+                survey.getLegEditCount());
         surveyView3D.requestRender();
+
+        PassageMeshBuilder.Snapshot snapshot = meshSnapshotter.take(spaces, survey);
+        PassageMeshBuilder.Snapshot waiting = surveyToMesh.getAndSet(null);
+        if (waiting != null) {
+            snapshot = snapshot.after(waiting);
+        }
+        surveyToMesh.set(snapshot);
+        meshTask =
+                IoScheduler.getInstance()
+                        .submitLatest(MESH_QUEUE, task -> buildPassageMesh(), new MeshCallback());
+    }
+
+    /** Returns null if another job has already meshed what was waiting. */
+    private PassageMesh.Changes buildPassageMesh() {
+        PassageMeshBuilder.Snapshot snapshot = surveyToMesh.getAndSet(null);
+        if (snapshot == null) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        PassageMesh.Changes changes = meshBuilder.build(snapshot);
+        if (isDebugMode()) {
+            float millis = (System.nanoTime() - start) / 1e6f;
+            int rebuilt = meshBuilder.getRebuiltRingCount();
+            int tubes = changes.getTubeCount();
+            Log.d(
+                    "Passage mesh built in "
+                            + millis
+                            + " ms ("
+                            + rebuilt
+                            + " rings rebuilt, "
+                            + tubes
+                            + " tubes made)");
+        }
+        return changes;
+    }
+
+    private class MeshCallback implements IoScheduler.Callback<PassageMesh.Changes> {
+
+        @Override
+        public void onSuccess(PassageMesh.Changes changes) {
+            if (changes != null) {
+                renderer.updatePassageMesh(changes);
+                surveyView3D.requestRender();
+            }
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            Log.e(exception);
+        }
+    }
+
+    private class ConnectionCallback implements IoScheduler.Callback<Map<Survey, Space<Coord3D>>> {
+
+        private final Survey survey;
+        private final Space<Coord3D> space;
+
+        private ConnectionCallback(Survey survey, Space<Coord3D> space) {
+            this.survey = survey;
+            this.space = space;
+        }
+
+        @Override
+        public void onSuccess(Map<Survey, Space<Coord3D>> result) {
+            connectionTask = null;
+            if (survey != currentSurvey) {
+                return;
+            }
+            if (connectionLayout == null) {
+                // The connections have only just been loaded
+                connectionLayout = ConnectedSurveys.getConnectionLayout3D(survey, space);
+            }
+            connectedSpaces = result;
+            showSurveyData();
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            connectionTask = null;
+            Log.e(exception);
+        }
     }
 }
@@ -334,6 +334,7 @@ public class TripActivity extends SexyTopoActivity {
         if (trip == null) {
             trip = new Trip();
         }
+        Trip previous = new Trip(trip);
         trip.setTeam(team);
         trip.setComments(commentsField.getText().toString());
 
@@ -341,6 +342,9 @@ public class TripActivity extends SexyTopoActivity {
         trip.setInstrument(instrumentField.getText().toString());
 
         getSurvey().setTrip(trip);
+        if (!trip.equals(previous)) {
+            getSurvey().setDataSaved(false);
+        }
     }
 
     public void updateButtonStatus() {
@@ -1,13 +1,20 @@
 package org.hwyl.sexytopo.control.graph;
 
+import android.net.Uri;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import org.hwyl.sexytopo.control.util.Space2DUtils;
+import org.hwyl.sexytopo.control.util.Space3DTransformer;
+import org.hwyl.sexytopo.control.util.Space3DUtils;
 import org.hwyl.sexytopo.model.graph.Coord2D;
+import org.hwyl.sexytopo.model.graph.Coord3D;
 import org.hwyl.sexytopo.model.graph.Projection2D;
 import org.hwyl.sexytopo.model.graph.Space;
-import org.hwyl.sexytopo.model.sketch.Sketch;
 import org.hwyl.sexytopo.model.survey.Station;
 import org.hwyl.sexytopo.model.survey.Survey;
 import org.hwyl.sexytopo.model.survey.SurveyConnection;
@@ -55,11 +62,13 @@ public class ConnectedSurveys {
                 Coord2D transformation =
                         connectingStationLocation.minus(otherConnectingStationLocation);
 
-                Sketch translatedPlan = otherSurvey.getPlanSketch().translate(transformation);
-                lightweightSurveyCopy.setPlanSketch(translatedPlan);
-                Sketch translatedElevation =
-                        otherSurvey.getElevationSketch().translate(transformation);
-                lightweightSurveyCopy.setElevationSketch(translatedElevation);
+                // Sketches can be big, so leave loading and translating them until they're drawn
+                lightweightSurveyCopy.setSketchLoader(
+                        Projection2D.PLAN,
+                        () -> otherSurvey.getPlanSketch().translate(transformation));
+                lightweightSurveyCopy.setSketchLoader(
+                        Projection2D.EXTENDED_ELEVATION,
+                        () -> otherSurvey.getElevationSketch().translate(transformation));
 
                 otherProjection = Space2DUtils.translate(otherProjection, transformation);
 
@@ -71,15 +80,128 @@ public class ConnectedSurveys {
         }
     }
 
+    /**
+     * Positions every survey connected (directly or through other surveys) to the given one in
+     * 3D, by lining up each pair of connecting stations. The result includes the survey itself.
+     */
+    public static Map<Survey, Space<Coord3D>> getTranslatedConnectedSurveys3D(
+            Survey survey, Space<Coord3D> space, Space3DTransformer transformer) {
+        Map<Survey, Space<Coord3D>> translated = new LinkedHashMap<>();
+        translated.put(survey, space);
+        updateTranslatedConnectedSurveys3D(transformer, survey, translated, survey, space);
+        return translated;
+    }
+
+    /**
+     * What the 3D positions of the connected surveys depend on: which surveys join the given one
+     * at which of its stations, and where those stations are. While this stays equal, so do the
+     * positions given by getTranslatedConnectedSurveys3D().
+     */
+    public static Map<Station, ConnectionPoint> getConnectionLayout3D(
+            Survey survey, Space<Coord3D> space) {
+        Map<Station, ConnectionPoint> layout = new HashMap<>();
+        for (Map.Entry<Station, Set<SurveyConnection>> entry :
+                survey.getConnectedSurveys().entrySet()) {
+            Station station = entry.getKey();
+            layout.put(
+                    station,
+                    new ConnectionPoint(space.getStationMap().get(station), entry.getValue()));
+        }
+        return layout;
+    }
+
+    /** Where a station that joins other surveys is, and the connections it makes. */
+    public static final class ConnectionPoint {
+        private final Coord3D position;
+        private final Set<SurveyConnection> connections;
+
+        public ConnectionPoint(Coord3D position, Set<SurveyConnection> connections) {
+            this.position = position;
+            this.connections = Collections.unmodifiableSet(new HashSet<>(connections));
+        }
+
+        public Coord3D getPosition() {
+            return position;
+        }
+
+        public Set<SurveyConnection> getConnections() {
+            return connections;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (object == this) {
+                return true;
+            }
+            if (!(object instanceof ConnectionPoint)) {
+                return false;
+            }
+            ConnectionPoint other = (ConnectionPoint) object;
+            return Objects.equals(position, other.position)
+                    && connections.equals(other.connections);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(position, connections);
+        }
+    }
+
+    private static void updateTranslatedConnectedSurveys3D(
+            Space3DTransformer transformer,
+            Survey original,
+            Map<Survey, Space<Coord3D>> translated,
+            Survey survey,
+            Space<Coord3D> space) {
+
+        Map<Station, Set<SurveyConnection>> connections = survey.getConnectedSurveys();
+        for (Station connectingStation : connections.keySet()) {
+
+            Coord3D connectingStationLocation = space.getStationMap().get(connectingStation);
+            if (connectingStationLocation == null) {
+                continue;
+            }
+
+            for (SurveyConnection connection : connections.get(connectingStation)) {
+
+                Survey otherSurvey = connection.otherSurvey;
+
+                if (haveWeAlreadyDoneThisSurvey(translated, otherSurvey, original)) {
+                    continue;
+                }
+
+                Space<Coord3D> otherSpace = transformer.transformTo3D(otherSurvey);
+                Coord3D otherConnectingStationLocation =
+                        otherSpace.getStationMap().get(connection.stationInOtherSurvey);
+                if (otherConnectingStationLocation == null) {
+                    continue;
+                }
+
+                Coord3D transformation =
+                        connectingStationLocation.minus(otherConnectingStationLocation);
+                otherSpace = Space3DUtils.translate(otherSpace, transformation);
+
+                translated.put(otherSurvey, otherSpace);
+
+                updateTranslatedConnectedSurveys3D(
+                        transformer, original, translated, otherSurvey, otherSpace);
+            }
+        }
+    }
+
     private static boolean haveWeAlreadyDoneThisSurvey(
-            Map<Survey, Space<Coord2D>> translated, Survey survey, Survey original) {
+            Map<Survey, ?> translated, Survey survey, Survey original) {
 
         if (original.equals(survey)) {
             return true;
         }
 
         for (Survey doneSurvey : translated.keySet()) {
-            if (doneSurvey.getUri().equals(survey.getUri())) {
+            if (doneSurvey == survey) {
+                return true;
+            }
+            Uri uri = survey.getUri();
+            if (uri != null && uri.equals(doneSurvey.getUri())) {
                 return true;
             }
         }
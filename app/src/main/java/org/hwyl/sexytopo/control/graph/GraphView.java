@@ -32,6 +32,8 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.hwyl.sexytopo.R;
 import org.hwyl.sexytopo.control.Log;
 import org.hwyl.sexytopo.control.SexyTopo;
@@ -45,6 +47,7 @@ import org.hwyl.sexytopo.control.util.GeneralPreferences;
 import org.hwyl.sexytopo.control.util.SketchPreferences;
 import org.hwyl.sexytopo.control.util.Space2DUtils;
 import org.hwyl.sexytopo.control.util.TextTools;
+import org.hwyl.sexytopo.model.common.Frame;
 import org.hwyl.sexytopo.model.graph.Coord2D;
 import org.hwyl.sexytopo.model.graph.Line;
 import org.hwyl.sexytopo.model.graph.Projection2D;
@@ -92,6 +95,9 @@ public class GraphView extends View {
 
     private static final int BOX_SIZE = 10; // every grid box is 10 units square
 
+    // how far (in metres) a connected survey's sketch might reach beyond its centreline
+    private static final int CONNECTED_SKETCH_MARGIN = 50;
+
     public static final int SOLID_ALPHA = 0xff;
     public static final int FADED_ALPHA = 0xff / 5;
     private static final int STATION_STROKE_WIDTH_DP = 2;
@@ -132,6 +138,12 @@ public class GraphView extends View {
     protected Sketch sketch;
 
     private Map<Survey, Space<Coord2D>> translatedConnectedSurveys = new HashMap<>();
+    // what translatedConnectedSurveys was worked out from, so it's only redone if they change
+    private Space<Coord2D> translatedConnectedSurveysProjection = null;
+    private Set<Survey> translatedConnectedSurveysSources = new HashSet<>();
+    private final Set<Survey> connectedSketchesBeingLoaded = new HashSet<>();
+    private static final ExecutorService CONNECTED_SKETCH_LOADER =
+            Executors.newSingleThreadExecutor();
 
     boolean surveyChanged;
 
@@ -1144,6 +1156,8 @@ public class GraphView extends View {
                 this.translatedConnectedSurveys =
                         ConnectedSurveys.getTranslatedConnectedSurveys(
                                 activity.getProjectionType(), survey, projection);
+                translatedConnectedSurveysProjection = projection;
+                translatedConnectedSurveysSources = getFlatSetOfConnectedSurveys();
             } catch (Exception exception) {
                 Log.e("Error getting translated connected surveys");
                 Log.e(exception);
@@ -1155,7 +1169,11 @@ public class GraphView extends View {
             try {
                 Space<Coord2D> connectedProjection =
                         translatedConnectedSurveys.get(translatedConnectedSurvey);
-                drawSurvey(canvas, translatedConnectedSurvey, connectedProjection, alpha);
+                if (isConnectedSketchReady(translatedConnectedSurvey, connectedProjection)) {
+                    drawSurvey(canvas, translatedConnectedSurvey, connectedProjection, alpha);
+                } else {
+                    drawSurveyData(translatedConnectedSurvey, canvas, connectedProjection, alpha);
+                }
             } catch (Exception exception) {
                 String name = translatedConnectedSurvey.getName();
                 Log.e("Error drawing connected survey " + name);
@@ -1166,10 +1184,44 @@ public class GraphView extends View {
         }
     }
 
+    /**
+     * A connected survey's sketch is only loaded once the survey might be on screen, and then in
+     * the background so drawing doesn't have to wait for it. Until then just its centreline is
+     * drawn.
+     */
+    private boolean isConnectedSketchReady(Survey connectedSurvey, Space<Coord2D> projection) {
+        Projection2D projectionType = activity.getProjectionType();
+        if (projectionType != Projection2D.PLAN
+                && projectionType != Projection2D.EXTENDED_ELEVATION) {
+            return true; // other views don't draw connected surveys' own sketches
+        }
+
+        if (connectedSurvey.isSketchLoaded(projectionType)) {
+            return true;
+        }
+
+        Frame frame =
+                Space2DUtils.toFrame(projection)
+                        .addPadding(CONNECTED_SKETCH_MARGIN, CONNECTED_SKETCH_MARGIN);
+        boolean couldBeOnScreen =
+                frame.intersectsRectangle(viewpointTopLeftOnSurvey, viewpointBottomRightOnSurvey);
+        if (couldBeOnScreen && connectedSketchesBeingLoaded.add(connectedSurvey)) {
+            CONNECTED_SKETCH_LOADER.execute(
+                    () -> {
+                        connectedSurvey.getSketch(projectionType);
+                        post(
+                                () -> {
+                                    connectedSketchesBeingLoaded.remove(connectedSurvey);
+                                    invalidate();
+                                });
+                    });
+        }
+        return false;
+    }
+
     private boolean doTranslatedConnectedSurveysNeedUpdating() {
-        Set<Survey> flatSetOfConnectedSurveys = getFlatSetOfConnectedSurveys();
-        Set<Survey> flatSetOfTranslatedConnectedSurveys = translatedConnectedSurveys.keySet();
-        return !flatSetOfConnectedSurveys.equals(flatSetOfTranslatedConnectedSurveys);
+        return projection != translatedConnectedSurveysProjection
+                || !getFlatSetOfConnectedSurveys().equals(translatedConnectedSurveysSources);
     }
 
     private Set<Survey> getFlatSetOfConnectedSurveys() {
@@ -1317,10 +1369,9 @@ public class GraphView extends View {
             canvas.drawText(description, centreOnView.x, centreOnView.y, stationPaint);
         }
 
-        Space<Coord2D> rawProjection = crossSection.getProjection();
         float xsScale = survey.getPlanSketch().getCrossSectionScale();
-        Space<Coord2D> scaledProjection = rawProjection.scale(xsScale);
-        Space<Coord2D> sectionProjection = Space2DUtils.translate(scaledProjection, centreOnSurvey);
+        Space<Coord2D> sectionProjection =
+                sectionDetail.getPositionedProjection(xsScale, centreOnSurvey);
         drawLegs(canvas, sectionProjection, alpha);
 
         Coord2D viewStationLocation = surveyCoordsToViewCoords(surveyStationLocation);
@@ -1385,7 +1436,7 @@ public class GraphView extends View {
             Canvas canvas, CrossSectionDetail sectionDetail, Coord2D centreOnSurvey, int alpha) {
 
         float xsScale = survey.getPlanSketch().getCrossSectionScale();
-        Sketch subSketch = sectionDetail.getSketch().scale(xsScale).translate(centreOnSurvey);
+        Sketch subSketch = sectionDetail.getPositionedSketch(xsScale, centreOnSurvey);
         drawSketch(canvas, subSketch, alpha);
     }
 
@@ -0,0 +1,137 @@
+package org.hwyl.sexytopo.control.io;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import androidx.documentfile.provider.DocumentFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.hwyl.sexytopo.control.Log;
+
+/**
+ * Remembers what's in each directory. DocumentFile.findFile lists the whole directory through the
+ * content provider every time it's called, which can take seconds per save on an SD card, so
+ * instead each directory is listed with one query and lookups are answered from that.
+ *
+ * <p>Files created or deleted through SurveyFile and SurveyDirectory update the listing. Anything
+ * changed outside SexyTopo is picked up once the listing expires.
+ */
+public class DirectoryCache {
+
+    private static final long LISTING_LIFETIME_NANOS = 10_000_000_000L;
+
+    private static final String[] PROJECTION = {
+        DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+        DocumentsContract.Document.COLUMN_DISPLAY_NAME
+    };
+
+    private static class Listing {
+        private final long created = System.nanoTime();
+        private final Map<String, Uri> children = new HashMap<>();
+
+        private boolean isExpired() {
+            return System.nanoTime() - created > LISTING_LIFETIME_NANOS;
+        }
+    }
+
+    private static final Map<Uri, Listing> listings = new HashMap<>();
+
+    public static synchronized DocumentFile findFile(
+            Context context, DocumentFile directory, String name) {
+        Listing listing = getListing(context, directory);
+        if (listing == null) {
+            return directory.findFile(name);
+        }
+        Uri uri = listing.children.get(name);
+        return uri == null ? null : DocumentFile.fromTreeUri(context, uri);
+    }
+
+    public static synchronized List<String> getFilenames(Context context, DocumentFile directory) {
+        Listing listing = getListing(context, directory);
+        if (listing != null) {
+            return new ArrayList<>(listing.children.keySet());
+        }
+        List<String> filenames = new ArrayList<>();
+        for (DocumentFile file : directory.listFiles()) {
+            filenames.add(file.getName());
+        }
+        return filenames;
+    }
+
+    public static synchronized void onCreated(
+            DocumentFile directory, String name, DocumentFile created) {
+        Listing listing = listings.get(directory.getUri());
+        if (listing == null) {
+            return;
+        }
+        if (created == null) {
+            listings.remove(directory.getUri());
+        } else {
+            listing.children.put(name, created.getUri());
+        }
+    }
+
+    public static synchronized void onDeleted(DocumentFile directory, String name) {
+        Listing listing = listings.get(directory.getUri());
+        if (listing != null) {
+            listing.children.remove(name);
+        }
+    }
+
+    public static synchronized void clear() {
+        listings.clear();
+    }
+
+    private static Listing getListing(Context context, DocumentFile directory) {
+        Uri uri = directory.getUri();
+        Listing listing = listings.get(uri);
+        if (listing == null || listing.isExpired()) {
+            listing = list(context, uri);
+            if (listing == null) {
+                listings.remove(uri);
+            } else {
+                listings.put(uri, listing);
+            }
+        }
+        return listing;
+    }
+
+    /** Returns null if the directory can't be listed this way (e.g. it's a plain file path). */
+    private static Listing list(Context context, Uri directoryUri) {
+        if (!ContentResolver.SCHEME_CONTENT.equals(directoryUri.getScheme())) {
+            return null;
+        }
+
+        Listing listing = new Listing();
+        try {
+            String directoryId = DocumentsContract.getDocumentId(directoryUri);
+            Uri childrenUri =
+                    DocumentsContract.buildChildDocumentsUriUsingTree(directoryUri, directoryId);
+            ContentResolver contentResolver = context.getContentResolver();
+            try (Cursor cursor = contentResolver.query(childrenUri, PROJECTION, null, null, null)) {
+                if (cursor == null) {
+                    return null;
+                }
+                while (cursor.moveToNext()) {
+                    String documentId = cursor.getString(0);
+                    String name = cursor.getString(1);
+                    // findFile returns the first match, so do the same
+                    if (name != null && !listing.children.containsKey(name)) {
+                        Uri childUri =
+                                DocumentsContract.buildDocumentUriUsingTree(
+                                        directoryUri, documentId);
+                        listing.children.put(name, childUri);
+                    }
+                }
+            }
+        } catch (Exception exception) {
+            Log.e("Could not list directory " + directoryUri + ": " + exception);
+            return null;
+        }
+        return listing;
+    }
+}
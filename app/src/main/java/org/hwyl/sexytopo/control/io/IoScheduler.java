@@ -0,0 +1,191 @@
+package org.hwyl.sexytopo.control.io;
+
+import android.os.Handler;
+import android.os.Looper;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs file work (saving, loading, importing, exporting) on a small pool of background threads
+ * shared by the whole app, and reports back on the UI thread.
+ *
+ * <p>Work that has to happen in order, such as writing a survey's files, goes in a named queue:
+ * each queue runs one job at a time, in the order they were submitted. Jobs submitted with
+ * submitLatest() replace any of their kind still waiting in the queue, so a burst of autosave
+ * requests only writes once.
+ */
+public class IoScheduler {
+
+    private static final int THREAD_COUNT = 2;
+
+    private static IoScheduler instance;
+
+    /** Some work to do in the background; it can report progress and check for cancellation. */
+    public interface Job<T> {
+        T run(Task task) throws Exception;
+    }
+
+    /**
+     * Called on the UI thread. Nothing is called once the task has been cancelled, or while the
+     * callback says it isn't wanted (say because the screen it would update has gone).
+     */
+    public interface Callback<T> {
+        void onSuccess(T result);
+
+        void onError(Exception exception);
+
+        default void onProgress(int done, int total) {}
+
+        default boolean isWanted() {
+            return true;
+        }
+    }
+
+    public static class Task {
+        private final Executor callbackExecutor;
+        private final Callback<?> callback;
+        private final boolean isReplaceable;
+        private Runnable body;
+        private volatile boolean isCancelled = false;
+
+        private Task(Executor callbackExecutor, Callback<?> callback, boolean isReplaceable) {
+            this.callbackExecutor = callbackExecutor;
+            this.callback = callback;
+            this.isReplaceable = isReplaceable;
+        }
+
+        /**
+         * Stops the task if it hasn't started yet, and its callback from being called. A job
+         * that's already running carries on unless it checks isCancelled().
+         */
+        public void cancel() {
+            isCancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return isCancelled;
+        }
+
+        public void setProgress(int done, int total) {
+            deliver(() -> callback.onProgress(done, total));
+        }
+
+        private void deliver(Runnable delivery) {
+            if (callback != null) {
+                callbackExecutor.execute(
+                        () -> {
+                            if (!isCancelled && callback.isWanted()) {
+                                delivery.run();
+                            }
+                        });
+            }
+        }
+    }
+
+    private static class SerialQueue {
+        private final LinkedList<Task> waiting = new LinkedList<>();
+        private boolean isRunning = false;
+    }
+
+    private final Executor workers;
+    private final Executor callbackExecutor;
+    private final Map<String, SerialQueue> queues = new HashMap<>();
+
+    IoScheduler(Executor workers, Executor callbackExecutor) {
+        this.workers = workers;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    public static synchronized IoScheduler getInstance() {
+        if (instance == null) {
+            ExecutorService workers = Executors.newFixedThreadPool(THREAD_COUNT);
+            Handler uiHandler = new Handler(Looper.getMainLooper());
+            instance = new IoScheduler(workers, uiHandler::post);
+        }
+        return instance;
+    }
+
+    /** Runs the job as soon as a thread is free. The callback may be null. */
+    public <T> Task submit(Job<T> job, Callback<T> callback) {
+        Task task = new Task(callbackExecutor, callback, false);
+        workers.execute(() -> run(task, job, callback));
+        return task;
+    }
+
+    /** Runs the job once everything submitted to the queue before it has finished. */
+    public <T> Task submitInOrder(String queueName, Job<T> job, Callback<T> callback) {
+        return enqueue(queueName, job, callback, false);
+    }
+
+    /**
+     * Like submitInOrder(), but cancels any job submitted to the queue this way that hasn't
+     * started yet; it's only worth running the latest.
+     */
+    public <T> Task submitLatest(String queueName, Job<T> job, Callback<T> callback) {
+        return enqueue(queueName, job, callback, true);
+    }
+
+    private synchronized <T> Task enqueue(
+            String queueName, Job<T> job, Callback<T> callback, boolean isReplaceable) {
+
+        SerialQueue queue = queues.get(queueName);
+        if (queue == null) {
+            queue = new SerialQueue();
+            queues.put(queueName, queue);
+        }
+
+        if (isReplaceable) {
+            Iterator<Task> iterator = queue.waiting.iterator();
+            while (iterator.hasNext()) {
+                Task waiting = iterator.next();
+                if (waiting.isReplaceable) {
+                    waiting.cancel();
+                    iterator.remove();
+                }
+            }
+        }
+
+        Task task = new Task(callbackExecutor, callback, isReplaceable);
+        task.body = () -> run(task, job, callback);
+        queue.waiting.add(task);
+        if (!queue.isRunning) {
+            runNext(queue);
+        }
+        return task;
+    }
+
+    private synchronized void runNext(SerialQueue queue) {
+        Task task = queue.waiting.poll();
+        queue.isRunning = task != null;
+        if (task == null) {
+            return;
+        }
+        workers.execute(
+                () -> {
+                    try {
+                        task.body.run();
+                    } finally {
+                        runNext(queue);
+                    }
+                });
+    }
+
+    private static <T> void run(Task task, Job<T> job, Callback<T> callback) {
+        if (task.isCancelled()) {
+            return;
+        }
+        T result;
+        try {
+            result = job.run(task);
+        } catch (Exception exception) {
+            task.deliver(() -> callback.onError(exception));
+            return;
+        }
+        task.deliver(() -> callback.onSuccess(result));
+    }
+}
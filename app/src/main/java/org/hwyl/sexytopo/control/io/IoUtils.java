@@ -27,19 +27,27 @@ import org.json.JSONObject;
 @SuppressWarnings("UnnecessaryLocalVariable")
 public class IoUtils {
 
+    /** Writes a file's contents straight to its output stream. */
+    public interface ContentWriter {
+        void write(OutputStream outputStream) throws IOException;
+    }
+
+    /** Reads a file's contents straight from its input stream. */
+    public interface ContentReader<T> {
+        T read(InputStream inputStream) throws IOException;
+    }
+
     public static boolean doesDirectoryExist(Context context, Uri uri) {
         DocumentFile documentFile = DocumentFile.fromTreeUri(context, uri);
         return documentFile != null && documentFile.isDirectory();
     }
 
-    public static boolean isDirectoryEmpty(DocumentFile directory) {
-        return directory.listFiles().length == 0;
+    public static boolean isDirectoryEmpty(Context context, DocumentFile directory) {
+        return DirectoryCache.getFilenames(context, directory).isEmpty();
     }
 
-    public static boolean isSurveyDirectory(DocumentFile directory) {
-        DocumentFile[] files = directory.listFiles();
-        for (DocumentFile file : files) {
-            String filename = file.getName();
+    public static boolean isSurveyDirectory(Context context, DocumentFile directory) {
+        for (String filename : DirectoryCache.getFilenames(context, directory)) {
             if (filename != null && filename.endsWith(SurveyFile.DATA.getExtension())) {
                 return true;
             }
@@ -127,6 +135,19 @@ public class IoUtils {
         }
     }
 
+    public static <T> T readFromFile(
+            Context context, DocumentFile file, ContentReader<T> contentReader)
+            throws IOException {
+        ContentResolver contentResolver = context.getContentResolver();
+
+        try (InputStream inputStream = contentResolver.openInputStream(file.getUri())) {
+            if (inputStream == null) {
+                throw new IOException("Failed to open input stream");
+            }
+            return contentReader.read(inputStream);
+        }
+    }
+
     public static synchronized void saveToFile(
             Context context, DocumentFile documentFile, String contents) throws IOException {
         Uri uri = documentFile.getUri();
@@ -138,4 +159,37 @@ public class IoUtils {
             outputStream.flush();
         }
     }
+
+    public static synchronized void appendToFile(
+            Context context, DocumentFile documentFile, String contents) throws IOException {
+        Uri uri = documentFile.getUri();
+        try (OutputStream outputStream = context.getContentResolver().openOutputStream(uri, "wa")) {
+            if (outputStream == null) {
+                throw new IOException("Failed to open output stream");
+            }
+            outputStream.write(contents.getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+        }
+    }
+
+    /**
+     * Writes the contents in full to memory before opening the file, as opening it empties it:
+     * if writing fails part way through, the file is left as it was rather than cut short. (A
+     * document can't be renamed over another, so writing to a temporary file isn't an option.)
+     */
+    public static synchronized void saveToFile(
+            Context context, DocumentFile documentFile, ContentWriter contentWriter)
+            throws IOException {
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        contentWriter.write(contents);
+
+        Uri uri = documentFile.getUri();
+        try (OutputStream outputStream = context.getContentResolver().openOutputStream(uri, "wt")) {
+            if (outputStream == null) {
+                throw new IOException("Failed to open output stream");
+            }
+            contents.writeTo(outputStream);
+            outputStream.flush();
+        }
+    }
 }
@@ -38,6 +38,8 @@ public class SurveyDirectory extends AbstractSurveyFile {
             new SurveyDirectoryType("Import Source");
     public static final SurveyDirectoryType EXPORT = new SurveyDirectoryType("Exported");
 
+    private static final Object CREATION_LOCK = new Object();
+
     private final SurveyDirectoryType surveyDirectoryType;
 
     private SurveyDirectory(Survey survey, SurveyDirectoryType surveyDirectoryType) {
@@ -62,7 +64,8 @@ public class SurveyDirectory extends AbstractSurveyFile {
             return getTopDocumentFile(context);
         }
         DocumentFile directory = parent.getDocumentFile(context);
-        DocumentFile documentFile = directory.findFile(surveyDirectoryType.getFilename());
+        DocumentFile documentFile =
+                DirectoryCache.findFile(context, directory, surveyDirectoryType.getFilename());
         return documentFile;
     }
 
@@ -70,15 +73,20 @@ public class SurveyDirectory extends AbstractSurveyFile {
         DocumentFile directory = parent.getDocumentFile(context);
         String filename = surveyDirectoryType.getFilename();
         DocumentFile documentFile = directory.createDirectory(filename);
+        DirectoryCache.onCreated(directory, filename, documentFile);
         return documentFile;
     }
 
     public DocumentFile getOrCreateDocumentFile(Context context) {
-        DocumentFile documentFile = getDocumentFile(context);
-        if (documentFile == null) {
-            documentFile = createDocumentFile(context);
+        // Exporters running at the same time can share a directory; if both created it we'd get
+        // a second copy with " (1)" on the end of its name.
+        synchronized (CREATION_LOCK) {
+            DocumentFile documentFile = getDocumentFile(context);
+            if (documentFile == null) {
+                documentFile = createDocumentFile(context);
+            }
+            return documentFile;
         }
-        return documentFile;
     }
 
     public void ensureExists(Context context) {
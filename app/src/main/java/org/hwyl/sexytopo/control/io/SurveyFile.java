@@ -55,6 +55,8 @@ public class SurveyFile extends AbstractSurveyFile {
     public static final SurveyFileType METADATA =
             new SurveyFileType(
                     SexyTopoConstants.METADATA_EXTENSION, SexyTopoConstants.MIME_TYPE_JSON);
+    // With compact sketch files on, the sketch files hold the binary format despite their names;
+    // see SketchBinaryTranslater
     public static final SurveyFileType SKETCH_PLAN =
             new SurveyFileType(
                     SexyTopoConstants.PLAN_SKETCH_EXTENSION, SexyTopoConstants.MIME_TYPE_JSON);
@@ -64,6 +66,8 @@ public class SurveyFile extends AbstractSurveyFile {
                     SexyTopoConstants.MIME_TYPE_JSON);
     public static final SurveyFileType LOG =
             new SurveyFileType(SexyTopoConstants.LOG_EXTENSION, SexyTopoConstants.MIME_TYPE_JSON);
+    public static final SurveyFileType JOURNAL =
+            new SurveyFileType(SexyTopoConstants.JOURNAL_EXTENSION, "application/octet-stream");
 
     public static final List<SurveyFileType> ALL_DATA_TYPES =
             List.of(DATA, METADATA, SKETCH_PLAN, SKETCH_EXT_ELEVATION);
@@ -114,7 +118,7 @@ public class SurveyFile extends AbstractSurveyFile {
     public DocumentFile getDocumentFile(Context context) {
         DocumentFile surveyDirectory = parent.getDocumentFile(context);
         String filename = getFilename();
-        DocumentFile documentFile = surveyDirectory.findFile(filename);
+        DocumentFile documentFile = DirectoryCache.findFile(context, surveyDirectory, filename);
         return documentFile;
     }
 
@@ -123,6 +127,7 @@ public class SurveyFile extends AbstractSurveyFile {
         String filename = getFilename();
         DocumentFile documentFile =
                 directoryDocumentFile.createFile(surveyFileType.mimeType, filename);
+        DirectoryCache.onCreated(directoryDocumentFile, filename, documentFile);
         return documentFile;
     }
 
@@ -140,9 +145,35 @@ public class SurveyFile extends AbstractSurveyFile {
         IoUtils.saveToFile(context, documentFile, contents);
     }
 
+    public void save(Context context, IoUtils.ContentWriter contentWriter) throws IOException {
+        parent.ensureExists(context);
+        DocumentFile documentFile = getOrCreateDocumentFile(context);
+        IoUtils.saveToFile(context, documentFile, contentWriter);
+    }
+
+    public void append(Context context, String contents) throws IOException {
+        parent.ensureExists(context);
+        DocumentFile documentFile = getOrCreateDocumentFile(context);
+        IoUtils.appendToFile(context, documentFile, contents);
+    }
+
+    public void delete(Context context) {
+        DocumentFile documentFile = getDocumentFile(context);
+        if (documentFile != null) {
+            documentFile.delete();
+            DirectoryCache.onDeleted(parent.getDocumentFile(context), getFilename());
+        }
+    }
+
     public String slurp(Context context) throws IOException {
         DocumentFile file = getDocumentFile(context);
         String content = IoUtils.slurpFile(context, file);
         return content;
     }
+
+    public <T> T read(Context context, IoUtils.ContentReader<T> contentReader)
+            throws IOException {
+        DocumentFile file = getDocumentFile(context);
+        return IoUtils.readFromFile(context, file, contentReader);
+    }
 }
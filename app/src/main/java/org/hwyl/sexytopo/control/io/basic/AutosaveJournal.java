@@ -0,0 +1,911 @@
+package org.hwyl.sexytopo.control.io.basic;
+
+import android.content.Context;
+import android.net.Uri;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import org.hwyl.sexytopo.R;
+import org.hwyl.sexytopo.control.Log;
+import org.hwyl.sexytopo.control.io.SurveyFile;
+import org.hwyl.sexytopo.model.graph.Direction;
+import org.hwyl.sexytopo.model.graph.Projection2D;
+import org.hwyl.sexytopo.model.sketch.CrossSectionDetail;
+import org.hwyl.sexytopo.model.sketch.PathDetail;
+import org.hwyl.sexytopo.model.sketch.Sketch;
+import org.hwyl.sexytopo.model.sketch.SketchDetail;
+import org.hwyl.sexytopo.model.sketch.SymbolDetail;
+import org.hwyl.sexytopo.model.sketch.TextDetail;
+import org.hwyl.sexytopo.model.survey.Leg;
+import org.hwyl.sexytopo.model.survey.Station;
+import org.hwyl.sexytopo.model.survey.Survey;
+import org.hwyl.sexytopo.model.survey.Trip;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Autosaves by appending what has changed since the last autosave to a journal, instead of
+ * rewriting every file each time a shot comes in, so the cost of an autosave doesn't grow with the
+ * size of the survey.
+ *
+ * <p>The journal starts with a line saying which files it applies on top of (the saved files or
+ * the full autosave files), followed by one line per autosave holding a JSON array of operations.
+ * A save leaves just that first line, so autosave files older than the save are never restored.
+ * Operations are worked out by comparing the survey with how it looked at the last autosave: legs
+ * (apart from their comments) and sketch details are immutable, so anything removed or appended
+ * shows up by identity. A leg edited in place (keeping the station it comes from and the one it
+ * goes to) is journaled as a replacement. Anything that can't be described that way (such as a
+ * leg moved to another station, or a new comment on an old leg) and a journal that has grown too
+ * long are dealt with by writing the full autosave files instead.
+ */
+public class AutosaveJournal {
+
+    // After this many operations the journal is compacted into the full autosave files
+    public static final int MAX_OPERATIONS = 250;
+
+    public static final String BASE_TAG = "base";
+    public static final String BASE_SAVED = "saved";
+    public static final String BASE_AUTOSAVE = "autosave";
+
+    public static final String OPERATION_TAG = "op";
+    public static final String REMOVE_LEG_OPERATION = "remove-leg";
+    public static final String ADD_LEG_OPERATION = "add-leg";
+    public static final String REPLACE_LEG_OPERATION = "replace-leg";
+    public static final String STATION_OPERATION = "station";
+    public static final String TRIP_OPERATION = "trip";
+    public static final String REMOVE_DETAIL_OPERATION = "remove-detail";
+    public static final String ADD_DETAIL_OPERATION = "add-detail";
+    public static final String REPLACE_CROSS_SECTION_OPERATION = "replace-x-section";
+    public static final String CROSS_SECTION_SCALE_OPERATION = "x-section-scale";
+
+    public static final String INDEX_TAG = "index";
+    public static final String FROM_TAG = "from";
+    public static final String LEG_TAG = "leg";
+    public static final String STATION_TAG = "station";
+    public static final String NAME_TAG = "name";
+    public static final String TRIP_TAG = "trip";
+    public static final String SKETCH_TAG = "sketch";
+    public static final String TYPE_TAG = "type";
+    public static final String DETAIL_TAG = "detail";
+    public static final String SCALE_TAG = "scale";
+
+    public static final String PLAN_SKETCH = "plan";
+    public static final String ELEVATION_SKETCH = "elevation";
+
+    public static final String PATH_TYPE = "path";
+    public static final String SYMBOL_TYPE = "symbol";
+    public static final String LABEL_TYPE = "label";
+    public static final String CROSS_SECTION_TYPE = "x-section";
+
+    // What the journal on disk currently describes; null until the first save or full autosave
+    private static volatile Journal journal = null;
+
+    /**
+     * Takes a snapshot of the survey for the journal, sharing what it can with the journal's own.
+     * That one may be about to be replaced on another thread, but an older one just shares less.
+     */
+    static Snapshot takeSnapshot(Survey survey) {
+        Journal current = journal;
+        if (current != null && current.survey == survey) {
+            return new Snapshot(survey, current.snapshot);
+        } else {
+            return new Snapshot(survey);
+        }
+    }
+
+    /**
+     * Appends any changes to the survey's journal. Returns false if that can't be done, in which
+     * case the caller should write the full autosave files and then call startAfterAutosave().
+     */
+    public static boolean append(Context context, SurveySnapshot snapshot, String metadataText)
+            throws IOException, JSONException {
+
+        Survey survey = snapshot.getSurvey();
+        if (journal == null
+                || journal.survey != survey
+                || !Objects.equals(journal.uri, survey.getUri())
+                || journal.operationCount >= MAX_OPERATIONS) {
+            return false;
+        }
+
+        Snapshot current = snapshot.getJournalSnapshot();
+        List<JSONObject> operations = journal.snapshot.getChangesTo(current);
+        if (operations == null) {
+            return false;
+        }
+
+        if (!operations.isEmpty()) {
+            StringBuilder lines = new StringBuilder();
+            if (!journal.isHeaderWritten) {
+                lines.append(getHeader(journal.base));
+            }
+            lines.append(new JSONArray(operations)).append('\n');
+            SurveyFile.JOURNAL.get(survey).append(context, lines.toString());
+            journal.isHeaderWritten = true;
+            journal.operationCount += operations.size();
+        }
+        journal.snapshot = current;
+
+        boolean isMetadataWritten = !metadataText.equals(journal.metadataText);
+        if (isMetadataWritten) {
+            SurveyFile.METADATA.AUTOSAVE.get(survey).save(context, metadataText);
+            journal.metadataText = metadataText;
+        }
+        snapshot.recordJournalAppend(isMetadataWritten);
+
+        return true;
+    }
+
+    /** Starts a fresh journal on top of full autosave files that have just been written. */
+    public static void startAfterAutosave(SurveySnapshot snapshot, String metadataText) {
+        journal = new Journal(snapshot, BASE_AUTOSAVE, metadataText);
+    }
+
+    /**
+     * Replaces the journal with an empty one based on the saved files, which now hold everything it
+     * did. Any autosave files are older than the save and won't be restored from.
+     */
+    public static void startAfterSave(Context context, SurveySnapshot snapshot)
+            throws IOException, JSONException {
+        journal = null;
+        SurveyFile.JOURNAL.get(snapshot.getSurvey()).save(context, getHeader(BASE_SAVED));
+        // The metadata autosave may be stale, so make sure the first append writes it
+        journal = new Journal(snapshot, BASE_SAVED, null);
+        journal.isHeaderWritten = true;
+    }
+
+    private static String getHeader(String base) throws JSONException {
+        JSONObject header = new JSONObject();
+        header.put(BASE_TAG, base);
+        return header.toString() + '\n';
+    }
+
+    public static void delete(Context context, Survey survey) {
+        SurveyFile.JOURNAL.get(survey).delete(context);
+    }
+
+    /** Returns the journal's lines, or null if the survey doesn't have one. */
+    public static List<String> read(Context context, Survey survey) throws IOException {
+        SurveyFile journalFile = SurveyFile.JOURNAL.get(survey);
+        if (!journalFile.exists(context)) {
+            return null;
+        }
+        String text = journalFile.slurp(context);
+        List<String> lines = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            if (!line.trim().isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Whether the journal holds changes that aren't in the saved files: either operations of its
+     * own or, if it is based on them, the full autosave files.
+     */
+    public static boolean hasUnsavedChanges(List<String> lines) {
+        return lines.size() > 1 || isBasedOnAutosave(lines);
+    }
+
+    /** Whether the journal applies on top of the full autosave files rather than the saved ones. */
+    public static boolean isBasedOnAutosave(List<String> lines) {
+        try {
+            return lines.isEmpty()
+                    || BASE_AUTOSAVE.equals(new JSONObject(lines.get(0)).optString(BASE_TAG));
+        } catch (JSONException exception) {
+            return true;
+        }
+    }
+
+    /**
+     * Applies the journal to a survey loaded from the files it is based on. A line that can't be
+     * read (say, if the app died while writing it) ends the replay; none of that line is applied,
+     * but everything before it is kept.
+     */
+    public static void replay(Survey survey, List<String> lines) {
+        Replayer replayer = new Replayer(survey);
+        for (int i = 1; i < lines.size(); i++) {
+            try {
+                replayer.apply(new JSONArray(lines.get(i)));
+            } catch (Exception exception) {
+                Log.e(R.string.file_load_autosave_journal_error);
+                Log.e(exception);
+                break;
+            }
+        }
+        replayer.finish();
+    }
+
+    private static class Journal {
+        private final Survey survey;
+        private final Uri uri;
+        private final String base;
+        private volatile Snapshot snapshot;
+        private String metadataText;
+        private int operationCount = 0;
+        private boolean isHeaderWritten = false;
+
+        private Journal(SurveySnapshot surveySnapshot, String base, String metadataText) {
+            this.survey = surveySnapshot.getSurvey();
+            this.uri = survey.getUri();
+            this.base = base;
+            this.snapshot = surveySnapshot.getJournalSnapshot();
+            this.metadataText = metadataText;
+        }
+    }
+
+    /** Whether an item can be journaled as replacing another where it stands. */
+    private interface Replacement<T> {
+        boolean isReplacement(T before, T after);
+    }
+
+    /**
+     * Removals by index (into the list as it is after earlier removals), replacements by index
+     * (into the new list) then appends.
+     */
+    private static class ListChange<T> {
+        private final List<Integer> removedIndices;
+        private final List<Integer> replacedIndices;
+        private final List<T> added;
+
+        private ListChange(
+                List<Integer> removedIndices, List<Integer> replacedIndices, List<T> added) {
+            this.removedIndices = removedIndices;
+            this.replacedIndices = replacedIndices;
+            this.added = added;
+        }
+
+        /** Returns null if the new list isn't just the old one with some removed and some added. */
+        private static <T> ListChange<T> between(List<T> before, List<T> after) {
+            return between(before, after, null);
+        }
+
+        /** As between(before, after), but also allowing the given replacements. */
+        private static <T> ListChange<T> between(
+                List<T> before, List<T> after, Replacement<T> replacement) {
+            Set<T> beforeItems = newIdentitySet(before);
+            Set<T> afterItems = newIdentitySet(after);
+
+            List<Integer> removedIndices = new ArrayList<>();
+            List<Integer> replacedIndices = new ArrayList<>();
+            int kept = 0;
+            for (T item : before) {
+                if (!afterItems.contains(item)) {
+                    if (replacement != null
+                            && kept < after.size()
+                            && !beforeItems.contains(after.get(kept))
+                            && replacement.isReplacement(item, after.get(kept))) {
+                        replacedIndices.add(kept);
+                        kept++;
+                    } else {
+                        removedIndices.add(kept);
+                    }
+                } else if (kept < after.size() && after.get(kept) == item) {
+                    kept++;
+                } else {
+                    return null;
+                }
+            }
+
+            return new ListChange<>(
+                    removedIndices, replacedIndices, after.subList(kept, after.size()));
+        }
+
+        private int getKeptCount(List<T> after) {
+            return after.size() - added.size();
+        }
+    }
+
+    private static <T> Set<T> newIdentitySet(List<T> items) {
+        Set<T> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        set.addAll(items);
+        return set;
+    }
+
+    private static class StationState {
+        private final String name;
+        private final String comment;
+        private final Direction direction;
+
+        private StationState(Station station) {
+            this.name = station.getName();
+            this.comment = station.getComment();
+            this.direction = station.getExtendedElevationDirection();
+        }
+
+        private boolean matches(StationState other) {
+            return name.equals(other.name)
+                    && Objects.equals(comment, other.comment)
+                    && direction == other.direction;
+        }
+
+        private JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put(SurveyJsonTranslater.STATION_NAME_TAG, name);
+            json.put(SurveyJsonTranslater.DIRECTION_TAG, direction.toString().toLowerCase());
+            json.put(SurveyJsonTranslater.COMMENT_TAG, comment);
+            return json;
+        }
+    }
+
+    private static class SketchState {
+        private final Sketch sketch;
+        private final List<PathDetail> paths;
+        private final List<SymbolDetail> symbols;
+        private final List<TextDetail> labels;
+        private final List<CrossSectionDetail> crossSections;
+        private final Map<CrossSectionDetail, List<SketchDetail>> crossSectionContents;
+        private final float crossSectionScale;
+
+        private SketchState(Sketch sketch) {
+            this.sketch = sketch;
+            // A path still being drawn can change, so it's left until it's finished
+            paths = new ArrayList<>(sketch.getPathDetails());
+            paths.remove(sketch.getActivePath());
+            symbols = new ArrayList<>(sketch.getSymbolDetails());
+            labels = new ArrayList<>(sketch.getTextDetails());
+            crossSections = new ArrayList<>(sketch.getCrossSectionDetails());
+            crossSectionContents = new IdentityHashMap<>();
+            for (CrossSectionDetail crossSection : crossSections) {
+                crossSectionContents.put(crossSection, getContents(crossSection.getSketch()));
+            }
+            crossSectionScale = sketch.getCrossSectionScale();
+        }
+
+        private static List<SketchDetail> getContents(Sketch sketch) {
+            List<SketchDetail> contents = new ArrayList<>(sketch.getPathDetails());
+            contents.addAll(sketch.getSymbolDetails());
+            contents.addAll(sketch.getTextDetails());
+            return contents;
+        }
+
+        /** Returns false if the changes can't be journaled. */
+        private boolean addChangesTo(SketchState after, String name, List<JSONObject> operations)
+                throws JSONException {
+
+            if (after.sketch != sketch) {
+                return false;
+            }
+
+            ListChange<PathDetail> pathChange = ListChange.between(paths, after.paths);
+            ListChange<SymbolDetail> symbolChange = ListChange.between(symbols, after.symbols);
+            ListChange<TextDetail> labelChange = ListChange.between(labels, after.labels);
+            ListChange<CrossSectionDetail> crossSectionChange =
+                    ListChange.between(crossSections, after.crossSections);
+            if (pathChange == null
+                    || symbolChange == null
+                    || labelChange == null
+                    || crossSectionChange == null) {
+                return false;
+            }
+
+            addChanges(pathChange, name, PATH_TYPE, operations);
+            addChanges(symbolChange, name, SYMBOL_TYPE, operations);
+            addChanges(labelChange, name, LABEL_TYPE, operations);
+
+            // Cross-sections kept from before may have been drawn in since
+            int kept = crossSectionChange.getKeptCount(after.crossSections);
+            for (int i = 0; i < kept; i++) {
+                CrossSectionDetail crossSection = after.crossSections.get(i);
+                List<SketchDetail> before = crossSectionContents.get(crossSection);
+                List<SketchDetail> now = after.crossSectionContents.get(crossSection);
+                if (!isSameContents(before, now)) {
+                    JSONObject operation = newOperation(REPLACE_CROSS_SECTION_OPERATION);
+                    operation.put(SKETCH_TAG, name);
+                    operation.put(INDEX_TAG, i);
+                    operation.put(DETAIL_TAG, SketchJsonTranslater.toJson(crossSection));
+                    operations.add(operation);
+                }
+            }
+            addChanges(crossSectionChange, name, CROSS_SECTION_TYPE, operations);
+
+            if (after.crossSectionScale != crossSectionScale) {
+                JSONObject operation = newOperation(CROSS_SECTION_SCALE_OPERATION);
+                operation.put(SKETCH_TAG, name);
+                operation.put(SCALE_TAG, after.crossSectionScale);
+                operations.add(operation);
+            }
+
+            return true;
+        }
+
+        private static boolean isSameContents(List<SketchDetail> one, List<SketchDetail> two) {
+            if (one == null || two == null || one.size() != two.size()) {
+                return false;
+            }
+            for (int i = 0; i < one.size(); i++) {
+                if (one.get(i) != two.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static <T extends SketchDetail> void addChanges(
+                ListChange<T> change, String sketchName, String type, List<JSONObject> operations)
+                throws JSONException {
+            for (int index : change.removedIndices) {
+                JSONObject operation = newOperation(REMOVE_DETAIL_OPERATION);
+                operation.put(SKETCH_TAG, sketchName);
+                operation.put(TYPE_TAG, type);
+                operation.put(INDEX_TAG, index);
+                operations.add(operation);
+            }
+            for (T detail : change.added) {
+                JSONObject operation = newOperation(ADD_DETAIL_OPERATION);
+                operation.put(SKETCH_TAG, sketchName);
+                operation.put(TYPE_TAG, type);
+                operation.put(DETAIL_TAG, toJson(detail));
+                operations.add(operation);
+            }
+        }
+
+        private static JSONObject toJson(SketchDetail detail) throws JSONException {
+            if (detail instanceof PathDetail) {
+                return SketchJsonTranslater.toJson((PathDetail) detail);
+            } else if (detail instanceof SymbolDetail) {
+                return SketchJsonTranslater.toJson((SymbolDetail) detail);
+            } else if (detail instanceof TextDetail) {
+                return SketchJsonTranslater.toJson((TextDetail) detail);
+            } else {
+                return SketchJsonTranslater.toJson((CrossSectionDetail) detail);
+            }
+        }
+    }
+
+    /** Enough of the survey's state at one moment to tell what has changed since. */
+    static class Snapshot {
+        private final int changeCount;
+        private final int legEditCount;
+        private final Station origin;
+        private final List<Leg> legs;
+        private final Map<Leg, Station> legOrigins;
+        private final Map<Leg, String> legComments;
+        private final Map<Station, StationState> stations;
+        private final Trip trip;
+        private final SketchState plan;
+        private final SketchState elevation;
+
+        Snapshot(Survey survey) {
+            this(survey, null);
+        }
+
+        /**
+         * Shares the centreline state of the previous snapshot if the survey's data hasn't
+         * changed since, as every change to the centreline marks it as unsaved.
+         */
+        Snapshot(Survey survey, Snapshot previous) {
+            changeCount = survey.getChangeCount();
+            legEditCount = survey.getLegEditCount();
+            origin = survey.getOrigin();
+            if (previous != null
+                    && previous.changeCount == changeCount
+                    && previous.legEditCount == legEditCount
+                    && previous.origin == origin) {
+                legs = previous.legs;
+                legOrigins = previous.legOrigins;
+                legComments = previous.legComments;
+                stations = previous.stations;
+            } else {
+                legs = new ArrayList<>(survey.getAllLegsInChronoOrder());
+                legOrigins = new IdentityHashMap<>();
+                legComments = new IdentityHashMap<>();
+                stations = new IdentityHashMap<>();
+                for (Station station : survey.getAllStations()) {
+                    stations.put(station, new StationState(station));
+                    for (Leg leg : station.getOnwardLegs()) {
+                        legOrigins.put(leg, station);
+                        legComments.put(leg, leg.getComment());
+                    }
+                }
+            }
+            trip = survey.getTrip() == null ? null : new Trip(survey.getTrip());
+            plan = getSketchState(survey, Projection2D.PLAN);
+            elevation = getSketchState(survey, Projection2D.EXTENDED_ELEVATION);
+        }
+
+        /** Null for a sketch that hasn't been loaded, and so can't have changed. */
+        private static SketchState getSketchState(Survey survey, Projection2D projection) {
+            if (survey.isSketchLoaded(projection)) {
+                return new SketchState(survey.getSketch(projection));
+            } else {
+                return null;
+            }
+        }
+
+        /** Returns false if the changes can't be journaled. */
+        private static boolean addChanges(
+                SketchState before, SketchState after, String name, List<JSONObject> operations)
+                throws JSONException {
+            if (before == null || after == null) {
+                // A sketch loaded in between has no starting point to journal from
+                return before == after;
+            }
+            return before.addChangesTo(after, name, operations);
+        }
+
+        /** Returns null if the changes can't be journaled. */
+        List<JSONObject> getChangesTo(Snapshot after) throws JSONException {
+
+            if (after.origin != origin) {
+                return null;
+            }
+
+            // A leg edited in place still comes from the same station and goes to the same one
+            ListChange<Leg> legChange =
+                    ListChange.between(
+                            legs,
+                            after.legs,
+                            (before, edited) ->
+                                    legOrigins.get(before) == after.legOrigins.get(edited)
+                                            && before.getDestination() == edited.getDestination());
+            if (legChange == null) {
+                return null;
+            }
+
+            // Legs that stay must still hang off the same station with the same comment
+            int kept = legChange.getKeptCount(after.legs);
+            Set<Leg> replaced = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int index : legChange.replacedIndices) {
+                replaced.add(after.legs.get(index));
+            }
+            Set<Station> reachable = newIdentitySet(Collections.singletonList(origin));
+            for (Leg leg : after.legs.subList(0, kept)) {
+                if (!replaced.contains(leg)
+                        && (legOrigins.get(leg) != after.legOrigins.get(leg)
+                                || !Objects.equals(
+                                        legComments.get(leg), after.legComments.get(leg)))) {
+                    return null;
+                }
+                if (leg.hasDestination()) {
+                    reachable.add(leg.getDestination());
+                }
+            }
+
+            List<JSONObject> operations = new ArrayList<>();
+
+            for (int index : legChange.removedIndices) {
+                JSONObject operation = newOperation(REMOVE_LEG_OPERATION);
+                operation.put(INDEX_TAG, index);
+                operations.add(operation);
+            }
+
+            for (Map.Entry<Station, StationState> entry : stations.entrySet()) {
+                StationState now = after.stations.get(entry.getKey());
+                if (now != null && !now.matches(entry.getValue())) {
+                    JSONObject operation = newOperation(STATION_OPERATION);
+                    operation.put(NAME_TAG, entry.getValue().name);
+                    operation.put(STATION_TAG, now.toJson());
+                    operations.add(operation);
+                }
+            }
+
+            // After the stations, as the replacements name their destinations as they are now
+            for (int index : legChange.replacedIndices) {
+                JSONObject operation = newOperation(REPLACE_LEG_OPERATION);
+                operation.put(INDEX_TAG, index);
+                operation.put(LEG_TAG, SurveyJsonTranslater.toJson(after.legs.get(index), null));
+                operations.add(operation);
+            }
+
+            for (Leg leg : legChange.added) {
+                // Replaying needs each new leg's station to be there by the time it's added
+                Station from = after.legOrigins.get(leg);
+                if (from == null || !reachable.contains(from)) {
+                    return null;
+                }
+                JSONObject operation = newOperation(ADD_LEG_OPERATION);
+                operation.put(FROM_TAG, after.stations.get(from).name);
+                operation.put(LEG_TAG, SurveyJsonTranslater.toJson(leg, null));
+                if (leg.hasDestination()) {
+                    Station destination = leg.getDestination();
+                    operation.put(STATION_TAG, after.stations.get(destination).toJson());
+                    reachable.add(destination);
+                }
+                operations.add(operation);
+            }
+
+            if (!Objects.equals(trip, after.trip)) {
+                if (after.trip == null) {
+                    return null;
+                }
+                JSONObject operation = newOperation(TRIP_OPERATION);
+                operation.put(TRIP_TAG, SurveyJsonTranslater.toJson(after.trip));
+                operations.add(operation);
+            }
+
+            if (!addChanges(plan, after.plan, PLAN_SKETCH, operations)
+                    || !addChanges(elevation, after.elevation, ELEVATION_SKETCH, operations)) {
+                return null;
+            }
+
+            return operations;
+        }
+    }
+
+    private static JSONObject newOperation(String type) throws JSONException {
+        JSONObject operation = new JSONObject();
+        operation.put(OPERATION_TAG, type);
+        return operation;
+    }
+
+    /**
+     * Replays the journal a line at a time. Each line is read and checked in full, working out
+     * what it does to the survey without changing anything, and only then applied.
+     */
+    private static class Replayer {
+        private final Survey survey;
+        private final Map<String, Station> namesToStations = new HashMap<>();
+
+        // What the line being read has done so far, so it can be checked and undone
+        private final Map<String, Station> replacedNames = new HashMap<>();
+        private final Set<Station> updatedStations =
+                Collections.newSetFromMap(new IdentityHashMap<>());
+        private final Map<List<?>, Integer> detailCounts = new IdentityHashMap<>();
+        private final List<Integer> removedLegIndices = new ArrayList<>();
+        private final Set<Leg> replacedLegs = Collections.newSetFromMap(new IdentityHashMap<>());
+        private int legCount;
+
+        private Replayer(Survey survey) {
+            this.survey = survey;
+            for (Station station : survey.getAllStations()) {
+                namesToStations.put(station.getName(), station);
+            }
+        }
+
+        private void apply(JSONArray operations) throws Exception {
+            replacedNames.clear();
+            updatedStations.clear();
+            detailCounts.clear();
+            removedLegIndices.clear();
+            replacedLegs.clear();
+            legCount = survey.getAllLegsInChronoOrder().size();
+
+            List<Runnable> changes = new ArrayList<>();
+            try {
+                for (int i = 0; i < operations.length(); i++) {
+                    changes.add(prepare(operations.getJSONObject(i)));
+                }
+            } catch (Exception exception) {
+                undoNameChanges();
+                throw exception;
+            }
+
+            for (Runnable change : changes) {
+                change.run();
+            }
+        }
+
+        private Runnable prepare(JSONObject operation) throws Exception {
+            String type = operation.getString(OPERATION_TAG);
+            switch (type) {
+                case REMOVE_LEG_OPERATION:
+                    return prepareRemoveLeg(operation);
+                case ADD_LEG_OPERATION:
+                    return prepareAddLeg(operation);
+                case REPLACE_LEG_OPERATION:
+                    return prepareReplaceLeg(operation);
+                case STATION_OPERATION:
+                    return prepareUpdateStation(operation);
+                case TRIP_OPERATION:
+                    Trip trip = SurveyJsonTranslater.toTrip(operation.getJSONObject(TRIP_TAG));
+                    return () -> survey.setTrip(trip);
+                case REMOVE_DETAIL_OPERATION:
+                    return prepareRemoveDetail(operation);
+                case ADD_DETAIL_OPERATION:
+                    return prepareAddDetail(operation);
+                case REPLACE_CROSS_SECTION_OPERATION:
+                    return prepareReplaceCrossSection(operation);
+                case CROSS_SECTION_SCALE_OPERATION:
+                    Sketch sketch = getSketch(operation);
+                    float scale = (float) operation.getDouble(SCALE_TAG);
+                    return () -> sketch.setCrossSectionScale(scale);
+                default:
+                    throw new JSONException("Unknown journal operation " + type);
+            }
+        }
+
+        private Runnable prepareRemoveLeg(JSONObject operation) throws JSONException {
+            int index = operation.getInt(INDEX_TAG);
+            checkIndex(index, legCount);
+            legCount--;
+            removedLegIndices.add(index);
+            return () -> {
+                Leg leg = survey.getAllLegsInChronoOrder().get(index);
+                Station from = survey.getOriginatingStation(leg);
+                if (from != null) {
+                    from.getOnwardLegs().remove(leg);
+                }
+                survey.removeLegRecord(leg);
+            };
+        }
+
+        private Runnable prepareAddLeg(JSONObject operation) throws JSONException {
+            Station from = namesToStations.get(operation.getString(FROM_TAG));
+            if (from == null) {
+                throw new JSONException("Journal refers to missing station");
+            }
+            if (operation.has(STATION_TAG)) {
+                JSONObject json = operation.getJSONObject(STATION_TAG);
+                Station station = SurveyJsonTranslater.toStation(json);
+                putName(station.getName(), station);
+            }
+            Leg leg = SurveyJsonTranslater.toLeg(namesToStations, operation.getJSONObject(LEG_TAG));
+            legCount++;
+            return () -> {
+                from.addOnwardLeg(leg);
+                survey.addLegRecord(leg);
+            };
+        }
+
+        private Runnable prepareReplaceLeg(JSONObject operation) throws JSONException {
+            int index = operation.getInt(INDEX_TAG);
+            checkIndex(index, legCount);
+
+            // Where the leg was before this line's removals; legs it added can't be replaced
+            for (int i = removedLegIndices.size() - 1; i >= 0; i--) {
+                if (index >= removedLegIndices.get(i)) {
+                    index++;
+                }
+            }
+            List<Leg> legs = survey.getAllLegsInChronoOrder();
+            checkIndex(index, legs.size());
+
+            Leg old = legs.get(index);
+            Leg leg = SurveyJsonTranslater.toLeg(namesToStations, operation.getJSONObject(LEG_TAG));
+            if (old.getDestination() != leg.getDestination() || !replacedLegs.add(old)) {
+                throw new JSONException("Journal replaces a leg with a different one");
+            }
+            return () -> {
+                Station from = survey.getOriginatingStation(old);
+                from.getOnwardLegs().remove(old);
+                from.getOnwardLegs().add(leg);
+                survey.replaceLegInRecord(old, leg);
+            };
+        }
+
+        private Runnable prepareUpdateStation(JSONObject operation) throws JSONException {
+            // Looked up by its name before this line, as stations can swap names within one
+            String oldName = operation.getString(NAME_TAG);
+            Station station =
+                    replacedNames.containsKey(oldName)
+                            ? replacedNames.get(oldName)
+                            : namesToStations.get(oldName);
+            if (station == null || !updatedStations.add(station)) {
+                throw new JSONException("Journal refers to missing station");
+            }
+            Station updated = SurveyJsonTranslater.toStation(operation.getJSONObject(STATION_TAG));
+
+            if (namesToStations.get(oldName) == station) {
+                removeName(oldName);
+            }
+            putName(updated.getName(), station);
+
+            return () -> {
+                station.setName(updated.getName());
+                station.setComment(updated.getComment());
+                station.setExtendedElevationDirection(updated.getExtendedElevationDirection());
+            };
+        }
+
+        private Runnable prepareRemoveDetail(JSONObject operation) throws JSONException {
+            List<?> details = getDetails(operation);
+            int index = operation.getInt(INDEX_TAG);
+            int count = getCount(details);
+            checkIndex(index, count);
+            detailCounts.put(details, count - 1);
+            return () -> details.remove(index);
+        }
+
+        private Runnable prepareAddDetail(JSONObject operation) throws JSONException {
+            Sketch sketch = getSketch(operation);
+            JSONObject json = operation.getJSONObject(DETAIL_TAG);
+            String type = operation.getString(TYPE_TAG);
+            switch (type) {
+                case PATH_TYPE:
+                    return prepareAdd(
+                            sketch.getPathDetails(), SketchJsonTranslater.toPathDetail(json));
+                case SYMBOL_TYPE:
+                    return prepareAdd(
+                            sketch.getSymbolDetails(), SketchJsonTranslater.toSymbolDetail(json));
+                case LABEL_TYPE:
+                    return prepareAdd(
+                            sketch.getTextDetails(), SketchJsonTranslater.toTextDetail(json));
+                case CROSS_SECTION_TYPE:
+                    CrossSectionDetail crossSection =
+                            SketchJsonTranslater.toCrossSectionDetail(namesToStations, json);
+                    return prepareAdd(sketch.getCrossSectionDetails(), crossSection);
+                default:
+                    throw new JSONException("Unknown sketch detail type " + type);
+            }
+        }
+
+        private <T> Runnable prepareAdd(List<T> details, T detail) {
+            detailCounts.put(details, getCount(details) + 1);
+            return () -> details.add(detail);
+        }
+
+        private Runnable prepareReplaceCrossSection(JSONObject operation) throws JSONException {
+            List<CrossSectionDetail> crossSections = getSketch(operation).getCrossSectionDetails();
+            int index = operation.getInt(INDEX_TAG);
+            checkIndex(index, getCount(crossSections));
+            JSONObject json = operation.getJSONObject(DETAIL_TAG);
+            CrossSectionDetail crossSection =
+                    SketchJsonTranslater.toCrossSectionDetail(namesToStations, json);
+            return () -> crossSections.set(index, crossSection);
+        }
+
+        private int getCount(List<?> details) {
+            Integer count = detailCounts.get(details);
+            return count == null ? details.size() : count;
+        }
+
+        private static void checkIndex(int index, int count) throws JSONException {
+            if (index < 0 || index >= count) {
+                throw new JSONException("Journal refers to missing item " + index);
+            }
+        }
+
+        private void putName(String name, Station station) {
+            rememberName(name);
+            namesToStations.put(name, station);
+        }
+
+        private void removeName(String name) {
+            rememberName(name);
+            namesToStations.remove(name);
+        }
+
+        private void rememberName(String name) {
+            if (!replacedNames.containsKey(name)) {
+                replacedNames.put(name, namesToStations.get(name));
+            }
+        }
+
+        private void undoNameChanges() {
+            for (Map.Entry<String, Station> entry : replacedNames.entrySet()) {
+                if (entry.getValue() == null) {
+                    namesToStations.remove(entry.getKey());
+                } else {
+                    namesToStations.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        private Sketch getSketch(JSONObject operation) throws JSONException {
+            String name = operation.getString(SKETCH_TAG);
+            return name.equals(PLAN_SKETCH) ? survey.getPlanSketch() : survey.getElevationSketch();
+        }
+
+        private List<?> getDetails(JSONObject operation) throws JSONException {
+            Sketch sketch = getSketch(operation);
+            String type = operation.getString(TYPE_TAG);
+            switch (type) {
+                case PATH_TYPE:
+                    return sketch.getPathDetails();
+                case SYMBOL_TYPE:
+                    return sketch.getSymbolDetails();
+                case LABEL_TYPE:
+                    return sketch.getTextDetails();
+                case CROSS_SECTION_TYPE:
+                    return sketch.getCrossSectionDetails();
+                default:
+                    throw new JSONException("Unknown sketch detail type " + type);
+            }
+        }
+
+        private void finish() {
+            survey.checkSurveyIntegrity();
+            survey.getPlanSketch().recalculateBoundingBox();
+            survey.getElevationSketch().recalculateBoundingBox();
+        }
+    }
+}
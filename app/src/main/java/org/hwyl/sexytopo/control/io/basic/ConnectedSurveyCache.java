@@ -0,0 +1,44 @@
+package org.hwyl.sexytopo.control.io.basic;
+
+import android.net.Uri;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.hwyl.sexytopo.model.survey.Survey;
+
+/**
+ * Connected surveys that have already been loaded, so switching between surveys in the same cave
+ * system doesn't keep reading the same files. Connected surveys are only ever shown alongside the
+ * current survey, never edited, so one copy can be shared by every survey connected to it.
+ */
+public class ConnectedSurveyCache {
+
+    private static final int MAX_SIZE = 50;
+
+    // access order, so the least recently used survey is the first to go
+    private static final Map<Uri, Survey> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    public static synchronized Survey get(Uri uri) {
+        return cache.get(uri);
+    }
+
+    public static synchronized void put(Survey survey) {
+        cache.put(survey.getUri(), survey);
+        Iterator<Uri> iterator = cache.keySet().iterator();
+        while (cache.size() > MAX_SIZE) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /** Cached surveys refer to each other, so if any of them changes, drop the lot. */
+    public static synchronized void onSaved(Survey survey) {
+        if (cache.containsKey(survey.getUri())) {
+            cache.clear();
+        }
+    }
+
+    public static synchronized void clear() {
+        cache.clear();
+    }
+}
@@ -11,10 +11,15 @@ import org.hwyl.sexytopo.model.survey.Survey;
 public class ExportFrameFactory {
 
     public static Frame getExportFrame(Survey survey, Projection2D projectionType) {
-
-        // Basic bounds are the union of the sketch and the survey data
         Sketch sketch = survey.getSketch(projectionType);
         Space<Coord2D> projection = projectionType.project(survey);
+        return getExportFrame(sketch, projection);
+    }
+
+    /** For when the projection's already been worked out; projecting a big survey isn't cheap. */
+    public static Frame getExportFrame(Sketch sketch, Space<Coord2D> projection) {
+
+        // Basic bounds are the union of the sketch and the survey data
         Frame sketchBox = Frame.from(sketch);
         Frame surveyDataBox = Space2DUtils.toFrame(projection);
         Frame export = sketchBox.union(surveyDataBox);
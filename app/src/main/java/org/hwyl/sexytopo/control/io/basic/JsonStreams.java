@@ -0,0 +1,79 @@
+package org.hwyl.sexytopo.control.io.basic;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import org.hwyl.sexytopo.SexyTopoConstants;
+
+/**
+ * Helpers for reading and writing JSON a token at a time, so files can be streamed to and from disk
+ * without holding a copy of the whole document in memory. Output has the same layout that building
+ * a JSONObject and calling toString(JSON_INDENT) produces.
+ */
+public final class JsonStreams {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final String INDENT =
+            new String(new char[SexyTopoConstants.JSON_INDENT]).replace('\0', ' ');
+
+    private JsonStreams() {}
+
+    /** The writer doesn't own the stream; call flush() (not close()) when done. */
+    public static JsonWriter newWriter(OutputStream outputStream) {
+        OutputStreamWriter streamWriter =
+                new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+        JsonWriter writer = new JsonWriter(new BufferedWriter(streamWriter, BUFFER_SIZE));
+        writer.setIndent(INDENT);
+        return writer;
+    }
+
+    /** Writes whole numbers without a decimal point, as JSONObject does. */
+    public static void value(JsonWriter writer, double value) throws IOException {
+        long longValue = (long) value;
+        if (value == longValue) {
+            writer.value(longValue);
+        } else {
+            writer.value(value);
+        }
+    }
+
+    /** Skips the field entirely if the value is null, as JSONObject.put() does. */
+    public static void put(JsonWriter writer, String name, String value) throws IOException {
+        if (value != null) {
+            writer.name(name).value(value);
+        }
+    }
+
+    public static void put(JsonWriter writer, String name, double value) throws IOException {
+        writer.name(name);
+        value(writer, value);
+    }
+
+    /** The reader doesn't own the stream; it's closed by whoever opened it. */
+    public static JsonReader newReader(InputStream inputStream) {
+        InputStreamReader streamReader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+        return new JsonReader(new BufferedReader(streamReader, BUFFER_SIZE));
+    }
+
+    /** Reads a string, or null if the value is null. */
+    public static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    public static float nextFloat(JsonReader reader) throws IOException {
+        return (float) reader.nextDouble();
+    }
+}
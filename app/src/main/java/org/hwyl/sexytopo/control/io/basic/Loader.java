@@ -5,17 +5,24 @@ import android.net.Uri;
 import androidx.documentfile.provider.DocumentFile;
 import java.io.IOException;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.hwyl.sexytopo.R;
 import org.hwyl.sexytopo.control.Log;
 import org.hwyl.sexytopo.control.io.IoUtils;
 import org.hwyl.sexytopo.control.io.SurveyFile;
+import org.hwyl.sexytopo.model.graph.Projection2D;
 import org.hwyl.sexytopo.model.sketch.Sketch;
 import org.hwyl.sexytopo.model.survey.Survey;
-import org.json.JSONException;
 
 public class Loader {
 
+    private static final ExecutorService SKETCH_EXECUTOR = Executors.newFixedThreadPool(2);
+
     public static Survey loadSurvey(Context context, DocumentFile directory) throws Exception {
         return loadSurvey(context, directory, false);
     }
@@ -37,17 +44,90 @@ public class Loader {
             boolean restoreAutosave)
             throws Exception {
 
-        if (!IoUtils.isSurveyDirectory(directory)) {
+        if (!IoUtils.isSurveyDirectory(context, directory)) {
             throw new Exception(context.getString(R.string.file_load_error_not_survey));
         }
 
         Survey survey = new Survey();
         survey.setDirectory(directory);
-        loadSurveyData(context, survey, restoreAutosave);
-        loadSketches(context, survey, restoreAutosave);
+
+        List<String> journal = null;
+        SurveyFile dataFile = SurveyFile.DATA.get(survey);
+        if (restoreAutosave) {
+            journal = AutosaveJournal.read(context, survey);
+            dataFile = getFileToRestore(context, dataFile, journal);
+        }
+        loadSurveyData(context, survey, dataFile);
         surveyUrisNotToLoad.add(survey.getUri());
-        loadMetadata(context, survey, surveyUrisNotToLoad, restoreAutosave);
+
+        if (!restoreAutosave) {
+            // The plan is shown first, so it's read now alongside the metadata rather than when
+            // it's first drawn; the elevation often isn't looked at, so it's left until it is
+            Future<Sketch> plan =
+                    readSketchInBackground(context, survey, SurveyFile.SKETCH_PLAN.get(survey));
+            setSketchLoader(context, survey, Projection2D.EXTENDED_ELEVATION);
+            loadMetadata(context, survey, surveyUrisNotToLoad, false);
+            setSketches(survey, plan, null);
+            survey.setSaved(true);
+            return survey;
+        }
+
+        // Sketches need the stations to be there, but are independent of each other and of the
+        // metadata. Metadata stays on this thread because it loads the connected surveys too.
+        SurveyFile planFile = SurveyFile.SKETCH_PLAN.get(survey);
+        SurveyFile elevationFile = SurveyFile.SKETCH_EXT_ELEVATION.get(survey);
+        Future<Sketch> plan =
+                readSketchInBackground(
+                        context, survey, getFileToRestore(context, planFile, journal));
+        Future<Sketch> elevation =
+                readSketchInBackground(
+                        context, survey, getFileToRestore(context, elevationFile, journal));
+        if (journal == null) {
+            loadMetadata(context, survey, surveyUrisNotToLoad, true);
+            setSketches(survey, plan, elevation);
+        } else {
+            setSketches(survey, plan, elevation);
+            AutosaveJournal.replay(survey, journal);
+            loadMetadata(context, survey, surveyUrisNotToLoad, true);
+        }
+
+        // Restored changes aren't in the saved files yet, so the next save has to write them
+        survey.setSaved(false);
+        return survey;
+    }
+
+    /**
+     * Loads a survey to show alongside another one it's connected to. Only the centreline is read
+     * straight away; sketches and the survey's own connections are loaded when first needed, and
+     * the result is cached for the next survey that connects to it.
+     */
+    public static Survey loadConnectedSurvey(Context context, DocumentFile directory)
+            throws Exception {
+
+        Survey cached = ConnectedSurveyCache.get(directory.getUri());
+        if (cached != null) {
+            return cached;
+        }
+
+        if (!IoUtils.isSurveyDirectory(context, directory)) {
+            throw new Exception(context.getString(R.string.file_load_error_not_survey));
+        }
+
+        Survey survey = new Survey();
+        survey.setDirectory(directory);
+        loadSurveyData(context, survey, SurveyFile.DATA.get(survey));
+        setSketchLoader(context, survey, Projection2D.PLAN);
+        setSketchLoader(context, survey, Projection2D.EXTENDED_ELEVATION);
+
+        SurveyFile metadataFile = SurveyFile.METADATA.get(survey);
+        if (metadataFile.exists(context)) {
+            Log.i(R.string.file_loading_file, metadataFile.getFilename());
+            String metadataText = metadataFile.slurp(context);
+            MetadataTranslater.translateAndUpdateLazily(context, survey, metadataText);
+        }
+
         survey.setSaved(true);
+        ConnectedSurveyCache.put(survey);
         return survey;
     }
 
@@ -65,38 +145,73 @@ public class Loader {
         }
     }
 
-    private static void loadSurveyData(Context context, Survey survey, boolean restoreAutosave)
+    private static void loadSurveyData(Context context, Survey survey, SurveyFile surveyFile)
             throws Exception {
-        SurveyFile surveyFile = SurveyFile.DATA.get(survey);
-        surveyFile = considerSwappingForAutosave(context, surveyFile, restoreAutosave);
         if (surveyFile.exists(context)) {
             Log.i(R.string.file_loading_file, surveyFile.getFilename());
-            String text = surveyFile.slurp(context);
-            SurveyJsonTranslater.populateSurvey(survey, text);
+            surveyFile.read(context, inputStream -> SurveyJsonReader.read(survey, inputStream));
         }
     }
 
-    private static void loadSketches(Context context, Survey survey, boolean restoreAutosave)
-            throws IOException, JSONException {
+    private static void setSketchLoader(Context context, Survey survey, Projection2D projection) {
+        // The survey's files could be moved (e.g. by Save As) before the sketch is needed, so pin
+        // down which file to read now
+        Context applicationContext = context.getApplicationContext();
+        SurveyFile.SurveyFileType fileType =
+                projection == Projection2D.PLAN
+                        ? SurveyFile.SKETCH_PLAN
+                        : SurveyFile.SKETCH_EXT_ELEVATION;
+        DocumentFile file = fileType.get(survey).getDocumentFile(context);
+        if (file != null) {
+            survey.setSketchReader(
+                    projection, owner -> readSketch(applicationContext, owner, file));
+        }
+    }
 
-        SurveyFile planFile = SurveyFile.SKETCH_PLAN.get(survey);
-        planFile = considerSwappingForAutosave(context, planFile, restoreAutosave);
-        if (planFile.exists(context)) {
-            Log.i(R.string.file_loading_file, planFile.getFilename());
-            String planText = planFile.slurp(context);
-            Sketch plan = SketchJsonTranslater.translate(survey, planText);
-            survey.setPlanSketch(plan);
+    private static Future<Sketch> readSketchInBackground(
+            Context context, Survey survey, SurveyFile surveyFile) {
+        DocumentFile documentFile = surveyFile.getDocumentFile(context);
+        if (documentFile == null) {
+            return null;
         }
+        return SKETCH_EXECUTOR.submit(() -> readSketch(context, survey, documentFile));
+    }
 
-        SurveyFile elevationFile = SurveyFile.SKETCH_EXT_ELEVATION.get(survey);
-        if (elevationFile.exists(context)) {
-            Log.i(R.string.file_loading_file, planFile.getFilename());
-            String elevationText = elevationFile.slurp(context);
-            Sketch elevation = SketchJsonTranslater.translate(survey, elevationText);
-            survey.setElevationSketch(elevation);
+    private static void setSketches(Survey survey, Future<Sketch> plan, Future<Sketch> elevation)
+            throws Exception {
+        try {
+            if (plan != null) {
+                survey.setPlanSketch(plan.get());
+            }
+            if (elevation != null) {
+                survey.setElevationSketch(elevation.get());
+            }
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            throw cause instanceof Exception ? (Exception) cause : exception;
         }
     }
 
+    private static Sketch readSketch(Context context, Survey survey, DocumentFile file)
+            throws IOException {
+        Log.i(R.string.file_loading_file, file.getName());
+        return IoUtils.readFromFile(
+                context,
+                file,
+                inputStream -> SketchBinaryTranslater.readEitherFormat(survey, inputStream));
+    }
+
+    /**
+     * Which version of a data or sketch file to restore from. A journal written since the last save
+     * applies to the saved files, and any autosave files are older than that save, so they are only
+     * read if there's no journal or the journal is based on them.
+     */
+    static SurveyFile getFileToRestore(
+            Context context, SurveyFile surveyFile, List<String> journal) {
+        boolean useAutosaveFile = journal == null || AutosaveJournal.isBasedOnAutosave(journal);
+        return considerSwappingForAutosave(context, surveyFile, useAutosaveFile);
+    }
+
     private static SurveyFile considerSwappingForAutosave(
             Context context, SurveyFile surveyFile, boolean restoreAutosave) {
 
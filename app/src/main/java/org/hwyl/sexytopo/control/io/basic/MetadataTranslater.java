@@ -41,6 +41,30 @@ public class MetadataTranslater {
         translateAndUpdate(context, survey, json, surveyUrisNotToLoad);
     }
 
+    /**
+     * Like translateAndUpdate, but the connected surveys aren't loaded until something asks the
+     * survey for them.
+     */
+    public static void translateAndUpdateLazily(Context context, Survey survey, String string)
+            throws Exception {
+        JSONObject json = new JSONObject(string);
+        translateAndUpdateActiveStation(survey, json);
+
+        Context applicationContext = context.getApplicationContext();
+        survey.setConnectionLoader(
+                () -> {
+                    Set<Uri> surveyUrisNotToLoad = new HashSet<>();
+                    surveyUrisNotToLoad.add(survey.getUri());
+                    try {
+                        translateAndUpdateConnections(
+                                applicationContext, survey, json, surveyUrisNotToLoad);
+                    } catch (Exception exception) {
+                        Log.e("Could not load surveys connected to " + survey.getName());
+                        Log.e(exception);
+                    }
+                });
+    }
+
     public static JSONObject toJson(Survey survey, String versionName, int versionCode)
             throws JSONException {
 
@@ -139,9 +163,7 @@ public class MetadataTranslater {
                         try {
                             DocumentFile directory =
                                     DocumentFile.fromTreeUri(context, connectedSurveyUri);
-                            Survey connectedSurvey =
-                                    Loader.loadSurvey(
-                                            context, directory, surveyUrisNotToLoad, false);
+                            Survey connectedSurvey = Loader.loadConnectedSurvey(context, directory);
                             Station connectionPoint =
                                     connectedSurvey.getStationByName(connectionPointName);
                             if (connectionPoint == null) {
@@ -2,54 +2,151 @@ package org.hwyl.sexytopo.control.io.basic;
 
 import android.content.Context;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import org.hwyl.sexytopo.control.activity.SexyTopoActivity;
 import org.hwyl.sexytopo.control.io.SurveyFile;
+import org.hwyl.sexytopo.control.util.GeneralPreferences;
+import org.hwyl.sexytopo.model.graph.Projection2D;
 import org.hwyl.sexytopo.model.sketch.Sketch;
 import org.hwyl.sexytopo.model.survey.Survey;
-import org.json.JSONException;
 
 public class Saver {
 
-    public static synchronized void save(Context context, Survey survey) throws Exception {
+    // Saving and autosaving in the background go through this IoScheduler queue, so the files
+    // are written in the order the snapshots were taken
+    public static final String IO_QUEUE = "survey files";
+
+    /** Saves the survey on this thread, which should be the one that changes it. */
+    public static void save(Context context, Survey survey) throws Exception {
+        SurveySnapshot snapshot = new SurveySnapshot(survey);
+        save(context, snapshot);
+        snapshot.markWritten();
+    }
+
+    /**
+     * Writes the snapshot out. The survey isn't marked as saved: that's for snapshot.markWritten()
+     * once this has finished, on the thread that changes the survey.
+     */
+    public static synchronized void save(Context context, SurveySnapshot snapshot)
+            throws Exception {
+        Survey survey = snapshot.getCopy();
         String versionName = SexyTopoActivity.getVersionName(context);
         int versionCode = SexyTopoActivity.getVersionCode(context);
-        saveMetadata(context, survey, SurveyFile.METADATA.get(survey), versionName, versionCode);
-        saveSurveyData(context, survey, SurveyFile.DATA.get(survey), versionName, versionCode);
-        savePlanSketch(
-                context, survey, SurveyFile.SKETCH_PLAN.get(survey), versionName, versionCode);
-        saveElevationSketch(
-                context,
-                survey,
-                SurveyFile.SKETCH_EXT_ELEVATION.get(survey),
-                versionName,
-                versionCode);
-        survey.setSaved(true);
+        for (SurveyFile.SurveyFileType fileType : snapshot.getFileTypesToSave()) {
+            save(context, survey, fileType, fileType.get(survey), versionName, versionCode);
+        }
+        AutosaveJournal.startAfterSave(context, snapshot);
+        ConnectedSurveyCache.onSaved(survey);
+        snapshot.recordSave();
     }
 
-    public static synchronized void autosave(Context context, Survey survey) throws Exception {
+    /** Autosaves the survey on this thread, which should be the one that changes it. */
+    public static void autosave(Context context, Survey survey) throws Exception {
+        SurveySnapshot snapshot = new SurveySnapshot(survey);
+        autosave(context, snapshot);
+        snapshot.markWritten();
+    }
+
+    /** Writes the snapshot out as an autosave; see save(Context, SurveySnapshot). */
+    public static synchronized void autosave(Context context, SurveySnapshot snapshot)
+            throws Exception {
+        Survey survey = snapshot.getCopy();
         String versionName = SexyTopoActivity.getVersionName(context);
         int versionCode = SexyTopoActivity.getVersionCode(context);
-        saveMetadata(
-                context,
-                survey,
-                SurveyFile.METADATA.AUTOSAVE.get(survey),
-                versionName,
-                versionCode);
-        saveSurveyData(
-                context, survey, SurveyFile.DATA.AUTOSAVE.get(survey), versionName, versionCode);
-        savePlanSketch(
-                context,
-                survey,
-                SurveyFile.SKETCH_PLAN.AUTOSAVE.get(survey),
-                versionName,
-                versionCode);
-        saveElevationSketch(
-                context,
-                survey,
-                SurveyFile.SKETCH_EXT_ELEVATION.AUTOSAVE.get(survey),
-                versionName,
-                versionCode);
-        survey.setAutosaved(true);
+        String metadataText = MetadataTranslater.translate(survey, versionName, versionCode);
+
+        if (AutosaveJournal.append(context, snapshot, metadataText)) {
+            return;
+        }
+
+        // The journal can't describe the changes, so bring the autosave files up to date and
+        // start a new one
+        AutosaveJournal.delete(context, survey);
+        for (SurveyFile.SurveyFileType fileType : snapshot.getFileTypesToAutosave()) {
+            SurveyFile surveyFile = fileType.AUTOSAVE.get(survey);
+            if (fileType == SurveyFile.METADATA) {
+                surveyFile.save(context, metadataText);
+            } else if (isUnloadedSketch(survey, fileType)) {
+                // Still the same as the main file, which gets loaded if there's no autosave
+                surveyFile.delete(context);
+            } else {
+                save(context, survey, fileType, surveyFile, versionName, versionCode);
+            }
+        }
+        AutosaveJournal.startAfterAutosave(snapshot, metadataText);
+        snapshot.recordFullAutosave();
+    }
+
+    /** The files that have changed since they were last saved. */
+    static List<SurveyFile.SurveyFileType> getFileTypesToSave(Survey survey) {
+        List<SurveyFile.SurveyFileType> fileTypes = new ArrayList<>();
+        if (!survey.isMetadataSaved()) {
+            fileTypes.add(SurveyFile.METADATA);
+        }
+        if (!survey.isDataSaved()) {
+            fileTypes.add(SurveyFile.DATA);
+        }
+        if (!survey.isSketchSaved(Projection2D.PLAN)) {
+            fileTypes.add(SurveyFile.SKETCH_PLAN);
+        }
+        if (!survey.isSketchSaved(Projection2D.EXTENDED_ELEVATION)) {
+            fileTypes.add(SurveyFile.SKETCH_EXT_ELEVATION);
+        }
+        return fileTypes;
+    }
+
+    /** The files that have changed since their autosave versions were last written in full. */
+    static List<SurveyFile.SurveyFileType> getFileTypesToAutosave(Survey survey) {
+        List<SurveyFile.SurveyFileType> fileTypes = new ArrayList<>();
+        if (!survey.isMetadataAutosaved()) {
+            fileTypes.add(SurveyFile.METADATA);
+        }
+        if (!survey.isDataAutosaved()) {
+            fileTypes.add(SurveyFile.DATA);
+        }
+        if (isSketchToAutosave(survey, Projection2D.PLAN)) {
+            fileTypes.add(SurveyFile.SKETCH_PLAN);
+        }
+        if (isSketchToAutosave(survey, Projection2D.EXTENDED_ELEVATION)) {
+            fileTypes.add(SurveyFile.SKETCH_EXT_ELEVATION);
+        }
+        return fileTypes;
+    }
+
+    private static boolean isSketchToAutosave(Survey survey, Projection2D projection) {
+        // An unloaded sketch might have a stale autosave file lying around
+        return !survey.isSketchLoaded(projection) || !survey.getSketch(projection).isAutosaved();
+    }
+
+    private static boolean isUnloadedSketch(Survey survey, SurveyFile.SurveyFileType fileType) {
+        if (fileType == SurveyFile.SKETCH_PLAN) {
+            return !survey.isSketchLoaded(Projection2D.PLAN);
+        } else if (fileType == SurveyFile.SKETCH_EXT_ELEVATION) {
+            return !survey.isSketchLoaded(Projection2D.EXTENDED_ELEVATION);
+        } else {
+            return false;
+        }
+    }
+
+    private static void save(
+            Context context,
+            Survey survey,
+            SurveyFile.SurveyFileType fileType,
+            SurveyFile surveyFile,
+            String versionName,
+            int versionCode)
+            throws Exception {
+        if (fileType == SurveyFile.METADATA) {
+            saveMetadata(context, survey, surveyFile, versionName, versionCode);
+        } else if (fileType == SurveyFile.DATA) {
+            saveSurveyData(context, survey, surveyFile, versionName, versionCode);
+        } else if (fileType == SurveyFile.SKETCH_PLAN) {
+            savePlanSketch(context, survey, surveyFile, versionName, versionCode);
+        } else {
+            saveElevationSketch(context, survey, surveyFile, versionName, versionCode);
+        }
     }
 
     private static void saveSurveyData(
@@ -58,9 +155,11 @@ public class Saver {
             SurveyFile surveyFile,
             String versionName,
             int versionCode)
-            throws IOException, JSONException {
-        String surveyText = SurveyJsonTranslater.toText(survey, versionName, versionCode);
-        surveyFile.save(context, surveyText);
+            throws IOException {
+        surveyFile.save(
+                context,
+                outputStream ->
+                        SurveyJsonTranslater.write(survey, versionName, versionCode, outputStream));
     }
 
     private static void savePlanSketch(
@@ -69,10 +168,12 @@ public class Saver {
             SurveyFile surveyFile,
             String versionName,
             int versionCode)
-            throws IOException, JSONException {
+            throws IOException {
         Sketch sketch = survey.getPlanSketch();
-        String planText = SketchJsonTranslater.translate(sketch, survey, versionName, versionCode);
-        surveyFile.save(context, planText);
+        surveyFile.save(
+                context,
+                outputStream ->
+                        writeSketch(sketch, survey, versionName, versionCode, outputStream));
     }
 
     private static void saveElevationSketch(
@@ -81,10 +182,26 @@ public class Saver {
             SurveyFile surveyFile,
             String versionName,
             int versionCode)
-            throws IOException, JSONException {
+            throws IOException {
         Sketch sketch = survey.getElevationSketch();
-        String eeText = SketchJsonTranslater.translate(sketch, survey, versionName, versionCode);
-        surveyFile.save(context, eeText);
+        surveyFile.save(
+                context,
+                outputStream ->
+                        writeSketch(sketch, survey, versionName, versionCode, outputStream));
+    }
+
+    private static void writeSketch(
+            Sketch sketch,
+            Survey survey,
+            String versionName,
+            int versionCode,
+            OutputStream outputStream)
+            throws IOException {
+        if (GeneralPreferences.isCompactSketchFilesOn()) {
+            SketchBinaryTranslater.write(sketch, survey, versionName, versionCode, outputStream);
+        } else {
+            SketchJsonTranslater.write(sketch, survey, versionName, versionCode, outputStream);
+        }
     }
 
     private static void saveMetadata(
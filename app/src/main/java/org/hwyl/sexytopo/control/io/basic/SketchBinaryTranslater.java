@@ -0,0 +1,521 @@
+package org.hwyl.sexytopo.control.io.basic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.hwyl.sexytopo.R;
+import org.hwyl.sexytopo.control.Log;
+import org.hwyl.sexytopo.model.graph.Coord2D;
+import org.hwyl.sexytopo.model.sketch.Colour;
+import org.hwyl.sexytopo.model.sketch.CrossSection;
+import org.hwyl.sexytopo.model.sketch.CrossSectionDetail;
+import org.hwyl.sexytopo.model.sketch.PathDetail;
+import org.hwyl.sexytopo.model.sketch.Sketch;
+import org.hwyl.sexytopo.model.sketch.Symbol;
+import org.hwyl.sexytopo.model.sketch.SymbolDetail;
+import org.hwyl.sexytopo.model.sketch.TextDetail;
+import org.hwyl.sexytopo.model.survey.Station;
+import org.hwyl.sexytopo.model.survey.Survey;
+
+/**
+ * A compact binary alternative to the JSON sketch format, holding exactly the same information.
+ *
+ * <p>The file starts with a magic number and format version, then the app version and survey name
+ * (as in the JSON), then tables of the colour and symbol names used so each detail can refer to
+ * them by index. After that come sections, each a type byte followed by its length, so a reader can
+ * skip sections it doesn't understand; a zero type byte ends the file. Cross-sections hold their
+ * own nested path, label and symbol sections.
+ *
+ * <p>Coordinates are stored as whole tenths of a millimetre, with each point in a path stored as
+ * the difference from the one before as a zigzag varint, which takes one or two bytes for most
+ * points.
+ * Sizes, angles and the cross-section scale are stored as raw floats. Reading a file and writing it
+ * again gives the same bytes, so converting to and from JSON loses nothing after the first write.
+ *
+ * <p>Binary sketches are written to the same .plan.json and .ext-elevation.json files as JSON
+ * ones (so the rest of the app, and older files, need no changes), and told apart from them by
+ * the magic number when read. Nothing is shared between calls, so sketches can be written on
+ * several threads at once.
+ */
+public class SketchBinaryTranslater {
+
+    private static final byte[] MAGIC = {'S', 'X', 'T', 'S'};
+    public static final int FORMAT_VERSION = 1;
+
+    // Coordinates are rounded to a tenth of a millimetre, well below anything that can be drawn
+    public static final int QUANTA_PER_METRE = 10000;
+
+    private static final int END_SECTION = 0;
+    private static final int PATHS_SECTION = 1;
+    private static final int LABELS_SECTION = 2;
+    private static final int SYMBOLS_SECTION = 3;
+    private static final int CROSS_SECTIONS_SECTION = 4;
+    private static final int SETTINGS_SECTION = 5;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /** Checks for the magic number without consuming it; needs a stream that supports mark(). */
+    public static boolean isBinary(InputStream inputStream) throws IOException {
+        inputStream.mark(MAGIC.length);
+        try {
+            for (byte expected : MAGIC) {
+                if (inputStream.read() != expected) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            inputStream.reset();
+        }
+    }
+
+    /** Reads a sketch in either format, working out which from the start of the file. */
+    public static Sketch readEitherFormat(Survey survey, InputStream inputStream)
+            throws IOException {
+        InputStream buffered = new BufferedInputStream(inputStream, BUFFER_SIZE);
+        if (isBinary(buffered)) {
+            return read(survey, buffered);
+        } else {
+            return SketchJsonReader.read(survey, buffered);
+        }
+    }
+
+    /** Rewrites a JSON sketch file in the binary format. */
+    public static void convertToBinary(
+            Survey survey,
+            InputStream jsonInputStream,
+            String versionName,
+            int versionCode,
+            OutputStream outputStream)
+            throws IOException {
+        Sketch sketch = SketchJsonReader.read(survey, jsonInputStream);
+        write(sketch, survey, versionName, versionCode, outputStream);
+    }
+
+    /** Rewrites a binary sketch file as JSON. */
+    public static void convertToJson(
+            Survey survey,
+            InputStream binaryInputStream,
+            String versionName,
+            int versionCode,
+            OutputStream outputStream)
+            throws IOException {
+        Sketch sketch = read(survey, binaryInputStream);
+        SketchJsonTranslater.write(sketch, survey, versionName, versionCode, outputStream);
+    }
+
+    public static void write(
+            Sketch sketch,
+            Survey survey,
+            String versionName,
+            int versionCode,
+            OutputStream outputStream)
+            throws IOException {
+
+        DataOutputStream output =
+                new DataOutputStream(new BufferedOutputStream(outputStream, BUFFER_SIZE));
+        output.write(MAGIC);
+        output.writeByte(FORMAT_VERSION);
+        writeString(output, versionName);
+        writeVarint(output, versionCode);
+        writeString(output, survey.getName());
+
+        Tables tables = new Tables(sketch);
+        writeVarint(output, tables.colours.size());
+        for (Colour colour : tables.colours) {
+            writeString(output, colour.name());
+        }
+        writeVarint(output, tables.symbols.size());
+        for (Symbol symbol : tables.symbols) {
+            writeString(output, symbol.name());
+        }
+
+        writeDetailSections(output, sketch, tables);
+
+        ByteArrayOutputStream section = new ByteArrayOutputStream();
+        DataOutputStream sectionOutput = new DataOutputStream(section);
+        writeVarint(sectionOutput, sketch.getCrossSectionDetails().size());
+        for (CrossSectionDetail crossSectionDetail : sketch.getCrossSectionDetails()) {
+            write(sectionOutput, crossSectionDetail, tables);
+        }
+        writeSection(output, CROSS_SECTIONS_SECTION, section);
+
+        section = new ByteArrayOutputStream();
+        new DataOutputStream(section).writeFloat(sketch.getCrossSectionScale());
+        writeSection(output, SETTINGS_SECTION, section);
+
+        output.writeByte(END_SECTION);
+        output.flush();
+    }
+
+    public static Sketch read(Survey survey, InputStream inputStream) throws IOException {
+
+        DataInputStream input =
+                new DataInputStream(new BufferedInputStream(inputStream, BUFFER_SIZE));
+        for (byte expected : MAGIC) {
+            if (input.readByte() != expected) {
+                throw new IOException("Not a binary sketch file");
+            }
+        }
+        int formatVersion = input.readUnsignedByte();
+        if (formatVersion > FORMAT_VERSION) {
+            throw new IOException("Unsupported binary sketch format " + formatVersion);
+        }
+        readString(input); // version name
+        readVarint(input); // version code
+        readString(input); // survey name
+
+        int colourCount = (int) readVarint(input);
+        List<Colour> colours = new ArrayList<>(colourCount);
+        for (int i = 0; i < colourCount; i++) {
+            colours.add(toEnum(Colour.class, readString(input)));
+        }
+        int symbolCount = (int) readVarint(input);
+        List<Symbol> symbols = new ArrayList<>(symbolCount);
+        for (int i = 0; i < symbolCount; i++) {
+            symbols.add(toEnum(Symbol.class, readString(input)));
+        }
+
+        Sketch sketch = new Sketch();
+        Reader reader = new Reader(survey, colours, symbols);
+        reader.readSections(input, sketch, true);
+        return sketch;
+    }
+
+    /** The colours and symbols used in a sketch, in the order they're first used. */
+    private static class Tables {
+        private final List<Colour> colours = new ArrayList<>();
+        private final List<Symbol> symbols = new ArrayList<>();
+        private final Map<Colour, Integer> colourIndices = new HashMap<>();
+        private final Map<Symbol, Integer> symbolIndices = new HashMap<>();
+
+        private Tables(Sketch sketch) {
+            addDetails(sketch);
+            for (CrossSectionDetail crossSectionDetail : sketch.getCrossSectionDetails()) {
+                addDetails(crossSectionDetail.getSketch());
+            }
+        }
+
+        private void addDetails(Sketch sketch) {
+            for (PathDetail pathDetail : sketch.getPathDetails()) {
+                add(pathDetail.getColour());
+            }
+            for (TextDetail textDetail : sketch.getTextDetails()) {
+                add(textDetail.getColour());
+            }
+            for (SymbolDetail symbolDetail : sketch.getSymbolDetails()) {
+                add(symbolDetail.getColour());
+                if (!symbolIndices.containsKey(symbolDetail.getSymbol())) {
+                    symbolIndices.put(symbolDetail.getSymbol(), symbols.size());
+                    symbols.add(symbolDetail.getSymbol());
+                }
+            }
+        }
+
+        private void add(Colour colour) {
+            if (!colourIndices.containsKey(colour)) {
+                colourIndices.put(colour, colours.size());
+                colours.add(colour);
+            }
+        }
+    }
+
+    private static void writeDetailSections(DataOutputStream output, Sketch sketch, Tables tables)
+            throws IOException {
+
+        ByteArrayOutputStream section = new ByteArrayOutputStream();
+        DataOutputStream sectionOutput = new DataOutputStream(section);
+        writeVarint(sectionOutput, sketch.getPathDetails().size());
+        for (PathDetail pathDetail : sketch.getPathDetails()) {
+            write(sectionOutput, pathDetail, tables);
+        }
+        writeSection(output, PATHS_SECTION, section);
+
+        section = new ByteArrayOutputStream();
+        sectionOutput = new DataOutputStream(section);
+        writeVarint(sectionOutput, sketch.getTextDetails().size());
+        for (TextDetail textDetail : sketch.getTextDetails()) {
+            write(sectionOutput, textDetail, tables);
+        }
+        writeSection(output, LABELS_SECTION, section);
+
+        section = new ByteArrayOutputStream();
+        sectionOutput = new DataOutputStream(section);
+        writeVarint(sectionOutput, sketch.getSymbolDetails().size());
+        for (SymbolDetail symbolDetail : sketch.getSymbolDetails()) {
+            write(sectionOutput, symbolDetail, tables);
+        }
+        writeSection(output, SYMBOLS_SECTION, section);
+    }
+
+    private static void writeSection(
+            DataOutputStream output, int type, ByteArrayOutputStream section) throws IOException {
+        output.writeByte(type);
+        writeVarint(output, section.size());
+        section.writeTo(output);
+    }
+
+    private static void write(DataOutputStream output, PathDetail pathDetail, Tables tables)
+            throws IOException {
+        List<Coord2D> path = pathDetail.getPath();
+        writeVarint(output, tables.colourIndices.get(pathDetail.getColour()));
+        writeVarint(output, path.size());
+        long previousX = 0;
+        long previousY = 0;
+        for (Coord2D coord : path) {
+            long x = quantise(coord.x);
+            long y = quantise(coord.y);
+            writeSignedVarint(output, x - previousX);
+            writeSignedVarint(output, y - previousY);
+            previousX = x;
+            previousY = y;
+        }
+    }
+
+    private static void write(DataOutputStream output, TextDetail textDetail, Tables tables)
+            throws IOException {
+        write(output, textDetail.getPosition());
+        writeString(output, textDetail.getText());
+        writeVarint(output, tables.colourIndices.get(textDetail.getColour()));
+        output.writeFloat(textDetail.getSize());
+    }
+
+    private static void write(DataOutputStream output, SymbolDetail symbolDetail, Tables tables)
+            throws IOException {
+        write(output, symbolDetail.getPosition());
+        writeVarint(output, tables.symbolIndices.get(symbolDetail.getSymbol()));
+        writeVarint(output, tables.colourIndices.get(symbolDetail.getColour()));
+        output.writeFloat(symbolDetail.getSize());
+        output.writeFloat(symbolDetail.getAngle());
+    }
+
+    private static void write(
+            DataOutputStream output, CrossSectionDetail crossSectionDetail, Tables tables)
+            throws IOException {
+        CrossSection crossSection = crossSectionDetail.getCrossSection();
+        writeString(output, crossSection.getStation().getName());
+        write(output, crossSectionDetail.getPosition());
+        output.writeFloat(crossSection.getAngle());
+        writeDetailSections(output, crossSectionDetail.getSketch(), tables);
+        output.writeByte(END_SECTION);
+    }
+
+    private static void write(DataOutputStream output, Coord2D coord) throws IOException {
+        writeSignedVarint(output, quantise(coord.x));
+        writeSignedVarint(output, quantise(coord.y));
+    }
+
+    private static long quantise(float value) {
+        return Math.round((double) value * QUANTA_PER_METRE);
+    }
+
+    private static float unquantise(long value) {
+        return (float) ((double) value / QUANTA_PER_METRE);
+    }
+
+    private static class Reader {
+        private final Survey survey;
+        private final List<Colour> colours;
+        private final List<Symbol> symbols;
+
+        private Reader(Survey survey, List<Colour> colours, List<Symbol> symbols) {
+            this.survey = survey;
+            this.colours = colours;
+            this.symbols = symbols;
+        }
+
+        private void readSections(DataInputStream input, Sketch sketch, boolean isTopLevel)
+                throws IOException {
+
+            List<PathDetail> pathDetails = new ArrayList<>();
+            List<TextDetail> textDetails = new ArrayList<>();
+            List<SymbolDetail> symbolDetails = new ArrayList<>();
+            List<CrossSectionDetail> crossSectionDetails = new ArrayList<>();
+
+            int type;
+            while ((type = input.readUnsignedByte()) != END_SECTION) {
+                long length = readVarint(input);
+                switch (type) {
+                    case PATHS_SECTION:
+                        for (long i = readVarint(input); i > 0; i--) {
+                            add(pathDetails, readPathDetail(input));
+                        }
+                        break;
+                    case LABELS_SECTION:
+                        for (long i = readVarint(input); i > 0; i--) {
+                            add(textDetails, readTextDetail(input));
+                        }
+                        break;
+                    case SYMBOLS_SECTION:
+                        for (long i = readVarint(input); i > 0; i--) {
+                            add(symbolDetails, readSymbolDetail(input));
+                        }
+                        break;
+                    case CROSS_SECTIONS_SECTION:
+                        for (long i = readVarint(input); i > 0; i--) {
+                            add(crossSectionDetails, readCrossSectionDetail(input));
+                        }
+                        break;
+                    case SETTINGS_SECTION:
+                        sketch.setCrossSectionScale(input.readFloat());
+                        break;
+                    default:
+                        skipFully(input, length);
+                }
+            }
+
+            sketch.setPathDetails(pathDetails);
+            sketch.setSymbolDetails(symbolDetails);
+            sketch.setTextDetails(textDetails);
+            if (isTopLevel) {
+                sketch.setCrossSectionDetails(crossSectionDetails);
+            }
+        }
+
+        private PathDetail readPathDetail(DataInputStream input) throws IOException {
+            Colour colour = getColour(readVarint(input));
+            int count = (int) readVarint(input);
+            List<Coord2D> path = new ArrayList<>(count);
+            long x = 0;
+            long y = 0;
+            for (int i = 0; i < count; i++) {
+                x += readSignedVarint(input);
+                y += readSignedVarint(input);
+                path.add(new Coord2D(unquantise(x), unquantise(y)));
+            }
+
+            if (colour == null) {
+                Log.e(R.string.file_load_sketch_paths_error);
+                return null;
+            }
+            return new PathDetail(path, colour);
+        }
+
+        private TextDetail readTextDetail(DataInputStream input) throws IOException {
+            Coord2D location = readCoord2D(input);
+            String text = readString(input);
+            Colour colour = getColour(readVarint(input));
+            float size = input.readFloat();
+
+            if (colour == null) {
+                Log.e(R.string.file_load_sketch_labels_error);
+                return null;
+            }
+            return new TextDetail(location, text, colour, size);
+        }
+
+        private SymbolDetail readSymbolDetail(DataInputStream input) throws IOException {
+            Coord2D location = readCoord2D(input);
+            long symbolIndex = readVarint(input);
+            Symbol symbol = symbolIndex < symbols.size() ? symbols.get((int) symbolIndex) : null;
+            Colour colour = getColour(readVarint(input));
+            float size = input.readFloat();
+            float angle = input.readFloat();
+
+            if (symbol == null || colour == null) {
+                Log.i(R.string.file_load_symbols_error);
+                return null;
+            }
+            return new SymbolDetail(location, symbol, colour, size, angle);
+        }
+
+        private CrossSectionDetail readCrossSectionDetail(DataInputStream input)
+                throws IOException {
+            String stationId = readString(input);
+            Coord2D position = readCoord2D(input);
+            float angle = input.readFloat();
+            Sketch subSketch = new Sketch();
+            readSections(input, subSketch, false);
+
+            Station station = survey.getStationByName(stationId);
+            return new CrossSectionDetail(new CrossSection(station, angle), position, subSketch);
+        }
+
+        private Colour getColour(long index) {
+            return index < colours.size() ? colours.get((int) index) : null;
+        }
+    }
+
+    private static <T> void add(List<T> list, T detail) {
+        if (detail != null) {
+            list.add(detail);
+        }
+    }
+
+    private static <T extends Enum<T>> T toEnum(Class<T> type, String name) {
+        try {
+            return Enum.valueOf(type, name);
+        } catch (IllegalArgumentException exception) {
+            return null; // details using it are skipped
+        }
+    }
+
+    private static Coord2D readCoord2D(DataInputStream input) throws IOException {
+        float x = unquantise(readSignedVarint(input));
+        float y = unquantise(readSignedVarint(input));
+        return new Coord2D(x, y);
+    }
+
+    private static void writeString(DataOutputStream output, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarint(output, bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[(int) readVarint(input)];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarint(DataOutputStream output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    private static long readVarint(DataInputStream input) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in binary sketch");
+    }
+
+    private static void writeSignedVarint(DataOutputStream output, long value)
+            throws IOException {
+        writeVarint(output, (value << 1) ^ (value >> 63));
+    }
+
+    private static long readSignedVarint(DataInputStream input) throws IOException {
+        long value = readVarint(input);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void skipFully(DataInputStream input, long length) throws IOException {
+        while (length > 0) {
+            long skipped = input.skip(length);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            length -= skipped;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package org.hwyl.sexytopo.control.io.basic;
+
+import static org.hwyl.sexytopo.control.io.basic.SketchJsonTranslater.ANGLE_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SketchJsonTranslater.COLOUR_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SketchJsonTranslater.CROSS_SECTIONS_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SketchJsonTranslater.CROSS_SECTION_SCALE_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SketchJsonTranslater.LABELS_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SketchJsonTranslater.PATHS_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SketchJsonTranslater.POINTS_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SketchJsonTranslater.POSITION_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SketchJsonTranslater.SETTINGS_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SketchJsonTranslater.SIZE_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SketchJsonTranslater.SKETCH_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SketchJsonTranslater.STATION_ID_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SketchJsonTranslater.SYMBOLS_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SketchJsonTranslater.SYMBOL_ID_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SketchJsonTranslater.TEXT_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SketchJsonTranslater.X_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SketchJsonTranslater.Y_TAG;
+
+import android.util.JsonReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.hwyl.sexytopo.R;
+import org.hwyl.sexytopo.control.Log;
+import org.hwyl.sexytopo.model.graph.Coord2D;
+import org.hwyl.sexytopo.model.sketch.Colour;
+import org.hwyl.sexytopo.model.sketch.CrossSection;
+import org.hwyl.sexytopo.model.sketch.CrossSectionDetail;
+import org.hwyl.sexytopo.model.sketch.PathDetail;
+import org.hwyl.sexytopo.model.sketch.Sketch;
+import org.hwyl.sexytopo.model.sketch.Symbol;
+import org.hwyl.sexytopo.model.sketch.SymbolDetail;
+import org.hwyl.sexytopo.model.sketch.TextDetail;
+import org.hwyl.sexytopo.model.survey.Station;
+import org.hwyl.sexytopo.model.survey.Survey;
+
+/**
+ * Reads a sketch file a token at a time, building paths and other details as they arrive rather
+ * than parsing the whole file into a JSON tree first. Reads the same files as
+ * SketchJsonTranslater.translate(); a detail that can't be understood is logged and skipped.
+ */
+public class SketchJsonReader {
+
+    public static Sketch read(Survey survey, InputStream inputStream) throws IOException {
+        JsonReader reader = JsonStreams.newReader(inputStream);
+        return readSketch(reader, survey, true);
+    }
+
+    private static Sketch readSketch(JsonReader reader, Survey survey, boolean isTopLevel)
+            throws IOException {
+
+        Sketch sketch = new Sketch();
+        List<PathDetail> pathDetails = new ArrayList<>();
+        List<SymbolDetail> symbolDetails = new ArrayList<>();
+        List<TextDetail> textDetails = new ArrayList<>();
+        List<CrossSectionDetail> crossSectionDetails = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals(PATHS_TAG)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    add(pathDetails, readPathDetail(reader));
+                }
+                reader.endArray();
+            } else if (name.equals(SYMBOLS_TAG)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    add(symbolDetails, readSymbolDetail(reader));
+                }
+                reader.endArray();
+            } else if (name.equals(LABELS_TAG)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    add(textDetails, readTextDetail(reader));
+                }
+                reader.endArray();
+            } else if (isTopLevel && name.equals(CROSS_SECTIONS_TAG)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    add(crossSectionDetails, readCrossSectionDetail(reader, survey));
+                }
+                reader.endArray();
+            } else if (isTopLevel && name.equals(SETTINGS_TAG)) {
+                readSettings(reader, sketch);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        sketch.setPathDetails(pathDetails);
+        sketch.setSymbolDetails(symbolDetails);
+        sketch.setTextDetails(textDetails);
+        if (isTopLevel) {
+            sketch.setCrossSectionDetails(crossSectionDetails);
+        }
+
+        return sketch;
+    }
+
+    private static <T> void add(List<T> list, T detail) {
+        if (detail != null) {
+            list.add(detail);
+        }
+    }
+
+    private static PathDetail readPathDetail(JsonReader reader) throws IOException {
+
+        String colourName = null;
+        List<Coord2D> path = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals(COLOUR_TAG)) {
+                colourName = JsonStreams.nextString(reader);
+            } else if (name.equals(POINTS_TAG)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    path.add(readCoord2D(reader));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        try {
+            Colour colour = Colour.valueOf(colourName);
+            if (path.contains(null)) {
+                throw new IllegalArgumentException("Path has an incomplete point");
+            }
+            return SketchJsonTranslater.toSimplifiedPathDetail(path, colour);
+        } catch (Exception exception) {
+            Log.e(R.string.file_load_sketch_paths_error, exception);
+            return null;
+        }
+    }
+
+    private static SymbolDetail readSymbolDetail(JsonReader reader) throws IOException {
+
+        Coord2D location = null;
+        String symbolName = null;
+        String colourName = null;
+        float size = 1;
+        float angle = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case POSITION_TAG:
+                    location = readCoord2D(reader);
+                    break;
+                case SYMBOL_ID_TAG:
+                    symbolName = JsonStreams.nextString(reader);
+                    break;
+                case COLOUR_TAG:
+                    colourName = JsonStreams.nextString(reader);
+                    break;
+                case SIZE_TAG:
+                    size = JsonStreams.nextFloat(reader);
+                    break;
+                case ANGLE_TAG:
+                    angle = JsonStreams.nextFloat(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        try {
+            Colour colour = Colour.valueOf(colourName);
+            Symbol symbol = Symbol.valueOf(symbolName);
+            if (location == null) {
+                throw new IllegalArgumentException("Symbol has no location");
+            }
+            return new SymbolDetail(location, symbol, colour, size, angle);
+        } catch (Exception exception) {
+            Log.i(R.string.file_load_symbols_error, exception);
+            return null;
+        }
+    }
+
+    private static TextDetail readTextDetail(JsonReader reader) throws IOException {
+
+        Coord2D location = null;
+        String text = null;
+        String colourName = null;
+        float size = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case POSITION_TAG:
+                    location = readCoord2D(reader);
+                    break;
+                case TEXT_TAG:
+                    text = JsonStreams.nextString(reader);
+                    break;
+                case COLOUR_TAG:
+                    colourName = JsonStreams.nextString(reader);
+                    break;
+                case SIZE_TAG:
+                    size = JsonStreams.nextFloat(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        try {
+            Colour colour = Colour.valueOf(colourName);
+            if (location == null || text == null) {
+                throw new IllegalArgumentException("Label has no location or text");
+            }
+            return new TextDetail(location, text, colour, size);
+        } catch (Exception exception) {
+            Log.e(R.string.file_load_sketch_labels_error, exception);
+            return null;
+        }
+    }
+
+    private static CrossSectionDetail readCrossSectionDetail(JsonReader reader, Survey survey)
+            throws IOException {
+
+        String stationId = null;
+        Coord2D position = null;
+        Float angle = null;
+        Sketch subSketch = new Sketch();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case STATION_ID_TAG:
+                    stationId = JsonStreams.nextString(reader);
+                    break;
+                case POSITION_TAG:
+                    position = readCoord2D(reader);
+                    break;
+                case ANGLE_TAG:
+                    angle = JsonStreams.nextFloat(reader);
+                    break;
+                case SKETCH_TAG:
+                    subSketch = readSketch(reader, survey, false);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (stationId == null || position == null || angle == null) {
+            Log.e(R.string.file_load_cross_sections_error);
+            return null;
+        }
+
+        Station station = survey.getStationByName(stationId);
+        return new CrossSectionDetail(new CrossSection(station, angle), position, subSketch);
+    }
+
+    private static void readSettings(JsonReader reader, Sketch sketch) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(CROSS_SECTION_SCALE_TAG)) {
+                sketch.setCrossSectionScale(JsonStreams.nextFloat(reader));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /** Returns null if either of the coordinates is missing. */
+    private static Coord2D readCoord2D(JsonReader reader) throws IOException {
+        Float x = null;
+        Float y = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals(X_TAG)) {
+                x = JsonStreams.nextFloat(reader);
+            } else if (name.equals(Y_TAG)) {
+                y = JsonStreams.nextFloat(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return (x == null || y == null) ? null : new Coord2D(x, y);
+    }
+}
@@ -1,7 +1,11 @@
 package org.hwyl.sexytopo.control.io.basic;
 
+import android.util.JsonWriter;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import org.hwyl.sexytopo.R;
 import org.hwyl.sexytopo.SexyTopoConstants;
 import org.hwyl.sexytopo.control.Log;
@@ -50,6 +54,36 @@ public class SketchJsonTranslater {
                 .toString(SexyTopoConstants.JSON_INDENT);
     }
 
+    /** Writes the same document as translate() straight to the stream, a token at a time. */
+    public static synchronized void write(
+            Sketch sketch,
+            Survey survey,
+            String versionName,
+            int versionCode,
+            OutputStream outputStream)
+            throws IOException {
+        JsonWriter writer = JsonStreams.newWriter(outputStream);
+        writer.beginObject();
+        JsonStreams.put(writer, JsonTranslaterConstants.VERSION_NAME_TAG, versionName);
+        writer.name(JsonTranslaterConstants.VERSION_CODE_TAG).value(versionCode);
+        JsonStreams.put(writer, JsonTranslaterConstants.SURVEY_NAME_TAG, survey.getName());
+
+        writeDetails(writer, sketch);
+
+        writer.name(CROSS_SECTIONS_TAG).beginArray();
+        for (CrossSectionDetail crossSectionDetail : sketch.getCrossSectionDetails()) {
+            write(writer, crossSectionDetail);
+        }
+        writer.endArray();
+
+        writer.name(SETTINGS_TAG).beginObject();
+        JsonStreams.put(writer, CROSS_SECTION_SCALE_TAG, sketch.getCrossSectionScale());
+        writer.endObject();
+
+        writer.endObject();
+        writer.flush();
+    }
+
     public static Sketch translate(Survey survey, String string) throws JSONException {
         JSONObject json = new JSONObject(string);
         return toSketch(survey, json);
@@ -181,6 +215,10 @@ public class SketchJsonTranslater {
             path.add(toCoord2D(object));
         }
 
+        return toSimplifiedPathDetail(path, colour);
+    }
+
+    static PathDetail toSimplifiedPathDetail(List<Coord2D> path, Colour colour) {
         PathDetail pathDetail = new PathDetail(path, colour);
 
         float epsilon = Space2DUtils.simplificationEpsilon(pathDetail);
@@ -256,13 +294,22 @@ public class SketchJsonTranslater {
 
     public static CrossSectionDetail toCrossSectionDetail(Survey survey, JSONObject json)
             throws JSONException {
+        String stationdId = json.getString(STATION_ID_TAG);
+        return toCrossSectionDetail(survey.getStationByName(stationdId), json);
+    }
+
+    public static CrossSectionDetail toCrossSectionDetail(
+            Map<String, Station> namesToStations, JSONObject json) throws JSONException {
+        String stationId = json.getString(STATION_ID_TAG);
+        return toCrossSectionDetail(namesToStations.get(stationId), json);
+    }
+
+    private static CrossSectionDetail toCrossSectionDetail(Station station, JSONObject json)
+            throws JSONException {
 
         Coord2D position = toCoord2D(json.getJSONObject(POSITION_TAG));
         float angle = (float) json.getDouble(ANGLE_TAG);
 
-        String stationdId = json.getString(STATION_ID_TAG);
-        Station station = survey.getStationByName(stationdId);
-
         Sketch subSketch = new Sketch();
         if (json.has(SKETCH_TAG)) {
             subSketch = toSubSketch(json.getJSONObject(SKETCH_TAG));
@@ -304,6 +351,86 @@ public class SketchJsonTranslater {
         return json;
     }
 
+    private static void writeDetails(JsonWriter writer, Sketch sketch) throws IOException {
+        writer.name(PATHS_TAG).beginArray();
+        for (PathDetail pathDetail : sketch.getPathDetails()) {
+            write(writer, pathDetail);
+        }
+        writer.endArray();
+
+        writer.name(LABELS_TAG).beginArray();
+        for (TextDetail textDetail : sketch.getTextDetails()) {
+            write(writer, textDetail);
+        }
+        writer.endArray();
+
+        writer.name(SYMBOLS_TAG).beginArray();
+        for (SymbolDetail symbolDetail : sketch.getSymbolDetails()) {
+            write(writer, symbolDetail);
+        }
+        writer.endArray();
+    }
+
+    private static void write(JsonWriter writer, PathDetail pathDetail) throws IOException {
+        writer.beginObject();
+        JsonStreams.put(writer, COLOUR_TAG, pathDetail.getColour().toString());
+        writer.name(POINTS_TAG).beginArray();
+        for (Coord2D coord : pathDetail.getPath()) {
+            write(writer, coord);
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    private static void write(JsonWriter writer, SymbolDetail symbolDetail) throws IOException {
+        writer.beginObject();
+        writer.name(POSITION_TAG);
+        write(writer, symbolDetail.getPosition());
+        JsonStreams.put(writer, SYMBOL_ID_TAG, symbolDetail.getSymbol().toString());
+        JsonStreams.put(writer, COLOUR_TAG, symbolDetail.getColour().toString());
+        JsonStreams.put(writer, SIZE_TAG, symbolDetail.getSize());
+        if (symbolDetail.getAngle() != 0) {
+            JsonStreams.put(writer, ANGLE_TAG, symbolDetail.getAngle());
+        }
+        writer.endObject();
+    }
+
+    private static void write(JsonWriter writer, TextDetail textDetail) throws IOException {
+        writer.beginObject();
+        writer.name(POSITION_TAG);
+        write(writer, textDetail.getPosition());
+        JsonStreams.put(writer, TEXT_TAG, textDetail.getText());
+        JsonStreams.put(writer, COLOUR_TAG, textDetail.getColour().toString());
+        JsonStreams.put(writer, SIZE_TAG, textDetail.getSize());
+        writer.endObject();
+    }
+
+    private static void write(JsonWriter writer, CrossSectionDetail crossSectionDetail)
+            throws IOException {
+        CrossSection crossSection = crossSectionDetail.getCrossSection();
+        writer.beginObject();
+        JsonStreams.put(writer, STATION_ID_TAG, crossSection.getStation().getName());
+        writer.name(POSITION_TAG);
+        write(writer, crossSectionDetail.getPosition());
+        JsonStreams.put(writer, ANGLE_TAG, crossSection.getAngle());
+
+        Sketch subSketch = crossSectionDetail.getSketch();
+        if (!isSketchEmpty(subSketch)) {
+            writer.name(SKETCH_TAG).beginObject();
+            writeDetails(writer, subSketch);
+            writer.endObject();
+        }
+
+        writer.endObject();
+    }
+
+    private static void write(JsonWriter writer, Coord2D coord) throws IOException {
+        writer.beginObject();
+        JsonStreams.put(writer, X_TAG, coord.x);
+        JsonStreams.put(writer, Y_TAG, coord.y);
+        writer.endObject();
+    }
+
     private static Sketch toSubSketch(JSONObject json) {
 
         Sketch sketch = new Sketch();
@@ -0,0 +1,457 @@
+package org.hwyl.sexytopo.control.io.basic;
+
+import static org.hwyl.sexytopo.control.io.basic.SurveyJsonTranslater.ACTIVE_STATION_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SurveyJsonTranslater.AZIMUTH_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SurveyJsonTranslater.COMMENT_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SurveyJsonTranslater.DATE_PATTERN;
+import static org.hwyl.sexytopo.control.io.basic.SurveyJsonTranslater.DESTINATION_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SurveyJsonTranslater.DIRECTION_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SurveyJsonTranslater.DISTANCE_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SurveyJsonTranslater.EXPLO_DATE_LINKED_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SurveyJsonTranslater.INCLINATION_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SurveyJsonTranslater.INDEX_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SurveyJsonTranslater.INSTRUMENT_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SurveyJsonTranslater.ONWARD_LEGS_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SurveyJsonTranslater.PROMOTED_FROM_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SurveyJsonTranslater.STATIONS_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SurveyJsonTranslater.STATION_NAME_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SurveyJsonTranslater.SURVEY_DATE_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SurveyJsonTranslater.TEAM_MEMBER_NAME_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SurveyJsonTranslater.TEAM_MEMBER_ROLE_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SurveyJsonTranslater.TEAM_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SurveyJsonTranslater.TRIP_DATE_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SurveyJsonTranslater.TRIP_TAG;
+import static org.hwyl.sexytopo.control.io.basic.SurveyJsonTranslater.WAS_SHOT_BACKWARDS_TAG;
+
+import android.util.JsonReader;
+import android.widget.Toast;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.hwyl.sexytopo.R;
+import org.hwyl.sexytopo.SexyTopoConstants;
+import org.hwyl.sexytopo.control.Log;
+import org.hwyl.sexytopo.control.SexyTopo;
+import org.hwyl.sexytopo.model.graph.Direction;
+import org.hwyl.sexytopo.model.survey.Leg;
+import org.hwyl.sexytopo.model.survey.Station;
+import org.hwyl.sexytopo.model.survey.Survey;
+import org.hwyl.sexytopo.model.survey.Trip;
+
+/**
+ * Reads a survey data file a token at a time, building stations and legs as they arrive rather
+ * than parsing the whole file into a JSON tree first. Reads the same files as
+ * SurveyJsonTranslater.populateSurvey() and is just as forgiving of bad stations and legs.
+ */
+public class SurveyJsonReader {
+
+    private final Survey survey;
+
+    // Legs can point to stations further on in the file, so stations are created when first
+    // mentioned and filled in when their own entry turns up
+    private final Map<String, Station> namesToStations = new HashMap<>();
+    private final Set<Station> readStations = new HashSet<>();
+    private final List<PendingLeg> pendingLegs = new ArrayList<>();
+    private Station firstStation = null;
+    private String activeStationName = null;
+
+    private boolean errors = false; // whether any partial errors were encountered
+
+    private SurveyJsonReader(Survey survey) {
+        this.survey = survey;
+    }
+
+    public static Survey read(Survey survey, InputStream inputStream) throws IOException {
+        SurveyJsonReader surveyReader = new SurveyJsonReader(survey);
+        surveyReader.read(JsonStreams.newReader(inputStream));
+        return survey;
+    }
+
+    private void read(JsonReader reader) throws IOException {
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals(STATIONS_TAG)) {
+                try {
+                    readStations(reader);
+                } catch (IllegalStateException exception) {
+                    // The file isn't shaped as expected; keep whatever we managed to read
+                    Log.e(R.string.file_load_survey_stations_error, exception);
+                    errors = true;
+                    break;
+                }
+            } else if (name.equals(TRIP_TAG)) {
+                readTrip(reader);
+            } else if (name.equals(ACTIVE_STATION_TAG)) {
+                activeStationName = JsonStreams.nextString(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+
+        addLegsToSurvey();
+
+        if (activeStationName != null) {
+            Station activeStation = survey.getStationByName(activeStationName);
+            if (activeStation != null) {
+                survey.setActiveStation(activeStation);
+            }
+        }
+
+        if (errors) {
+            String message = "Partial errors encountered; survey load was incomplete";
+            Toast.makeText(SexyTopo.context, message, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void readStations(JsonReader reader) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            readStation(reader);
+        }
+        reader.endArray();
+    }
+
+    private void readStation(JsonReader reader) throws IOException {
+
+        String name = null;
+        String comment = null;
+        String direction = null;
+        List<PendingLeg> legs = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case STATION_NAME_TAG:
+                    name = JsonStreams.nextString(reader);
+                    break;
+                case COMMENT_TAG:
+                    comment = JsonStreams.nextString(reader);
+                    break;
+                case DIRECTION_TAG:
+                    direction = JsonStreams.nextString(reader);
+                    break;
+                case ONWARD_LEGS_TAG:
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        PendingLeg leg = readLeg(reader);
+                        if (leg != null) {
+                            legs.add(leg);
+                        }
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (name == null) {
+            Log.e("Error loading a station with no name; skipping");
+            errors = true;
+            return;
+        }
+
+        Station station = getStation(name);
+
+        if (readStations.contains(station)) {
+            // Any legs from the duplicate still hang off the first station with that name
+            Log.e("Found duplicate station " + name + "; skipping");
+            errors = true;
+        } else {
+            readStations.add(station);
+            if (comment != null) {
+                station.setComment(comment);
+            }
+            try {
+                station.setExtendedElevationDirection(Direction.valueOf(direction.toUpperCase()));
+            } catch (Exception ignore) {
+                // not ideal but not the end of the world; we'd probably prefer to have our data
+            }
+            if (firstStation == null) {
+                firstStation = station;
+            }
+        }
+
+        for (PendingLeg leg : legs) {
+            leg.from = station;
+            pendingLegs.add(leg);
+        }
+    }
+
+    /** Returns null (after logging) if the leg is missing anything it needs. */
+    private PendingLeg readLeg(JsonReader reader) throws IOException {
+
+        Float distance = null;
+        Float azimuth = null;
+        Float inclination = null;
+        Boolean wasShotBackwards = null;
+        String destinationName = null;
+        String comment = "";
+        Integer index = null;
+        List<Leg> promotedFrom = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case DISTANCE_TAG:
+                    distance = JsonStreams.nextFloat(reader);
+                    break;
+                case AZIMUTH_TAG:
+                    azimuth = JsonStreams.nextFloat(reader);
+                    break;
+                case INCLINATION_TAG:
+                    inclination = JsonStreams.nextFloat(reader);
+                    break;
+                case WAS_SHOT_BACKWARDS_TAG:
+                    wasShotBackwards = reader.nextBoolean();
+                    break;
+                case DESTINATION_TAG:
+                    destinationName = JsonStreams.nextString(reader);
+                    break;
+                case COMMENT_TAG:
+                    comment = JsonStreams.nextString(reader);
+                    break;
+                case INDEX_TAG:
+                    index = reader.nextInt();
+                    break;
+                case PROMOTED_FROM_TAG:
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        PendingLeg promoted = readLeg(reader);
+                        if (promoted != null) {
+                            promotedFrom.add(promoted.leg);
+                        }
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (distance == null
+                || azimuth == null
+                || inclination == null
+                || wasShotBackwards == null
+                || destinationName == null) {
+            Log.e("Error loading a leg with missing fields; skipping");
+            errors = true;
+            return null;
+        }
+
+        Leg leg;
+        if (destinationName.equals(SexyTopoConstants.BLANK_STATION_NAME)) {
+            leg = new Leg(distance, azimuth, inclination, wasShotBackwards);
+        } else {
+            Station destination = getStation(destinationName);
+            leg =
+                    new Leg(
+                            distance,
+                            azimuth,
+                            inclination,
+                            destination,
+                            promotedFrom.toArray(new Leg[] {}),
+                            wasShotBackwards);
+        }
+        leg.setComment(comment == null ? "" : comment);
+
+        return new PendingLeg(leg, index);
+    }
+
+    private void readTrip(JsonReader reader) throws IOException {
+
+        String surveyDateText = null;
+        String tripDateText = null;
+        boolean exploDateLinked = true;
+        String comments = null;
+        String instrument = "";
+        List<Trip.TeamEntry> team = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case SURVEY_DATE_TAG:
+                    surveyDateText = JsonStreams.nextString(reader);
+                    break;
+                case TRIP_DATE_TAG:
+                    tripDateText = JsonStreams.nextString(reader);
+                    break;
+                case EXPLO_DATE_LINKED_TAG:
+                    exploDateLinked = reader.nextBoolean();
+                    break;
+                case COMMENT_TAG:
+                    comments = JsonStreams.nextString(reader);
+                    break;
+                case INSTRUMENT_TAG:
+                    instrument = JsonStreams.nextString(reader);
+                    break;
+                case TEAM_TAG:
+                    team = readTeam(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        try {
+            DateFormat dateFormat = new SimpleDateFormat(DATE_PATTERN);
+
+            // Backwards compat: old files only have tripDate; new files have surveyDate
+            Date surveyDate;
+            Date explorationDate = null;
+            if (surveyDateText != null) {
+                surveyDate = dateFormat.parse(surveyDateText);
+                // tripDate in new files means exploration date
+                if (tripDateText != null) {
+                    explorationDate = dateFormat.parse(tripDateText);
+                }
+            } else {
+                // Old file format: tripDate is the survey date
+                surveyDate = dateFormat.parse(tripDateText);
+                exploDateLinked = true;
+            }
+
+            if (comments == null || team == null) {
+                throw new ParseException("Trip is missing comments or team", 0);
+            }
+
+            Trip trip = new Trip();
+            trip.setSurveyDate(surveyDate);
+            trip.setExplorationDate(explorationDate);
+            trip.setExplorationDateLinked(exploDateLinked);
+            trip.setTeam(team);
+            trip.setComments(comments);
+            trip.setInstrument(instrument == null ? "" : instrument);
+            survey.setTrip(trip);
+
+        } catch (Exception exception) {
+            Log.e(R.string.file_load_survey_trip_error, exception);
+            // carry on... unfortunate, but not *that* important
+        }
+    }
+
+    /** Returns null if any of the roles aren't recognised. */
+    private static List<Trip.TeamEntry> readTeam(JsonReader reader) throws IOException {
+        List<Trip.TeamEntry> team = new ArrayList<>();
+        boolean valid = true;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String name = null;
+            List<Trip.Role> roles = new ArrayList<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if (field.equals(TEAM_MEMBER_NAME_TAG)) {
+                    name = JsonStreams.nextString(reader);
+                } else if (field.equals(TEAM_MEMBER_ROLE_TAG)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        try {
+                            roles.add(Trip.Role.valueOf(reader.nextString()));
+                        } catch (IllegalArgumentException exception) {
+                            valid = false;
+                        }
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            team.add(new Trip.TeamEntry(name, roles));
+        }
+        reader.endArray();
+        return valid ? team : null;
+    }
+
+    private Station getStation(String name) {
+        Station station = namesToStations.get(name);
+        if (station == null) {
+            station = new Station(name);
+            namesToStations.put(name, station);
+        }
+        return station;
+    }
+
+    private void addLegsToSurvey() {
+
+        if (firstStation != null) {
+            survey.setOrigin(firstStation);
+        }
+
+        Map<Integer, Leg> indexToLegs = new TreeMap<>();
+        List<Leg> unindexedLegs = new ArrayList<>();
+        Set<Station> connectedDestinations = new HashSet<>();
+
+        for (PendingLeg pendingLeg : pendingLegs) {
+            Leg leg = pendingLeg.leg;
+
+            if (leg.hasDestination()) {
+                Station destination = leg.getDestination();
+                if (!readStations.contains(destination)) {
+                    Log.e(
+                            "Survey file corrupted: station "
+                                    + destination.getName()
+                                    + " missing; skipping leg");
+                    errors = true;
+                    continue;
+                } else if (connectedDestinations.contains(destination)) {
+                    Log.e(
+                            "Duplicate connection found for "
+                                    + destination.getName()
+                                    + "; skipping leg");
+                    errors = true;
+                    continue;
+                }
+                connectedDestinations.add(destination);
+
+                if (destination == survey.getOrigin()) {
+                    survey.setOrigin(pendingLeg.from);
+                }
+            }
+
+            if (pendingLeg.index != null) {
+                indexToLegs.put(pendingLeg.index, leg);
+            } else {
+                unindexedLegs.add(leg);
+            }
+            pendingLeg.from.addOnwardLeg(leg);
+        }
+
+        for (Leg leg : unindexedLegs) {
+            survey.addLegRecord(leg);
+        }
+
+        for (Leg leg : indexToLegs.values()) {
+            survey.addLegRecord(leg);
+        }
+
+        survey.checkSurveyIntegrity();
+    }
+
+    private static class PendingLeg {
+        private final Leg leg;
+        private final Integer index;
+        private Station from;
+
+        private PendingLeg(Leg leg, Integer index) {
+            this.leg = leg;
+            this.index = index;
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package org.hwyl.sexytopo.control.io.basic;
 
+import android.util.JsonWriter;
 import android.widget.Toast;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -60,6 +63,43 @@ public class SurveyJsonTranslater {
         return toJson(survey, versionName, versionCode).toString(SexyTopoConstants.JSON_INDENT);
     }
 
+    /**
+     * Writes the same document as toText() straight to the stream, a token at a time, so saving
+     * doesn't need the whole survey held in memory as a JSON tree and then again as a string.
+     */
+    public static void write(
+            Survey survey, String versionName, int versionCode, OutputStream outputStream)
+            throws IOException {
+        JsonWriter writer = JsonStreams.newWriter(outputStream);
+        writer.beginObject();
+        JsonStreams.put(writer, JsonTranslaterConstants.VERSION_NAME_TAG, versionName);
+        writer.name(JsonTranslaterConstants.VERSION_CODE_TAG).value(versionCode);
+        JsonStreams.put(writer, JsonTranslaterConstants.SURVEY_NAME_TAG, survey.getName());
+
+        List<Leg> chronoList = survey.getAllLegsInChronoOrder();
+        Map<Leg, Integer> chronoIndices = new HashMap<>();
+        for (int i = 0; i < chronoList.size(); i++) {
+            chronoIndices.put(chronoList.get(i), i);
+        }
+
+        writer.name(STATIONS_TAG).beginArray();
+        write(writer, survey.getOrigin(), chronoIndices);
+        for (Leg leg : chronoList) {
+            if (leg.hasDestination()) {
+                write(writer, leg.getDestination(), chronoIndices);
+            }
+        }
+        writer.endArray();
+
+        if (survey.getTrip() != null) {
+            writer.name(TRIP_TAG);
+            write(writer, survey.getTrip());
+        }
+
+        writer.endObject();
+        writer.flush();
+    }
+
     public static void populateSurvey(Survey survey, String string)
             throws JSONException, ParseException {
         JSONObject json = new JSONObject(string);
@@ -148,6 +188,24 @@ public class SurveyJsonTranslater {
         return json;
     }
 
+    private static void write(JsonWriter writer, Station station, Map<Leg, Integer> chronoIndices)
+            throws IOException {
+        writer.beginObject();
+        JsonStreams.put(writer, STATION_NAME_TAG, station.getName());
+        String direction = station.getExtendedElevationDirection().toString().toLowerCase();
+        JsonStreams.put(writer, DIRECTION_TAG, direction);
+        JsonStreams.put(writer, COMMENT_TAG, station.getComment());
+
+        writer.name(ONWARD_LEGS_TAG).beginArray();
+        for (Leg leg : station.getOnwardLegs()) {
+            Integer index = chronoIndices.get(leg);
+            write(writer, leg, index == null ? -1 : index);
+        }
+        writer.endArray();
+
+        writer.endObject();
+    }
+
     public static void loadSurveyData(Survey survey, JSONArray json) throws JSONException {
 
         Map<String, Station> namesToStations = new HashMap<>();
@@ -275,6 +333,29 @@ public class SurveyJsonTranslater {
         return json;
     }
 
+    private static void write(JsonWriter writer, Leg leg, Integer index) throws IOException {
+        writer.beginObject();
+        JsonStreams.put(writer, DISTANCE_TAG, leg.getDistance());
+        JsonStreams.put(writer, AZIMUTH_TAG, leg.getAzimuth());
+        JsonStreams.put(writer, INCLINATION_TAG, leg.getInclination());
+        JsonStreams.put(writer, DESTINATION_TAG, leg.getDestination().getName());
+        writer.name(WAS_SHOT_BACKWARDS_TAG).value(leg.wasShotBackwards());
+        if (leg.hasComment()) {
+            JsonStreams.put(writer, COMMENT_TAG, leg.getComment());
+        }
+        if (index != null) {
+            writer.name(INDEX_TAG).value(index);
+        }
+
+        writer.name(PROMOTED_FROM_TAG).beginArray();
+        for (Leg promotedLeg : leg.getPromotedFrom()) {
+            write(writer, promotedLeg, null);
+        }
+        writer.endArray();
+
+        writer.endObject();
+    }
+
     public static JSONObject toJson(Trip trip) throws JSONException {
 
         JSONObject json = new JSONObject();
@@ -305,6 +386,34 @@ public class SurveyJsonTranslater {
         return json;
     }
 
+    private static void write(JsonWriter writer, Trip trip) throws IOException {
+        writer.beginObject();
+
+        DateFormat dateFormat = new SimpleDateFormat(DATE_PATTERN);
+        JsonStreams.put(writer, SURVEY_DATE_TAG, dateFormat.format(trip.getSurveyDate()));
+        if (trip.getExplorationDate() != null) {
+            JsonStreams.put(writer, TRIP_DATE_TAG, dateFormat.format(trip.getExplorationDate()));
+        }
+        writer.name(EXPLO_DATE_LINKED_TAG).value(trip.isExplorationDateLinked());
+        JsonStreams.put(writer, COMMENT_TAG, trip.getComments());
+        JsonStreams.put(writer, INSTRUMENT_TAG, trip.getInstrument());
+
+        writer.name(TEAM_TAG).beginArray();
+        for (Trip.TeamEntry teamEntry : trip.getTeam()) {
+            writer.beginObject();
+            JsonStreams.put(writer, TEAM_MEMBER_NAME_TAG, teamEntry.name);
+            writer.name(TEAM_MEMBER_ROLE_TAG).beginArray();
+            for (Trip.Role role : teamEntry.roles) {
+                writer.value(role.name());
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+        writer.endArray();
+
+        writer.endObject();
+    }
+
     public static Station toStation(JSONObject json) throws JSONException {
 
         String name = json.getString(STATION_NAME_TAG);
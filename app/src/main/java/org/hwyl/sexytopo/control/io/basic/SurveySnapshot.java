@@ -0,0 +1,152 @@
+package org.hwyl.sexytopo.control.io.basic;
+
+import java.util.List;
+import org.hwyl.sexytopo.control.io.SurveyFile;
+import org.hwyl.sexytopo.model.graph.Projection2D;
+import org.hwyl.sexytopo.model.sketch.Sketch;
+import org.hwyl.sexytopo.model.survey.Survey;
+
+/**
+ * A survey as it was at one moment, so it can be saved on another thread while shots keep coming
+ * in and the user keeps sketching. Taking one doesn't lock anything, so it should be done on the
+ * thread that changes the survey; the slow part (writing the files) can then happen anywhere.
+ *
+ * <p>Saving from a snapshot only marks the survey as saved if it hasn't changed since, otherwise
+ * the changes made in the meantime would never be written. That's done by markWritten(), back on
+ * the thread that changes the survey, so nothing can change between checking and marking.
+ */
+public class SurveySnapshot {
+
+    private final Survey survey;
+    private final Survey copy;
+    private final AutosaveJournal.Snapshot journalSnapshot;
+    private final List<SurveyFile.SurveyFileType> fileTypesToSave;
+    private final List<SurveyFile.SurveyFileType> fileTypesToAutosave;
+
+    private final int changeCount;
+    private final Sketch planSketch;
+    private final int planChangeCount;
+    private final Sketch elevationSketch;
+    private final int elevationChangeCount;
+
+    // What has been written from this snapshot, for markWritten() to pass on to the survey
+    private volatile boolean isSaved = false;
+    private volatile boolean isFullyAutosaved = false;
+    private volatile boolean isJournaled = false;
+    private volatile boolean isJournalMetadataWritten = false;
+
+    public SurveySnapshot(Survey survey) {
+        this.survey = survey;
+        copy = survey.createSnapshot();
+        journalSnapshot = AutosaveJournal.takeSnapshot(survey);
+        fileTypesToSave = Saver.getFileTypesToSave(survey);
+        fileTypesToAutosave = Saver.getFileTypesToAutosave(survey);
+
+        changeCount = survey.getChangeCount();
+        planSketch = getLoadedSketch(survey, Projection2D.PLAN);
+        planChangeCount = getChangeCount(survey, Projection2D.PLAN, planSketch);
+        elevationSketch = getLoadedSketch(survey, Projection2D.EXTENDED_ELEVATION);
+        elevationChangeCount =
+                getChangeCount(survey, Projection2D.EXTENDED_ELEVATION, elevationSketch);
+    }
+
+    private static Sketch getLoadedSketch(Survey survey, Projection2D projection) {
+        return survey.isSketchLoaded(projection) ? survey.getSketch(projection) : null;
+    }
+
+    private static int getChangeCount(Survey survey, Projection2D projection, Sketch sketch) {
+        if (sketch == null) {
+            // A sketch loaded later on starts again from nothing, but being marked as unsaved
+            // when it's loaded counts as a change
+            return survey.isSketchSaved(projection) ? 0 : 1;
+        } else {
+            return sketch.getChangeCount();
+        }
+    }
+
+    /** The live survey, whose flags get updated once it has been saved. */
+    public Survey getSurvey() {
+        return survey;
+    }
+
+    /** The copy to write out. */
+    public Survey getCopy() {
+        return copy;
+    }
+
+    AutosaveJournal.Snapshot getJournalSnapshot() {
+        return journalSnapshot;
+    }
+
+    List<SurveyFile.SurveyFileType> getFileTypesToSave() {
+        return fileTypesToSave;
+    }
+
+    List<SurveyFile.SurveyFileType> getFileTypesToAutosave() {
+        return fileTypesToAutosave;
+    }
+
+    void recordSave() {
+        isSaved = true;
+    }
+
+    void recordFullAutosave() {
+        isFullyAutosaved = true;
+    }
+
+    void recordJournalAppend(boolean isMetadataWritten) {
+        isJournaled = true;
+        isJournalMetadataWritten = isMetadataWritten;
+    }
+
+    /**
+     * Marks the survey as saved or autosaved, as far as this snapshot has been written, unless it
+     * has changed since the snapshot was taken. Call it on the thread that changes the survey once
+     * the writing has finished.
+     */
+    public void markWritten() {
+        if (!isCurrent()) {
+            return;
+        }
+        if (isSaved) {
+            survey.setSaved(true);
+        } else if (isFullyAutosaved) {
+            survey.setDataAutosaved(true);
+            survey.setMetadataAutosaved(true);
+            setSketchAutosaved(Projection2D.PLAN);
+            setSketchAutosaved(Projection2D.EXTENDED_ELEVATION);
+            survey.setAutosaved(true);
+        } else if (isJournaled) {
+            if (isJournalMetadataWritten) {
+                survey.setMetadataAutosaved(true);
+            }
+            survey.setAutosaved(true);
+        }
+    }
+
+    private void setSketchAutosaved(Projection2D projection) {
+        if (survey.isSketchLoaded(projection)) {
+            survey.getSketch(projection).setAutosaved(true);
+        }
+    }
+
+    /** Whether the survey is still the same as when the snapshot was taken. */
+    public boolean isCurrent() {
+        return survey.getChangeCount() == changeCount
+                && isSameSketch(Projection2D.PLAN, planSketch, planChangeCount)
+                && isSameSketch(
+                        Projection2D.EXTENDED_ELEVATION, elevationSketch, elevationChangeCount);
+    }
+
+    private boolean isSameSketch(Projection2D projection, Sketch sketch, int sketchChangeCount) {
+        Sketch now = getLoadedSketch(survey, projection);
+        if (now == null) {
+            return sketch == null;
+        } else if (sketch == null) {
+            // Loaded since, which doesn't change it, but drawing on it afterwards does
+            return now.getChangeCount() == sketchChangeCount;
+        } else {
+            return now == sketch && now.getChangeCount() == sketchChangeCount;
+        }
+    }
+}
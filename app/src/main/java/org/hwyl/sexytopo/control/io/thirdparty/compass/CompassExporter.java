@@ -9,6 +9,7 @@ import java.util.Locale;
 import org.hwyl.sexytopo.R;
 import org.hwyl.sexytopo.control.io.translation.Experimental;
 import org.hwyl.sexytopo.control.io.translation.SingleFileExporter;
+import org.hwyl.sexytopo.control.util.FixedPointFormatter;
 import org.hwyl.sexytopo.control.util.GraphToListTranslator;
 import org.hwyl.sexytopo.model.survey.Leg;
 import org.hwyl.sexytopo.model.survey.Station;
@@ -21,7 +22,6 @@ import org.hwyl.sexytopo.model.survey.Survey;
  */
 public class CompassExporter extends SingleFileExporter implements Experimental {
 
-    private static final DateFormat dateFormat = new SimpleDateFormat("MM dd yyyy");
     private static final GraphToListTranslator graphToListTranslator = new GraphToListTranslator();
     private Station currentFrom;
     private int splayCount;
@@ -38,6 +38,7 @@ public class CompassExporter extends SingleFileExporter implements Experimental
         List<GraphToListTranslator.SurveyListEntry> data =
                 graphToListTranslator.toChronoListOfSurveyListEntries(survey);
         Date date = survey.getTrip() != null ? survey.getTrip().getSurveyDate() : new Date();
+        DateFormat dateFormat = new SimpleDateFormat("MM dd yyyy");
         String surveyDate = dateFormat.format(date);
 
         StringBuilder sb = new StringBuilder(1024);
@@ -62,9 +63,10 @@ public class CompassExporter extends SingleFileExporter implements Experimental
             double azm = leg.getAzimuth();
             double inc = leg.getInclination();
 
-            sb.append(
-                    String.format(
-                            Locale.US, "%s\t%s\t%.2f\t%.2f\t%.2f\t", from, to, dist, azm, inc));
+            sb.append(from).append('\t').append(to).append('\t');
+            FixedPointFormatter.append(sb, dist, 2).append('\t');
+            FixedPointFormatter.append(sb, azm, 2).append('\t');
+            FixedPointFormatter.append(sb, inc, 2).append('\t');
             sb.append("-9.99\t-9.99\t-9.99\t-9.99\t"); // LUDR, must be in that order
             if (!leg.hasDestination()) {
                 sb.append("#|L#"); // exclude splay shots from cave length calculations
@@ -2,9 +2,9 @@ package org.hwyl.sexytopo.control.io.thirdparty.pockettopo;
 
 import android.content.Context;
 import androidx.documentfile.provider.DocumentFile;
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.BufferUnderflowException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -27,10 +27,18 @@ import org.hwyl.sexytopo.model.survey.Trip;
  */
 public class PocketTopoImporter extends Importer {
 
+    // The smallest each record can be, in bytes, for checking counts against the file size
+    private static final int MIN_TRIP_SIZE = 8 + 1 + 2;
+    private static final int MIN_SHOT_SIZE = 4 + 4 + 4 + 2 + 2 + 1 + 1 + 2;
+    private static final int MIN_REFERENCE_SIZE = 4 + 8 + 8 + 4 + 1;
+    private static final int POINT_SIZE = 4 + 4;
+
     @Override
     public Survey toSurvey(Context context, DocumentFile file) throws Exception {
-        try (InputStream raw = context.getContentResolver().openInputStream(file.getUri());
-                BufferedInputStream in = new BufferedInputStream(raw)) {
+        try (InputStream in = context.getContentResolver().openInputStream(file.getUri())) {
+            if (in == null) {
+                throw new IOException("Failed to open input stream");
+            }
             return parseSurvey(in);
         }
     }
@@ -40,17 +48,31 @@ public class PocketTopoImporter extends Importer {
         return file.isFile() && file.getName() != null && file.getName().endsWith("top");
     }
 
-    static Survey parseSurvey(InputStream in) throws IOException {
-        readAndVerifyHeader(in);
-
-        List<TripData> trips = readTrips(in);
-        List<ShotData> shots = readShots(in);
-        List<ReferenceData> references = readReferences(in);
-
-        readMapping(in); // overview mapping - skip
-
-        DrawingData planDrawing = readDrawing(in);
-        DrawingData elevationDrawing = readDrawing(in);
+    public static Survey parseSurvey(InputStream in) throws IOException {
+        PocketTopoReader reader = PocketTopoReader.read(in);
+
+        List<TripData> trips;
+        List<ShotData> shots;
+        List<ReferenceData> references;
+        DrawingData planDrawing;
+        DrawingData elevationDrawing;
+        try {
+            readAndVerifyHeader(reader);
+
+            trips = readTrips(reader);
+            shots = readShots(reader);
+            references = readReferences(reader);
+
+            reader.startSection("overview mapping");
+            readMapping(reader); // overview mapping - skip
+
+            reader.startSection("plan drawing");
+            planDrawing = readDrawing(reader);
+            reader.startSection("elevation drawing");
+            elevationDrawing = readDrawing(reader);
+        } catch (BufferUnderflowException exception) {
+            throw reader.unexpectedEnd();
+        }
 
         Survey survey = buildSurvey(trips, shots, references);
 
@@ -94,16 +116,18 @@ public class PocketTopoImporter extends Importer {
 
     static class PolygonData {
         Colour colour;
-        List<Coord2D> points = new ArrayList<>();
+        int pointCount;
+        int[] coordinates; // x0, y0, x1, y1... in millimetres
     }
 
     // --- Header ---
 
-    private static void readAndVerifyHeader(InputStream in) throws IOException {
-        int t = PocketTopoFile.readByte(in);
-        int o = PocketTopoFile.readByte(in);
-        int p = PocketTopoFile.readByte(in);
-        int version = PocketTopoFile.readByte(in);
+    private static void readAndVerifyHeader(PocketTopoReader reader) throws IOException {
+        reader.require(4);
+        int t = reader.readByte();
+        int o = reader.readByte();
+        int p = reader.readByte();
+        int version = reader.readByte();
         if (t != 'T' || o != 'o' || p != 'p' || version != 3) {
             throw new IOException(
                     "Not a valid PocketTopo file (expected header 'Top\\3', got '"
@@ -118,78 +142,82 @@ public class PocketTopoImporter extends Importer {
 
     // --- Reading structured data ---
 
-    private static List<TripData> readTrips(InputStream in) throws IOException {
-        int count = PocketTopoFile.readInt32(in);
+    private static List<TripData> readTrips(PocketTopoReader reader) throws IOException {
+        reader.startSection("trips");
+        int count = reader.readCount(MIN_TRIP_SIZE);
         List<TripData> trips = new ArrayList<>(count);
         for (int i = 0; i < count; i++) {
             TripData trip = new TripData();
-            long ticks = PocketTopoFile.readInt64(in);
+            long ticks = reader.readInt64();
             trip.date = PocketTopoFile.ticksToDate(ticks);
-            trip.comment = PocketTopoFile.readString(in);
-            short rawDeclination = PocketTopoFile.readInt16(in);
+            trip.comment = reader.readString();
+            short rawDeclination = reader.readInt16();
             trip.declination = PocketTopoFile.azimuthToDegrees(rawDeclination);
             trips.add(trip);
         }
         return trips;
     }
 
-    private static List<ShotData> readShots(InputStream in) throws IOException {
-        int count = PocketTopoFile.readInt32(in);
+    private static List<ShotData> readShots(PocketTopoReader reader) throws IOException {
+        reader.startSection("shots");
+        int count = reader.readCount(MIN_SHOT_SIZE);
         List<ShotData> shots = new ArrayList<>(count);
         for (int i = 0; i < count; i++) {
             ShotData shot = new ShotData();
-            shot.from = PocketTopoFile.readId(in);
-            shot.to = PocketTopoFile.readId(in);
-            shot.distance = PocketTopoFile.distanceToMetres(PocketTopoFile.readInt32(in));
-            shot.azimuth = PocketTopoFile.azimuthToDegrees(PocketTopoFile.readInt16(in));
-            shot.inclination = PocketTopoFile.inclinationToDegrees(PocketTopoFile.readInt16(in));
-            int flags = PocketTopoFile.readByte(in);
+            shot.from = reader.readId();
+            shot.to = reader.readId();
+            shot.distance = PocketTopoFile.distanceToMetres(reader.readInt32());
+            shot.azimuth = PocketTopoFile.azimuthToDegrees(reader.readInt16());
+            shot.inclination = PocketTopoFile.inclinationToDegrees(reader.readInt16());
+            int flags = reader.readByte();
             shot.flipped = (flags & 1) != 0;
-            PocketTopoFile.readByte(in); // roll - not used
-            shot.tripIndex = PocketTopoFile.readInt16(in);
+            reader.readByte(); // roll - not used
+            shot.tripIndex = reader.readInt16();
             if ((flags & 2) != 0) {
-                shot.comment = PocketTopoFile.readString(in);
+                shot.comment = reader.readString();
             }
             shots.add(shot);
         }
         return shots;
     }
 
-    private static List<ReferenceData> readReferences(InputStream in) throws IOException {
-        int count = PocketTopoFile.readInt32(in);
+    private static List<ReferenceData> readReferences(PocketTopoReader reader)
+            throws IOException {
+        reader.startSection("references");
+        int count = reader.readCount(MIN_REFERENCE_SIZE);
         List<ReferenceData> refs = new ArrayList<>(count);
         for (int i = 0; i < count; i++) {
             ReferenceData ref = new ReferenceData();
-            ref.station = PocketTopoFile.readId(in);
-            ref.east = PocketTopoFile.readInt64(in);
-            ref.north = PocketTopoFile.readInt64(in);
-            ref.altitude = PocketTopoFile.readInt32(in);
-            ref.comment = PocketTopoFile.readString(in);
+            ref.station = reader.readId();
+            ref.east = reader.readInt64();
+            ref.north = reader.readInt64();
+            ref.altitude = reader.readInt32();
+            ref.comment = reader.readString();
             refs.add(ref);
         }
         return refs;
     }
 
-    private static void readMapping(InputStream in) throws IOException {
-        PocketTopoFile.readInt32(in); // origin x
-        PocketTopoFile.readInt32(in); // origin y
-        PocketTopoFile.readInt32(in); // scale
+    private static void readMapping(PocketTopoReader reader) {
+        reader.readInt32(); // origin x
+        reader.readInt32(); // origin y
+        reader.readInt32(); // scale
     }
 
-    private static DrawingData readDrawing(InputStream in) throws IOException {
+    private static DrawingData readDrawing(PocketTopoReader reader) throws IOException {
         DrawingData drawing = new DrawingData();
-        readMapping(in); // each drawing has its own mapping
+        readMapping(reader); // each drawing has its own mapping
         while (true) {
-            int elementId = PocketTopoFile.readByte(in);
+            int elementId = reader.readByte();
             if (elementId == 0) {
                 break;
             }
             switch (elementId) {
                 case 1: // PolygonElement
-                    drawing.polygons.add(readPolygon(in));
+                    drawing.polygons.add(readPolygon(reader));
                     break;
                 case 3: // XSectionElement
-                    skipXSection(in);
+                    skipXSection(reader);
                     break;
                 default:
                     throw new IOException("Unknown drawing element type: " + elementId);
@@ -198,25 +226,21 @@ public class PocketTopoImporter extends Importer {
         return drawing;
     }
 
-    private static PolygonData readPolygon(InputStream in) throws IOException {
+    private static PolygonData readPolygon(PocketTopoReader reader) throws IOException {
         PolygonData polygon = new PolygonData();
-        int pointCount = PocketTopoFile.readInt32(in);
-        for (int i = 0; i < pointCount; i++) {
-            int x = PocketTopoFile.readInt32(in);
-            int y = PocketTopoFile.readInt32(in);
-            // Convert mm to metres
-            polygon.points.add(new Coord2D(x / 1000.0f, y / 1000.0f));
-        }
-        int colourByte = PocketTopoFile.readByte(in);
+        polygon.pointCount = reader.readCount(POINT_SIZE);
+        polygon.coordinates = new int[polygon.pointCount * 2];
+        reader.readInt32s(polygon.coordinates, polygon.coordinates.length);
+        int colourByte = reader.readByte();
         polygon.colour = PocketTopoFile.topoColourToColour(colourByte);
         return polygon;
     }
 
-    private static void skipXSection(InputStream in) throws IOException {
-        PocketTopoFile.readInt32(in); // pos x
-        PocketTopoFile.readInt32(in); // pos y
-        PocketTopoFile.readId(in); // station
-        PocketTopoFile.readInt32(in); // direction
+    private static void skipXSection(PocketTopoReader reader) {
+        reader.readInt32(); // pos x
+        reader.readInt32(); // pos y
+        reader.readId(); // station
+        reader.readInt32(); // direction
     }
 
     // --- Survey building ---
@@ -401,17 +425,18 @@ public class PocketTopoImporter extends Importer {
         List<PathDetail> pathDetails = new ArrayList<>();
 
         for (PolygonData polygon : drawingData.polygons) {
-            if (polygon.points.isEmpty()) {
+            if (polygon.pointCount == 0) {
                 continue;
             }
 
             // PocketTopo .top uses screen-oriented coordinates (Y increases downward)
-            Coord2D first = polygon.points.get(0);
-            PathDetail pathDetail = new PathDetail(first, polygon.colour);
-            for (int i = 1; i < polygon.points.size(); i++) {
-                pathDetail.lineTo(polygon.points.get(i));
+            int[] coordinates = polygon.coordinates;
+            List<Coord2D> path = new ArrayList<>(polygon.pointCount);
+            for (int i = 0; i < coordinates.length; i += 2) {
+                // Convert mm to metres
+                path.add(new Coord2D(coordinates[i] / 1000.0f, coordinates[i + 1] / 1000.0f));
             }
-            pathDetails.add(pathDetail);
+            pathDetails.add(new PathDetail(path, polygon.colour));
         }
 
         sketch.setPathDetails(pathDetails);
@@ -0,0 +1,137 @@
+package org.hwyl.sexytopo.control.io.thirdparty.pockettopo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the primitives of a PocketTopo .top file (see PocketTopoFile) from memory. The whole file
+ * is read in at once - they're rarely more than a few megabytes - and decoded little-endian
+ * straight out of a ByteBuffer, with arrays such as a polygon's points decoded in one go.
+ *
+ * <p>The file is read in named sections. Counts, strings and arrays are checked against what's
+ * left of the file before they're read, and any other read past the end is reported as an
+ * IOException naming the section it was in.
+ */
+class PocketTopoReader {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int INT32_SIZE = 4;
+
+    private final ByteBuffer buffer;
+    private String section = "header";
+
+    PocketTopoReader(byte[] bytes, int length) {
+        buffer = ByteBuffer.wrap(bytes, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    static PocketTopoReader read(InputStream in) throws IOException {
+        // Read straight into one array, big enough for the whole file if the stream knows its
+        // size (the extra byte is so the end can be found without having to grow it)
+        byte[] bytes = new byte[Math.max(in.available() + 1, READ_BUFFER_SIZE)];
+        int length = 0;
+        while (true) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            int read = in.read(bytes, length, bytes.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return new PocketTopoReader(bytes, length);
+    }
+
+    void startSection(String section) {
+        this.section = section;
+    }
+
+    String getSection() {
+        return section;
+    }
+
+    IOException unexpectedEnd() {
+        return new IOException("Unexpected end of file reading " + section);
+    }
+
+    /** Checks there are at least this many bytes left before reading them. */
+    void require(long byteCount) throws IOException {
+        if (byteCount > buffer.remaining()) {
+            throw unexpectedEnd();
+        }
+    }
+
+    /**
+     * Reads how many records follow, each at least minRecordSize bytes long, and checks there's
+     * room for them so that a damaged file can't ask for a huge list.
+     */
+    int readCount(int minRecordSize) throws IOException {
+        int count = readInt32();
+        if (count < 0) {
+            throw new IOException("Invalid count " + count + " reading " + section);
+        }
+        require((long) count * minRecordSize);
+        return count;
+    }
+
+    int readByte() {
+        return buffer.get() & 0xFF;
+    }
+
+    short readInt16() {
+        return buffer.getShort();
+    }
+
+    int readInt32() {
+        return buffer.getInt();
+    }
+
+    long readInt64() {
+        return buffer.getLong();
+    }
+
+    /** Reads count 32-bit values into the start of the destination. */
+    void readInt32s(int[] destination, int count) throws IOException {
+        require((long) count * INT32_SIZE);
+        buffer.asIntBuffer().get(destination, 0, count);
+        buffer.position(buffer.position() + count * INT32_SIZE);
+    }
+
+    /** As PocketTopoFile.readString(), decoding the UTF-8 straight from the file's bytes. */
+    String readString() throws IOException {
+        int length = 0;
+        int shift = 0;
+        while (true) {
+            int b = readByte();
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+        }
+
+        if (length == 0) {
+            return "";
+        }
+
+        require(length & 0xFFFFFFFFL);
+        int position = buffer.position();
+        String string =
+                new String(
+                        buffer.array(),
+                        buffer.arrayOffset() + position,
+                        length,
+                        StandardCharsets.UTF_8);
+        buffer.position(position + length);
+        return string;
+    }
+
+    /** As PocketTopoFile.readId(). */
+    String readId() {
+        return PocketTopoFile.idToName(readInt32());
+    }
+}
@@ -4,11 +4,11 @@ import android.content.Context;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import org.hwyl.sexytopo.R;
 import org.hwyl.sexytopo.control.io.translation.Experimental;
 import org.hwyl.sexytopo.control.io.translation.SingleFileExporter;
+import org.hwyl.sexytopo.control.util.FixedPointFormatter;
 import org.hwyl.sexytopo.control.util.GraphToListTranslator;
 import org.hwyl.sexytopo.control.util.TextTools;
 import org.hwyl.sexytopo.model.graph.Coord2D;
@@ -21,7 +21,6 @@ import org.hwyl.sexytopo.model.survey.Leg;
 import org.hwyl.sexytopo.model.survey.Station;
 import org.hwyl.sexytopo.model.survey.Survey;
 import org.hwyl.sexytopo.model.survey.Trip;
-import org.hwyl.sexytopo.model.table.TableCol;
 
 public class PocketTopoTxtExporter extends SingleFileExporter implements Experimental {
 
@@ -43,9 +42,10 @@ public class PocketTopoTxtExporter extends SingleFileExporter implements Experim
 
         text += exportData(survey) + "\n";
 
-        text += exportPlan(survey) + "\n";
+        text += exportPlan(survey, getProjection(survey, Projection2D.PLAN)) + "\n";
 
-        text += exportExtendedElevation(survey);
+        Space<Coord2D> elevation = getProjection(survey, Projection2D.EXTENDED_ELEVATION);
+        text += exportExtendedElevation(survey, elevation);
 
         return text;
     }
@@ -66,16 +66,16 @@ public class PocketTopoTxtExporter extends SingleFileExporter implements Experim
         return builder.toString();
     }
 
-    public static String exportPlan(Survey survey) {
+    public static String exportPlan(Survey survey, Space<Coord2D> projection) {
         String plan = "PLAN\n";
-        plan += exportStationCoords(Projection2D.PLAN.project(survey)) + "\n";
+        plan += exportStationCoords(projection) + "\n";
         plan += exportSketch(survey.getPlanSketch()) + "\n";
         return plan;
     }
 
-    public static String exportExtendedElevation(Survey survey) {
+    public static String exportExtendedElevation(Survey survey, Space<Coord2D> projection) {
         String plan = "ELEVATION\n";
-        plan += exportStationCoords(Projection2D.EXTENDED_ELEVATION.project(survey)) + "\n";
+        plan += exportStationCoords(projection) + "\n";
         plan += exportSketch(survey.getElevationSketch()) + "\n";
         return plan;
     }
@@ -151,9 +151,9 @@ public class PocketTopoTxtExporter extends SingleFileExporter implements Experim
 
         formatField(builder, fromName);
         formatField(builder, toName);
-        formatField(builder, TableCol.DISTANCE.format(leg.getDistance(), Locale.UK));
-        formatField(builder, TableCol.AZIMUTH.format(leg.getAzimuth(), Locale.UK));
-        formatField(builder, TableCol.INCLINATION.format(leg.getInclination(), Locale.UK));
+        FixedPointFormatter.append(builder, leg.getDistance(), 3).append("\t");
+        FixedPointFormatter.append(builder, leg.getAzimuth(), 2).append("\t");
+        FixedPointFormatter.appendWithSign(builder, leg.getInclination(), 2).append("\t");
 
         if (leg.wasPromoted() || to.hasComment()) {
             builder.append("\t; ");
@@ -177,11 +177,11 @@ public class PocketTopoTxtExporter extends SingleFileExporter implements Experim
             } else {
                 builder.append(", ");
             }
-            builder.append(TableCol.DISTANCE.format(precursor.getDistance(), Locale.UK));
+            FixedPointFormatter.append(builder, precursor.getDistance(), 3);
             builder.append(" ");
-            builder.append(TableCol.AZIMUTH.format(precursor.getAzimuth(), Locale.UK));
+            FixedPointFormatter.append(builder, precursor.getAzimuth(), 2);
             builder.append(" ");
-            builder.append(TableCol.INCLINATION.format(precursor.getInclination(), Locale.UK));
+            FixedPointFormatter.appendWithSign(builder, precursor.getInclination(), 2);
         }
         builder.append("}");
     }
@@ -48,21 +48,29 @@ public class SexyTopoVersion {
             return null;
         }
         for (String line : text.split("\n")) {
-            String trimmed = line.trim();
-            if (!trimmed.startsWith("#") && !trimmed.startsWith(";")) {
-                continue;
-            }
-            Matcher matcher = VERSION_PATTERN.matcher(trimmed);
-            if (matcher.find()) {
-                return new SexyTopoVersion(
-                        Integer.parseInt(matcher.group(1)),
-                        Integer.parseInt(matcher.group(2)),
-                        Integer.parseInt(matcher.group(3)));
+            SexyTopoVersion version = extractFromLine(line.trim());
+            if (version != null) {
+                return version;
             }
         }
         return null;
     }
 
+    /** The version in a single trimmed line, if it's a comment with a SexyTopo token, or null. */
+    static SexyTopoVersion extractFromLine(String trimmed) {
+        if (!trimmed.startsWith("#") && !trimmed.startsWith(";")) {
+            return null;
+        }
+        Matcher matcher = VERSION_PATTERN.matcher(trimmed);
+        if (matcher.find()) {
+            return new SexyTopoVersion(
+                    Integer.parseInt(matcher.group(1)),
+                    Integer.parseInt(matcher.group(2)),
+                    Integer.parseInt(matcher.group(3)));
+        }
+        return null;
+    }
+
     /**
      * Returns {@code true} if this version is strictly greater than {@code other}.
      *
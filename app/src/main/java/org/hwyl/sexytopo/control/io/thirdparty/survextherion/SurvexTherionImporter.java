@@ -1,25 +1,71 @@
 package org.hwyl.sexytopo.control.io.thirdparty.survextherion;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import org.hwyl.sexytopo.SexyTopoConstants;
 import org.hwyl.sexytopo.control.Log;
+import org.hwyl.sexytopo.control.io.thirdparty.survextherion.SurvexTherionLexer.DataStyle;
+import org.hwyl.sexytopo.control.util.SurveyUpdater;
+import org.hwyl.sexytopo.model.graph.Direction;
 import org.hwyl.sexytopo.model.survey.Leg;
 import org.hwyl.sexytopo.model.survey.Station;
 import org.hwyl.sexytopo.model.survey.Survey;
 import org.hwyl.sexytopo.model.survey.Trip;
 
-/** Shared importer for Survex and Therion data. */
+/**
+ * Shared importer for Survex and Therion data.
+ *
+ * <p>A file is read in a single pass: a SurvexTherionLexer reads it a line at a time and works out
+ * which part of the file each line is in, and the line is handed straight to the parser for that
+ * part - the centreline, the passage data or the trip metadata - rather than each of them
+ * searching the whole text for its own lines.
+ */
 public class SurvexTherionImporter {
 
-    public static final Pattern COMMENT_INSTRUCTION_REGEX = Pattern.compile("([{].*?[}])");
+    /**
+     * Read a whole Survex (.svx) or Therion (.th) file: its centreline, passage comments, extended
+     * elevation directions (Therion only) and trip metadata. As always, only a Therion file's
+     * first centreline block is read.
+     *
+     * <p>Comments are put where the SexyTopo version that wrote the file would have had them:
+     * files with no version header (third-party) or written by 1.11.3+ have leg comments, and
+     * only files positively identified as 1.11.2 or earlier get the legacy station comments.
+     */
+    public static Survey parse(Reader reader, SurveyFormat format) throws Exception {
+        Survey survey = new Survey();
+        SinglePassParser parser = new SinglePassParser(survey, format);
+        parser.read(reader);
+
+        SexyTopoVersion version = parser.getVersion();
+        boolean useLegComments =
+                version == null || version.isAfter(SexyTopoVersion.LEG_COMMENTS_VERSION_CUTOFF);
+        parser.finish(useLegComments);
+
+        Trip trip = parser.getTrip();
+        if (trip != null) {
+            survey.setTrip(trip);
+        }
+        return survey;
+    }
+
+    /**
+     * Read the first centreline block of a Therion file into the survey, leaving out the trip
+     * metadata.
+     */
+    public static void parseTherionCentreline(
+            Reader reader, Survey survey, boolean useLegComments) throws Exception {
+        SinglePassParser parser = new SinglePassParser(survey, SurveyFormat.THERION);
+        parser.read(reader);
+        parser.finish(useLegComments);
+    }
 
     /**
      * Parse centreline data from Survex/Therion format.
@@ -56,192 +102,471 @@ public class SurvexTherionImporter {
      */
     public static void parseCentreline(String text, Survey survey, boolean useLegComments)
             throws Exception {
+        CentrelineParser parser = new CentrelineParser(survey);
+        SurvexTherionLexer lexer = new SurvexTherionLexer(new StringReader(text));
+        while (lexer.nextLine()) {
+            parser.addLine(lexer);
+        }
+        parser.finish(useLegComments);
+    }
+
+    /**
+     * Parse passage data section to extract station comments.
+     *
+     * <p>Supports:
+     *
+     * <ul>
+     *   <li>Therion: "data dimensions station left right up down ignoreall"
+     *   <li>Survex: "*data passage station left right up down ignoreall"
+     * </ul>
+     *
+     * @param text The full file text (may contain multiple sections)
+     * @param format the file format being parsed (SURVEX or THERION)
+     * @return Map of station name to passage comment
+     */
+    public static Map<String, String> parsePassageData(String text, SurveyFormat format)
+            throws IOException {
+        PassageDataParser parser = new PassageDataParser();
+        SurvexTherionLexer lexer = new SurvexTherionLexer(new StringReader(text), format);
+        while (lexer.nextLine()) {
+            if (!lexer.isDataCommand() && lexer.getDataStyle() == DataStyle.PASSAGE) {
+                parser.addLine(lexer);
+            }
+        }
+        return parser.getComments();
+    }
+
+    /**
+     * Merge passage data comments with existing station comments.
+     *
+     * <p>If a station has both a passage comment and a leg-line comment,
+     *
+     * <p>Format: <passage comment> :: <leg-line comment>
+     *
+     * @param survey The survey with stations
+     * @param passageComments Map of station name to passage comment
+     */
+    public static void mergePassageComments(Survey survey, Map<String, String> passageComments) {
+        for (Map.Entry<String, String> entry : passageComments.entrySet()) {
+            String stationName = entry.getKey();
+            try {
+                mergePassageComment(survey.getStationByName(stationName), entry.getValue());
+            } catch (Exception e) {
+                Log.e("Failed to merge passage comment for station " + stationName + ": " + e);
+            }
+        }
+    }
 
-        Map<String, Station> nameToStation = new HashMap<>();
+    private static void mergePassageComments(
+            CentrelineParser centreline, Map<String, String> passageComments) {
+        for (Map.Entry<String, String> entry : passageComments.entrySet()) {
+            mergePassageComment(centreline.getStation(entry.getKey()), entry.getValue());
+        }
+    }
 
-        String[] lines = text.split("\n");
-        for (int lineIndex = 0; lineIndex < lines.length; lineIndex++) {
-            String line = lines[lineIndex];
+    private static void mergePassageComment(Station station, String passageComment) {
+        if (station != null) {
+            String existingComment = station.getComment();
 
-            String trimmed = line.trim();
-            if (trimmed.equals("") || trimmed.startsWith("*")) {
-                continue;
+            if (existingComment == null || existingComment.trim().isEmpty()) {
+                // No existing comment, just use passage comment
+                station.setComment(passageComment);
+            } else {
+                // Both exist, combine with " :: " separator
+                // Format: passage comment :: leg-line comment
+                String combinedComment = passageComment + " :: " + existingComment;
+                station.setComment(combinedComment);
             }
+        }
+    }
+
+    public static Trip parseMetadata(String text, SurveyFormat format) throws IOException {
+        MetadataParser parser = new MetadataParser(format);
+        SurvexTherionLexer lexer = new SurvexTherionLexer(new StringReader(text));
+        while (lexer.nextLine()) {
+            parser.addLine(lexer.getLine());
+        }
+        return parser.getTrip();
+    }
+
+    /**
+     * Reads a whole file, handing each line to the parser for the part of the file it's in. Only
+     * the first centreline block of a Therion file is read; Survex files have no such block, so
+     * the whole file is read (Survex's own *extend commands are left to Survex, as they always
+     * have been).
+     */
+    private static class SinglePassParser {
+
+        private final SurveyFormat format;
+        private final CentrelineParser centreline;
+        private final PassageDataParser passageData = new PassageDataParser();
+        private final MetadataParser metadata;
+        private final List<List<String>> extendCommands = new ArrayList<>();
+        private SexyTopoVersion version;
+
+        SinglePassParser(Survey survey, SurveyFormat format) {
+            this.format = format;
+            this.centreline = new CentrelineParser(survey);
+            this.metadata = new MetadataParser(format);
+        }
 
-            // Skip pure comment lines (but not lines with data and comments)
-            if (trimmed.startsWith(";") || trimmed.startsWith("#")) {
-                // Don't skip if it looks like commented new lines promoted leg
-                String[] parts = trimmed.substring(1).trim().split("\\s+");
-                if (parts.length < 5) {
-                    continue; // Just a comment, skip it
+        void read(Reader reader) throws Exception {
+            SurvexTherionLexer lexer = new SurvexTherionLexer(reader, format);
+            while (lexer.nextLine()) {
+                if (version == null && lexer.isComment()) {
+                    version = SexyTopoVersion.extractFromLine(lexer.getLine());
+                }
+                metadata.addLine(lexer.getLine());
+
+                if (lexer.isInCentreline()
+                        && lexer.getCentrelineCount() <= 1
+                        && !lexer.isDataCommand()) {
+                    addCentrelineLine(lexer);
                 }
-                // Might be commented new lines promoted leg, let it fall through
-                continue;
             }
 
-            try {
-                String[] allTokens = trimmed.split("\\s+");
+            if (format == SurveyFormat.THERION && lexer.getCentrelineCount() == 0) {
+                throw new Exception("Failed to find opening block tag centreline");
+            }
+        }
+
+        private void addCentrelineLine(SurvexTherionLexer lexer) throws Exception {
+            DataStyle dataStyle = lexer.getDataStyle();
+            if (dataStyle == DataStyle.PASSAGE) {
+                passageData.addLine(lexer);
+            }
 
-                // A valid leg line must have at least 5 tokens:
-                // from to distance azimuth inclination
-                if (allTokens.length < 5) {
-                    continue;
+            if (format == SurveyFormat.SURVEX) {
+                if (dataStyle == DataStyle.NORMAL) {
+                    centreline.addLine(lexer);
                 }
+                return;
+            }
 
-                String[] legFields = Arrays.copyOfRange(allTokens, 0, 5);
-
-                // Any tokens after the 5 leg fields form the comment tail.
-                // The tail may optionally start with a comment character (# or ;) which is
-                // stripped — both "1 2 3.0 45.0 0.0 # My Chamber" and
-                // "1 2 3.0 45.0 0.0 My Chamber" are valid and produce the same comment.
-                String comment = "";
-                if (allTokens.length > 5) {
-                    String tail =
-                            String.join(" ", Arrays.copyOfRange(allTokens, 5, allTokens.length));
-                    if (tail.startsWith(";") || tail.startsWith("#")) {
-                        tail = tail.substring(1).trim();
+            // Therion's centreline has never seen blank lines, so promoted-leg lines can follow
+            // their leg after one; extend commands can be anywhere in the block.
+            if (lexer.isBlank()) {
+                return;
+            } else if (lexer.getLine().startsWith("extend")) {
+                extendCommands.add(new ArrayList<>(lexer.getTokens()));
+            } else if (dataStyle == DataStyle.NORMAL) {
+                centreline.addLine(lexer);
+            }
+        }
+
+        SexyTopoVersion getVersion() {
+            return version;
+        }
+
+        Trip getTrip() {
+            return metadata.getTrip();
+        }
+
+        void finish(boolean useLegComments) throws Exception {
+            centreline.finish(useLegComments);
+            applyExtendCommands();
+            mergePassageComments(centreline, passageData.getComments());
+        }
+
+        private void applyExtendCommands() {
+            try {
+                for (List<String> tokens : extendCommands) {
+                    // extend <direction> <station>
+                    String directionName = tokens.get(1);
+                    if (directionName.equals("start")) {
+                        continue;
                     }
-                    comment = tail;
-                }
+                    Direction direction = Direction.valueOf(directionName.toUpperCase());
 
-                // Check for commented new lines promoted legs in subsequent lines
-                List<Leg> commentedNewLineLegs =
-                        parseCommentedNewLinePromotedLegs(
-                                lines, lineIndex, legFields[0], legFields[1], useLegComments);
+                    String stationName = tokens.get(2);
+                    Station station = centreline.getStation(stationName);
+                    if (station == null) {
+                        Log.e("extend: station " + stationName + " not found");
+                        continue;
+                    }
 
-                addLegToSurvey(
-                        survey,
-                        nameToStation,
-                        legFields,
-                        comment,
-                        commentedNewLineLegs,
-                        useLegComments);
+                    SurveyUpdater.setDirectionOfSubtree(station, direction);
+                }
 
             } catch (Exception exception) {
-                throw new Exception("Error importing this line: " + line);
+                Log.e("corrupted survey extended elevation directions: " + exception);
             }
         }
     }
 
     /**
-     * Parse passage data section to extract station comments.
-     *
-     * <p>Supports:
+     * Builds the survey's stations and legs from centreline data lines.
      *
-     * <ul>
-     *   <li>Therion: "data dimensions station left right up down ignoreall"
-     *   <li>Survex: "*data passage station left right up down ignoreall"
-     * </ul>
-     *
-     * @param text The full file text (may contain multiple sections)
-     * @param format the file format being parsed (SURVEX or THERION)
-     * @return Map of station name to passage comment
+     * <p>Each leg is held back until the lines after it have been seen, in case they're commented
+     * copies of the shots it was promoted from. Where its comments go is only settled at the end,
+     * since that depends on the SexyTopo version in the file's header, which a single pass might
+     * not have reached yet.
      */
-    public static Map<String, String> parsePassageData(String text, SurveyFormat format) {
-        String dataPassagePrefix = format.getDataPassagePrefix();
-        String dataCommandPrefix = format.getCommandChar() + "data ";
-        Map<String, String> passageComments = new HashMap<>();
+    private static class CentrelineParser {
 
-        String[] lines = text.split("\n");
-        boolean inPassageBlock = false;
+        private final Survey survey;
+        private final Map<String, Station> nameToStation = new HashMap<>();
+        private boolean hasOrigin = false;
 
-        for (String line : lines) {
-            String trimmed = line.trim();
+        // Where comments will go: legs, or stations in the legacy layout
+        private final List<Leg> commentedLegs = new ArrayList<>();
+        private final List<Station> commentedStations = new ArrayList<>();
+        private final List<String> comments = new ArrayList<>();
 
-            if (trimmed.isEmpty()) {
-                continue;
+        private String[] pendingFields;
+        private String pendingComment;
+        private String pendingLine;
+        private final List<Leg> pendingPrecursors = new ArrayList<>();
+        private boolean isReadingPrecursors = false;
+
+        CentrelineParser(Survey survey) {
+            this.survey = survey;
+        }
+
+        Station getStation(String name) {
+            return nameToStation.get(name);
+        }
+
+        void addLine(SurvexTherionLexer lexer) throws Exception {
+            if (isReadingPrecursors) {
+                if (lexer.isComment() && addPrecursor(lexer)) {
+                    return;
+                }
+                isReadingPrecursors = false;
             }
 
-            if (trimmed.startsWith(dataPassagePrefix)) {
-                inPassageBlock = true;
-                continue;
+            // Skip blank lines, commands and comments (commented promoted legs were read above)
+            if (lexer.isBlank() || lexer.getLine().startsWith("*") || lexer.isComment()) {
+                return;
             }
 
-            // Exit passage block on any other data command
-            if (inPassageBlock
-                    && trimmed.startsWith(dataCommandPrefix)
-                    && !trimmed.startsWith(dataPassagePrefix)) {
-                inPassageBlock = false;
-                continue;
+            // A valid leg line must have at least 5 tokens:
+            // from to distance azimuth inclination
+            List<String> tokens = lexer.getTokens();
+            if (tokens.size() < 5) {
+                return;
             }
 
-            // If in passage block, parse station and comment
-            if (inPassageBlock) {
-                // Skip comment lines and command lines
-                if (trimmed.startsWith(";")
-                        || trimmed.startsWith("#")
-                        || trimmed.startsWith("*")
-                        || trimmed.startsWith("extend")) {
-                    continue;
+            addPendingLeg();
+            pendingFields = tokens.subList(0, 5).toArray(new String[5]);
+            pendingComment = getTrailingComment(tokens);
+            pendingLine = lexer.getRawLine();
+            isReadingPrecursors = true;
+        }
+
+        /**
+         * Adds a commented promoted-leg line (see parseCommentedNewLinePromotedLegs) to the leg
+         * before it, returning false if it's not one.
+         *
+         * <p>Example: 1 2 5.541 253.93 4.67 #1 2 5.542 73.95 -4.64 #1 2 5.541 73.93 -4.69
+         */
+        private boolean addPrecursor(SurvexTherionLexer lexer) {
+            List<String> fields = lexer.getCommentTokens();
+            if (fields.size() < 5
+                    || !fields.get(0).equals(pendingFields[0])
+                    || !fields.get(1).equals(pendingFields[1])) {
+                return false;
+            }
+
+            try {
+                float distance = Float.parseFloat(fields.get(2));
+                float azimuth = Float.parseFloat(fields.get(3));
+                float inclination = Float.parseFloat(fields.get(4));
+                Leg precursor = new Leg(distance, azimuth, inclination);
+
+                // A trailing comment on a precursor line is only kept on the leg
+                String comment = getTrailingComment(fields);
+                if (!comment.isEmpty()) {
+                    addComment(precursor, null, comment);
                 }
 
-                // Parse: <station> <comment text>
-                // Station name is first token, rest is comment
-                String[] parts = trimmed.split("\\s+", 2);
-                if (parts.length == 2) {
-                    String stationName = parts[0];
-                    String comment = parts[1].trim();
-                    passageComments.put(stationName, comment);
+                pendingPrecursors.add(precursor);
+            } catch (NumberFormatException e) {
+                Log.e("Failed to parse commented new line promoted leg: " + lexer.getLine());
+            }
+            return true;
+        }
+
+        private void addPendingLeg() throws Exception {
+            if (pendingLine == null) {
+                return;
+            }
+            try {
+                addLegToSurvey(pendingFields, pendingComment, pendingPrecursors);
+            } catch (Exception exception) {
+                throw new Exception("Error importing this line: " + pendingLine);
+            }
+            pendingLine = null;
+            pendingPrecursors.clear();
+        }
+
+        void finish(boolean useLegComments) throws Exception {
+            addPendingLeg();
+            isReadingPrecursors = false;
+
+            for (int i = 0; i < comments.size(); i++) {
+                if (useLegComments) {
+                    // New path: comment belongs to the leg/splay itself
+                    commentedLegs.get(i).setComment(comments.get(i));
+                } else if (commentedStations.get(i) != null) {
+                    // Legacy path: comment goes on the leg's newer station
+                    commentedStations.get(i).setComment(comments.get(i));
                 }
             }
+            commentedLegs.clear();
+            commentedStations.clear();
+            comments.clear();
         }
 
-        return passageComments;
-    }
+        private void addComment(Leg leg, Station station, String comment) {
+            commentedLegs.add(leg);
+            commentedStations.add(station);
+            comments.add(comment);
+        }
 
-    /**
-     * Merge passage data comments with existing station comments.
-     *
-     * <p>If a station has both a passage comment and a leg-line comment,
-     *
-     * <p>Format: <passage comment> :: <leg-line comment>
-     *
-     * @param survey The survey with stations
-     * @param passageComments Map of station name to passage comment
-     */
-    public static void mergePassageComments(Survey survey, Map<String, String> passageComments) {
-        for (Map.Entry<String, String> entry : passageComments.entrySet()) {
-            String stationName = entry.getKey();
-            String passageComment = entry.getValue();
+        private void addLegToSurvey(String[] fields, String comment, List<Leg> precursors) {
 
-            try {
-                Station station = survey.getStationByName(stationName);
-                if (station != null) {
-                    String existingComment = station.getComment();
-
-                    if (existingComment == null || existingComment.trim().isEmpty()) {
-                        // No existing comment, just use passage comment
-                        station.setComment(passageComment);
-                    } else {
-                        // Both exist, combine with " :: " separator
-                        // Format: passage comment :: leg-line comment
-                        String combinedComment = passageComment + " :: " + existingComment;
-                        station.setComment(combinedComment);
-                    }
+            String fromName = fields[0];
+            String toName = fields[1];
+            float distance = Float.parseFloat(fields[2]);
+            float azimuth = Float.parseFloat(fields[3]);
+            float inclination = Float.parseFloat(fields[4]);
+
+            boolean isSplay = toName.equals(SexyTopoConstants.BLANK_STATION_NAME);
+
+            // Detect if this is a backward leg BEFORE creating new stations
+            boolean isBackward = isBackwardLeg(fromName, toName, nameToStation);
+
+            Station from = nameToStation.get(fromName);
+            if (from == null) {
+                from = new Station(fromName);
+                nameToStation.put(fromName, from);
+            }
+
+            Station to = Survey.NULL_STATION;
+            if (!isSplay) {
+                to = nameToStation.get(toName);
+                if (to == null) {
+                    to = new Station(toName);
+                    nameToStation.put(toName, to);
                 }
-            } catch (Exception e) {
-                Log.e("Failed to merge passage comment for station " + stationName + ": " + e);
             }
+
+            // Set origin from first non-splay leg
+            // For backward legs the logical root is the TO station.
+            if (!isSplay && !hasOrigin) {
+                survey.setOrigin(isBackward ? to : from);
+                hasOrigin = true;
+            }
+
+            // Extract promoted legs from inline{} comment
+            String commentInstructions = extractCommentInstructions(comment);
+            Leg[] promotedFrom = parseInlinePromotedLegs(commentInstructions);
+
+            // Strip the instruction from the comment so it doesn't end up on the leg or station
+            if (!commentInstructions.isEmpty()) {
+                comment = comment.replace(commentInstructions, "").trim();
+            }
+
+            // If no inline{} promoted legs, use commented new lines if available
+            if (promotedFrom.length == 0 && !precursors.isEmpty()) {
+                promotedFrom = precursors.toArray(new Leg[0]);
+            }
+
+            Leg leg;
+            Station legFrom;
+            Station newerStation;
+
+            if (isBackward) {
+                legFrom = to;
+                newerStation = from;
+
+                if (from == Survey.NULL_STATION) {
+                    leg = new Leg(distance, azimuth, inclination, true);
+                } else {
+                    leg = new Leg(distance, azimuth, inclination, from, promotedFrom, true);
+                }
+            } else {
+                // Forward leg
+                legFrom = from;
+                newerStation = to;
+
+                if (to == Survey.NULL_STATION) {
+                    leg = new Leg(distance, azimuth, inclination);
+                } else {
+                    leg = new Leg(distance, azimuth, inclination, to, promotedFrom);
+                }
+            }
+
+            if (!comment.isEmpty()) {
+                addComment(
+                        leg, newerStation == Survey.NULL_STATION ? null : newerStation, comment);
+            }
+
+            legFrom.addOnwardLeg(leg);
+            survey.addLegRecord(leg);
+            survey.setActiveStation(legFrom);
         }
     }
 
-    public static Trip parseMetadata(String text, SurveyFormat format) {
-        char commentChar = format.getCommentChar();
+    /** Collects station comments from the lines of a passage data block. */
+    private static class PassageDataParser {
+
+        private final Map<String, String> passageComments = new HashMap<>();
+
+        void addLine(SurvexTherionLexer lexer) {
+            String line = lexer.getLine();
+
+            // Skip blank lines, comment lines and command lines
+            if (line.isEmpty()
+                    || lexer.isComment()
+                    || line.startsWith("*")
+                    || line.startsWith("extend")) {
+                return;
+            }
+
+            // Parse: <station> <comment text>
+            // Station name is first token, rest is comment
+            List<String> tokens = lexer.getTokens();
+            if (tokens.size() >= 2) {
+                passageComments.put(tokens.get(0), lexer.getTextAfterFirstToken());
+            }
+        }
+
+        Map<String, String> getComments() {
+            return passageComments;
+        }
+    }
 
-        Date surveyDate = null;
-        Date explorationDate = null; // explo-date / date explored line
-        String instrument = null;
-        Map<String, List<Trip.Role>> teamMap = new java.util.LinkedHashMap<>();
-        StringBuilder tripComments = new StringBuilder();
-        boolean foundAnyMetadata = false;
-        boolean readingTripComments = false;
+    /** Reads the trip metadata (date, instrument, team, etc.) from the lines of a file. */
+    private static class MetadataParser {
+
+        private final SurveyFormat format;
+        private final char commentChar;
+        private final String commentPrefix;
+        private final String exploDateKeyword;
+        private final String commentedExploDate;
+
+        private Date surveyDate = null;
+        private Date explorationDate = null; // explo-date / date explored line
+        private String instrument = null;
+        private final Map<String, List<Trip.Role>> teamMap = new LinkedHashMap<>();
+        private final StringBuilder tripComments = new StringBuilder();
+        private boolean foundAnyMetadata = false;
+        private boolean readingTripComments = false;
+
+        MetadataParser(SurveyFormat format) {
+            this.format = format;
+            this.commentChar = format.getCommentChar();
+            this.commentPrefix = String.valueOf(commentChar);
+            this.exploDateKeyword = format.getExplorationDateKeyword();
+            this.commentedExploDate = commentChar + format.getCommandChar() + exploDateKeyword;
+        }
 
-        String[] lines = text.split("\n");
-        for (String line : lines) {
-            String trimmed = line.trim();
+        void addLine(String trimmed) {
             if (trimmed.isEmpty()) {
                 readingTripComments = false;
-                continue;
+                return;
             }
 
             // Strip command prefix for uniform data handling
@@ -252,7 +577,7 @@ public class SurvexTherionImporter {
                 String dateStr = effective.substring(5).trim();
                 surveyDate = parseDate(dateStr);
                 if (surveyDate != null) foundAnyMetadata = true;
-                continue;
+                return;
             }
 
             // Instrument: "instrument insts \"name\""
@@ -260,88 +585,87 @@ public class SurvexTherionImporter {
             if (effective.startsWith("instrument insts ")) {
                 instrument = extractQuotedValue(effective, "instrument insts ");
                 foundAnyMetadata = true;
-                continue;
+                return;
             }
             // Commented-out instrument line — explicitly clear
             if (trimmed.startsWith(format.getCommentedInstrumentPrefix())) {
                 instrument = null;
                 foundAnyMetadata = true;
-                continue;
+                return;
             }
 
             // Team: "team \"Name\" role1 role2"
             if (effective.startsWith("team ")) {
                 parseTeamLine(effective, teamMap);
                 foundAnyMetadata = true;
-                continue;
+                return;
             }
 
             // Exploration date
-            String exploDateKeyword = format.getExplorationDateKeyword();
             if (effective.startsWith(exploDateKeyword)) {
                 String dateStr = effective.substring(exploDateKeyword.length()).trim();
                 explorationDate = parseDate(dateStr);
                 foundAnyMetadata = true;
-                continue;
+                return;
             }
             // Commented exploration date placeholder
-            String commentedExploDate = commentChar + format.getCommandChar() + exploDateKeyword;
             if (trimmed.startsWith(commentedExploDate)) {
                 foundAnyMetadata = true;
-                continue;
+                return;
             }
 
             // Explo-team (Therion only) / format-specific team parsing
             if (format.parseExploTeamLine(effective, teamMap)) {
                 foundAnyMetadata = true;
-                continue;
+                return;
             }
 
             // Trip comments block: "#Comment from SexyTopo trip information"
-            String commentPrefix = String.valueOf(commentChar);
             if (trimmed.startsWith(commentPrefix + "Comment from SexyTopo trip information")) {
                 readingTripComments = true;
-                continue;
+                return;
             }
             if (readingTripComments && trimmed.startsWith(commentPrefix)) {
                 if (tripComments.length() > 0) tripComments.append("\n");
                 tripComments.append(trimmed.substring(1));
-                continue;
+                return;
             }
 
             readingTripComments = false;
         }
 
-        if (!foundAnyMetadata) {
-            return null;
-        }
+        Trip getTrip() {
+            if (!foundAnyMetadata) {
+                return null;
+            }
 
-        Trip trip = new Trip();
+            Trip trip = new Trip();
 
-        if (surveyDate != null) {
-            trip.setSurveyDate(surveyDate);
-        }
-        if (explorationDate != null) {
-            trip.setExplorationDate(explorationDate);
-            trip.setExplorationDateLinked(false);
-        } else {
-            trip.setExplorationDateLinked(true);
-        }
+            if (surveyDate != null) {
+                trip.setSurveyDate(surveyDate);
+            }
+            if (explorationDate != null) {
+                trip.setExplorationDate(explorationDate);
+                trip.setExplorationDateLinked(false);
+            } else {
+                trip.setExplorationDateLinked(true);
+            }
 
-        trip.setInstrument(instrument);
+            trip.setInstrument(instrument);
 
-        // Build team list
-        List<Trip.TeamEntry> teamEntries = new ArrayList<>();
-        for (Map.Entry<String, List<Trip.Role>> entry : teamMap.entrySet()) {
-            teamEntries.add(new Trip.TeamEntry(entry.getKey(), entry.getValue()));
-        }
-        trip.setTeam(teamEntries);
+            // Build team list
+            List<Trip.TeamEntry> teamEntries = new ArrayList<>();
+            for (Map.Entry<String, List<Trip.Role>> entry : teamMap.entrySet()) {
+                teamEntries.add(new Trip.TeamEntry(entry.getKey(), entry.getValue()));
+            }
+            trip.setTeam(teamEntries);
 
-        if (tripComments.length() > 0) {
-            trip.setComments(tripComments.toString());
-        }
+            if (tripComments.length() > 0) {
+                trip.setComments(tripComments.toString());
+            }
 
-        return trip;
+            return trip;
+        }
     }
 
     private static void parseTeamLine(String line, Map<String, List<Trip.Role>> teamMap) {
@@ -410,111 +734,6 @@ public class SurvexTherionImporter {
         }
     }
 
-    private static void addLegToSurvey(
-            Survey survey,
-            Map<String, Station> nameToStation,
-            String[] fields,
-            String comment,
-            List<Leg> commentedNewLineLegs,
-            boolean useLegComments) {
-
-        String fromName = fields[0];
-        String toName = fields[1];
-        float distance = Float.parseFloat(fields[2]);
-        float azimuth = Float.parseFloat(fields[3]);
-        float inclination = Float.parseFloat(fields[4]);
-
-        boolean isSplay = toName.equals(SexyTopoConstants.BLANK_STATION_NAME);
-
-        // Detect if this is a backward leg BEFORE creating new stations
-        boolean isBackward = isBackwardLeg(fromName, toName, nameToStation);
-
-        Station from = nameToStation.get(fromName);
-        if (from == null) {
-            from = new Station(fromName);
-            nameToStation.put(fromName, from);
-        }
-
-        Station to = Survey.NULL_STATION;
-        if (!isSplay) {
-            to = nameToStation.get(toName);
-            if (to == null) {
-                to = new Station(toName);
-                nameToStation.put(toName, to);
-            }
-        }
-
-        // Set origin from first non-splay leg
-        // For backward legs the logical root is the TO station.
-        if (!isSplay && !nameToStation.containsValue(survey.getOrigin())) {
-            survey.setOrigin(isBackward ? to : from);
-        }
-
-        // Extract promoted legs from inline{} comment
-        String commentInstructions = extractCommentInstructions(comment);
-        Leg[] promotedFrom = parseInlinePromotedLegs(commentInstructions);
-
-        // Strip the instruction from the comment so it doesn't end up on the leg or station
-        if (!commentInstructions.isEmpty()) {
-            comment = comment.replace(commentInstructions, "").trim();
-        }
-
-        // If no inline{} promoted legs, use commented new lines if available
-        if (promotedFrom.length == 0 && !commentedNewLineLegs.isEmpty()) {
-            promotedFrom = commentedNewLineLegs.toArray(new Leg[0]);
-        }
-
-        Leg leg;
-        Station legFrom;
-
-        if (isBackward) {
-            legFrom = to;
-
-            if (from == Survey.NULL_STATION) {
-                leg = new Leg(distance, azimuth, inclination, true);
-            } else {
-                leg = new Leg(distance, azimuth, inclination, from, promotedFrom, true);
-            }
-
-            if (!comment.isEmpty()) {
-                if (useLegComments) {
-                    // New path: comment belongs to the leg/splay itself
-                    leg.setComment(comment);
-                } else {
-                    // Legacy path: comment goes on the newer station (from, in a backward leg)
-                    if (from != Survey.NULL_STATION) {
-                        from.setComment(comment);
-                    }
-                }
-            }
-        } else {
-            // Forward leg
-            legFrom = from;
-
-            if (to == Survey.NULL_STATION) {
-                leg = new Leg(distance, azimuth, inclination);
-            } else {
-                leg = new Leg(distance, azimuth, inclination, to, promotedFrom);
-            }
-
-            if (!comment.isEmpty()) {
-                if (useLegComments) {
-                    // New path: comment belongs to the leg/splay itself
-                    leg.setComment(comment);
-                } else {
-                    // Legacy path: comment goes on the to station
-                    if (to != Survey.NULL_STATION) {
-                        to.setComment(comment);
-                    }
-                }
-            }
-        }
-
-        legFrom.addOnwardLeg(leg);
-        survey.addLegRecord(leg);
-        survey.setActiveStation(legFrom);
-    }
-
     /**
      * Detect if a leg was shot backwards.
      *
@@ -542,80 +761,29 @@ public class SurvexTherionImporter {
     }
 
     /**
-     * Parse promoted legs from commented new lines format.
-     *
-     * <p>These are shots on commented lines that come AFTER the main leg line.
-     *
-     * <p>Example: 1 2 5.541 253.93 4.67 #1 2 5.542 73.95 -4.64 #1 2 5.541 73.93 -4.69
-     *
-     * <p>When {@code useLegComments} is {@code true}, any trailing comment on a precursor line
-     * (tokens after the 5 data fields) is stored on the returned {@link Leg}.
+     * Any tokens after the 5 leg fields form the comment tail. The tail may optionally start with
+     * a comment character (# or ;) which is stripped — both "1 2 3.0 45.0 0.0 # My Chamber" and
+     * "1 2 3.0 45.0 0.0 My Chamber" are valid and produce the same comment.
      */
-    private static List<Leg> parseCommentedNewLinePromotedLegs(
-            String[] lines,
-            int startIndex,
-            String expectedFrom,
-            String expectedTo,
-            boolean useLegComments) {
-
-        List<Leg> shots = new ArrayList<>();
-
-        // Look at subsequent lines
-        for (int i = startIndex + 1; i < lines.length; i++) {
-            String line = lines[i].trim();
-
-            // Stop if a non-comment line or empty line
-            if (line.isEmpty() || (!line.startsWith("#") && !line.startsWith(";"))) {
-                break;
-            }
-
-            // Remove the comment character and parse
-            String content = line.substring(1).trim();
-            String[] fields = content.split("\\s+");
-
-            // Check if this is a matching shot
-            if (fields.length >= 5
-                    && fields[0].equals(expectedFrom)
-                    && fields[1].equals(expectedTo)) {
-
-                try {
-                    float distance = Float.parseFloat(fields[2]);
-                    float azimuth = Float.parseFloat(fields[3]);
-                    float inclination = Float.parseFloat(fields[4]);
-                    Leg precursor = new Leg(distance, azimuth, inclination);
-
-                    // If using leg comments, capture any trailing comment on this precursor line
-                    if (useLegComments && fields.length > 5) {
-                        String tail =
-                                String.join(" ", Arrays.copyOfRange(fields, 5, fields.length));
-                        if (tail.startsWith(";") || tail.startsWith("#")) {
-                            tail = tail.substring(1).trim();
-                        }
-                        if (!tail.isEmpty()) {
-                            precursor.setComment(tail);
-                        }
-                    }
-
-                    shots.add(precursor);
-                } catch (NumberFormatException e) {
-                    Log.e("Failed to parse commented new line promoted leg: " + line);
-                }
-            } else {
-                // Different leg, stop looking
-                break;
-            }
+    private static String getTrailingComment(List<String> tokens) {
+        if (tokens.size() <= 5) {
+            return "";
         }
-
-        return shots;
+        String tail = SurvexTherionLexer.joinTokens(tokens, 5);
+        if (tail.startsWith(";") || tail.startsWith("#")) {
+            tail = tail.substring(1).trim();
+        }
+        return tail;
     }
 
+    /** The first {...} in the comment, if there is one. */
     private static String extractCommentInstructions(String comment) {
-        Matcher matcher = COMMENT_INSTRUCTION_REGEX.matcher(comment);
-        if (matcher.find()) {
-            return matcher.group(1);
-        } else {
+        int start = comment.indexOf('{');
+        int end = start < 0 ? -1 : comment.indexOf('}', start + 1);
+        if (end < 0) {
             return "";
         }
+        return comment.substring(start, end + 1);
     }
 
     /**
@@ -0,0 +1,259 @@
+package org.hwyl.sexytopo.control.io.thirdparty.survextherion;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Reads Survex or Therion text a line at a time straight from a Reader, so the file is only read
+ * once and never held in memory as a whole. Each line is split into whitespace-separated tokens
+ * (only when asked for, and without regular expressions), and the lexer keeps track of where in
+ * the file it is as it goes: which kind of data the most recent data command introduced, Survex
+ * *begin/*end blocks (a data command only lasts until the end of its block) and the Therion
+ * centreline/endcentreline block.
+ *
+ * <p>A lexer made without a format just splits lines and tokens.
+ */
+public class SurvexTherionLexer {
+
+    public enum DataStyle {
+        NONE,
+        NORMAL,
+        PASSAGE,
+        OTHER
+    }
+
+    private static final String CENTRELINE = "centreline";
+    private static final String END_CENTRELINE = "endcentreline";
+
+    private final BufferedReader reader;
+    private final SurveyFormat format;
+
+    private String rawLine;
+    private String line;
+
+    private final List<String> tokens = new ArrayList<>();
+    private final List<String> commentTokens = new ArrayList<>();
+    private int firstTokenEnd;
+    private boolean areTokensRead;
+    private boolean areCommentTokensRead;
+
+    private boolean isDataCommand;
+    private DataStyle dataStyle = DataStyle.NONE;
+    private final Deque<DataStyle> enclosingDataStyles = new ArrayDeque<>();
+    private boolean isBlockEnding;
+
+    private boolean isInCentreline;
+    private boolean isCentrelineStarting;
+    private int centrelineCount;
+
+    public SurvexTherionLexer(Reader reader) {
+        this(reader, null);
+    }
+
+    public SurvexTherionLexer(Reader reader, SurveyFormat format) {
+        this.reader =
+                reader instanceof BufferedReader
+                        ? (BufferedReader) reader
+                        : new BufferedReader(reader);
+        this.format = format;
+    }
+
+    /**
+     * Moves on to the next line, returning false at the end of the text. Throws if a Therion
+     * centreline block is opened inside another or closed without being opened, or is still open
+     * at the end.
+     */
+    public boolean nextLine() throws IOException {
+        rawLine = reader.readLine();
+        areTokensRead = false;
+        areCommentTokensRead = false;
+        isDataCommand = false;
+
+        if (isBlockEnding) {
+            dataStyle = enclosingDataStyles.pop();
+            isBlockEnding = false;
+        }
+        if (isCentrelineStarting) {
+            isInCentreline = true;
+            isCentrelineStarting = false;
+        }
+
+        if (rawLine == null) {
+            line = null;
+            if (isInCentreline) {
+                throw new IOException("Failed to find end block tag " + END_CENTRELINE);
+            }
+            return false;
+        }
+
+        line = rawLine.trim();
+        if (format != null) {
+            readStructure();
+        }
+        return true;
+    }
+
+    private void readStructure() throws IOException {
+        String command = format.getCommandChar();
+        if (format == SurveyFormat.SURVEX) {
+            if (isCommand(command + "begin")) {
+                enclosingDataStyles.push(dataStyle);
+            } else if (isCommand(command + "end")) {
+                // The *end line is still inside its block; the block's data style goes with it
+                isBlockEnding = !enclosingDataStyles.isEmpty();
+            }
+        } else if (format == SurveyFormat.THERION) {
+            if (line.equals(CENTRELINE)) {
+                if (isInCentreline) {
+                    throw new IOException(
+                            "Opening block tag " + CENTRELINE + " encountered twice");
+                }
+                // The centreline line itself isn't inside the block; the lines after it are
+                isCentrelineStarting = true;
+                centrelineCount++;
+                dataStyle = DataStyle.NONE;
+                return;
+            } else if (line.equals(END_CENTRELINE)) {
+                if (!isInCentreline) {
+                    throw new IOException(
+                            "End block tag " + END_CENTRELINE + " encountered before block start");
+                }
+                isInCentreline = false;
+                return;
+            }
+        }
+
+        String dataCommand = command + "data ";
+        if (line.startsWith(dataCommand)) {
+            isDataCommand = true;
+            if (line.startsWith(command + "data normal")) {
+                dataStyle = DataStyle.NORMAL;
+            } else if (line.startsWith(format.getDataPassagePrefix())) {
+                dataStyle = DataStyle.PASSAGE;
+            } else {
+                dataStyle = DataStyle.OTHER;
+            }
+        }
+    }
+
+    private boolean isCommand(String name) {
+        return line.startsWith(name)
+                && (line.length() == name.length() || isSeparator(line.charAt(name.length())));
+    }
+
+    /** The current line as read. */
+    public String getRawLine() {
+        return rawLine;
+    }
+
+    /** The current line without leading or trailing whitespace. */
+    public String getLine() {
+        return line;
+    }
+
+    public boolean isBlank() {
+        return line.isEmpty();
+    }
+
+    /** Whether the line is a comment, in either format's comment style. */
+    public boolean isComment() {
+        return line.startsWith(";") || line.startsWith("#");
+    }
+
+    /** Whether the line is a data command, which sets the data style of the lines after it. */
+    public boolean isDataCommand() {
+        return isDataCommand;
+    }
+
+    /** The kind of data the lines of the current block are, as set by its latest data command. */
+    public DataStyle getDataStyle() {
+        return dataStyle;
+    }
+
+    /**
+     * Whether the line is inside a Therion centreline block (not counting the centreline and
+     * endcentreline lines themselves). The whole of a Survex file counts as centreline.
+     */
+    public boolean isInCentreline() {
+        return isInCentreline || format == SurveyFormat.SURVEX;
+    }
+
+    /** How many Therion centreline blocks have been opened so far. */
+    public int getCentrelineCount() {
+        return centrelineCount;
+    }
+
+    /** The line's whitespace-separated tokens. The list is reused for the next line. */
+    public List<String> getTokens() {
+        if (!areTokensRead) {
+            firstTokenEnd = tokenise(line, 0, tokens);
+            areTokensRead = true;
+        }
+        return tokens;
+    }
+
+    /**
+     * The tokens of a comment line after its comment character, so "#1 2" and "# 1 2" both give
+     * "1" and "2". The list is reused for the next line.
+     */
+    public List<String> getCommentTokens() {
+        if (!areCommentTokensRead) {
+            tokenise(line, 1, commentTokens);
+            areCommentTokensRead = true;
+        }
+        return commentTokens;
+    }
+
+    /** Everything on the line after its first token, without surrounding whitespace. */
+    public String getTextAfterFirstToken() {
+        getTokens();
+        return line.substring(firstTokenEnd).trim();
+    }
+
+    /** The tokens from the given index on, separated by single spaces. */
+    public static String joinTokens(List<String> tokens, int from) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = from; i < tokens.size(); i++) {
+            if (i > from) {
+                builder.append(' ');
+            }
+            builder.append(tokens.get(i));
+        }
+        return builder.toString();
+    }
+
+    // Splits on the same characters as the regular expression \s, returning where the first token
+    // ends (the line's length if there are none).
+    private static int tokenise(String line, int start, List<String> tokens) {
+        tokens.clear();
+        int firstTokenEnd = line.length();
+        int length = line.length();
+        int i = start;
+        while (i < length) {
+            while (i < length && isSeparator(line.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            int tokenStart = i;
+            while (i < length && !isSeparator(line.charAt(i))) {
+                i++;
+            }
+            if (tokens.isEmpty()) {
+                firstTokenEnd = i;
+            }
+            tokens.add(line.substring(tokenStart, i));
+        }
+        return firstTokenEnd;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
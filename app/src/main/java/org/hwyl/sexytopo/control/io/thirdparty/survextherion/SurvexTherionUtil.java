@@ -6,14 +6,13 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.Locale;
+import org.hwyl.sexytopo.control.util.FixedPointFormatter;
 import org.hwyl.sexytopo.control.util.GraphToListTranslator;
 import org.hwyl.sexytopo.model.graph.Direction;
 import org.hwyl.sexytopo.model.survey.Leg;
 import org.hwyl.sexytopo.model.survey.Station;
 import org.hwyl.sexytopo.model.survey.Survey;
 import org.hwyl.sexytopo.model.survey.Trip;
-import org.hwyl.sexytopo.model.table.TableCol;
 
 public class SurvexTherionUtil {
 
@@ -202,9 +201,9 @@ public class SurvexTherionUtil {
 
         formatField(builder, fromName);
         formatField(builder, toName);
-        formatField(builder, TableCol.DISTANCE.format(leg.getDistance(), Locale.UK));
-        formatField(builder, TableCol.AZIMUTH.format(leg.getAzimuth(), Locale.UK));
-        formatField(builder, formatInclination(leg.getInclination()));
+        FixedPointFormatter.append(builder, leg.getDistance(), 3).append("\t");
+        FixedPointFormatter.append(builder, leg.getAzimuth(), 2).append("\t");
+        FixedPointFormatter.append(builder, leg.getInclination(), 2).append("\t");
 
         // Append comment on the active data line if present (Cases 1 & 2)
         if (leg.hasComment()) {
@@ -220,11 +219,9 @@ public class SurvexTherionUtil {
                 builder.append(commentChar);
                 builder.append(fromName).append("\t");
                 builder.append(toName).append("\t");
-                builder.append(TableCol.DISTANCE.format(precursor.getDistance(), Locale.UK))
-                        .append("\t");
-                builder.append(TableCol.AZIMUTH.format(precursor.getAzimuth(), Locale.UK))
-                        .append("\t");
-                builder.append(formatInclination(precursor.getInclination()));
+                FixedPointFormatter.append(builder, precursor.getDistance(), 3).append("\t");
+                FixedPointFormatter.append(builder, precursor.getAzimuth(), 2).append("\t");
+                FixedPointFormatter.append(builder, precursor.getInclination(), 2);
 
                 // Append precursor splay comment if present (Case 3)
                 if (precursor.hasComment()) {
@@ -238,10 +235,6 @@ public class SurvexTherionUtil {
         return comment.replaceAll("(\\r|\\n|\\r\\n)+", "\\\\n");
     }
 
-    private static String formatInclination(double inclination) {
-        return String.format(Locale.UK, "%.2f", inclination);
-    }
-
     private static void formatField(StringBuilder builder, Object value) {
         builder.append(value.toString());
         builder.append("\t");
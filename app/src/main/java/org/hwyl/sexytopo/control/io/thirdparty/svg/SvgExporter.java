@@ -3,14 +3,17 @@ package org.hwyl.sexytopo.control.io.thirdparty.svg;
 import android.app.Activity;
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.util.Xml;
 import android.view.View;
 import android.widget.CheckBox;
 import android.widget.Spinner;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Date;
@@ -19,16 +22,11 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 import org.hwyl.sexytopo.R;
+import org.hwyl.sexytopo.SexyTopoConstants;
 import org.hwyl.sexytopo.control.io.basic.ExportFrameFactory;
 import org.hwyl.sexytopo.control.io.translation.DoubleSketchFileExporter;
+import org.hwyl.sexytopo.control.util.FixedPointFormatter;
 import org.hwyl.sexytopo.control.util.GeneralPreferences;
 import org.hwyl.sexytopo.control.util.Space2DUtils;
 import org.hwyl.sexytopo.control.util.SurveyStats;
@@ -50,9 +48,6 @@ import org.hwyl.sexytopo.model.survey.Leg;
 import org.hwyl.sexytopo.model.survey.Station;
 import org.hwyl.sexytopo.model.survey.Survey;
 import org.hwyl.sexytopo.model.survey.Trip;
-import org.w3c.dom.Document;
-import org.xml.sax.InputSource;
-import org.xmlpull.v1.XmlSerializer;
 
 /**
  * @noinspection WrapperTypeMayBePrimitive
@@ -87,17 +82,42 @@ public class SvgExporter extends DoubleSketchFileExporter {
     }
 
     @Override
-    public String getContent(Survey survey, Projection2D projectionType) throws Exception {
+    public void run(Context context, Survey survey) throws Exception {
+        // Written straight to the files rather than built up in memory first
+        saveSketchFile(
+                context,
+                outputStream -> write(survey, Projection2D.PLAN, outputStream),
+                SexyTopoConstants.PLAN_SUFFIX);
+        saveSketchFile(
+                context,
+                outputStream -> write(survey, Projection2D.EXTENDED_ELEVATION, outputStream),
+                SexyTopoConstants.EE_SUFFIX);
+    }
+
+    @Override
+    public String getContent(Survey survey, Projection2D projectionType) throws IOException {
+        StringWriter stringWriter = new StringWriter();
+        write(survey, projectionType, stringWriter);
+        return stringWriter.toString();
+    }
+
+    private void write(Survey survey, Projection2D projectionType, OutputStream outputStream)
+            throws IOException {
+        Writer writer =
+                new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        write(survey, projectionType, writer);
+    }
+
+    private void write(
+            Survey survey, Projection2D projectionType, Writer output) throws IOException {
         SvgExportOptions options = getOrLoadOptions();
 
         Sketch sketch = survey.getSketch(projectionType);
-        Space<Coord2D> projection = projectionType.project(survey);
+        Space<Coord2D> projection = getProjection(survey, projectionType);
 
-        Frame contentFrame = ExportFrameFactory.getExportFrame(survey, projectionType).scale(SCALE);
-        Frame frame =
-                ExportFrameFactory.addBorder(
-                                ExportFrameFactory.getExportFrame(survey, projectionType))
-                        .scale(SCALE);
+        Frame exportFrame = ExportFrameFactory.getExportFrame(sketch, projection);
+        Frame contentFrame = exportFrame.scale(SCALE);
+        Frame frame = ExportFrameFactory.addBorder(exportFrame).scale(SCALE);
 
         // Reserve a strip beneath the sketch for the legend so it can never overlap content.
         // The legend is left-aligned with the sketch content (not the page edge) and separated
@@ -124,101 +144,83 @@ public class SvgExporter extends DoubleSketchFileExporter {
         double svgTopLeftX = topLeft.x;
         double svgTopLeftY = topLeft.y;
 
-        XmlSerializer xmlSerializer = Xml.newSerializer();
-        StringWriter writer = new StringWriter();
-        xmlSerializer.setOutput(writer);
+        SvgWriter writer = new SvgWriter(output);
 
-        xmlSerializer.startDocument("UTF-8", true);
+        writer.startDocument();
 
-        xmlSerializer.startTag(null, "svg");
+        writer.startTag("svg");
 
-        xmlSerializer.attribute(null, "width", Double.toString(svgWidth));
-        xmlSerializer.attribute(null, "height", Double.toString(svgHeight));
-        xmlSerializer.attribute(
-                null,
-                "viewBox",
-                TextTools.join(" ", svgTopLeftX, svgTopLeftY, svgWidth, svgHeight));
-        xmlSerializer.attribute(null, "xmlns", "http://www.w3.org/2000/svg");
+        writer.attribute("width", Double.toString(svgWidth));
+        writer.attribute("height", Double.toString(svgHeight));
+        writer.attribute(
+                "viewBox", TextTools.join(" ", svgTopLeftX, svgTopLeftY, svgWidth, svgHeight));
+        writer.attribute("xmlns", "http://www.w3.org/2000/svg");
 
         Colour background = options.isWhiteBackground() ? Colour.WHITE : Colour.TRANSPARENT;
         if (background != Colour.TRANSPARENT) {
-            xmlSerializer.startTag("", "g");
-            xmlSerializer.attribute("", "id", "background");
-            xmlSerializer.startTag(null, "rect");
-            xmlSerializer.attribute(null, "x", Double.toString(svgTopLeftX));
-            xmlSerializer.attribute(null, "y", Double.toString(svgTopLeftY));
-            xmlSerializer.attribute(null, "width", Double.toString(svgWidth));
-            xmlSerializer.attribute(null, "height", Double.toString(svgHeight));
-            xmlSerializer.attribute(null, "fill", background.toString());
-            xmlSerializer.endTag(null, "rect");
-            xmlSerializer.endTag("", "g");
+            writer.startTag("g");
+            writer.attribute("id", "background");
+            writer.startTag("rect");
+            writer.attribute("x", Double.toString(svgTopLeftX));
+            writer.attribute("y", Double.toString(svgTopLeftY));
+            writer.attribute("width", Double.toString(svgWidth));
+            writer.attribute("height", Double.toString(svgHeight));
+            writer.attribute("fill", background.toString());
+            writer.endTag("rect");
+            writer.endTag("g");
         }
 
         if (options.isShowGrid()) {
-            xmlSerializer.startTag("", "g");
-            xmlSerializer.attribute("", "id", "grid");
-            writeGrid(xmlSerializer, contentFrame, SCALE);
-            xmlSerializer.endTag("", "g");
+            writer.startTag("g");
+            writer.attribute("id", "grid");
+            writeGrid(writer, contentFrame, SCALE);
+            writer.endTag("g");
         }
 
-        xmlSerializer.startTag("", "g");
-        xmlSerializer.attribute("", "id", "sketch");
-        writeSketch(xmlSerializer, sketch, SCALE, options.isShowSymbols());
-        xmlSerializer.endTag("", "g");
+        writer.startTag("g");
+        writer.attribute("id", "sketch");
+        writeSketch(writer, sketch, SCALE, options.isShowSymbols());
+        writer.endTag("g");
 
         if (options.isShowCrossSections()) {
-            xmlSerializer.startTag("", "g");
-            xmlSerializer.attribute("", "id", "cross-sections");
-            writeCrossSections(xmlSerializer, sketch, projection, SCALE, options.isShowSymbols());
-            xmlSerializer.endTag("", "g");
+            writer.startTag("g");
+            writer.attribute("id", "cross-sections");
+            writeCrossSections(writer, sketch, projection, SCALE, options.isShowSymbols());
+            writer.endTag("g");
         }
 
-        xmlSerializer.startTag("", "g");
-        xmlSerializer.attribute("", "id", "data");
+        writer.startTag("g");
+        writer.attribute("id", "data");
 
         if (options.isShowCentreline()) {
-            xmlSerializer.startTag("", "g");
-            xmlSerializer.attribute("", "id", "centreline");
-            writeCentrelineLegs(xmlSerializer, projection, SCALE);
-            xmlSerializer.endTag("", "g");
+            writer.startTag("g");
+            writer.attribute("id", "centreline");
+            writeCentrelineLegs(writer, projection, SCALE);
+            writer.endTag("g");
         }
 
         if (options.isShowSplays()) {
-            xmlSerializer.startTag("", "g");
-            xmlSerializer.attribute("", "id", "splays");
-            writeSplayData(xmlSerializer, projection, SCALE);
-            xmlSerializer.endTag("", "g");
+            writer.startTag("g");
+            writer.attribute("id", "splays");
+            writeSplayData(writer, projection, SCALE);
+            writer.endTag("g");
         }
 
         if (options.isShowStations()) {
-            xmlSerializer.startTag("", "g");
-            xmlSerializer.attribute("", "id", "stations");
-            writeStations(xmlSerializer, projection, SCALE);
-            xmlSerializer.endTag("", "g");
+            writer.startTag("g");
+            writer.attribute("id", "stations");
+            writeStations(writer, projection, SCALE);
+            writer.endTag("g");
         }
 
-        xmlSerializer.endTag("", "g");
+        writer.endTag("g");
 
         if (legendModel != null) {
-            writeLegend(xmlSerializer, legendModel, legendLeftX, legendTopY);
+            writeLegend(writer, legendModel, legendLeftX, legendTopY);
         }
 
-        xmlSerializer.endTag(null, "svg");
-        xmlSerializer.endDocument();
-
-        String text = writer.toString();
-        text = unescapeTagsHack(text);
-        text = prettyPrintXML(text);
-
-        return text;
-    }
-
-    /** Need this because idiot library developers don't provide an option to override escaping */
-    public String unescapeTagsHack(String text) {
-
-        text = text.replaceAll("&lt;", "<");
-        text = text.replaceAll("&gt;", ">");
-        return text;
+        writer.endTag("svg");
+        writer.endDocument();
     }
 
     /** Pre-computed legend layout: knows its total height so the frame can be expanded for it. */
@@ -362,25 +364,24 @@ public class SvgExporter extends DoubleSketchFileExporter {
     }
 
     private static void writeLegend(
-            XmlSerializer xmlSerializer, LegendModel model, double frameLeft, double stripTop)
+            SvgWriter writer, LegendModel model, double frameLeft, double stripTop)
             throws IOException {
         double translateX = frameLeft;
         double translateY = stripTop;
 
-        xmlSerializer.startTag("", "g");
-        xmlSerializer.attribute("", "id", "legend");
-        xmlSerializer.attribute(
-                "", "transform", "translate(" + translateX + "," + translateY + ")");
-        xmlSerializer.attribute("", "font-family", "sans-serif");
-        xmlSerializer.attribute("", "fill", "black");
+        writer.startTag("g");
+        writer.attribute("id", "legend");
+        writer.attribute("transform", "translate(" + translateX + "," + translateY + ")");
+        writer.attribute("font-family", "sans-serif");
+        writer.attribute("fill", "black");
 
         // Title.
-        writeLegendText(xmlSerializer, 0, model.titleY, model.titleFont, "bold", model.title);
+        writeLegendText(writer, 0, model.titleY, model.titleFont, "bold", model.title);
 
         // Body lines (date, surveyors, stats).
         for (int i = 0; i < model.bodyLines.size(); i++) {
             writeLegendText(
-                    xmlSerializer,
+                    writer,
                     0,
                     model.bodyYs[i],
                     model.bodyFont,
@@ -391,7 +392,7 @@ public class SvgExporter extends DoubleSketchFileExporter {
         // North arrow (plan view only).
         if (model.showNorthArrow) {
             writeNorthArrow(
-                    xmlSerializer,
+                    writer,
                     model.arrowCentreX,
                     model.arrowTopY,
                     model.arrowBottomY,
@@ -402,7 +403,7 @@ public class SvgExporter extends DoubleSketchFileExporter {
         // Tagline.
         if (model.showTagline) {
             writeLegendText(
-                    xmlSerializer,
+                    writer,
                     0,
                     model.taglineY,
                     model.taglineFont,
@@ -412,12 +413,12 @@ public class SvgExporter extends DoubleSketchFileExporter {
 
         // Scale bar at the bottom.
         if (model.showScaleBar) {
-            xmlSerializer.startTag("", "g");
-            xmlSerializer.attribute("", "id", "scale-bar");
-            xmlSerializer.attribute("", "stroke", "black");
-            xmlSerializer.attribute("", "stroke-width", Integer.toString(model.strokeWidth));
-            xmlSerializer.attribute("", "fill", "none");
-            xmlSerializer.startTag("", "polyline");
+            writer.startTag("g");
+            writer.attribute("id", "scale-bar");
+            writer.attribute("stroke", "black");
+            writer.attribute("stroke-width", Integer.toString(model.strokeWidth));
+            writer.attribute("fill", "none");
+            writer.startTag("polyline");
             String barPoints =
                     TextTools.join(
                             " ",
@@ -425,12 +426,12 @@ public class SvgExporter extends DoubleSketchFileExporter {
                             0 + "," + model.barBaselineY,
                             model.barLengthPx + "," + model.barBaselineY,
                             model.barLengthPx + "," + model.barTopY);
-            xmlSerializer.attribute("", "points", barPoints);
-            xmlSerializer.endTag("", "polyline");
-            xmlSerializer.endTag("", "g");
+            writer.attribute("points", barPoints);
+            writer.endTag("polyline");
+            writer.endTag("g");
 
             writeLegendText(
-                    xmlSerializer,
+                    writer,
                     model.barLengthPx / 2.0,
                     model.scaleLabelY,
                     model.scaleLabelFont,
@@ -439,22 +440,17 @@ public class SvgExporter extends DoubleSketchFileExporter {
                     formatScaleBarLabel(model.barLengthMetres));
         }
 
-        xmlSerializer.endTag("", "g");
+        writer.endTag("g");
     }
 
     private static void writeLegendText(
-            XmlSerializer xmlSerializer,
-            double x,
-            double y,
-            double fontSize,
-            String style,
-            String text)
+            SvgWriter writer, double x, double y, double fontSize, String style, String text)
             throws IOException {
-        writeLegendText(xmlSerializer, x, y, fontSize, style, "start", text);
+        writeLegendText(writer, x, y, fontSize, style, "start", text);
     }
 
     private static void writeLegendText(
-            XmlSerializer xmlSerializer,
+            SvgWriter writer,
             double x,
             double y,
             double fontSize,
@@ -462,24 +458,24 @@ public class SvgExporter extends DoubleSketchFileExporter {
             String anchor,
             String text)
             throws IOException {
-        xmlSerializer.startTag("", "text");
-        xmlSerializer.attribute("", "x", Double.toString(x));
-        xmlSerializer.attribute("", "y", Double.toString(y));
-        xmlSerializer.attribute("", "font-size", Double.toString(fontSize));
+        writer.startTag("text");
+        writer.attribute("x", Double.toString(x));
+        writer.attribute("y", Double.toString(y));
+        writer.attribute("font-size", Double.toString(fontSize));
         if ("bold".equals(style)) {
-            xmlSerializer.attribute("", "font-weight", "bold");
+            writer.attribute("font-weight", "bold");
         } else if ("italic".equals(style)) {
-            xmlSerializer.attribute("", "font-style", "italic");
+            writer.attribute("font-style", "italic");
         }
         if (!"start".equals(anchor)) {
-            xmlSerializer.attribute("", "text-anchor", anchor);
+            writer.attribute("text-anchor", anchor);
         }
-        xmlSerializer.text(text);
-        xmlSerializer.endTag("", "text");
+        writer.text(text);
+        writer.endTag("text");
     }
 
     private static void writeNorthArrow(
-            XmlSerializer xmlSerializer,
+            SvgWriter writer,
             double centreX,
             double topY,
             double bottomY,
@@ -488,35 +484,35 @@ public class SvgExporter extends DoubleSketchFileExporter {
             throws IOException {
         double height = bottomY - topY;
         // Slim arrow: triangular head + rectangular shaft.
-        xmlSerializer.startTag("", "g");
-        xmlSerializer.attribute("", "id", "north-arrow");
-        xmlSerializer.attribute("", "stroke", "black");
-        xmlSerializer.attribute("", "stroke-width", Integer.toString(strokeWidth));
-        xmlSerializer.attribute("", "fill", "black");
+        writer.startTag("g");
+        writer.attribute("id", "north-arrow");
+        writer.attribute("stroke", "black");
+        writer.attribute("stroke-width", Integer.toString(strokeWidth));
+        writer.attribute("fill", "black");
 
         double headHeight = height * 0.28;
         double headHalfWidth = height * 0.08;
-        xmlSerializer.startTag("", "polygon");
+        writer.startTag("polygon");
         String headPoints =
                 TextTools.join(
                         " ",
                         centreX + "," + topY,
                         (centreX - headHalfWidth) + "," + (topY + headHeight),
                         (centreX + headHalfWidth) + "," + (topY + headHeight));
-        xmlSerializer.attribute("", "points", headPoints);
-        xmlSerializer.endTag("", "polygon");
+        writer.attribute("points", headPoints);
+        writer.endTag("polygon");
 
-        xmlSerializer.startTag("", "polyline");
+        writer.startTag("polyline");
         String shaftPoints =
                 TextTools.join(" ", centreX + "," + (topY + headHeight), centreX + "," + bottomY);
-        xmlSerializer.attribute("", "points", shaftPoints);
-        xmlSerializer.attribute("", "fill", "none");
-        xmlSerializer.endTag("", "polyline");
+        writer.attribute("points", shaftPoints);
+        writer.attribute("fill", "none");
+        writer.endTag("polyline");
 
-        xmlSerializer.endTag("", "g");
+        writer.endTag("g");
 
         writeLegendText(
-                xmlSerializer, centreX, bottomY + labelFont, labelFont, "bold", "middle", "N");
+                writer, centreX, bottomY + labelFont, labelFont, "bold", "middle", "N");
     }
 
     private static String formatLocaleDate(Date date) {
@@ -572,7 +568,7 @@ public class SvgExporter extends DoubleSketchFileExporter {
      * Draws a faint grid at the scale-bar interval, snapped to whole metres, covering the sketch
      * content frame. Sits behind the sketch so it never obscures content.
      */
-    private static void writeGrid(XmlSerializer xmlSerializer, Frame contentFrame, int scale)
+    private static void writeGrid(SvgWriter writer, Frame contentFrame, int scale)
             throws IOException {
         double widthMetres = contentFrame.getWidth() / (double) scale;
         if (widthMetres <= 0) {
@@ -595,30 +591,29 @@ public class SvgExporter extends DoubleSketchFileExporter {
         int gridStrokeWidth = Math.max(1, scale / 50);
 
         for (double x = startX; x <= right; x += spacingPx) {
-            xmlSerializer.startTag("", "line");
-            xmlSerializer.attribute("", "x1", Double.toString(x));
-            xmlSerializer.attribute("", "y1", Double.toString(top));
-            xmlSerializer.attribute("", "x2", Double.toString(x));
-            xmlSerializer.attribute("", "y2", Double.toString(bottom));
-            xmlSerializer.attribute("", "stroke", "#cccccc");
-            xmlSerializer.attribute("", "stroke-width", Integer.toString(gridStrokeWidth));
-            xmlSerializer.endTag("", "line");
+            writer.startTag("line");
+            writer.attribute("x1", Double.toString(x));
+            writer.attribute("y1", Double.toString(top));
+            writer.attribute("x2", Double.toString(x));
+            writer.attribute("y2", Double.toString(bottom));
+            writer.attribute("stroke", "#cccccc");
+            writer.attribute("stroke-width", Integer.toString(gridStrokeWidth));
+            writer.endTag("line");
         }
         for (double y = startY; y <= bottom; y += spacingPx) {
-            xmlSerializer.startTag("", "line");
-            xmlSerializer.attribute("", "x1", Double.toString(left));
-            xmlSerializer.attribute("", "y1", Double.toString(y));
-            xmlSerializer.attribute("", "x2", Double.toString(right));
-            xmlSerializer.attribute("", "y2", Double.toString(y));
-            xmlSerializer.attribute("", "stroke", "#cccccc");
-            xmlSerializer.attribute("", "stroke-width", Integer.toString(gridStrokeWidth));
-            xmlSerializer.endTag("", "line");
+            writer.startTag("line");
+            writer.attribute("x1", Double.toString(left));
+            writer.attribute("y1", Double.toString(y));
+            writer.attribute("x2", Double.toString(right));
+            writer.attribute("y2", Double.toString(y));
+            writer.attribute("stroke", "#cccccc");
+            writer.attribute("stroke-width", Integer.toString(gridStrokeWidth));
+            writer.endTag("line");
         }
     }
 
-    private static void writeSketch(
-            XmlSerializer xmlSerializer, Sketch sketch, int scale, boolean showSymbols)
-            throws Exception {
+    private static void writeSketch(SvgWriter writer, Sketch sketch, int scale, boolean showSymbols)
+            throws IOException {
 
         if (showSymbols) {
             Set<Symbol> usedSymbols = new HashSet<>();
@@ -626,38 +621,38 @@ public class SvgExporter extends DoubleSketchFileExporter {
                 usedSymbols.add(symbolDetail.getSymbol());
             }
             for (Symbol symbol : usedSymbols) {
-                writeSymbolRef(xmlSerializer, symbol);
+                writeSymbolRef(writer, symbol);
             }
         }
 
         for (PathDetail pathDetail : sketch.getPathDetails()) {
-            writePathDetail(xmlSerializer, pathDetail, scale);
+            writePathDetail(writer, pathDetail, scale);
         }
 
         for (TextDetail textDetail : sketch.getTextDetails()) {
-            writeTextDetail(xmlSerializer, textDetail, scale);
+            writeTextDetail(writer, textDetail, scale);
         }
 
         if (showSymbols) {
             for (SymbolDetail symbolDetail : sketch.getSymbolDetails()) {
-                writeSymbolDetail(xmlSerializer, symbolDetail, scale);
+                writeSymbolDetail(writer, symbolDetail, scale);
             }
         }
     }
 
     private static void writeCrossSections(
-            XmlSerializer xmlSerializer,
+            SvgWriter writer,
             Sketch sketch,
             Space<Coord2D> projection,
             int scale,
             boolean showSymbols)
-            throws Exception {
+            throws IOException {
         float xsScale = sketch.getCrossSectionScale();
         for (CrossSectionDetail xsDetail : sketch.getCrossSectionDetails()) {
             Station station = xsDetail.getCrossSection().getStation();
 
-            xmlSerializer.startTag("", "g");
-            xmlSerializer.attribute("", "id", "xs-" + station.getName());
+            writer.startTag("g");
+            writer.attribute("id", "xs-" + station.getName());
 
             // Write scaled projection legs (splays)
             Space<Coord2D> rawProjection = xsDetail.getCrossSection().getProjection();
@@ -666,7 +661,7 @@ public class SvgExporter extends DoubleSketchFileExporter {
                     Space2DUtils.translate(scaledProjection, xsDetail.getPosition());
             Integer splayStrokeWidth = GeneralPreferences.getExportSvgSplayStrokeWidth();
             for (Line<Coord2D> line : translatedProjection.getLegMap().values()) {
-                xmlSerializer.startTag("", "polyline");
+                writer.startTag("polyline");
                 String points =
                         TextTools.join(
                                 ",",
@@ -674,95 +669,92 @@ public class SvgExporter extends DoubleSketchFileExporter {
                                 scale * line.getStart().y,
                                 scale * line.getEnd().x,
                                 scale * line.getEnd().y);
-                xmlSerializer.attribute("", "points", points);
-                xmlSerializer.attribute("", "stroke", "red");
-                xmlSerializer.attribute("", "stroke-width", splayStrokeWidth.toString());
-                xmlSerializer.attribute("", "fill", "none");
-                xmlSerializer.endTag("", "polyline");
+                writer.attribute("points", points);
+                writer.attribute("stroke", "red");
+                writer.attribute("stroke-width", splayStrokeWidth.toString());
+                writer.attribute("fill", "none");
+                writer.endTag("polyline");
             }
 
             // Write sub-sketch paths scaled and translated to position
             Sketch subSketch =
                     xsDetail.getSketch().scale(xsScale).translate(xsDetail.getPosition());
             for (PathDetail pathDetail : subSketch.getPathDetails()) {
-                writePathDetail(xmlSerializer, pathDetail, scale);
+                writePathDetail(writer, pathDetail, scale);
             }
             for (TextDetail textDetail : subSketch.getTextDetails()) {
-                writeTextDetail(xmlSerializer, textDetail, scale);
+                writeTextDetail(writer, textDetail, scale);
             }
             if (showSymbols) {
                 for (SymbolDetail symbolDetail : subSketch.getSymbolDetails()) {
-                    writeSymbolDetail(xmlSerializer, symbolDetail, scale);
+                    writeSymbolDetail(writer, symbolDetail, scale);
                 }
             }
 
-            xmlSerializer.endTag("", "g");
+            writer.endTag("g");
         }
     }
 
-    private static void writePathDetail(
-            XmlSerializer xmlSerializer, PathDetail pathDetail, int scale) throws IOException {
+    private static void writePathDetail(SvgWriter writer, PathDetail pathDetail, int scale)
+            throws IOException {
         Integer strokeWidth = GeneralPreferences.getExportSvgStrokeWidth();
-        List<String> coordStrings = new ArrayList<>();
+        StringBuilder points = new StringBuilder();
         for (Coord2D coord2D : pathDetail.getPath()) {
-            coordStrings.add(toXmlText(coord2D, scale));
+            if (points.length() > 0) {
+                points.append(' ');
+            }
+            points.append(coord2D.x * scale).append(',').append(coord2D.y * scale);
         }
-        xmlSerializer.startTag(null, "polyline");
-        xmlSerializer.attribute(null, "points", TextTools.join(" ", coordStrings));
-        xmlSerializer.attribute(null, "stroke", getSvgColour(pathDetail));
-        xmlSerializer.attribute(null, "stroke-width", strokeWidth.toString());
-        xmlSerializer.attribute(null, "fill", "none");
-        xmlSerializer.endTag(null, "polyline");
+        writer.startTag("polyline");
+        writer.attribute("points", points);
+        writer.attribute("stroke", getSvgColour(pathDetail));
+        writer.attribute("stroke-width", strokeWidth.toString());
+        writer.attribute("fill", "none");
+        writer.endTag("polyline");
     }
 
-    private static String toXmlText(Coord2D coord2D, int scale) {
-        return coord2D.x * scale + "," + coord2D.y * scale;
-    }
-
-    private static void writeTextDetail(
-            XmlSerializer xmlSerializer, TextDetail textDetail, int scale) throws IOException {
-        xmlSerializer.startTag(null, "text");
+    private static void writeTextDetail(SvgWriter writer, TextDetail textDetail, int scale)
+            throws IOException {
+        writer.startTag("text");
         Coord2D coord2D = textDetail.getPosition();
         double x = coord2D.x * scale;
         double y = coord2D.y * scale;
-        xmlSerializer.attribute(null, "x", Double.toString(x));
-        xmlSerializer.attribute(null, "y", Double.toString(y));
-        xmlSerializer.attribute(null, "font-size", Float.toString(textDetail.getSize() * scale));
-        xmlSerializer.attribute(null, "stroke", getSvgColour(textDetail));
-        xmlSerializer.text(textDetail.getText());
-        xmlSerializer.endTag(null, "text");
+        writer.attribute("x", Double.toString(x));
+        writer.attribute("y", Double.toString(y));
+        writer.attribute("font-size", Float.toString(textDetail.getSize() * scale));
+        writer.attribute("stroke", getSvgColour(textDetail));
+        writer.text(textDetail.getText());
+        writer.endTag("text");
     }
 
-    private static void writeSymbolDetail(
-            XmlSerializer xmlSerializer, SymbolDetail symbolDetail, int scale) throws IOException {
+    private static void writeSymbolDetail(SvgWriter writer, SymbolDetail symbolDetail, int scale)
+            throws IOException {
         Symbol symbol = symbolDetail.getSymbol();
-        xmlSerializer.startTag("", "use");
-        xmlSerializer.attribute("", "href", "#" + symbol.getSvgRefId());
+        writer.startTag("use");
+        writer.attribute("href", "#" + symbol.getSvgRefId());
 
         Float size = symbolDetail.getSize() * scale;
-        xmlSerializer.attribute("", "width", size.toString());
-        xmlSerializer.attribute("", "height", size.toString());
+        writer.attribute("width", size.toString());
+        writer.attribute("height", size.toString());
         Coord2D position = symbolDetail.getPosition();
         float centreX = position.x * scale;
         float centreY = position.y * scale;
         float offsetX = centreX - size / 2f;
         float offsetY = centreY - size / 2f;
-        xmlSerializer.attribute("", "x", Double.toString(offsetX));
-        xmlSerializer.attribute("", "y", Double.toString(offsetY));
-        xmlSerializer.attribute("", "color", getSvgColour(symbolDetail));
+        writer.attribute("x", Double.toString(offsetX));
+        writer.attribute("y", Double.toString(offsetY));
+        writer.attribute("color", getSvgColour(symbolDetail));
 
         if (symbol.isDirectional()) {
-            xmlSerializer.attribute(
-                    "",
+            writer.attribute(
                     "transform",
                     "rotate(" + symbolDetail.getAngle() + "," + centreX + "," + centreY + ")");
         }
 
-        xmlSerializer.endTag("", "use");
+        writer.endTag("use");
     }
 
-    private static void writeSymbolRef(XmlSerializer xmlSerializer, Symbol symbol)
-            throws Exception {
+    private static void writeSymbolRef(SvgWriter writer, Symbol symbol) throws IOException {
         String svgContent = symbol.asRawSvg();
 
         // this is super-hacky and fragile... how to do it properly?
@@ -774,18 +766,17 @@ public class SvgExporter extends DoubleSketchFileExporter {
                         .replace("</svg>", "")
                         .trim();
 
-        xmlSerializer.startTag("", "symbol");
-        xmlSerializer.attribute("", "id", symbol.getSvgRefId());
-        xmlSerializer.attribute("", "viewBox", "0 0 40 40");
+        writer.startTag("symbol");
+        writer.attribute("id", symbol.getSvgRefId());
+        writer.attribute("viewBox", "0 0 40 40");
 
-        xmlSerializer.flush();
-        xmlSerializer.text(innerSvgContent);
+        writer.raw(innerSvgContent);
 
-        xmlSerializer.endTag("", "symbol");
+        writer.endTag("symbol");
     }
 
-    private static void writeCentrelineLegs(
-            XmlSerializer xmlSerializer, Space<Coord2D> projection, int scale) throws IOException {
+    private static void writeCentrelineLegs(SvgWriter writer, Space<Coord2D> projection, int scale)
+            throws IOException {
         Map<Station, Coord2D> stationMap = projection.getStationMap();
         Map<Leg, Line<Coord2D>> legMap = projection.getLegMap();
         Integer legStrokeWidth = GeneralPreferences.getExportSvgLegStrokeWidth();
@@ -796,23 +787,23 @@ public class SvgExporter extends DoubleSketchFileExporter {
                     Line<Coord2D> line = legMap.get(leg);
                     Station destination = leg.getDestination();
                     String legId = station.getName() + "-" + destination.getName();
-                    writeLeg(xmlSerializer, line, legId, scale, legStrokeWidth);
+                    writeLeg(writer, line, legId, scale, legStrokeWidth);
                 }
             }
         }
     }
 
-    private static void writeStations(
-            XmlSerializer xmlSerializer, Space<Coord2D> projection, int scale) throws IOException {
+    private static void writeStations(SvgWriter writer, Space<Coord2D> projection, int scale)
+            throws IOException {
         Map<Station, Coord2D> stationMap = projection.getStationMap();
         for (Station station : stationMap.keySet()) {
             Coord2D station2d = stationMap.get(station);
-            writeStation(xmlSerializer, station, station2d, scale);
+            writeStation(writer, station, station2d, scale);
         }
     }
 
-    private static void writeSplayData(
-            XmlSerializer xmlSerializer, Space<Coord2D> projection, int scale) throws IOException {
+    private static void writeSplayData(SvgWriter writer, Space<Coord2D> projection, int scale)
+            throws IOException {
         Map<Station, Coord2D> stationMap = projection.getStationMap();
         Map<Leg, Line<Coord2D>> legMap = projection.getLegMap();
         Integer splayStrokeWidth = GeneralPreferences.getExportSvgSplayStrokeWidth();
@@ -823,7 +814,7 @@ public class SvgExporter extends DoubleSketchFileExporter {
                 if (!leg.hasDestination()) {
                     Line<Coord2D> line = legMap.get(leg);
                     String splayId = String.format("%s-Splay%d", station.getName(), splayCount);
-                    writeLeg(xmlSerializer, line, splayId, scale, splayStrokeWidth);
+                    writeLeg(writer, line, splayId, scale, splayStrokeWidth);
                     splayCount++;
                 }
             }
@@ -831,14 +822,10 @@ public class SvgExporter extends DoubleSketchFileExporter {
     }
 
     private static void writeLeg(
-            XmlSerializer xmlSerializer,
-            Line<Coord2D> line,
-            String id,
-            int scale,
-            Integer strokeWidth)
+            SvgWriter writer, Line<Coord2D> line, String id, int scale, Integer strokeWidth)
             throws IOException {
-        xmlSerializer.startTag("", "polyline");
-        xmlSerializer.attribute("", "id", id);
+        writer.startTag("polyline");
+        writer.attribute("id", id);
         String pointsString =
                 TextTools.join(
                         ",",
@@ -846,24 +833,23 @@ public class SvgExporter extends DoubleSketchFileExporter {
                         scale * line.getStart().y,
                         scale * line.getEnd().x,
                         scale * line.getEnd().y);
-        xmlSerializer.attribute("", "points", pointsString);
-        xmlSerializer.attribute("", "stroke", "red");
-        xmlSerializer.attribute("", "stroke-width", strokeWidth.toString());
-        xmlSerializer.attribute("", "fill", "none");
-        xmlSerializer.endTag("", "polyline");
+        writer.attribute("points", pointsString);
+        writer.attribute("stroke", "red");
+        writer.attribute("stroke-width", strokeWidth.toString());
+        writer.attribute("fill", "none");
+        writer.endTag("polyline");
     }
 
-    private static void writeStation(
-            XmlSerializer xmlSerializer, Station station, Coord2D coord, int scale)
+    private static void writeStation(SvgWriter writer, Station station, Coord2D coord, int scale)
             throws IOException {
-        xmlSerializer.startTag("", "text");
-        xmlSerializer.attribute("", "id", station.getName());
-        xmlSerializer.attribute("", "x", String.format(Locale.ROOT, "%.5f", scale * coord.x));
-        xmlSerializer.attribute("", "y", String.format(Locale.ROOT, "%.5f", scale * coord.y));
-        xmlSerializer.attribute("", "font-size", String.format("%d", STATION_FONT));
-        xmlSerializer.attribute("", "stroke", "black");
-        xmlSerializer.text(station.getName());
-        xmlSerializer.endTag("", "text");
+        writer.startTag("text");
+        writer.attribute("id", station.getName());
+        writer.attribute("x", FixedPointFormatter.format(scale * coord.x, 5));
+        writer.attribute("y", FixedPointFormatter.format(scale * coord.y, 5));
+        writer.attribute("font-size", String.valueOf(STATION_FONT));
+        writer.attribute("stroke", "black");
+        writer.text(station.getName());
+        writer.endTag("text");
     }
 
     @Override
@@ -1016,28 +1002,6 @@ public class SvgExporter extends DoubleSketchFileExporter {
                 .apply();
     }
 
-    public String prettyPrintXML(String input) {
-        String output;
-        try {
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(new InputSource(new StringReader(input)));
-
-            TransformerFactory transformerFactory = TransformerFactory.newInstance();
-            Transformer transformer = transformerFactory.newTransformer();
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-
-            StringWriter writer = new StringWriter();
-            transformer.transform(new DOMSource(doc), new StreamResult(writer));
-            output = writer.toString();
-        } catch (Exception e) {
-            output = input; // not essential...
-        }
-
-        return output;
-    }
-
     public static String getSvgColour(SketchDetail sketchDetail) {
         Colour colour = sketchDetail.getColour();
 
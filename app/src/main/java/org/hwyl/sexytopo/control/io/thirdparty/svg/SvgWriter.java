@@ -0,0 +1,126 @@
+package org.hwyl.sexytopo.control.io.thirdparty.svg;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes indented XML straight to its output as it goes, escaping text and attribute values on
+ * the way out. Elements with no content are closed with "/>" and elements holding text are kept
+ * on one line.
+ */
+class SvgWriter {
+
+    private static final String INDENT = "  ";
+
+    private final Writer writer;
+    private int depth = 0;
+    private boolean isStartTagOpen = false;
+    private boolean hasText = false;
+
+    SvgWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    void startDocument() throws IOException {
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    }
+
+    void endDocument() throws IOException {
+        writer.flush();
+    }
+
+    SvgWriter startTag(String name) throws IOException {
+        closeStartTag(true);
+        indent();
+        writer.write('<');
+        writer.write(name);
+        depth++;
+        isStartTagOpen = true;
+        hasText = false;
+        return this;
+    }
+
+    SvgWriter attribute(String name, CharSequence value) throws IOException {
+        writer.write(' ');
+        writer.write(name);
+        writer.write("=\"");
+        escape(value, true);
+        writer.write('"');
+        return this;
+    }
+
+    SvgWriter text(CharSequence text) throws IOException {
+        closeStartTag(false);
+        escape(text, false);
+        hasText = true;
+        return this;
+    }
+
+    /** Writes markup that's already well-formed, such as a symbol's SVG, on its own line. */
+    SvgWriter raw(String markup) throws IOException {
+        closeStartTag(true);
+        indent();
+        writer.write(markup);
+        writer.write('\n');
+        return this;
+    }
+
+    SvgWriter endTag(String name) throws IOException {
+        depth--;
+        if (isStartTagOpen) {
+            writer.write("/>\n");
+            isStartTagOpen = false;
+        } else {
+            if (!hasText) {
+                indent();
+            }
+            writer.write("</");
+            writer.write(name);
+            writer.write(">\n");
+        }
+        hasText = false;
+        return this;
+    }
+
+    private void closeStartTag(boolean isNewLine) throws IOException {
+        if (isStartTagOpen) {
+            writer.write(isNewLine ? ">\n" : ">");
+            isStartTagOpen = false;
+        }
+    }
+
+    private void indent() throws IOException {
+        for (int i = 0; i < depth; i++) {
+            writer.write(INDENT);
+        }
+    }
+
+    private void escape(CharSequence text, boolean isAttribute) throws IOException {
+        int length = text.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            String replacement = getEscape(text.charAt(i), isAttribute);
+            if (replacement != null) {
+                writer.append(text, start, i);
+                writer.write(replacement);
+                start = i + 1;
+            }
+        }
+        writer.append(text, start, length);
+    }
+
+    private static String getEscape(char c, boolean isAttribute) {
+        switch (c) {
+            case '&':
+                return "&amp;";
+            case '<':
+                return "&lt;";
+            case '>':
+                return "&gt;";
+            case '"':
+                return isAttribute ? "&quot;" : null;
+            default:
+                return null;
+        }
+    }
+}
@@ -1,13 +1,13 @@
 package org.hwyl.sexytopo.control.io.thirdparty.therion;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
+import org.hwyl.sexytopo.control.util.FixedPointFormatter;
 import org.hwyl.sexytopo.control.util.GeneralPreferences;
 import org.hwyl.sexytopo.control.util.TextTools;
 import org.hwyl.sexytopo.model.common.Shape;
@@ -29,6 +29,9 @@ import org.hwyl.sexytopo.model.survey.Survey;
  */
 public class Th2Exporter {
 
+    // Between the sections of the file, and between the commands in a scrap
+    private static final String SEPARATOR = "\n\n";
+
     public static String getContent(
             Survey survey,
             Projection2D projection,
@@ -36,7 +39,8 @@ public class Th2Exporter {
             String xviFilename,
             Shape innerFrame,
             Shape outerFrame,
-            float scale) {
+            float scale)
+            throws IOException {
         return getContent(
                 survey, projection, space, xviFilename, innerFrame, outerFrame, scale, 1, true);
     }
@@ -50,11 +54,40 @@ public class Th2Exporter {
             Shape outerFrame,
             float scale,
             int scrapCount,
-            boolean stationsInFirstScrap) {
+            boolean stationsInFirstScrap)
+            throws IOException {
+        StringBuilder builder = new StringBuilder();
+        write(
+                builder,
+                survey,
+                projection,
+                space,
+                xviFilename,
+                innerFrame,
+                outerFrame,
+                scale,
+                scrapCount,
+                stationsInFirstScrap);
+        return builder.toString();
+    }
 
-        List<String> sections = new ArrayList<>();
-        sections.add(TherionExporter.getEncodingText());
-        sections.add(getXviBlock(survey, space, xviFilename, outerFrame));
+    /** Writes the th2 file in one pass, straight to the output. */
+    public static void write(
+            Appendable out,
+            Survey survey,
+            Projection2D projection,
+            Space<Coord2D> space,
+            String xviFilename,
+            Shape innerFrame,
+            Shape outerFrame,
+            float scale,
+            int scrapCount,
+            boolean stationsInFirstScrap)
+            throws IOException {
+
+        out.append(TherionExporter.getEncodingText());
+        out.append(SEPARATOR);
+        writeXviBlock(out, survey, space, xviFilename, outerFrame);
 
         Sketch sketch = survey.getSketch(projection);
         String baseName = getBaseScrapName(survey);
@@ -70,27 +103,23 @@ public class Th2Exporter {
             String scrapName = formatScrapName(baseName, scrapSuffix, i, scrapCount);
             boolean includeStations = (i == 1) && stationsInFirstScrap;
             boolean includeSketchContent = (i == 1); // sketch content only in first scrap
-            sections.add(
-                    getScrap(
-                            survey,
-                            scrapName,
-                            projection,
-                            sketch,
-                            space,
-                            innerFrame,
-                            scale,
-                            includeStations,
-                            includeSketchContent,
-                            includeStations ? stationNameToXsScrapName : Collections.emptyMap()));
+            out.append(SEPARATOR);
+            writeScrap(
+                    out,
+                    survey,
+                    scrapName,
+                    projection,
+                    sketch,
+                    space,
+                    scale,
+                    includeStations,
+                    includeSketchContent,
+                    includeStations ? stationNameToXsScrapName : Collections.emptyMap());
         }
 
         if (xsEnabled) {
-            sections.addAll(
-                    getCrossSectionScraps(
-                            survey, sketch, projection, stationNameToXsScrapName, scale));
+            writeCrossSectionScraps(out, survey, sketch, stationNameToXsScrapName, scale);
         }
-
-        return TextTools.join("\n\n", sections);
     }
 
     private static Map<String, String> buildStationNameToXsScrapName(
@@ -104,14 +133,13 @@ public class Th2Exporter {
         return map;
     }
 
-    private static List<String> getCrossSectionScraps(
+    private static void writeCrossSectionScraps(
+            Appendable out,
             Survey survey,
             Sketch sketch,
-            Projection2D projection,
             Map<String, String> stationNameToXsScrapName,
-            float scale) {
-        List<String> scraps = new ArrayList<>();
-
+            float scale)
+            throws IOException {
         List<CrossSectionDetail> crossSections = new ArrayList<>(sketch.getCrossSectionDetails());
 
         // Sort by station order in survey
@@ -125,11 +153,10 @@ public class Th2Exporter {
             Station station = xsDetail.getCrossSection().getStation();
             String scrapName = stationNameToXsScrapName.get(station.getName());
             if (scrapName != null) {
-                scraps.add(getCrossSectionScrap(scrapName, xsDetail, scale, xsScale));
+                out.append(SEPARATOR);
+                writeCrossSectionScrap(out, scrapName, scale, xsScale);
             }
         }
-
-        return scraps;
     }
 
     private static String getXsSuffix(Projection2D projection) {
@@ -170,26 +197,19 @@ public class Th2Exporter {
         }
     }
 
-    private static String getCrossSectionScrap(
-            String name, CrossSectionDetail xsDetail, float scale, float xsScale) {
-        List<String> lines = new ArrayList<>();
+    private static void writeCrossSectionScrap(
+            Appendable out, String name, float scale, float xsScale) throws IOException {
 
         // Scale parameter: [px1 py1 px2 py2 rx1 ry1 rx2 ry2 m]
         float realWorldRef = 10.0f;
         float pictureRef = realWorldRef * scale * xsScale;
-        String scaleParam =
-                String.format(
-                        Locale.US,
-                        "[0 0 %s %s 0 0 %s %s m]",
-                        TextTools.formatTo2dp(pictureRef),
-                        TextTools.formatTo2dp(pictureRef),
-                        TextTools.formatTo2dp(realWorldRef),
-                        TextTools.formatTo2dp(realWorldRef));
-
-        lines.add("scrap " + name + " -projection none -scale " + scaleParam);
-        lines.add("endscrap");
-
-        return TextTools.join("\n\n", lines);
+        String picture = FixedPointFormatter.formatHalfEven(pictureRef, 2);
+        String realWorld = FixedPointFormatter.formatHalfEven(realWorldRef, 2);
+
+        out.append("scrap ").append(name).append(" -projection none -scale ");
+        out.append("[0 0 ").append(picture).append(' ').append(picture);
+        out.append(" 0 0 ").append(realWorld).append(' ').append(realWorld).append(" m]");
+        out.append(SEPARATOR).append("endscrap");
     }
 
     private static String getScrapSuffix(Projection2D projection) {
@@ -224,26 +244,25 @@ public class Th2Exporter {
         return baseName + suffix;
     }
 
-    public static String getXviBlock(
-            Survey survey, Space<Coord2D> space, String filename, Shape outerFrame) {
-
-        List<String> lines = new ArrayList<>();
+    private static void writeXviBlock(
+            Appendable out, Survey survey, Space<Coord2D> space, String filename, Shape outerFrame)
+            throws IOException {
 
         // xth_me_area_adjust <Xmin> <Ymin> <Xmax> <Ymax>
         // Xmin, Ymin and Xmax, Ymax are cartesian coordinates of lower left and upper right
         // corners of drawing area
-        lines.add(
-                getXviLine(
-                        "xth_me_area_adjust",
-                        TextTools.formatTo2dp(outerFrame.getLeft()),
-                        TextTools.formatTo2dp(outerFrame.getBottom()),
-                        TextTools.formatTo2dp(outerFrame.getRight()),
-                        TextTools.formatTo2dp(outerFrame.getTop())));
+        writeXviLine(
+                out,
+                "xth_me_area_adjust",
+                FixedPointFormatter.formatHalfEven(outerFrame.getLeft(), 2),
+                FixedPointFormatter.formatHalfEven(outerFrame.getBottom(), 2),
+                FixedPointFormatter.formatHalfEven(outerFrame.getRight(), 2),
+                FixedPointFormatter.formatHalfEven(outerFrame.getTop(), 2));
 
         Station origin = survey.getOrigin();
         Coord2D originPos = space.getStationMap().get(survey.getOrigin());
         if (originPos == null) {
-            return TextTools.join("\n", lines);
+            return;
         }
         // Survey-frame y is north-positive; XVI/Therion canvas y is down — flip on emit.
         float xPos = originPos.x;
@@ -255,21 +274,21 @@ public class Th2Exporter {
         //  <root> - root station name. Can be omitted.
         //  <filename> - name of image file
         //  0 {} - image identifiers, can be 0 {} for all images
-        lines.add(
-                getXviLine(
-                        "xth_me_image_insert",
-                        "{" + xPos + " 1 1.0}",
-                        "{" + yPos + " " + origin.getName() + "}",
-                        "\"" + filename + "\"",
-                        0,
-                        "{}"));
+        out.append('\n');
+        writeXviLine(
+                out,
+                "xth_me_image_insert",
+                "{" + xPos + " 1 1.0}",
+                "{" + yPos + " " + origin.getName() + "}",
+                "\"" + filename + "\"",
+                0,
+                "{}");
 
         // xth_me_area_zoom_to <zoom>
         // where <zoom> is the default zoom factor, when drawing is open in xtherion.
         // Should be 25,50,100,200,400.
-        lines.add(getXviLine("xth_me_area_zoom_to", 25));
-
-        return TextTools.join("\n", lines);
+        out.append('\n');
+        writeXviLine(out, "xth_me_area_zoom_to", 25);
     }
 
     public static String getBaseScrapName(Survey survey) {
@@ -285,58 +304,18 @@ public class Th2Exporter {
         return TextTools.join(joiner, name, projectionSuffix);
     }
 
-    public static String getScrap(
+    private static void writeScrap(
+            Appendable out,
             Survey survey,
             String name,
             Projection2D projection,
             Sketch sketch,
             Space<Coord2D> space,
-            Shape frame,
             float scale,
             boolean includeStations,
             boolean includeSketchContent,
-            Map<String, String> stationNameToXsScrapName) {
-        List<String> lines = new ArrayList<>();
-        lines.add(getStartScrapCommands(name, projection, frame));
-        lines.addAll(
-                getScrapCommands(
-                        survey,
-                        sketch,
-                        space,
-                        scale,
-                        includeStations,
-                        includeSketchContent,
-                        stationNameToXsScrapName));
-        lines.add("endscrap");
-        return TextTools.join("\n\n", lines);
-    }
-
-    public static String getScrap(
-            Survey survey,
-            String name,
-            Projection2D projection,
-            Sketch sketch,
-            Space<Coord2D> space,
-            Shape frame,
-            float scale) {
-        return getScrap(
-                survey,
-                name,
-                projection,
-                sketch,
-                space,
-                frame,
-                scale,
-                true,
-                true,
-                Collections.emptyMap());
-    }
-
-    private static String getStartScrapCommands(String name, Projection2D projection, Shape frame) {
-
-        List<String> commands = new ArrayList<>();
-
-        commands.add("scrap " + name);
+            Map<String, String> stationNameToXsScrapName)
+            throws IOException {
 
         String projectionName = "";
         if (Projection2D.PLAN.equals(projection)) {
@@ -344,19 +323,7 @@ public class Th2Exporter {
         } else if (Projection2D.EXTENDED_ELEVATION.equals(projection)) {
             projectionName = "extended";
         }
-        commands.add("-projection " + projectionName);
-        return TextTools.join(" ", commands);
-    }
-
-    private static List<String> getScrapCommands(
-            Survey survey,
-            Sketch sketch,
-            Space<Coord2D> space,
-            float scale,
-            boolean includeStations,
-            boolean includeSketchContent,
-            Map<String, String> stationNameToXsScrapName) {
-        List<String> commands = new ArrayList<>();
+        out.append("scrap ").append(name).append(" -projection ").append(projectionName);
 
         if (includeStations) {
             Map<Station, Coord2D> stationMap = space.getStationMap();
@@ -368,14 +335,24 @@ public class Th2Exporter {
                 }
                 // Inputs are survey-frame (y north-positive); Therion canvas is y-down so flip
                 // when emitting. Same convention used for sketch content and section anchors.
-                coord = coord.flipVertically().scale(scale);
-                commands.add(getPoint(coord.x, coord.y, "station", "-name", station.getName()));
+                writePoint(
+                        out,
+                        coord.x * scale,
+                        -coord.y * scale,
+                        "station",
+                        "-name",
+                        station.getName());
 
                 String xsScrapName = stationNameToXsScrapName.get(station.getName());
                 if (xsScrapName != null) {
-                    CrossSectionDetail xsDetail = sketch.getCrossSectionDetail(station);
-                    Coord2D xsCoord = xsDetail.getPosition().flipVertically().scale(scale);
-                    commands.add(getPoint(xsCoord.x, xsCoord.y, "section", "-scrap", xsScrapName));
+                    Coord2D xsCoord = sketch.getCrossSectionDetail(station).getPosition();
+                    writePoint(
+                            out,
+                            xsCoord.x * scale,
+                            -xsCoord.y * scale,
+                            "section",
+                            "-scrap",
+                            xsScrapName);
                 }
             }
         }
@@ -383,48 +360,59 @@ public class Th2Exporter {
         if (includeSketchContent) {
             if (GeneralPreferences.isXviExportTextEnabled()) {
                 for (TextDetail textDetail : sketch.getTextDetails()) {
-                    Coord2D coord = textDetail.getPosition().scale(scale).flipVertically();
-                    commands.add(
-                            getPoint(
-                                    coord.x,
-                                    coord.y,
-                                    "label",
-                                    "-text \"",
-                                    textDetail.getText(),
-                                    "\" -scale",
-                                    getScale(textDetail)));
+                    Coord2D coord = textDetail.getPosition();
+                    writePoint(
+                            out,
+                            coord.x * scale,
+                            -coord.y * scale,
+                            "label",
+                            "-text \"",
+                            textDetail.getText(),
+                            "\" -scale",
+                            getScale(textDetail));
                 }
             }
 
             if (GeneralPreferences.isXviExportSymbolsEnabled()) {
                 for (SymbolDetail symbolDetail : sketch.getSymbolDetails()) {
-                    Coord2D coord = symbolDetail.getPosition().scale(scale).flipVertically();
+                    Coord2D coord = symbolDetail.getPosition();
                     Symbol symbol = symbolDetail.getSymbol();
-
-                    List<String> args = new ArrayList<>();
-                    args.add("-scale " + getScale(symbolDetail));
+                    String scaleArg = "-scale " + getScale(symbolDetail);
                     if (symbol.isDirectional()) {
-                        args.add("-orientation " + symbolDetail.getAngle());
+                        String orientationArg = "-orientation " + symbolDetail.getAngle();
+                        writePoint(
+                                out,
+                                coord.x * scale,
+                                -coord.y * scale,
+                                symbol.getTherionName(),
+                                scaleArg,
+                                orientationArg);
+                    } else {
+                        writePoint(
+                                out,
+                                coord.x * scale,
+                                -coord.y * scale,
+                                symbol.getTherionName(),
+                                scaleArg);
                     }
-                    commands.add(
-                            getPoint(
-                                    coord.x,
-                                    coord.y,
-                                    symbolDetail.getSymbol().getTherionName(),
-                                    args));
                 }
             }
         }
 
-        return commands;
-    }
-
-    private static String getPoint(float x, float y, String name, String... args) {
-        return getPoint(x, y, name, Arrays.asList(args));
+        out.append(SEPARATOR).append("endscrap");
     }
 
-    private static String getPoint(float x, float y, String name, List<String> args) {
-        return "point " + x + " " + y + " " + name + " " + TextTools.join(" ", args);
+    private static void writePoint(
+            Appendable out, float x, float y, String name, String... args) throws IOException {
+        out.append(SEPARATOR);
+        out.append("point ").append(Float.toString(x)).append(' ').append(Float.toString(y));
+        out.append(' ').append(name).append(' ');
+        for (int i = 0; i < args.length; i++) {
+            if (i > 0) {
+                out.append(' ');
+            }
+            out.append(args[i]);
+        }
     }
 
     private static String getScale(AutoScalableDetail detail) {
@@ -450,13 +438,11 @@ public class Th2Exporter {
         }
     }
 
-    private static String getXviLine(String command, Object... values) {
-        List<String> fields = new ArrayList<>();
-        fields.add("##XTHERION##");
-        fields.add(command);
+    private static void writeXviLine(Appendable out, String command, Object... values)
+            throws IOException {
+        out.append("##XTHERION## ").append(command);
         for (Object value : values) {
-            fields.add(value.toString());
+            out.append(' ').append(value.toString());
         }
-        return TextTools.join(" ", fields);
     }
 }
@@ -6,7 +6,12 @@ import android.view.View;
 import android.widget.CheckBox;
 import android.widget.EditText;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import org.hwyl.sexytopo.R;
@@ -169,40 +174,49 @@ public class TherionExporter extends Exporter {
         float scale = getScale();
 
         // Survey-frame coords throughout — the Th2 / XVI exporters flip y at their emit sites.
-        Space<Coord2D> space = projectionType.project(survey);
+        Space<Coord2D> space = getProjection(survey, projectionType);
 
         Sketch sketch = survey.getSketch(projectionType);
 
-        Frame baseFrame = ExportFrameFactory.getExportFrame(survey, projectionType);
-        Frame gridFrame = ExportFrameFactory.addBorder(baseFrame);
-        Frame outerFrame = ExportFrameFactory.addBorder(gridFrame);
+        Frame baseFrame = ExportFrameFactory.getExportFrame(sketch, space);
+        Frame borderedFrame = ExportFrameFactory.addBorder(baseFrame);
 
         Frame innerFrame = baseFrame.scale(scale);
         innerFrame.flipVertically();
 
-        gridFrame = gridFrame.scale(scale);
+        Frame gridFrame = borderedFrame.scale(scale);
         gridFrame.flipVertically();
 
-        outerFrame = outerFrame.scale(scale);
+        Frame outerFrame = ExportFrameFactory.addBorder(borderedFrame).scale(scale);
         outerFrame.flipVertically();
 
         String xviPathForTh2 = getXviPathForTh2(xviFile.getFilename(), xviFolder);
 
-        String content =
-                Th2Exporter.getContent(
-                        survey,
-                        projectionType,
-                        space,
-                        xviPathForTh2,
-                        innerFrame,
-                        outerFrame,
-                        scale,
-                        scrapCount,
-                        stationsInFirstScrap);
-        th2File.save(context, content);
-
-        String xviContent = XviExporter.getContent(sketch, space, scale, gridFrame);
-        xviFile.save(context, xviContent);
+        th2File.save(
+                context,
+                outputStream -> {
+                    Writer writer = createWriter(outputStream);
+                    Th2Exporter.write(
+                            writer,
+                            survey,
+                            projectionType,
+                            space,
+                            xviPathForTh2,
+                            innerFrame,
+                            outerFrame,
+                            scale,
+                            scrapCount,
+                            stationsInFirstScrap);
+                    writer.flush();
+                });
+
+        xviFile.save(
+                context,
+                outputStream -> {
+                    Writer writer = createWriter(outputStream);
+                    XviExporter.write(writer, sketch, space, scale, gridFrame);
+                    writer.flush();
+                });
 
         th2Files.add(th2File.getFilename());
     }
@@ -238,6 +252,10 @@ public class TherionExporter extends Exporter {
                 .show();
     }
 
+    private static Writer createWriter(OutputStream outputStream) {
+        return new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+    }
+
     private static int parseIntSafe(String value, int defaultValue) {
         try {
             int parsed = Integer.parseInt(value.trim());
@@ -2,26 +2,23 @@ package org.hwyl.sexytopo.control.io.thirdparty.therion;
 
 import android.content.Context;
 import androidx.documentfile.provider.DocumentFile;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import org.apache.commons.io.FilenameUtils;
 import org.hwyl.sexytopo.SexyTopoConstants;
-import org.hwyl.sexytopo.control.Log;
-import org.hwyl.sexytopo.control.io.IoUtils;
-import org.hwyl.sexytopo.control.io.thirdparty.survextherion.SexyTopoVersion;
 import org.hwyl.sexytopo.control.io.thirdparty.survextherion.SurvexTherionImporter;
 import org.hwyl.sexytopo.control.io.thirdparty.survextherion.SurveyFormat;
 import org.hwyl.sexytopo.control.io.thirdparty.xvi.XviImporter;
 import org.hwyl.sexytopo.control.io.translation.Importer;
-import org.hwyl.sexytopo.control.util.SurveyUpdater;
 import org.hwyl.sexytopo.control.util.TextTools;
-import org.hwyl.sexytopo.model.graph.Direction;
 import org.hwyl.sexytopo.model.sketch.Sketch;
-import org.hwyl.sexytopo.model.survey.Station;
 import org.hwyl.sexytopo.model.survey.Survey;
-import org.hwyl.sexytopo.model.survey.Trip;
 
 public class TherionImporter extends Importer {
 
@@ -57,26 +54,16 @@ public class TherionImporter extends Importer {
     }
 
     private static Survey parseTh(Context context, DocumentFile file) throws Exception {
-        Survey survey = new Survey();
-        String contents = IoUtils.slurpFile(context, file);
-
-        // Determine import mode based on the SexyTopo version that wrote the file.
-        // Files with no version header (third-party) or written by 1.11.3+ use the new
-        // leg-comment path. Only files positively identified as 1.11.2 or earlier use the
-        // legacy station-comment path.
-        SexyTopoVersion version = SexyTopoVersion.extractFromText(contents);
-        boolean useLegComments =
-                version == null || version.isAfter(SexyTopoVersion.LEG_COMMENTS_VERSION_CUTOFF);
-
-        List<String> lines = Arrays.asList(contents.split("\n"));
-        updateCentreline(lines, survey, useLegComments);
-
-        Trip trip = SurvexTherionImporter.parseMetadata(contents, SurveyFormat.THERION);
-        if (trip != null) {
-            survey.setTrip(trip);
+        try (InputStream in = context.getContentResolver().openInputStream(file.getUri())) {
+            if (in == null) {
+                throw new IOException("Failed to open input stream");
+            }
+            return parseTh(new InputStreamReader(in, StandardCharsets.UTF_8));
         }
+    }
 
-        return survey;
+    public static Survey parseTh(Reader reader) throws Exception {
+        return SurvexTherionImporter.parse(reader, SurveyFormat.THERION);
     }
 
     public boolean canHandleFile(DocumentFile directory) {
@@ -97,74 +84,8 @@ public class TherionImporter extends Importer {
 
     public static void updateCentreline(List<String> lines, Survey survey, boolean useLegComments)
             throws Exception {
-        List<String> block = getContentsOfBeginEndBlock(lines, "centreline");
-
-        String blockText = TextTools.join("\n", block);
-        Map<String, String> passageComments =
-                SurvexTherionImporter.parsePassageData(blockText, SurveyFormat.THERION);
-
-        List<String> sanitisedCentrelineData = new ArrayList<>();
-        List<String> sanitisedElevationDirectionData = new ArrayList<>();
-
-        boolean inNormalDataBlock = false;
-        for (String line : block) {
-            String trimmed = line.trim();
-            if (trimmed.equals("")) {
-                continue;
-            }
-
-            if (trimmed.startsWith("data")) {
-                inNormalDataBlock = trimmed.startsWith("data normal");
-                continue;
-            } else if (!inNormalDataBlock) {
-                if (trimmed.startsWith("extend")) {
-                    sanitisedElevationDirectionData.add(trimmed);
-                }
-                continue;
-            }
-
-            if (trimmed.startsWith("extend")) {
-                sanitisedElevationDirectionData.add(trimmed);
-            } else {
-                sanitisedCentrelineData.add(trimmed);
-            }
-        }
-
-        String centrelineText = TextTools.join("\n", sanitisedCentrelineData);
-        SurvexTherionImporter.parseCentreline(centrelineText, survey, useLegComments);
-        handleElevationDirectionData(sanitisedElevationDirectionData, survey);
-
-        SurvexTherionImporter.mergePassageComments(survey, passageComments);
-    }
-
-    private static void handleElevationDirectionData(List<String> lines, Survey survey) {
-        try {
-            for (String line : lines) {
-                final String EXTEND_PREFIX = "extend ";
-                assert line.startsWith(EXTEND_PREFIX);
-                String rest = line.substring(EXTEND_PREFIX.length());
-                String[] tokens = rest.split(" ");
-                assert tokens.length == 2;
-
-                String directionName = tokens[0];
-                if (directionName.equals("start")) {
-                    continue;
-                }
-                Direction direction = Direction.valueOf(directionName.toUpperCase());
-
-                String stationName = tokens[1];
-                Station station = survey.getStationByName(stationName);
-                if (station == null) {
-                    Log.e("extend: station " + stationName + " not found");
-                    continue;
-                }
-
-                SurveyUpdater.setDirectionOfSubtree(station, direction);
-            }
-
-        } catch (Exception exception) {
-            Log.e("corrupted survey extended elevation directions: " + exception);
-        }
+        Reader reader = new StringReader(TextTools.join("\n", lines));
+        SurvexTherionImporter.parseTherionCentreline(reader, survey, useLegComments);
     }
 
     public static List<String> getContentsOfBeginEndBlock(List<String> lines, String tag)
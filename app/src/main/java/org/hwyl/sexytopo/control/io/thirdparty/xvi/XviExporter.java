@@ -6,11 +6,11 @@ import static org.hwyl.sexytopo.control.io.thirdparty.xvi.XviConstants.SHOT_COMM
 import static org.hwyl.sexytopo.control.io.thirdparty.xvi.XviConstants.SKETCHLINE_COMMAND;
 import static org.hwyl.sexytopo.control.io.thirdparty.xvi.XviConstants.STATIONS_COMMAND;
 
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import org.hwyl.sexytopo.control.util.Space2DUtils;
+import org.hwyl.sexytopo.control.util.FixedPointFormatter;
 import org.hwyl.sexytopo.control.util.TextTools;
 import org.hwyl.sexytopo.model.common.Shape;
 import org.hwyl.sexytopo.model.graph.Coord2D;
@@ -25,142 +25,176 @@ import org.hwyl.sexytopo.model.survey.Station;
 
 public class XviExporter {
 
-    private static final class XviContent {
-        final List<String> stations = new ArrayList<>();
-        final List<String> shots = new ArrayList<>();
-        final List<String> sketchLines = new ArrayList<>();
-    }
-
     public static String getContent(
-            Sketch sketch, Space<Coord2D> space, float scale, Shape gridFrame) {
-        XviContent content = new XviContent();
+            Sketch sketch, Space<Coord2D> space, float scale, Shape gridFrame) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        write(builder, sketch, space, scale, gridFrame);
+        return builder.toString();
+    }
 
-        // First the main survey
-        addSketch(content, space, sketch, scale);
+    /**
+     * Writes the XVI file in one pass. Each cross-section is drawn on the plan scaled and moved to
+     * its position; that's done to each coordinate on the way out rather than by making a moved
+     * copy of the cross-section's sketch and projection first.
+     */
+    public static void write(
+            Appendable out, Sketch sketch, Space<Coord2D> space, float scale, Shape gridFrame)
+            throws IOException {
 
-        // Then the same for each sketch, once translated and scaled
         float xsScale = sketch.getCrossSectionScale();
-        for (CrossSectionDetail xsDetail : sketch.getCrossSectionDetails()) {
-            Space<Coord2D> xsSpace = getScaledProjection(xsDetail, xsScale);
-            Sketch xsSketch = xsDetail.getSketch().scale(xsScale).translate(xsDetail.getPosition());
-            addSketch(content, xsSpace, xsSketch, scale);
-            addCrossSectionConnection(content, xsDetail, space, scale);
+        List<CrossSectionDetail> xsDetails = sketch.getCrossSectionDetails();
+
+        out.append(GRIDS_COMMAND).append(" {1 m}\n");
+
+        startMultilineField(out, STATIONS_COMMAND);
+        writeStations(out, space, Placement.NONE, scale);
+        for (CrossSectionDetail xsDetail : xsDetails) {
+            Placement placement = new Placement(xsScale, xsDetail.getPosition());
+            writeStations(out, xsDetail.getCrossSection().getProjection(), placement, scale);
         }
+        out.append("}\n");
 
-        String text = field(GRIDS_COMMAND, "1 m");
-        text += multilineField(STATIONS_COMMAND, joinAll(content.stations));
-        text += multilineField(SHOT_COMMAND, joinAll(content.shots));
-        text += multilineField(SKETCHLINE_COMMAND, joinAll(content.sketchLines));
+        startMultilineField(out, SHOT_COMMAND);
+        writeLegs(out, space, Placement.NONE, scale);
+        for (CrossSectionDetail xsDetail : xsDetails) {
+            Placement placement = new Placement(xsScale, xsDetail.getPosition());
+            writeLegs(out, xsDetail.getCrossSection().getProjection(), placement, scale);
+        }
+        out.append("}\n");
+
+        startMultilineField(out, SKETCHLINE_COMMAND);
+        writeSketchLines(out, sketch, Placement.NONE, scale);
+        for (CrossSectionDetail xsDetail : xsDetails) {
+            Placement placement = new Placement(xsScale, xsDetail.getPosition());
+            writeSketchLines(out, xsDetail.getSketch(), placement, scale);
+            writeCrossSectionConnector(out, xsDetail, space, scale);
+        }
+        out.append("}\n");
 
-        text += field(GRID_COMMAND, getGridText(gridFrame, scale));
-        return text;
+        out.append(GRID_COMMAND).append(" {").append(getGridText(gridFrame, scale)).append("}\n");
     }
 
     /**
-     * Inputs are in survey-frame metres (y north-positive). The XVI emit-helpers (getStationText /
-     * getLegText / getPathDetailText) handle the y-flip on the way out — keep that the only place
-     * flipping happens.
+     * Where a sketch's own coordinates end up on the page: cross-sections are scaled about their
+     * origin then moved to their position, and the main sketch is left where it is.
      */
-    private static void addSketch(
-            XviContent content, Space<Coord2D> space, Sketch sketch, double scale) {
-        for (Map.Entry<Station, Coord2D> entry : space.getStationMap().entrySet()) {
-            content.stations.add(getStationText(entry.getKey(), entry.getValue(), scale));
-        }
-        for (Line<Coord2D> line : space.getLegMap().values()) {
-            content.shots.add(getLegText(line, scale));
-        }
-        for (PathDetail pathDetail : sketch.getPathDetails()) {
-            content.sketchLines.add(getPathDetailText(pathDetail, scale));
+    private static final class Placement {
+
+        static final Placement NONE = new Placement(1, null);
+
+        final float scale;
+        final Coord2D offset;
+
+        Placement(float scale, Coord2D offset) {
+            this.scale = scale;
+            this.offset = offset;
         }
-        for (TextDetail textDetail : sketch.getTextDetails()) {
-            content.sketchLines.add(getTextDetailAsPathsText(textDetail, scale));
+
+        // Same float arithmetic as Coord2D.scale() followed by plus()
+        float x(Coord2D coord) {
+            return offset == null ? coord.x : coord.x * scale + offset.x;
         }
-        for (SymbolDetail symbolDetail : sketch.getSymbolDetails()) {
-            content.sketchLines.add(getSymbolDetailAsPathsText(symbolDetail, scale));
+
+        float y(Coord2D coord) {
+            return offset == null ? coord.y : coord.y * scale + offset.y;
         }
-    }
 
-    private static void addCrossSectionConnection(
-            XviContent content, CrossSectionDetail xsDetail, Space<Coord2D> space, double scale) {
-        content.sketchLines.add(getCrossSectionConnectorText(xsDetail, space, scale));
-    }
+        // Text and symbols are drawn as several short paths, so they're placed first
+        TextDetail place(TextDetail textDetail) {
+            return offset == null ? textDetail : textDetail.scale(scale).translate(offset);
+        }
 
-    private static String joinAll(List<String> parts) {
-        StringBuilder builder = new StringBuilder();
-        for (String part : parts) {
-            builder.append(part);
+        SymbolDetail place(SymbolDetail symbolDetail) {
+            return offset == null ? symbolDetail : symbolDetail.scale(scale).translate(offset);
         }
-        return builder.toString();
     }
 
-    private static Space<Coord2D> getScaledProjection(CrossSectionDetail xsDetail, float xsScale) {
-        Space<Coord2D> rawProjection = xsDetail.getCrossSection().getProjection();
-        Space<Coord2D> scaledProjection = rawProjection.scale(xsScale);
-        return Space2DUtils.translate(scaledProjection, xsDetail.getPosition());
+    // Inputs are in survey-frame metres (y north-positive). The write methods below handle the
+    // y-flip on the way out — keep them the only place flipping happens.
+    private static void writeStations(
+            Appendable out, Space<Coord2D> space, Placement placement, double scale)
+            throws IOException {
+        for (Map.Entry<Station, Coord2D> entry : space.getStationMap().entrySet()) {
+            Coord2D coord = entry.getValue();
+            out.append("\t {");
+            FixedPointFormatter.appendHalfEven(out, placement.x(coord) * scale, 2);
+            out.append(' ');
+            FixedPointFormatter.appendHalfEven(out, -placement.y(coord) * scale, 2);
+            out.append(' ').append(entry.getKey().getName()).append("}\n");
+        }
     }
 
-    private static String getStationText(Station station, Coord2D coords, double scale) {
-        String x = TextTools.formatTo2dpWithDot(coords.x * scale);
-        String y = TextTools.formatTo2dpWithDot(-coords.y * scale);
-        return field("\t", TextTools.joinAll(" ", x, y, station.getName()));
+    private static void writeLegs(
+            Appendable out, Space<Coord2D> space, Placement placement, double scale)
+            throws IOException {
+        for (Line<Coord2D> line : space.getLegMap().values()) {
+            Coord2D start = line.getStart();
+            Coord2D end = line.getEnd();
+            out.append("\t {");
+            FixedPointFormatter.appendHalfEven(out, placement.x(start) * scale, 2);
+            out.append(' ');
+            FixedPointFormatter.appendHalfEven(out, -placement.y(start) * scale, 2);
+            out.append(' ');
+            FixedPointFormatter.appendHalfEven(out, placement.x(end) * scale, 2);
+            out.append(' ');
+            FixedPointFormatter.appendHalfEven(out, -placement.y(end) * scale, 2);
+            out.append("}\n");
+        }
     }
 
-    private static String getLegText(Line<Coord2D> line, double scale) {
-        Coord2D start = line.getStart();
-        String startX = TextTools.formatTo2dpWithDot(start.x * scale);
-        String startY = TextTools.formatTo2dpWithDot(-start.y * scale);
-        Coord2D end = line.getEnd();
-        String endX = TextTools.formatTo2dpWithDot(end.x * scale);
-        String endY = TextTools.formatTo2dpWithDot(-end.y * scale);
-        return field("\t", TextTools.joinAll(" ", startX, startY, endX, endY));
+    private static void writeSketchLines(
+            Appendable out, Sketch sketch, Placement placement, double scale) throws IOException {
+        for (PathDetail pathDetail : sketch.getPathDetails()) {
+            writePathDetail(out, pathDetail, placement, scale);
+        }
+        for (TextDetail textDetail : sketch.getTextDetails()) {
+            TextDetail placed = placement.place(textDetail);
+            for (PathDetail pathDetail : TextDetailTranslater.getPathDetailsForText(placed)) {
+                writePathDetail(out, pathDetail, Placement.NONE, scale);
+            }
+        }
+        SymbolDetailTranslater symbolDetailTranslater = new SymbolDetailTranslater();
+        for (SymbolDetail symbolDetail : sketch.getSymbolDetails()) {
+            SymbolDetail placed = placement.place(symbolDetail);
+            for (PathDetail pathDetail : symbolDetailTranslater.asPathDetails(placed)) {
+                writePathDetail(out, pathDetail, Placement.NONE, scale);
+            }
+        }
     }
 
-    private static String getCrossSectionConnectorText(
-            CrossSectionDetail xsDetail, Space<Coord2D> space, double scale) {
+    private static void writeCrossSectionConnector(
+            Appendable out, CrossSectionDetail xsDetail, Space<Coord2D> space, double scale)
+            throws IOException {
         Station station = xsDetail.getCrossSection().getStation();
         Coord2D surveyStationPos = space.getStationMap().get(station);
         if (surveyStationPos == null) {
-            return "";
+            return;
         }
         Coord2D xsPos = xsDetail.getPosition();
 
-        String x1 = TextTools.formatTo2dpWithDot(surveyStationPos.x * scale);
-        String y1 = TextTools.formatTo2dpWithDot(-surveyStationPos.y * scale);
-        String x2 = TextTools.formatTo2dpWithDot(xsPos.x * scale);
-        String y2 = TextTools.formatTo2dpWithDot(-xsPos.y * scale);
-
-        return field("\t", TextTools.joinAll(" ", "connect", x1, y1, x2, y2));
+        out.append("\t {connect ");
+        FixedPointFormatter.appendHalfEven(out, surveyStationPos.x * scale, 2);
+        out.append(' ');
+        FixedPointFormatter.appendHalfEven(out, -surveyStationPos.y * scale, 2);
+        out.append(' ');
+        FixedPointFormatter.appendHalfEven(out, xsPos.x * scale, 2);
+        out.append(' ');
+        FixedPointFormatter.appendHalfEven(out, -xsPos.y * scale, 2);
+        out.append("}\n");
     }
 
-    private static String getPathDetailText(PathDetail pathDetail, double scale) {
-        List<Object> fields = new ArrayList<>();
-        fields.add(pathDetail.getColour().toString());
+    private static void writePathDetail(
+            Appendable out, PathDetail pathDetail, Placement placement, double scale)
+            throws IOException {
+        out.append("\t {").append(pathDetail.getColour().toString());
         for (Coord2D coord2D : pathDetail.getPath()) {
-            String x = TextTools.formatTo2dpWithDot(coord2D.x * scale);
-            String y =
-                    TextTools.formatTo2dpWithDot((-coord2D.y + 0.0) * scale); // +0.0 to avoid -0.0
-            fields.add(x);
-            fields.add(y);
+            out.append(' ');
+            FixedPointFormatter.appendHalfEven(out, placement.x(coord2D) * scale, 2);
+            out.append(' ');
+            // +0.0 to avoid -0.0
+            FixedPointFormatter.appendHalfEven(out, (-placement.y(coord2D) + 0.0) * scale, 2);
         }
-        return field("\t", TextTools.join(" ", fields));
-    }
-
-    private static String getTextDetailAsPathsText(TextDetail textDetail, double scale) {
-        StringBuilder builder = new StringBuilder();
-        List<PathDetail> pathDetails = TextDetailTranslater.getPathDetailsForText(textDetail);
-        for (PathDetail pathDetail : pathDetails) {
-            builder.append(getPathDetailText(pathDetail, scale));
-        }
-        return builder.toString();
-    }
-
-    private static String getSymbolDetailAsPathsText(SymbolDetail symbolDetail, double scale) {
-        StringBuilder builder = new StringBuilder();
-        List<PathDetail> pathDetails = new SymbolDetailTranslater().asPathDetails(symbolDetail);
-        for (PathDetail pathDetail : pathDetails) {
-            builder.append(getPathDetailText(pathDetail, scale));
-        }
-        return builder.toString();
+        out.append("}\n");
     }
 
     private static String getGridText(Shape gridFrame, float scale) {
@@ -185,11 +219,8 @@ public class XviExporter {
         return TextTools.join(" ", Arrays.asList(values));
     }
 
-    private static String field(String text, String content) {
-        return text + " {" + content + "}\n";
-    }
-
-    private static String multilineField(String text, String content) {
-        return text + " {\n" + content + "}\n";
+    private static void startMultilineField(Appendable out, String command)
+            throws IOException {
+        out.append(command).append(" {\n");
     }
 }
@@ -1,19 +1,20 @@
 package org.hwyl.sexytopo.control.io.thirdparty.xvi;
 
-import static org.hwyl.sexytopo.control.io.thirdparty.xvi.XviConstants.GRID_COMMAND;
 import static org.hwyl.sexytopo.control.io.thirdparty.xvi.XviConstants.SKETCHLINE_COMMAND;
 
 import android.content.Context;
 import androidx.documentfile.provider.DocumentFile;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import org.hwyl.sexytopo.control.io.IoUtils;
 import org.hwyl.sexytopo.control.io.translation.Importer;
-import org.hwyl.sexytopo.model.graph.Coord2D;
-import org.hwyl.sexytopo.model.sketch.Colour;
 import org.hwyl.sexytopo.model.sketch.PathDetail;
 import org.hwyl.sexytopo.model.sketch.Sketch;
 import org.hwyl.sexytopo.model.survey.Survey;
@@ -21,7 +22,7 @@ import org.hwyl.sexytopo.model.survey.Survey;
 @SuppressWarnings("UnnecessaryLocalVariable")
 public class XviImporter extends Importer {
 
-    private static final XviImporter instance = new XviImporter();
+    private static final Pattern BLOCK_ENTRY_PATTERN = Pattern.compile("[{](.*?)[}]");
 
     public Survey toSurvey(Context context, DocumentFile file) throws Exception {
         Survey survey = new Survey();
@@ -31,15 +32,24 @@ public class XviImporter extends Importer {
     }
 
     public static Sketch getSketch(Context context, DocumentFile file) throws Exception {
+        try (InputStream in = context.getContentResolver().openInputStream(file.getUri())) {
+            if (in == null) {
+                throw new IOException("Failed to open input stream");
+            }
+            return parseSketch(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+    }
 
-        Sketch sketch = new Sketch();
+    /** Reads the sketch lines of an XVI file, scaled by its grid, in a single pass. */
+    public static Sketch parseSketch(Reader reader) throws Exception {
 
-        String contents = IoUtils.slurpFile(context, file);
+        Sketch sketch = new Sketch();
 
-        Grid grid = instance.parseGrid(contents);
+        XviLexer lexer = readFully(reader);
+        Grid grid = lexer.getGrid();
         double scale = grid.dy;
 
-        List<PathDetail> pathDetails = parseSketchlineBlock(scale, contents);
+        List<PathDetail> pathDetails = getPathDetails(lexer, scale);
         sketch.setPathDetails(pathDetails);
 
         return sketch;
@@ -50,37 +60,31 @@ public class XviImporter extends Importer {
     }
 
     public Grid parseGrid(String contents) throws Exception {
-
-        String gridBlock = getBlockContents(contents, GRID_COMMAND);
-        List<String> values = Arrays.asList(gridBlock.split("\\s"));
-        double x = Double.parseDouble(values.get(0));
-        double y = Double.parseDouble(values.get(1));
-        double dx = Double.parseDouble(values.get(2));
-        // 0
-        // 0
-        double dy = Double.parseDouble(values.get(5)); // grid * cfactor
-        double nx = Double.parseDouble(values.get(6));
-        double ny = Double.parseDouble(values.get(7));
-        Grid grid = new Grid(x, y, dx, dy, nx, ny);
-        return grid;
+        return readFully(new StringReader(contents)).getGrid();
     }
 
     public static List<PathDetail> parseSketchlineBlock(double scale, String contents)
             throws Exception {
-        String sketchBlock = getBlockContents(contents, SKETCHLINE_COMMAND);
-        List<String> entries = parseBlockEntries(sketchBlock);
-        List<PathDetail> pathDetails = new ArrayList<>();
-        for (String entry : entries) {
-            PathDetail pathDetail = parseSketchEntry(scale, entry);
-            pathDetails.add(pathDetail);
+        return getPathDetails(readFully(new StringReader(contents)), scale);
+    }
+
+    private static XviLexer readFully(Reader reader) throws Exception {
+        XviLexer lexer = new XviLexer(reader);
+        lexer.read();
+        return lexer;
+    }
+
+    private static List<PathDetail> getPathDetails(XviLexer lexer, double scale)
+            throws Exception {
+        if (!lexer.hasSketchlines()) {
+            throw new Exception("Could not find " + SKETCHLINE_COMMAND + " in text");
         }
-        return pathDetails;
+        return lexer.getPathDetails(scale);
     }
 
     public static List<String> parseBlockEntries(String content) {
         List<String> entries = new ArrayList<>();
-        Pattern pattern = Pattern.compile("[{](.*?)[}]");
-        Matcher matcher = pattern.matcher(content);
+        Matcher matcher = BLOCK_ENTRY_PATTERN.matcher(content);
         while (matcher.find()) {
             entries.add(matcher.group(1));
         }
@@ -88,55 +92,10 @@ public class XviImporter extends Importer {
     }
 
     public static PathDetail parseSketchEntry(double scale, String entry)
-            throws IllegalArgumentException {
-        List<String> tokens = Arrays.asList(entry.split(" "));
-
-        if (tokens.size() <= 1) {
-            throw new IllegalArgumentException("Incomplete token? {" + entry + "}");
-        }
-
-        String first = tokens.get(0);
-
-        // "connect" entries link two points with a line
-        if (first.equals("connect")) {
-            if (tokens.size() < 5) {
-                throw new IllegalArgumentException("Incomplete connect token: {" + entry + "}");
-            }
-            float x1 = Float.parseFloat(tokens.get(1)) / (float) scale;
-            float y1 = Float.parseFloat(tokens.get(2)) / (float) scale;
-            float x2 = Float.parseFloat(tokens.get(3)) / (float) scale;
-            float y2 = Float.parseFloat(tokens.get(4)) / (float) scale;
-            PathDetail pathDetail = new PathDetail(new Coord2D(x1, -y1), Colour.BLACK);
-            pathDetail.lineTo(new Coord2D(x2, -y2));
-            return pathDetail;
-        }
-
-        if (tokens.size() % 2 != 1) {
-            throw new IllegalArgumentException(
-                    "There was an odd number of data points in the token (excluding first item): "
-                            + tokens.size());
-        }
-
-        Colour colour = Colour.valueOf(first.toUpperCase());
-
-        List<Coord2D> points = new ArrayList<>(tokens.size() - 1);
-        for (int i = 1; i < tokens.size(); ) {
-            float x = Float.parseFloat(tokens.get(i++));
-            float y = Float.parseFloat(tokens.get(i++));
-
-            x /= scale;
-            y /= scale;
-
-            Coord2D coord2D = new Coord2D(x, -y);
-            points.add(coord2D);
-        }
-
-        PathDetail pathDetail = new PathDetail(points.get(0), colour);
-        for (Coord2D point : points.subList(1, points.size())) {
-            pathDetail.lineTo(point);
-        }
-
-        return pathDetail;
+            throws IllegalArgumentException, IOException {
+        XviLexer lexer = new XviLexer(new StringReader(entry));
+        lexer.readSketchEntry(XviLexer.END);
+        return lexer.getPathDetails(scale).get(0);
     }
 
     @SuppressWarnings("UnnecessaryLabelOnContinueStatement")
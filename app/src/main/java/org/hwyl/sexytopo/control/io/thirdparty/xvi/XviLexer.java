@@ -0,0 +1,388 @@
+package org.hwyl.sexytopo.control.io.thirdparty.xvi;
+
+import static org.hwyl.sexytopo.control.io.thirdparty.xvi.XviConstants.GRID_COMMAND;
+import static org.hwyl.sexytopo.control.io.thirdparty.xvi.XviConstants.SKETCHLINE_COMMAND;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.hwyl.sexytopo.model.graph.Coord2D;
+import org.hwyl.sexytopo.model.sketch.Colour;
+import org.hwyl.sexytopo.model.sketch.PathDetail;
+
+/**
+ * Reads what the importer needs from an XVI file - the sketch lines and the grid - in a single
+ * pass over its characters, straight from a Reader. Other "set" commands are skipped over.
+ *
+ * <p>Sketch line points are parsed where they stand into one growing array of floats, without
+ * making a String for each number, and only turned into PathDetails at the end: an XVI file gives
+ * its grid, and so its scale, after the sketch lines. Plain decimals such as "-1234.56" are
+ * converted exactly as Float.parseFloat() would; anything else (exponents, very long numbers) is
+ * handed to Float.parseFloat() itself.
+ */
+class XviLexer {
+
+    static final int END = -1;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    // Every whole number up to 2^24 and power of ten up to 10^10 is exact as a float, so one float
+    // division of the two gives the correctly rounded value, as Float.parseFloat() does.
+    private static final long MAX_FAST_MANTISSA = 1 << 24;
+    private static final float[] POWERS_OF_TEN = {
+        1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+    private static final int MAX_DIGITS = 18; // more than this could overflow the mantissa
+
+    private static final Colour[] COLOURS = Colour.values();
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+
+    private final StringBuilder word = new StringBuilder();
+    private char[] numberText = new char[32];
+
+    // Each sketch line's colour (null for a connecting line) and where its points start
+    private float[] coordinates = new float[1024];
+    private int coordinateCount = 0;
+    private int[] lineStarts = new int[64];
+    private Colour[] lineColours = new Colour[64];
+    private int lineCount = 0;
+    private Colour lastColour = null;
+
+    private boolean hasSketchlines = false;
+    private List<String> gridValues = null;
+
+    XviLexer(Reader reader) {
+        this.reader = reader;
+    }
+
+    /** Reads the whole file. */
+    void read() throws IOException {
+        while (true) {
+            int c = skipWhitespace();
+            if (c == END) {
+                break;
+            } else if (c == '{') {
+                next();
+                skipBlock();
+                continue;
+            } else if (c == '}') {
+                next();
+                continue;
+            }
+
+            readWord();
+            if (!contentEquals("set")) {
+                continue;
+            }
+
+            // "set <name> {...}"
+            if (isDelimiter(skipWhitespace())) {
+                continue;
+            }
+            word.append(' ');
+            appendWord();
+            if (skipWhitespace() != '{') {
+                continue;
+            }
+            next();
+
+            if (!hasSketchlines && contentEquals(SKETCHLINE_COMMAND)) {
+                readSketchlines();
+                hasSketchlines = true;
+            } else if (gridValues == null && contentEquals(GRID_COMMAND)) {
+                gridValues = readGrid();
+            } else {
+                skipBlock();
+            }
+        }
+    }
+
+    XviImporter.Grid getGrid() throws Exception {
+        if (gridValues == null) {
+            throw new Exception("Could not find " + GRID_COMMAND + " in text");
+        } else if (gridValues.size() < 8) {
+            throw new Exception("Expected 8 values in " + GRID_COMMAND + ": " + gridValues);
+        }
+
+        double x = Double.parseDouble(gridValues.get(0));
+        double y = Double.parseDouble(gridValues.get(1));
+        double dx = Double.parseDouble(gridValues.get(2));
+        // 0
+        // 0
+        double dy = Double.parseDouble(gridValues.get(5)); // grid * cfactor
+        double nx = Double.parseDouble(gridValues.get(6));
+        double ny = Double.parseDouble(gridValues.get(7));
+        return new XviImporter.Grid(x, y, dx, dy, nx, ny);
+    }
+
+    boolean hasSketchlines() {
+        return hasSketchlines;
+    }
+
+    /** The sketch lines read, with their points divided by the scale and y flipped. */
+    List<PathDetail> getPathDetails(double scale) {
+        List<PathDetail> pathDetails = new ArrayList<>(lineCount);
+        for (int line = 0; line < lineCount; line++) {
+            int start = lineStarts[line];
+            int end = line + 1 < lineCount ? lineStarts[line + 1] : coordinateCount;
+            Colour colour = lineColours[line];
+
+            List<Coord2D> points = new ArrayList<>((end - start) / 2);
+            if (colour == null) {
+                // "connect" entries link two points with a line
+                float floatScale = (float) scale;
+                for (int i = start; i < end; i += 2) {
+                    float x = coordinates[i] / floatScale;
+                    float y = coordinates[i + 1] / floatScale;
+                    points.add(new Coord2D(x, -y));
+                }
+                colour = Colour.BLACK;
+            } else {
+                for (int i = start; i < end; i += 2) {
+                    float x = (float) (coordinates[i] / scale);
+                    float y = (float) (coordinates[i + 1] / scale);
+                    points.add(new Coord2D(x, -y));
+                }
+            }
+            pathDetails.add(new PathDetail(points, colour));
+        }
+        return pathDetails;
+    }
+
+    private void readSketchlines() throws IOException {
+        while (true) {
+            int c = skipWhitespace();
+            if (c == END) {
+                throw new IOException("Malformed text: could not match braces");
+            }
+            next();
+            if (c == '}') {
+                return;
+            } else if (c == '{') {
+                readSketchEntry('}');
+            }
+        }
+    }
+
+    /**
+     * Reads one sketch line entry, "colour x1 y1 x2 y2..." or "connect x1 y1 x2 y2", up to the
+     * given terminator (which may be END).
+     */
+    void readSketchEntry(int terminator) throws IOException {
+        skipWhitespace();
+        readWord();
+        boolean isConnection = contentEquals("connect");
+
+        int start = coordinateCount;
+        while (true) {
+            int c = skipWhitespace();
+            if (c == terminator) {
+                next();
+                break;
+            } else if (c == END || c == '{' || c == '}') {
+                throw new IOException("Malformed text: could not match braces");
+            }
+            readNumber();
+        }
+
+        int count = coordinateCount - start;
+        if (count == 0) {
+            coordinateCount = start;
+            throw new IllegalArgumentException("Incomplete token? {" + word + "}");
+        }
+
+        Colour colour = null;
+        if (isConnection) {
+            if (count < 4) {
+                coordinateCount = start;
+                throw new IllegalArgumentException("Incomplete connect token: {" + word + "}");
+            }
+            coordinateCount = start + 4;
+        } else {
+            if (count % 2 != 0) {
+                coordinateCount = start;
+                throw new IllegalArgumentException(
+                        "There was an odd number of data points in the token (excluding first"
+                                + " item): "
+                                + (count + 1));
+            }
+            colour = getColour();
+        }
+
+        if (lineCount == lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+            lineColours = Arrays.copyOf(lineColours, lineCount * 2);
+        }
+        lineStarts[lineCount] = start;
+        lineColours[lineCount] = colour;
+        lineCount++;
+    }
+
+    private List<String> readGrid() throws IOException {
+        List<String> values = new ArrayList<>();
+        while (true) {
+            int c = skipWhitespace();
+            if (c == END) {
+                throw new IOException("Malformed text: could not match braces");
+            } else if (c == '}') {
+                next();
+                return values;
+            } else if (c == '{') {
+                next();
+                skipBlock();
+                continue;
+            }
+            readWord();
+            values.add(word.toString());
+        }
+    }
+
+    private void skipBlock() throws IOException {
+        int openBraces = 1;
+        while (openBraces > 0) {
+            int c = next();
+            if (c == END) {
+                throw new IOException("Malformed text: could not match braces");
+            } else if (c == '{') {
+                openBraces++;
+            } else if (c == '}') {
+                openBraces--;
+            }
+        }
+    }
+
+    private void readNumber() throws IOException {
+        boolean isNegative = false;
+        boolean isPlain = true;
+        boolean hasPoint = false;
+        long mantissa = 0;
+        int digits = 0;
+        int decimalPlaces = 0;
+        int length = 0;
+
+        for (int c = peek(); !isDelimiter(c); c = peek()) {
+            next();
+            if (length == numberText.length) {
+                numberText = Arrays.copyOf(numberText, length * 2);
+            }
+            numberText[length] = (char) c;
+
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (hasPoint) {
+                    decimalPlaces++;
+                }
+            } else if (c == '.' && !hasPoint) {
+                hasPoint = true;
+            } else if (c != '-' || length > 0) {
+                isPlain = false;
+            } else {
+                isNegative = true;
+            }
+            length++;
+        }
+
+        float value;
+        if (isPlain
+                && digits > 0
+                && digits <= MAX_DIGITS
+                && mantissa <= MAX_FAST_MANTISSA
+                && decimalPlaces < POWERS_OF_TEN.length) {
+            value = mantissa / POWERS_OF_TEN[decimalPlaces];
+            if (isNegative) {
+                value = -value;
+            }
+        } else {
+            value = Float.parseFloat(new String(numberText, 0, length));
+        }
+
+        if (coordinateCount == coordinates.length) {
+            coordinates = Arrays.copyOf(coordinates, coordinateCount * 2);
+        }
+        coordinates[coordinateCount++] = value;
+    }
+
+    private Colour getColour() {
+        if (lastColour != null && nameEquals(lastColour)) {
+            return lastColour;
+        }
+        for (Colour colour : COLOURS) {
+            if (nameEquals(colour)) {
+                lastColour = colour;
+                return colour;
+            }
+        }
+        throw new IllegalArgumentException("Unknown colour: " + word);
+    }
+
+    // As Colour.valueOf(word.toUpperCase())
+    private boolean nameEquals(Colour colour) {
+        String name = colour.name();
+        if (name.length() != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.toUpperCase(word.charAt(i)) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void readWord() throws IOException {
+        word.setLength(0);
+        appendWord();
+    }
+
+    // Appends the characters up to the next whitespace or brace to the word
+    private void appendWord() throws IOException {
+        for (int c = peek(); !isDelimiter(c); c = peek()) {
+            word.append((char) next());
+        }
+    }
+
+    private boolean contentEquals(String text) {
+        return text.contentEquals(word);
+    }
+
+    // Skips whitespace, returning the next character without reading it
+    private int skipWhitespace() throws IOException {
+        int c = peek();
+        while (c != END && Character.isWhitespace(c)) {
+            next();
+            c = peek();
+        }
+        return c;
+    }
+
+    private static boolean isDelimiter(int c) {
+        return c == END || c == '{' || c == '}' || Character.isWhitespace(c);
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return END;
+        }
+        return buffer[position];
+    }
+
+    private int next() throws IOException {
+        if (position == limit && !fill()) {
+            return END;
+        }
+        return buffer[position++];
+    }
+
+    private boolean fill() throws IOException {
+        int read = reader.read(buffer, 0, buffer.length);
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+}
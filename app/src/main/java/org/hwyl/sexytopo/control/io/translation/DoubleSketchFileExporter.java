@@ -3,6 +3,7 @@ package org.hwyl.sexytopo.control.io.translation;
 import android.content.Context;
 import java.io.IOException;
 import org.hwyl.sexytopo.SexyTopoConstants;
+import org.hwyl.sexytopo.control.io.IoUtils;
 import org.hwyl.sexytopo.control.io.SurveyFile;
 import org.hwyl.sexytopo.model.graph.Projection2D;
 import org.hwyl.sexytopo.model.survey.Survey;
@@ -18,11 +19,20 @@ public abstract class DoubleSketchFileExporter extends Exporter {
 
     protected void saveSketchFile(Context context, String content, String suffix)
             throws IOException {
+        getSketchFile(suffix).save(context, content);
+    }
+
+    protected void saveSketchFile(
+            Context context, IoUtils.ContentWriter contentWriter, String suffix)
+            throws IOException {
+        getSketchFile(suffix).save(context, contentWriter);
+    }
+
+    private SurveyFile getSketchFile(String suffix) {
         String extension = getFileExtension();
         SurveyFile.SurveyFileType fileType =
                 new SurveyFile.SurveyFileType(suffix + "." + extension, getMimeType());
-        SurveyFile outputFile = getOutputFile(fileType);
-        outputFile.save(context, content);
+        return getOutputFile(fileType);
     }
 
     public abstract String getContent(Survey survey, Projection2D projectionType) throws Exception;
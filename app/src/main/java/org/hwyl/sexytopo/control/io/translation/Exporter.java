@@ -6,15 +6,26 @@ import org.hwyl.sexytopo.control.io.SurveyDirectory;
 import org.hwyl.sexytopo.control.io.SurveyFile;
 import org.hwyl.sexytopo.control.util.GeneralPreferences;
 import org.hwyl.sexytopo.control.util.TextTools;
+import org.hwyl.sexytopo.model.graph.Coord2D;
+import org.hwyl.sexytopo.model.graph.Projection2D;
+import org.hwyl.sexytopo.model.graph.Space;
 import org.hwyl.sexytopo.model.survey.Survey;
 
 @SuppressWarnings("UnnecessaryLocalVariable")
 public abstract class Exporter {
 
     private Survey survey;
+    private SurveyProjections projections;
 
     public void export(Context context, Survey survey) throws Exception {
+        export(context, survey, new SurveyProjections(survey));
+    }
+
+    /** Exports using projections shared with other exporters writing the same survey. */
+    public void export(Context context, Survey survey, SurveyProjections projections)
+            throws Exception {
         this.survey = survey;
+        this.projections = projections;
         run(context, survey);
     }
 
@@ -64,6 +75,14 @@ public abstract class Exporter {
 
     protected abstract String getExportDirectoryName();
 
+    protected Space<Coord2D> getProjection(Survey survey, Projection2D projectionType) {
+        if (projections != null && projections.getSurvey() == survey) {
+            return projections.get(projectionType);
+        } else {
+            return projectionType.project(survey);
+        }
+    }
+
     protected SurveyFile getOutputFile(SurveyFile.SurveyFileType surveyFileType) {
         SurveyDirectory parent = getParentExportDirectory();
         SurveyDirectory directory = getExportDirectory(parent);
@@ -0,0 +1,107 @@
+package org.hwyl.sexytopo.control.io.translation;
+
+import android.content.Context;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.hwyl.sexytopo.R;
+import org.hwyl.sexytopo.control.Log;
+import org.hwyl.sexytopo.model.survey.Survey;
+
+/**
+ * Exports a survey to several formats at once. The exporters run side by side on their own small
+ * pool of threads (each writes its own files) and share one set of projections, so the survey is
+ * only projected once however many formats want the plan or elevation. How long each exporter
+ * took goes in the system log, and how many have finished goes to a progress listener as each one
+ * does.
+ *
+ * <p>The survey should be a snapshot; it's read from several threads while this runs. The
+ * exporters should be new ones (see SelectableExporters.createExporters()), as they keep what
+ * they're exporting while they run.
+ */
+public class ParallelExporter {
+
+    private static final int MAX_THREAD_COUNT = 4;
+
+    /** Called on the thread running exportAll(), each time an exporter finishes or fails. */
+    public interface ProgressListener {
+        void onProgress(int done, int total);
+    }
+
+    public static void exportAll(
+            Context context,
+            Survey survey,
+            List<? extends Exporter> exporters,
+            ProgressListener progressListener)
+            throws Exception {
+
+        SurveyProjections projections = new SurveyProjections(survey);
+
+        int threadCount =
+                Math.min(
+                        exporters.size(),
+                        Math.min(MAX_THREAD_COUNT, Runtime.getRuntime().availableProcessors()));
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, threadCount));
+
+        long start = System.nanoTime();
+        Exception firstFailure = null;
+        try {
+            // Taken as they finish, so progress doesn't wait on a slow exporter earlier in the list
+            CompletionService<Long> timings = new ExecutorCompletionService<>(workers);
+            Map<Future<Long>, Exporter> running = new HashMap<>();
+            for (Exporter exporter : exporters) {
+                running.put(
+                        timings.submit(() -> export(context, survey, projections, exporter)),
+                        exporter);
+            }
+
+            for (int done = 1; done <= exporters.size(); done++) {
+                Future<Long> timing = timings.take();
+                String name = running.get(timing).getExportTypeName(context);
+                try {
+                    long millis = timing.get();
+                    Log.i(R.string.export_format_took, name, millis);
+                } catch (ExecutionException executionException) {
+                    Exception exception = toException(executionException.getCause());
+                    Log.e(R.string.export_format_failed, name);
+                    Log.e(exception);
+                    if (firstFailure == null) {
+                        firstFailure = exception;
+                    }
+                }
+                progressListener.onProgress(done, exporters.size());
+            }
+        } finally {
+            workers.shutdown();
+        }
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        Log.i(R.string.export_all_took, exporters.size(), millis);
+
+        if (firstFailure != null) {
+            throw firstFailure;
+        }
+    }
+
+    private static long export(
+            Context context, Survey survey, SurveyProjections projections, Exporter exporter)
+            throws Exception {
+        long start = System.nanoTime();
+        exporter.export(context, survey, projections);
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static Exception toException(Throwable throwable) {
+        if (throwable instanceof Exception) {
+            return (Exception) throwable;
+        } else {
+            return new Exception(throwable);
+        }
+    }
+}
@@ -12,16 +12,21 @@ import org.hwyl.sexytopo.control.io.thirdparty.therion.TherionExporter;
 
 public class SelectableExporters {
 
-    public static final List<? extends Exporter> EXPORTERS =
-            Arrays.asList(
-                    new TherionExporter(),
-                    new SurvexExporter(),
-                    new SvgExporter(),
-                    new PocketTopoTxtExporter(),
-                    new CompassExporter());
+    /**
+     * Exporters keep what they're exporting while they run, so each export gets its own rather
+     * than sharing them with any other export running at the same time.
+     */
+    public static List<Exporter> createExporters() {
+        return Arrays.asList(
+                new TherionExporter(),
+                new SurvexExporter(),
+                new SvgExporter(),
+                new PocketTopoTxtExporter(),
+                new CompassExporter());
+    }
 
     public static Exporter fromName(Context context, String name) {
-        for (Exporter exporter : EXPORTERS) {
+        for (Exporter exporter : createExporters()) {
             if (exporter.getExportTypeDescription(context).equals(name)) {
                 return exporter;
             }
@@ -31,7 +36,7 @@ public class SelectableExporters {
 
     public static List<String> getExportTypeNames(Context context) {
         List<String> names = new ArrayList<>();
-        for (Exporter exporter : EXPORTERS) {
+        for (Exporter exporter : createExporters()) {
             names.add(exporter.getExportTypeDescription(context));
         }
         return names;
@@ -0,0 +1,47 @@
+package org.hwyl.sexytopo.control.io.translation;
+
+import java.util.EnumMap;
+import java.util.Map;
+import org.hwyl.sexytopo.model.graph.Coord2D;
+import org.hwyl.sexytopo.model.graph.Projection2D;
+import org.hwyl.sexytopo.model.graph.Space;
+import org.hwyl.sexytopo.model.survey.Survey;
+
+/**
+ * The projections of one survey, each worked out the first time it's asked for and then shared,
+ * so exporters writing the same survey only project it once between them.
+ *
+ * <p>Safe to share between threads. Each projection has its own lock, so a thread working out the
+ * plan doesn't hold up one that wants the elevation.
+ */
+public class SurveyProjections {
+
+    private final Survey survey;
+    private final Map<Projection2D, Entry> entries = new EnumMap<>(Projection2D.class);
+
+    private static class Entry {
+        private Space<Coord2D> projection;
+
+        private synchronized Space<Coord2D> get(Survey survey, Projection2D projectionType) {
+            if (projection == null) {
+                projection = projectionType.project(survey);
+            }
+            return projection;
+        }
+    }
+
+    public SurveyProjections(Survey survey) {
+        this.survey = survey;
+        for (Projection2D projectionType : Projection2D.values()) {
+            entries.put(projectionType, new Entry());
+        }
+    }
+
+    public Survey getSurvey() {
+        return survey;
+    }
+
+    public Space<Coord2D> get(Projection2D projectionType) {
+        return entries.get(projectionType).get(survey, projectionType);
+    }
+}
@@ -0,0 +1,88 @@
+package org.hwyl.sexytopo.control.threed;
+
+import org.hwyl.sexytopo.model.graph.Coord3D;
+
+/** An axis-aligned box that grows to contain whatever is added to it. */
+public class BoundingBox {
+
+    private float minX, minY, minZ;
+    private float maxX, maxY, maxZ;
+
+    public BoundingBox() {
+        reset();
+    }
+
+    public void reset() {
+        minX = minY = minZ = Float.MAX_VALUE;
+        maxX = maxY = maxZ = -Float.MAX_VALUE;
+    }
+
+    public boolean isEmpty() {
+        return minX > maxX;
+    }
+
+    public void add(float x, float y, float z) {
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        minZ = Math.min(minZ, z);
+        maxX = Math.max(maxX, x);
+        maxY = Math.max(maxY, y);
+        maxZ = Math.max(maxZ, z);
+    }
+
+    public void add(Coord3D coord) {
+        add(coord.x, coord.y, coord.z);
+    }
+
+    public void add(BoundingBox other) {
+        if (other.isEmpty()) {
+            return;
+        }
+        add(other.minX, other.minY, other.minZ);
+        add(other.maxX, other.maxY, other.maxZ);
+    }
+
+    public Coord3D getCentre() {
+        return new Coord3D((minX + maxX) / 2f, (minY + maxY) / 2f, (minZ + maxZ) / 2f);
+    }
+
+    /** The length of the longest side. */
+    public float getExtent() {
+        if (isEmpty()) {
+            return 0;
+        }
+        return Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ));
+    }
+
+    /** Distance from a point to the nearest part of the box (zero if the point is inside). */
+    public float getDistanceTo(float x, float y, float z) {
+        float dx = Math.max(0, Math.max(minX - x, x - maxX));
+        float dy = Math.max(0, Math.max(minY - y, y - maxY));
+        float dz = Math.max(0, Math.max(minZ - z, z - maxZ));
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    public float getMinX() {
+        return minX;
+    }
+
+    public float getMinY() {
+        return minY;
+    }
+
+    public float getMinZ() {
+        return minZ;
+    }
+
+    public float getMaxX() {
+        return maxX;
+    }
+
+    public float getMaxY() {
+        return maxY;
+    }
+
+    public float getMaxZ() {
+        return maxZ;
+    }
+}
@@ -0,0 +1,50 @@
+package org.hwyl.sexytopo.control.threed;
+
+/**
+ * The six clipping planes of a view, extracted from a model-view-projection matrix (column-major,
+ * as used by android.opengl.Matrix) so boxes in model space can be tested for visibility before
+ * anything is sent to the GPU.
+ */
+public class Frustum {
+
+    private static final int PLANE_COUNT = 6;
+
+    // a, b, c, d for each plane; a point is inside a plane when ax + by + cz + d >= 0
+    private final float[] planes = new float[PLANE_COUNT * 4];
+
+    public void update(float[] mvp) {
+        // Gribb & Hartmann: each plane is the sum or difference of the fourth row and another row
+        for (int axis = 0; axis < 3; axis++) {
+            for (int column = 0; column < 4; column++) {
+                float w = mvp[column * 4 + 3];
+                float value = mvp[column * 4 + axis];
+                planes[(axis * 2) * 4 + column] = w + value;
+                planes[(axis * 2 + 1) * 4 + column] = w - value;
+            }
+        }
+    }
+
+    /** Returns false only if the box is definitely outside the view. */
+    public boolean intersects(BoundingBox box) {
+        if (box.isEmpty()) {
+            return false;
+        }
+
+        for (int i = 0; i < PLANE_COUNT; i++) {
+            float a = planes[i * 4];
+            float b = planes[i * 4 + 1];
+            float c = planes[i * 4 + 2];
+            float d = planes[i * 4 + 3];
+
+            // Test the corner furthest along the plane's normal
+            float x = a >= 0 ? box.getMaxX() : box.getMinX();
+            float y = b >= 0 ? box.getMaxY() : box.getMinY();
+            float z = c >= 0 ? box.getMaxZ() : box.getMinZ();
+
+            if (a * x + b * y + c * z + d < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
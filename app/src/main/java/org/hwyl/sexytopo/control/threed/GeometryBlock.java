@@ -0,0 +1,126 @@
+package org.hwyl.sexytopo.control.threed;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.hwyl.sexytopo.model.graph.Coord3D;
+import org.hwyl.sexytopo.model.survey.Station;
+
+/**
+ * A chunk of survey geometry small enough to be indexed with unsigned shorts, which is all that
+ * GLES 2.0 guarantees. Vertices and indices only ever grow, so the renderer can upload just the
+ * part added since it last looked, and the bounds let it skip chunks that are out of view.
+ */
+public class GeometryBlock {
+
+    // GLES 2.0 only guarantees unsigned short indices
+    public static final int MAX_VERTICES = 0xFFFF;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private float[] vertices = new float[INITIAL_CAPACITY * 3];
+    private int vertexCount = 0;
+
+    private short[] legIndices = new short[INITIAL_CAPACITY];
+    private int legIndexCount = 0;
+
+    private short[] splayIndices = new short[INITIAL_CAPACITY];
+    private int splayIndexCount = 0;
+
+    private short[] stationIndices = new short[INITIAL_CAPACITY];
+    private int stationIndexCount = 0;
+
+    private final Map<Station, Integer> stationVertices = new HashMap<>();
+
+    private final BoundingBox bounds = new BoundingBox();
+
+    public boolean hasRoomFor(int extraVertices) {
+        return vertexCount + extraVertices <= MAX_VERTICES;
+    }
+
+    /** Returns the index of the station's vertex in this block, or -1 if it isn't in this block. */
+    public int getStationVertex(Station station) {
+        Integer index = stationVertices.get(station);
+        return index == null ? -1 : index;
+    }
+
+    public int addStation(Station station, Coord3D coord) {
+        int index = addVertex(coord);
+        stationVertices.put(station, index);
+        stationIndices = ensureCapacity(stationIndices, stationIndexCount + 1);
+        stationIndices[stationIndexCount++] = (short) index;
+        return index;
+    }
+
+    public int addVertex(Coord3D coord) {
+        vertices = ensureCapacity(vertices, (vertexCount + 1) * 3);
+        int offset = vertexCount * 3;
+        vertices[offset] = coord.x;
+        vertices[offset + 1] = coord.y;
+        vertices[offset + 2] = coord.z;
+        bounds.add(coord);
+        return vertexCount++;
+    }
+
+    public void addLeg(int startVertex, int endVertex) {
+        legIndices = ensureCapacity(legIndices, legIndexCount + 2);
+        legIndices[legIndexCount++] = (short) startVertex;
+        legIndices[legIndexCount++] = (short) endVertex;
+    }
+
+    public void addSplay(int startVertex, int endVertex) {
+        splayIndices = ensureCapacity(splayIndices, splayIndexCount + 2);
+        splayIndices[splayIndexCount++] = (short) startVertex;
+        splayIndices[splayIndexCount++] = (short) endVertex;
+    }
+
+    public BoundingBox getBounds() {
+        return bounds;
+    }
+
+    public float[] getVertices() {
+        return vertices;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public short[] getLegIndices() {
+        return legIndices;
+    }
+
+    public int getLegIndexCount() {
+        return legIndexCount;
+    }
+
+    public short[] getSplayIndices() {
+        return splayIndices;
+    }
+
+    public int getSplayIndexCount() {
+        return splayIndexCount;
+    }
+
+    public short[] getStationIndices() {
+        return stationIndices;
+    }
+
+    public int getStationIndexCount() {
+        return stationIndexCount;
+    }
+
+    private static float[] ensureCapacity(float[] array, int required) {
+        if (required <= array.length) {
+            return array;
+        }
+        return Arrays.copyOf(array, Math.max(required, array.length * 2));
+    }
+
+    private static short[] ensureCapacity(short[] array, int required) {
+        if (required <= array.length) {
+            return array;
+        }
+        return Arrays.copyOf(array, Math.max(required, array.length * 2));
+    }
+}
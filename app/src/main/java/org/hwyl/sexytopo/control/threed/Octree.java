@@ -0,0 +1,315 @@
+package org.hwyl.sexytopo.control.threed;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.hwyl.sexytopo.model.graph.Coord3D;
+
+/**
+ * A spatial index of points and line segments for picking with a ray. Items can be added at any
+ * time; the tree grows outwards when something lands outside it, so it can be kept up to date as a
+ * survey is extended without rebuilding.
+ */
+public class Octree<T> {
+
+    // A node splits once it holds more than this many items that would fit in a child
+    private static final int MAX_ENTRIES = 16;
+    private static final int MAX_DEPTH = 20;
+
+    private static final float INITIAL_HALF_SIZE = 64;
+
+    private Node<T> root = null;
+    private int size = 0;
+
+    public int size() {
+        return size;
+    }
+
+    public void insertPoint(T item, Coord3D point) {
+        insert(new Entry<>(item, point, point));
+    }
+
+    public void insertSegment(T item, Coord3D start, Coord3D end) {
+        insert(new Entry<>(item, start, end));
+    }
+
+    /**
+     * Finds the item nearest the ray's origin that passes within tolerance of the ray. The
+     * tolerance widens with distance (by tolerancePerMetre) so a pick covers roughly the same
+     * area of screen however far away it is. The direction must be normalised. Returns null if
+     * nothing is close enough.
+     */
+    public Hit<T> pick(
+            Coord3D origin, Coord3D direction, float tolerance, float tolerancePerMetre) {
+        if (root == null) {
+            return null;
+        }
+        Ray ray = new Ray(origin, direction, tolerance, tolerancePerMetre);
+        Hit<T> best = null;
+
+        List<Node<T>> stack = new ArrayList<>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            Node<T> node = stack.remove(stack.size() - 1);
+            if (!ray.mightHit(node)) {
+                continue;
+            }
+
+            for (Entry<T> entry : node.entries) {
+                Hit<T> hit = ray.test(entry);
+                if (hit != null && (best == null || hit.distance < best.distance)) {
+                    best = hit;
+                }
+            }
+
+            if (node.children != null) {
+                for (Node<T> child : node.children) {
+                    if (child != null) {
+                        stack.add(child);
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private void insert(Entry<T> entry) {
+        if (root == null) {
+            float extent = Math.max(entry.maxX - entry.minX, entry.maxY - entry.minY);
+            extent = Math.max(extent, entry.maxZ - entry.minZ);
+            float half = Math.max(INITIAL_HALF_SIZE, extent);
+            root =
+                    new Node<>(
+                            (entry.minX + entry.maxX) / 2,
+                            (entry.minY + entry.maxY) / 2,
+                            (entry.minZ + entry.maxZ) / 2,
+                            half);
+        }
+
+        while (!root.contains(entry)) {
+            grow(entry);
+        }
+
+        root.insert(entry, 0);
+        size++;
+    }
+
+    /** Doubles the tree's size in the direction of the entry, keeping the old root as a child. */
+    private void grow(Entry<T> entry) {
+        float half = root.half;
+        boolean east = entry.maxX > root.x + half;
+        boolean north = entry.maxY > root.y + half;
+        boolean up = entry.maxZ > root.z + half;
+
+        Node<T> newRoot =
+                new Node<>(
+                        root.x + (east ? half : -half),
+                        root.y + (north ? half : -half),
+                        root.z + (up ? half : -half),
+                        half * 2);
+        newRoot.children = new Node[8];
+        newRoot.children[(east ? 0 : 1) | (north ? 0 : 2) | (up ? 0 : 4)] = root;
+        root = newRoot;
+    }
+
+    /** An item hit by a ray, and how far along the ray it was. */
+    public static class Hit<T> {
+        public final T item;
+        public final float distance;
+
+        // For segments, how far along the segment the closest point was (0 at the start, 1 at
+        // the end)
+        public final float position;
+
+        Hit(T item, float distance, float position) {
+            this.item = item;
+            this.distance = distance;
+            this.position = position;
+        }
+    }
+
+    private static class Entry<T> {
+        final T item;
+        final Coord3D start;
+        final Coord3D end;
+        final float minX, minY, minZ, maxX, maxY, maxZ;
+
+        Entry(T item, Coord3D start, Coord3D end) {
+            this.item = item;
+            this.start = start;
+            this.end = end;
+            minX = Math.min(start.x, end.x);
+            minY = Math.min(start.y, end.y);
+            minZ = Math.min(start.z, end.z);
+            maxX = Math.max(start.x, end.x);
+            maxY = Math.max(start.y, end.y);
+            maxZ = Math.max(start.z, end.z);
+        }
+    }
+
+    private static class Node<T> {
+        final float x, y, z, half;
+        List<Entry<T>> entries = new ArrayList<>();
+        Node<T>[] children = null;
+
+        Node(float x, float y, float z, float half) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.half = half;
+        }
+
+        boolean contains(Entry<T> entry) {
+            return entry.minX >= x - half
+                    && entry.maxX <= x + half
+                    && entry.minY >= y - half
+                    && entry.maxY <= y + half
+                    && entry.minZ >= z - half
+                    && entry.maxZ <= z + half;
+        }
+
+        void insert(Entry<T> entry, int depth) {
+            if (children != null) {
+                int octant = getOctant(entry);
+                if (octant >= 0) {
+                    getChild(octant).insert(entry, depth + 1);
+                    return;
+                }
+            }
+
+            entries.add(entry);
+
+            if (children == null && entries.size() > MAX_ENTRIES && depth < MAX_DEPTH) {
+                children = new Node[8];
+                List<Entry<T>> toRedistribute = entries;
+                entries = new ArrayList<>();
+                for (Entry<T> existing : toRedistribute) {
+                    insert(existing, depth);
+                }
+            }
+        }
+
+        /** Returns the child octant that wholly contains the entry, or -1 if it straddles them. */
+        int getOctant(Entry<T> entry) {
+            int octant = 0;
+            if (entry.minX >= x) {
+                octant |= 1;
+            } else if (entry.maxX >= x) {
+                return -1;
+            }
+            if (entry.minY >= y) {
+                octant |= 2;
+            } else if (entry.maxY >= y) {
+                return -1;
+            }
+            if (entry.minZ >= z) {
+                octant |= 4;
+            } else if (entry.maxZ >= z) {
+                return -1;
+            }
+            return octant;
+        }
+
+        Node<T> getChild(int octant) {
+            if (children[octant] == null) {
+                float quarter = half / 2;
+                children[octant] =
+                        new Node<>(
+                                x + ((octant & 1) != 0 ? quarter : -quarter),
+                                y + ((octant & 2) != 0 ? quarter : -quarter),
+                                z + ((octant & 4) != 0 ? quarter : -quarter),
+                                quarter);
+            }
+            return children[octant];
+        }
+    }
+
+    private static class Ray {
+        final float ox, oy, oz, dx, dy, dz;
+        final float tolerance, tolerancePerMetre;
+
+        Ray(Coord3D origin, Coord3D direction, float tolerance, float tolerancePerMetre) {
+            ox = origin.x;
+            oy = origin.y;
+            oz = origin.z;
+            dx = direction.x;
+            dy = direction.y;
+            dz = direction.z;
+            this.tolerance = tolerance;
+            this.tolerancePerMetre = tolerancePerMetre;
+        }
+
+        /** Slab test against the node's cube, padded by the widest tolerance it could need. */
+        boolean mightHit(Node<?> node) {
+            float cx = node.x - ox;
+            float cy = node.y - oy;
+            float cz = node.z - oz;
+            float furthest = (float) Math.sqrt(cx * cx + cy * cy + cz * cz) + node.half * 1.8f;
+            float pad = node.half + tolerance + tolerancePerMetre * furthest;
+
+            float tNear = -Float.MAX_VALUE;
+            float tFar = Float.MAX_VALUE;
+            float[] centres = {cx, cy, cz};
+            float[] directions = {dx, dy, dz};
+            for (int axis = 0; axis < 3; axis++) {
+                float min = centres[axis] - pad;
+                float max = centres[axis] + pad;
+                float d = directions[axis];
+                if (Math.abs(d) < 1e-9f) {
+                    if (min > 0 || max < 0) {
+                        return false;
+                    }
+                    continue;
+                }
+                float t0 = min / d;
+                float t1 = max / d;
+                tNear = Math.max(tNear, Math.min(t0, t1));
+                tFar = Math.min(tFar, Math.max(t0, t1));
+                if (tNear > tFar || tFar < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        <T> Hit<T> test(Entry<T> entry) {
+            // Closest approach between the ray and the segment (a point is a zero-length segment)
+            float ax = entry.start.x - ox;
+            float ay = entry.start.y - oy;
+            float az = entry.start.z - oz;
+            float ux = entry.end.x - entry.start.x;
+            float uy = entry.end.y - entry.start.y;
+            float uz = entry.end.z - entry.start.z;
+
+            float uu = ux * ux + uy * uy + uz * uz;
+            float s = 0;
+            if (uu > 1e-12f) {
+                float ud = ux * dx + uy * dy + uz * dz;
+                float ua = ux * ax + uy * ay + uz * az;
+                float da = dx * ax + dy * ay + dz * az;
+                float denominator = uu - ud * ud;
+                if (denominator > 1e-12f) {
+                    s = (ud * da - ua) / denominator;
+                } else {
+                    // Segment parallel to the ray; any point will do
+                    s = 0;
+                }
+                s = Math.max(0, Math.min(1, s));
+            }
+
+            float px = ax + ux * s;
+            float py = ay + uy * s;
+            float pz = az + uz * s;
+            float t = px * dx + py * dy + pz * dz;
+            if (t < 0) {
+                return null;
+            }
+
+            float offsetSquared = (px * px + py * py + pz * pz) - t * t;
+            float allowed = tolerance + tolerancePerMetre * t;
+            if (offsetSquared > allowed * allowed) {
+                return null;
+            }
+            return new Hit<>(entry.item, t, s);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package org.hwyl.sexytopo.control.threed;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.hwyl.sexytopo.model.graph.Coord3D;
+import org.hwyl.sexytopo.model.survey.Leg;
+
+/**
+ * Triangulated passage walls, split into blocks by the same grid cells as SurveyGeometry so the
+ * renderer can cull them and fall back to the simplified triangles for distant blocks.
+ *
+ * <p>There's a tube for each leg. A tube that is built again (because a ring at one of its ends
+ * has changed) has its vertices overwritten where they are, so the mesh only ever grows at the
+ * end of its index buffers and the renderer can upload just what has changed.
+ */
+public class PassageMesh {
+
+    private final List<Block> blocks = new ArrayList<>();
+    private final Map<Long, Block> cellBlocks = new HashMap<>();
+    private final Map<Leg, Tube> tubes = new HashMap<>();
+
+    public List<Block> getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Adds a tube along a leg joining two rings of the same size, or replaces the leg's tube if
+     * it already has one. The simplified triangles only use every other ring vertex.
+     */
+    public void addTube(Leg leg, Coord3D start, float[] startRing, float[] endRing) {
+        Tube tube = tubes.get(leg);
+        if (tube != null) {
+            tube.block.setVertices(tube.startOffset, startRing);
+            tube.block.setVertices(tube.endOffset, endRing);
+            return;
+        }
+
+        int segments = startRing.length / 3;
+        Block block = getBlockWithRoomFor(start, segments * 2);
+
+        int startOffset = block.addVertices(startRing);
+        int endOffset = block.addVertices(endRing);
+        tubes.put(leg, new Tube(block, startOffset, endOffset));
+
+        for (int i = 0; i < segments; i++) {
+            int next = (i + 1) % segments;
+            block.addQuad(startOffset, endOffset, i, next, false);
+        }
+        for (int i = 0; i < segments; i += 2) {
+            int next = (i + 2) % segments;
+            block.addQuad(startOffset, endOffset, i, next, true);
+        }
+    }
+
+    private Block getBlockWithRoomFor(Coord3D coord, int vertices) {
+        long cell = SurveyGeometry.getCell(coord);
+        Block block = cellBlocks.get(cell);
+        if (block == null || !block.hasRoomFor(vertices)) {
+            block = new Block();
+            blocks.add(block);
+            cellBlocks.put(cell, block);
+        }
+        return block;
+    }
+
+    /**
+     * Tubes built off the GL thread, to be added to the mesh there. Either they make up a whole
+     * new mesh, or they go into the mesh the earlier changes from the same builder made.
+     */
+    public static class Changes {
+
+        private final boolean isNewMesh;
+        private final List<TubeChange> tubes = new ArrayList<>();
+
+        Changes(boolean isNewMesh) {
+            this.isNewMesh = isNewMesh;
+        }
+
+        void addTube(Leg leg, Coord3D start, float[] startRing, float[] endRing) {
+            tubes.add(new TubeChange(leg, start, startRing, endRing));
+        }
+
+        public boolean isNewMesh() {
+            return isNewMesh;
+        }
+
+        public int getTubeCount() {
+            return tubes.size();
+        }
+
+        /** Returns the mesh with the changes made; a new one if needed. */
+        public PassageMesh applyTo(PassageMesh mesh) {
+            if (isNewMesh || mesh == null) {
+                mesh = new PassageMesh();
+            }
+            for (TubeChange tube : tubes) {
+                mesh.addTube(tube.leg, tube.start, tube.startRing, tube.endRing);
+            }
+            return mesh;
+        }
+    }
+
+    private static class TubeChange {
+        final Leg leg;
+        final Coord3D start;
+        final float[] startRing;
+        final float[] endRing;
+
+        TubeChange(Leg leg, Coord3D start, float[] startRing, float[] endRing) {
+            this.leg = leg;
+            this.start = start;
+            this.startRing = startRing;
+            this.endRing = endRing;
+        }
+    }
+
+    private static class Tube {
+        final Block block;
+        final int startOffset;
+        final int endOffset;
+
+        Tube(Block block, int startOffset, int endOffset) {
+            this.block = block;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+        }
+    }
+
+    /** A chunk of the mesh small enough to be indexed with unsigned shorts. */
+    public static class Block {
+
+        private static final int INITIAL_CAPACITY = 256;
+
+        private float[] vertices = new float[INITIAL_CAPACITY * 3];
+        private int vertexCount = 0;
+
+        private short[] triangleIndices = new short[INITIAL_CAPACITY];
+        private int triangleIndexCount = 0;
+
+        private short[] simplifiedIndices = new short[INITIAL_CAPACITY];
+        private int simplifiedIndexCount = 0;
+
+        // Vertices before this haven't changed since clearChanges()
+        private int firstChangedVertex = 0;
+
+        private final BoundingBox bounds = new BoundingBox();
+
+        public boolean hasRoomFor(int extraVertices) {
+            return vertexCount + extraVertices <= GeometryBlock.MAX_VERTICES;
+        }
+
+        private int addVertices(float[] coords) {
+            int offset = vertexCount;
+            vertices = ensureCapacity(vertices, vertexCount * 3 + coords.length);
+            System.arraycopy(coords, 0, vertices, vertexCount * 3, coords.length);
+            for (int i = 0; i < coords.length; i += 3) {
+                bounds.add(coords[i], coords[i + 1], coords[i + 2]);
+            }
+            vertexCount += coords.length / 3;
+            return offset;
+        }
+
+        private void setVertices(int offset, float[] coords) {
+            System.arraycopy(coords, 0, vertices, offset * 3, coords.length);
+            for (int i = 0; i < coords.length; i += 3) {
+                bounds.add(coords[i], coords[i + 1], coords[i + 2]);
+            }
+            firstChangedVertex = Math.min(firstChangedVertex, offset);
+        }
+
+        private void addQuad(int startOffset, int endOffset, int i, int next, boolean simplified) {
+            short[] indices = simplified ? simplifiedIndices : triangleIndices;
+            int count = simplified ? simplifiedIndexCount : triangleIndexCount;
+            indices = ensureCapacity(indices, count + 6);
+
+            indices[count++] = (short) (startOffset + i);
+            indices[count++] = (short) (startOffset + next);
+            indices[count++] = (short) (endOffset + i);
+            indices[count++] = (short) (startOffset + next);
+            indices[count++] = (short) (endOffset + next);
+            indices[count++] = (short) (endOffset + i);
+
+            if (simplified) {
+                simplifiedIndices = indices;
+                simplifiedIndexCount = count;
+            } else {
+                triangleIndices = indices;
+                triangleIndexCount = count;
+            }
+        }
+
+        public BoundingBox getBounds() {
+            return bounds;
+        }
+
+        public float[] getVertices() {
+            return vertices;
+        }
+
+        public int getVertexCount() {
+            return vertexCount;
+        }
+
+        /**
+         * The first vertex overwritten since the last call to clearChanges(); vertices added since
+         * then come after the ones there were, so aren't counted.
+         */
+        public int getFirstChangedVertex() {
+            return firstChangedVertex;
+        }
+
+        public void clearChanges() {
+            firstChangedVertex = vertexCount;
+        }
+
+        public short[] getTriangleIndices() {
+            return triangleIndices;
+        }
+
+        public int getTriangleIndexCount() {
+            return triangleIndexCount;
+        }
+
+        public short[] getSimplifiedIndices() {
+            return simplifiedIndices;
+        }
+
+        public int getSimplifiedIndexCount() {
+            return simplifiedIndexCount;
+        }
+
+        private static float[] ensureCapacity(float[] array, int required) {
+            if (required <= array.length) {
+                return array;
+            }
+            return Arrays.copyOf(array, Math.max(required, array.length * 2));
+        }
+
+        private static short[] ensureCapacity(short[] array, int required) {
+            if (required <= array.length) {
+                return array;
+            }
+            return Arrays.copyOf(array, Math.max(required, array.length * 2));
+        }
+    }
+}
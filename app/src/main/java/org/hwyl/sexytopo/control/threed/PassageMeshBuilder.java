@@ -0,0 +1,452 @@
+package org.hwyl.sexytopo.control.threed;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.hwyl.sexytopo.model.graph.Coord3D;
+import org.hwyl.sexytopo.model.graph.Line;
+import org.hwyl.sexytopo.model.graph.Space;
+import org.hwyl.sexytopo.model.survey.Leg;
+import org.hwyl.sexytopo.model.survey.Station;
+import org.hwyl.sexytopo.model.survey.Survey;
+
+/**
+ * Builds passage walls from splays (including those entered as LRUDs). Each station's splays are
+ * flattened onto the plane across the passage and turned into a ring of points, and the rings at
+ * either end of each leg are joined into a tube.
+ *
+ * <p>The builder remembers each station's legs and rings between builds. A snapshot taken while
+ * the survey has only gained legs copies just the stations that have changed, and the build
+ * only recalculates their rings (and those of the stations their new legs lead to) and the tubes
+ * touching them. Not thread-safe; meant to be owned by a single background thread, with the
+ * survey captured beforehand by a Snapshotter on the thread that edits it.
+ */
+public class PassageMeshBuilder {
+
+    // Should be even so the simplified mesh can use every other vertex
+    public static final int RING_SEGMENTS = 8;
+
+    private static final Coord3D UP = new Coord3D(0, 0, 1);
+    private static final Coord3D EAST = new Coord3D(1, 0, 0);
+
+    private Map<Station, List<Leg>> legs = new HashMap<>();
+    private Map<Station, List<Leg>> splays = new HashMap<>();
+    private final Map<Station, Leg> incomingLegs = new HashMap<>();
+    private final Map<Leg, Station> legOrigins = new HashMap<>();
+    private Map<Station, Ring> rings = new HashMap<>();
+    private final Set<Leg> tubes = new HashSet<>();
+    private int rebuiltRingCount = 0;
+
+    /** Copies everything the builder needs from the stations, for a build from scratch. */
+    public static Snapshot snapshot(Collection<Space<Coord3D>> spaces) {
+        Snapshot snapshot = new Snapshot(true, new ArrayList<>(spaces), null);
+        for (Space<Coord3D> space : spaces) {
+            for (Station station : space.getStationMap().keySet()) {
+                snapshot.copy(station);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Brings the mesh up to date with the snapshot. The changes made either replace the mesh
+     * built so far or go into it, so every one returned has to be applied, in order.
+     */
+    public PassageMesh.Changes build(Snapshot snapshot) {
+        rebuiltRingCount = 0;
+        if (!snapshot.isComplete) {
+            PassageMesh.Changes changes = buildChanged(snapshot);
+            if (changes != null) {
+                return changes;
+            }
+        }
+        return buildAll(snapshot);
+    }
+
+    /** The number of rings recalculated (rather than reused) by the last build. */
+    public int getRebuiltRingCount() {
+        return rebuiltRingCount;
+    }
+
+    private PassageMesh.Changes buildAll(Snapshot snapshot) {
+        if (snapshot.isComplete) {
+            legs = new HashMap<>(snapshot.legs);
+            splays = new HashMap<>(snapshot.splays);
+        } else {
+            legs.putAll(snapshot.legs);
+            splays.putAll(snapshot.splays);
+        }
+        incomingLegs.clear();
+        legOrigins.clear();
+        for (Map.Entry<Station, List<Leg>> entry : legs.entrySet()) {
+            addLegs(entry.getKey(), entry.getValue());
+        }
+
+        Map<Station, Ring> previousRings = rings;
+        rings = new HashMap<>();
+        tubes.clear();
+        rebuiltRingCount = 0;
+
+        PassageMesh.Changes changes = new PassageMesh.Changes(true);
+        for (Space<Coord3D> space : snapshot.spaces) {
+            for (Station station : space.getStationMap().keySet()) {
+                Coord3D axis = getPassageAxis(station, space);
+                if (axis != null) {
+                    Ring previous = previousRings.get(station);
+                    rings.put(station, getRing(previous, station, space, axis));
+                }
+            }
+            for (Map.Entry<Station, Coord3D> entry : space.getStationMap().entrySet()) {
+                Station station = entry.getKey();
+                List<Leg> onwardLegs = legs.get(station);
+                if (onwardLegs == null) {
+                    continue;
+                }
+                for (Leg leg : onwardLegs) {
+                    addTube(changes, leg, station, entry.getValue());
+                }
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Rebuilds the rings of the stations in the snapshot and the stations their legs lead to, and
+     * the tubes touching them. Returns null if a tube would have to be taken away, which needs a
+     * build from scratch.
+     */
+    private PassageMesh.Changes buildChanged(Snapshot snapshot) {
+        Space<Coord3D> space = snapshot.changedSpace;
+
+        Set<Station> affected = new HashSet<>();
+        for (Map.Entry<Station, List<Leg>> entry : snapshot.legs.entrySet()) {
+            Station station = entry.getKey();
+            legs.put(station, entry.getValue());
+            splays.put(station, snapshot.splays.get(station));
+            addLegs(station, entry.getValue());
+            affected.add(station);
+            for (Leg leg : entry.getValue()) {
+                affected.add(leg.getDestination());
+            }
+        }
+
+        Set<Station> changedRings = new HashSet<>();
+        for (Station station : affected) {
+            Coord3D axis = getPassageAxis(station, space);
+            Ring previous = rings.get(station);
+            Ring ring = axis == null ? null : getRing(previous, station, space, axis);
+            if (ring == previous) {
+                continue;
+            } else if (ring == null || ring.vertices == null) {
+                if (previous != null && previous.vertices != null) {
+                    return null;
+                }
+            }
+            rings.put(station, ring);
+            changedRings.add(station);
+        }
+
+        Set<Leg> changedTubes = new HashSet<>();
+        for (Station station : changedRings) {
+            List<Leg> onwardLegs = legs.get(station);
+            if (onwardLegs != null) {
+                changedTubes.addAll(onwardLegs);
+            }
+            Leg incoming = incomingLegs.get(station);
+            if (incoming != null) {
+                changedTubes.add(incoming);
+            }
+        }
+
+        PassageMesh.Changes changes = new PassageMesh.Changes(false);
+        for (Leg leg : changedTubes) {
+            Station origin = legOrigins.get(leg);
+            Coord3D start = space.getStationMap().get(origin);
+            if (start != null && !addTube(changes, leg, origin, start) && tubes.contains(leg)) {
+                return null;
+            }
+        }
+        return changes;
+    }
+
+    private void addLegs(Station station, List<Leg> onwardLegs) {
+        for (Leg leg : onwardLegs) {
+            incomingLegs.put(leg.getDestination(), leg);
+            legOrigins.put(leg, station);
+        }
+    }
+
+    /** Adds the leg's tube if both its ends have rings; returns whether it did. */
+    private boolean addTube(PassageMesh.Changes changes, Leg leg, Station origin, Coord3D start) {
+        Ring startRing = rings.get(origin);
+        Ring endRing = rings.get(leg.getDestination());
+        if (startRing == null
+                || startRing.vertices == null
+                || endRing == null
+                || endRing.vertices == null) {
+            return false;
+        }
+        changes.addTube(leg, start, startRing.vertices, endRing.vertices);
+        tubes.add(leg);
+        return true;
+    }
+
+    // The way the passage runs at a station, from the legs in and out of it; null if none
+    private Coord3D getPassageAxis(Station station, Space<Coord3D> space) {
+        Map<Leg, Line<Coord3D>> lines = space.getLegMap();
+        Coord3D axis = addToAxis(null, lines.get(incomingLegs.get(station)));
+        List<Leg> onwardLegs = legs.get(station);
+        if (onwardLegs != null) {
+            for (Leg leg : onwardLegs) {
+                axis = addToAxis(axis, lines.get(leg));
+            }
+        }
+        return axis;
+    }
+
+    private static Coord3D addToAxis(Coord3D axis, Line<Coord3D> line) {
+        if (line == null) {
+            return axis;
+        }
+        Coord3D direction = normalise(line.getEnd().minus(line.getStart()));
+        if (direction == null) {
+            return axis;
+        }
+        return axis == null ? direction : axis.plus(direction);
+    }
+
+    private Ring getRing(Ring previous, Station station, Space<Coord3D> space, Coord3D axis) {
+        List<Leg> splays = this.splays.get(station);
+        Coord3D centre = space.getStationMap().get(station);
+
+        if (previous != null
+                && previous.splays.equals(splays)
+                && previous.centre.equals(centre)
+                && previous.axis.equals(axis)) {
+            return previous;
+        }
+
+        rebuiltRingCount++;
+        List<Coord3D> ends = new ArrayList<>();
+        for (Leg splay : splays) {
+            Line<Coord3D> line = space.getLegMap().get(splay);
+            if (line != null) {
+                ends.add(line.getEnd());
+            }
+        }
+        return new Ring(splays, centre, axis, createRing(centre, axis, ends));
+    }
+
+    /**
+     * Returns the ring's vertices, or null if there aren't any splays to build one from. Each
+     * segment of the ring reaches out to its furthest splay; segments with no splays are
+     * interpolated from their neighbours.
+     */
+    private static float[] createRing(Coord3D centre, Coord3D axis, List<Coord3D> ends) {
+        if (ends.isEmpty()) {
+            return null;
+        }
+
+        Coord3D forward = normalise(axis);
+        if (forward == null) {
+            return null;
+        }
+        Coord3D right = normalise(cross(forward, UP));
+        if (right == null) {
+            // Vertical passage (a pitch); any horizontal direction will do
+            right = EAST;
+        }
+        Coord3D up = cross(right, forward);
+
+        float[] radii = new float[RING_SEGMENTS];
+        boolean[] filled = new boolean[RING_SEGMENTS];
+        for (Coord3D end : ends) {
+            Coord3D offset = end.minus(centre);
+            float x = dot(offset, right);
+            float y = dot(offset, up);
+            int segment = getSegment((float) Math.atan2(y, x));
+            float radius = (float) Math.sqrt(x * x + y * y);
+            radii[segment] = Math.max(radii[segment], radius);
+            filled[segment] = true;
+        }
+        fillGaps(radii, filled);
+
+        float[] vertices = new float[RING_SEGMENTS * 3];
+        for (int i = 0; i < RING_SEGMENTS; i++) {
+            double angle = getSegmentAngle(i);
+            float x = (float) (radii[i] * Math.cos(angle));
+            float y = (float) (radii[i] * Math.sin(angle));
+            vertices[i * 3] = centre.x + (right.x * x) + (up.x * y);
+            vertices[i * 3 + 1] = centre.y + (right.y * x) + (up.y * y);
+            vertices[i * 3 + 2] = centre.z + (right.z * x) + (up.z * y);
+        }
+        return vertices;
+    }
+
+    private static int getSegment(float angle) {
+        int segment = (int) Math.floor((angle + Math.PI) / (2 * Math.PI) * RING_SEGMENTS);
+        return Math.floorMod(segment, RING_SEGMENTS);
+    }
+
+    private static double getSegmentAngle(int segment) {
+        return -Math.PI + ((segment + 0.5) * 2 * Math.PI / RING_SEGMENTS);
+    }
+
+    private static void fillGaps(float[] radii, boolean[] filled) {
+        float[] original = radii.clone();
+        for (int i = 0; i < RING_SEGMENTS; i++) {
+            if (filled[i]) {
+                continue;
+            }
+            int before = 1;
+            while (!filled[Math.floorMod(i - before, RING_SEGMENTS)]) {
+                before++;
+            }
+            int after = 1;
+            while (!filled[(i + after) % RING_SEGMENTS]) {
+                after++;
+            }
+            float beforeRadius = original[Math.floorMod(i - before, RING_SEGMENTS)];
+            float afterRadius = original[(i + after) % RING_SEGMENTS];
+            radii[i] = beforeRadius + (afterRadius - beforeRadius) * before / (before + after);
+        }
+    }
+
+    private static Coord3D normalise(Coord3D vector) {
+        float length = (float) Math.sqrt(dot(vector, vector));
+        if (length < 1e-6f) {
+            return null;
+        }
+        return vector.scale(1 / length);
+    }
+
+    private static float dot(Coord3D a, Coord3D b) {
+        return (a.x * b.x) + (a.y * b.y) + (a.z * b.z);
+    }
+
+    private static Coord3D cross(Coord3D a, Coord3D b) {
+        return new Coord3D(
+                (a.y * b.z) - (a.z * b.y), (a.z * b.x) - (a.x * b.z), (a.x * b.y) - (a.y * b.x));
+    }
+
+    /**
+     * The surveys to mesh, with the legs and splays of each station copied as they were when
+     * taken: all of them, or just those that changed in one of the surveys.
+     */
+    public static class Snapshot {
+        private final boolean isComplete;
+        private final List<Space<Coord3D>> spaces;
+        private final Space<Coord3D> changedSpace;
+        private final Map<Station, List<Leg>> legs = new HashMap<>();
+        private final Map<Station, List<Leg>> splays = new HashMap<>();
+
+        private Snapshot(
+                boolean isComplete, List<Space<Coord3D>> spaces, Space<Coord3D> changedSpace) {
+            this.isComplete = isComplete;
+            this.spaces = spaces;
+            this.changedSpace = changedSpace;
+        }
+
+        private void copy(Station station) {
+            List<Leg> stationSplays = new ArrayList<>();
+            List<Leg> stationLegs = new ArrayList<>();
+            for (Leg leg : station.getOnwardLegs()) {
+                if (leg.hasDestination()) {
+                    stationLegs.add(leg);
+                } else {
+                    stationSplays.add(leg);
+                }
+            }
+            splays.put(station, stationSplays);
+            legs.put(station, stationLegs);
+        }
+
+        /**
+         * A snapshot covering this one and an earlier one that hasn't been built, so the changes
+         * in both are built together.
+         */
+        public Snapshot after(Snapshot earlier) {
+            if (isComplete) {
+                return this;
+            }
+            Snapshot merged = new Snapshot(earlier.isComplete, spaces, changedSpace);
+            merged.legs.putAll(earlier.legs);
+            merged.legs.putAll(legs);
+            merged.splays.putAll(earlier.splays);
+            merged.splays.putAll(splays);
+            return merged;
+        }
+    }
+
+    /**
+     * Takes snapshots for one builder on the thread that edits the survey. While the survey being
+     * worked on only gains legs, only its stations whose legs have changed are copied; anything
+     * else, such as an edit or a different set of connected surveys, copies everything.
+     */
+    public static class Snapshotter {
+        private Survey survey = null;
+        private int legEditCount = 0;
+        private List<Space<Coord3D>> otherSpaces = new ArrayList<>();
+        private final Map<Station, Integer> legCounts = new HashMap<>();
+
+        public Snapshot take(Map<Survey, Space<Coord3D>> spaces, Survey survey) {
+            Space<Coord3D> space = spaces.get(survey);
+            List<Space<Coord3D>> otherSpaces = new ArrayList<>(spaces.values());
+            otherSpaces.remove(space);
+
+            boolean isComplete =
+                    survey != this.survey
+                            || survey.getLegEditCount() != legEditCount
+                            || !isSameSpaces(otherSpaces, this.otherSpaces);
+            this.survey = survey;
+            this.legEditCount = survey.getLegEditCount();
+            this.otherSpaces = otherSpaces;
+            if (isComplete) {
+                legCounts.clear();
+            }
+
+            Snapshot snapshot =
+                    isComplete
+                            ? snapshot(spaces.values())
+                            : new Snapshot(false, new ArrayList<>(spaces.values()), space);
+            for (Station station : space.getStationMap().keySet()) {
+                int legCount = station.getOnwardLegs().size();
+                Integer previous = legCounts.put(station, legCount);
+                if (!isComplete && (previous == null || previous != legCount)) {
+                    snapshot.copy(station);
+                }
+            }
+            return snapshot;
+        }
+
+        private static boolean isSameSpaces(List<Space<Coord3D>> a, List<Space<Coord3D>> b) {
+            if (a.size() != b.size()) {
+                return false;
+            }
+            for (int i = 0; i < a.size(); i++) {
+                if (a.get(i) != b.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class Ring {
+        final List<Leg> splays;
+        final Coord3D centre;
+        final Coord3D axis;
+        final float[] vertices;
+
+        Ring(List<Leg> splays, Coord3D centre, Coord3D axis, float[] vertices) {
+            this.splays = splays;
+            this.centre = centre;
+            this.axis = axis;
+            this.vertices = vertices;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.hwyl.sexytopo.control.threed;
+
+import org.hwyl.sexytopo.model.survey.Leg;
+import org.hwyl.sexytopo.model.survey.Station;
+import org.hwyl.sexytopo.model.survey.Survey;
+
+/** Something selected in the 3D view. */
+public class Pick {
+
+    public final Survey survey;
+
+    // If a leg was picked, this is whichever of its ends was nearer the pick
+    public final Station station;
+
+    // Null if a station was picked directly
+    public final Leg leg;
+
+    public Pick(Survey survey, Station station, Leg leg) {
+        this.survey = survey;
+        this.station = station;
+        this.leg = leg;
+    }
+}
@@ -0,0 +1,243 @@
+package org.hwyl.sexytopo.control.threed;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.hwyl.sexytopo.model.graph.Coord3D;
+import org.hwyl.sexytopo.model.graph.Line;
+import org.hwyl.sexytopo.model.graph.Space;
+import org.hwyl.sexytopo.model.survey.Leg;
+import org.hwyl.sexytopo.model.survey.Station;
+
+/**
+ * CPU-side survey geometry laid out ready for GL vertex and index buffers. Legs are grouped into
+ * blocks by the grid cell their start falls in, so each block covers a compact region that the
+ * renderer can cull or draw in less detail as a whole. Legs meeting at a station share its vertex
+ * where they land in the same block. When the survey only gains new legs (the usual case while
+ * surveying) they are appended, so the renderer only has to upload the new tail; any other change,
+ * such as an edit or deletion, rebuilds everything from scratch. Which legs are new is told by the
+ * survey's legs in the order they were added and its count of leg edits, so an update doesn't
+ * have to compare everything it already has with the new space.
+ */
+public class SurveyGeometry {
+
+    // Metres along each side of the cube of space a block covers
+    public static final float CELL_SIZE = 100;
+
+    private static final int CELL_BITS = 21;
+    private static final long CELL_MASK = (1L << CELL_BITS) - 1;
+
+    private List<GeometryBlock> blocks = new ArrayList<>();
+    private final Map<Long, GeometryBlock> cellBlocks = new HashMap<>();
+
+    private final Map<Station, Coord3D> knownStations = new HashMap<>();
+    // Where the stations are, to find which one a new leg hangs from
+    private final Map<Coord3D, Station> stationsAt = new HashMap<>();
+    private final Map<Station, GeometryBlock> stationBlocks = new HashMap<>();
+
+    // Spatial indexes for picking, kept up to date alongside the buffers
+    private Octree<Station> stationTree = new Octree<>();
+    private Octree<Leg> legTree = new Octree<>();
+    private final Map<Leg, Station> legOrigins = new HashMap<>();
+
+    // Bumped on every rebuild so the renderer knows to throw away its GL buffers
+    private int generation = 0;
+
+    private final BoundingBox bounds = new BoundingBox();
+
+    // What the geometry was last brought in line with
+    private Space<Coord3D> lastSpace = null;
+    private int appendedLegCount = 0;
+    private int lastLegEditCount = 0;
+
+    /**
+     * Bring the geometry in line with a space that isn't tracked leg by leg, such as a connected
+     * survey's: unless it is the very space last given, everything is rebuilt. Returns true if
+     * the geometry had to be rebuilt.
+     */
+    public boolean update(Space<Coord3D> space) {
+        return update(space, null, 0);
+    }
+
+    /**
+     * Bring the geometry in line with the space, appending any legs added to the end of
+     * legsInChronoOrder since the last update if the survey's leg edit count hasn't changed.
+     * Returns true if the geometry had to be rebuilt.
+     */
+    public boolean update(Space<Coord3D> space, List<Leg> legsInChronoOrder, int legEditCount) {
+        if (space == lastSpace) {
+            return false;
+        }
+
+        boolean rebuild = !isExtendedBy(legsInChronoOrder, legEditCount);
+        if (!rebuild) {
+            rebuild = !appendNewLegs(space, legsInChronoOrder);
+        }
+        if (rebuild) {
+            clear();
+            appendAll(space);
+        }
+
+        lastSpace = space;
+        appendedLegCount = legsInChronoOrder == null ? 0 : legsInChronoOrder.size();
+        lastLegEditCount = legEditCount;
+        return rebuild;
+    }
+
+    public List<GeometryBlock> getBlocks() {
+        return blocks;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    public boolean isEmpty() {
+        return knownStations.isEmpty();
+    }
+
+    public Octree<Station> getStationTree() {
+        return stationTree;
+    }
+
+    /** Legs between stations; splays aren't pickable. */
+    public Octree<Leg> getLegTree() {
+        return legTree;
+    }
+
+    public Station getLegOrigin(Leg leg) {
+        return legOrigins.get(leg);
+    }
+
+    /** The bounds of the stations (splay ends aren't included). */
+    public BoundingBox getBounds() {
+        return bounds;
+    }
+
+    private boolean isExtendedBy(List<Leg> legsInChronoOrder, int legEditCount) {
+        return !isEmpty()
+                && legsInChronoOrder != null
+                && legEditCount == lastLegEditCount
+                && legsInChronoOrder.size() >= appendedLegCount;
+    }
+
+    private void clear() {
+        blocks = new ArrayList<>();
+        cellBlocks.clear();
+        knownStations.clear();
+        stationsAt.clear();
+        stationBlocks.clear();
+        stationTree = new Octree<>();
+        legTree = new Octree<>();
+        legOrigins.clear();
+        bounds.reset();
+        generation++;
+    }
+
+    /**
+     * Adds the legs past the ones already appended. Returns false if one of them can't be placed,
+     * in which case the geometry has to be rebuilt.
+     */
+    private boolean appendNewLegs(Space<Coord3D> space, List<Leg> legsInChronoOrder) {
+        Map<Leg, Line<Coord3D>> legs = space.getLegMap();
+        for (int i = appendedLegCount; i < legsInChronoOrder.size(); i++) {
+            Leg leg = legsInChronoOrder.get(i);
+            Line<Coord3D> line = legs.get(leg);
+            if (line == null) {
+                continue; // not connected to the origin, so not drawn
+            }
+            Station station = findOrigin(space, leg, line.getStart());
+            if (station == null) {
+                return false;
+            }
+            addLeg(station, leg, line);
+        }
+        return true;
+    }
+
+    private Station findOrigin(Space<Coord3D> space, Leg leg, Coord3D start) {
+        Station station = stationsAt.get(start);
+        if (station != null && station.getOnwardLegs().contains(leg)) {
+            return station;
+        }
+        // Another station in the same place; rare enough to look through them all
+        for (Station candidate : space.getStationMap().keySet()) {
+            if (candidate.getOnwardLegs().contains(leg)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private void appendAll(Space<Coord3D> space) {
+        Map<Leg, Line<Coord3D>> legs = space.getLegMap();
+
+        for (Map.Entry<Station, Coord3D> entry : space.getStationMap().entrySet()) {
+            Station station = entry.getKey();
+
+            for (Leg leg : station.getOnwardLegs()) {
+                Line<Coord3D> line = legs.get(leg);
+                if (line != null) {
+                    addLeg(station, leg, line);
+                }
+            }
+
+            // Catches stations with no legs, such as the origin of a new survey
+            if (!knownStations.containsKey(station)) {
+                Coord3D coord = entry.getValue();
+                getVertex(getBlockWithRoomFor(coord, 1), station, coord);
+            }
+        }
+    }
+
+    private void addLeg(Station station, Leg leg, Line<Coord3D> line) {
+        GeometryBlock block = getBlockWithRoomFor(line.getStart(), 3);
+        int start = getVertex(block, station, line.getStart());
+        if (leg.hasDestination()) {
+            int end = getVertex(block, leg.getDestination(), line.getEnd());
+            block.addLeg(start, end);
+            legTree.insertSegment(leg, line.getStart(), line.getEnd());
+            legOrigins.put(leg, station);
+        } else {
+            int end = block.addVertex(line.getEnd());
+            block.addSplay(start, end);
+        }
+    }
+
+    private GeometryBlock getBlockWithRoomFor(Coord3D coord, int vertices) {
+        long cell = getCell(coord);
+        GeometryBlock block = cellBlocks.get(cell);
+        if (block == null || !block.hasRoomFor(vertices)) {
+            // A full block is left as it is; the cell carries on in a new one
+            block = new GeometryBlock();
+            blocks.add(block);
+            cellBlocks.put(cell, block);
+        }
+        return block;
+    }
+
+    static long getCell(Coord3D coord) {
+        long x = (long) Math.floor(coord.x / CELL_SIZE) & CELL_MASK;
+        long y = (long) Math.floor(coord.y / CELL_SIZE) & CELL_MASK;
+        long z = (long) Math.floor(coord.z / CELL_SIZE) & CELL_MASK;
+        return (x << (CELL_BITS * 2)) | (y << CELL_BITS) | z;
+    }
+
+    private int getVertex(GeometryBlock block, Station station, Coord3D coord) {
+        GeometryBlock stationBlock = stationBlocks.get(station);
+        if (stationBlock == block) {
+            return block.getStationVertex(station);
+        } else if (stationBlock != null) {
+            // The station lives in another block; indices can't cross blocks so copy it
+            return block.addVertex(coord);
+        }
+
+        knownStations.put(station, coord);
+        stationsAt.put(coord, station);
+        stationBlocks.put(station, block);
+        stationTree.insertPoint(station, coord);
+        bounds.add(coord);
+        return block.addStation(station, coord);
+    }
+}
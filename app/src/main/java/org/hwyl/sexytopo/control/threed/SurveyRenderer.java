@@ -5,15 +5,22 @@ import android.opengl.GLSurfaceView;
 import android.opengl.Matrix;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
+import org.hwyl.sexytopo.control.Log;
 import org.hwyl.sexytopo.model.graph.Coord3D;
-import org.hwyl.sexytopo.model.graph.Line;
 import org.hwyl.sexytopo.model.graph.Space;
 import org.hwyl.sexytopo.model.survey.Leg;
 import org.hwyl.sexytopo.model.survey.Station;
+import org.hwyl.sexytopo.model.survey.Survey;
 
 public class SurveyRenderer implements GLSurfaceView.Renderer {
 
@@ -34,7 +41,31 @@ public class SurveyRenderer implements GLSurfaceView.Renderer {
 
     private static final float INITIAL_CAMERA_DISTANCE = 50f;
     private static final float MIN_CAMERA_DISTANCE = 1f;
-    private static final float MAX_CAMERA_DISTANCE = 500f;
+    private static final float MIN_MAX_CAMERA_DISTANCE = 500f;
+    private static final float MIN_FAR_PLANE = 1000f;
+    private static final float FIELD_OF_VIEW = 45f;
+
+    // Below this many vertices everything is drawn in full detail
+    private static final int DETAIL_VERTEX_THRESHOLD = 20000;
+
+    // In larger systems, blocks further than this (in metres) from the eye lose splays and stations
+    private static final float DETAIL_DISTANCE = 200f;
+
+    // Slots within BlockBuffers
+    private static final int VERTICES = 0;
+    private static final int LEG_INDICES = 1;
+    private static final int SPLAY_INDICES = 2;
+    private static final int STATION_INDICES = 3;
+
+    // Slots within BlockBuffers for passage mesh blocks
+    private static final int TRIANGLE_INDICES = 1;
+    private static final int SIMPLIFIED_INDICES = 2;
+
+    private static final int FLOAT_BYTES = 4;
+    private static final int SHORT_BYTES = 2;
+
+    // Number of frames averaged for each draw time reported in debug mode
+    private static final int DRAW_TIMING_REPORT_INTERVAL = 60;
 
     // Camera state
     private float cameraAngleX = (float) Math.toRadians(45);
@@ -43,6 +74,9 @@ public class SurveyRenderer implements GLSurfaceView.Renderer {
     private float cameraPanX = 0f;
     private float cameraPanY = 0f;
     private float cameraPanZ = 0f;
+    private float maxCameraDistance = MIN_MAX_CAMERA_DISTANCE;
+    // The camera is pointed at the survey once; after that it's left where the user put it
+    private boolean isCameraFramed = false;
 
     // Matrices
     private final float[] projectionMatrix = new float[16];
@@ -57,18 +91,24 @@ public class SurveyRenderer implements GLSurfaceView.Renderer {
     private int positionHandle;
     private int colourHandle;
 
-    // Geometry buffers
-    private FloatBuffer legVertexBuffer;
-    private int legVertexCount;
-    private FloatBuffer splayVertexBuffer;
-    private int splayVertexCount;
-    private FloatBuffer stationVertexBuffer;
-    private int stationVertexCount;
+    private final Frustum frustum = new Frustum();
+    private float aspectRatio = 1f;
+    private int viewportWidth = 0;
+    private int viewportHeight = 0;
+    private float farPlane = MIN_FAR_PLANE;
 
-    // Survey data
-    private Space<Coord3D> space;
+    // Geometry for each survey in the connected system; only touched on the GL thread. New survey
+    // data is handed over from the UI thread through pendingData and picked up on the next frame.
+    private final Map<Survey, SurveyBuffers> surveys = new LinkedHashMap<>();
+    private final AtomicReference<SurveyData> pendingData = new AtomicReference<>();
     private boolean showSplays = true;
-    private boolean geometryDirty = true;
+
+    // Passage walls, built on a background thread and swapped in whole
+    private final Queue<PassageMesh.Changes> pendingMeshChanges = new ConcurrentLinkedQueue<>();
+    private PassageMesh mesh = null;
+    private final List<BlockBuffers> meshBuffers = new ArrayList<>();
+
+    private ByteBuffer uploadBuffer = ByteBuffer.allocateDirect(0);
 
     // Centre offset (to centre the survey at origin)
     private float centreX, centreY, centreZ;
@@ -77,11 +117,39 @@ public class SurveyRenderer implements GLSurfaceView.Renderer {
     private float[] legColour = {0.8f, 0.2f, 0.2f, 1.0f};
     private float[] splayColour = {0.6f, 0.6f, 0.6f, 0.6f};
     private float[] stationColour = {0.2f, 0.4f, 0.8f, 1.0f};
+    private float[] wallColour = {0.55f, 0.45f, 0.35f, 0.35f};
     private float[] backgroundColour = {1.0f, 1.0f, 1.0f, 1.0f};
 
-    public void setSurveyData(Space<Coord3D> space) {
-        this.space = space;
-        this.geometryDirty = true;
+    // Debug timings
+    private volatile boolean debugMode = false;
+    private long drawTimeTotalNanos = 0;
+    private int drawTimeFrameCount = 0;
+    private int drawnBlockCount = 0;
+    private int culledBlockCount = 0;
+
+    /**
+     * Sets the surveys to show, each already positioned relative to the others. The legs of the
+     * survey being worked on, in the order they were added, and its leg edit count let its
+     * geometry just take on new legs rather than being rebuilt; the list mustn't change after.
+     */
+    public void setSurveyData(
+            Map<Survey, Space<Coord3D>> spaces,
+            Survey survey,
+            List<Leg> legsInChronoOrder,
+            int legEditCount) {
+        pendingData.set(new SurveyData(spaces, survey, legsInChronoOrder, legEditCount));
+    }
+
+    /**
+     * Updates the passage walls with the next changes from the mesh builder; safe to call from
+     * any thread. Every change made has to be passed on, in order.
+     */
+    public void updatePassageMesh(PassageMesh.Changes changes) {
+        pendingMeshChanges.add(changes);
+    }
+
+    public void setDebugMode(boolean debugMode) {
+        this.debugMode = debugMode;
     }
 
     public void setShowSplays(boolean show) {
@@ -108,7 +176,7 @@ public class SurveyRenderer implements GLSurfaceView.Renderer {
     public void zoomBy(float factor) {
         cameraDistance *= factor;
         cameraDistance =
-                Math.max(MIN_CAMERA_DISTANCE, Math.min(MAX_CAMERA_DISTANCE, cameraDistance));
+                Math.max(MIN_CAMERA_DISTANCE, Math.min(maxCameraDistance, cameraDistance));
     }
 
     public void panBy(float dx, float dy) {
@@ -140,6 +208,73 @@ public class SurveyRenderer implements GLSurfaceView.Renderer {
         cameraPanZ = 0f;
     }
 
+    /**
+     * Finds the station (or failing that, the leg) under a point on the screen, as of the last
+     * frame drawn. Must be called on the GL thread. Returns null if nothing is within the given
+     * radius of the point.
+     */
+    public Pick pick(float screenX, float screenY, float radiusPixels) {
+        float[] inverse = new float[16];
+        if (viewportHeight == 0 || !Matrix.invertM(inverse, 0, mvpMatrix, 0)) {
+            return null;
+        }
+
+        float ndcX = (2 * screenX / viewportWidth) - 1;
+        float ndcY = 1 - (2 * screenY / viewportHeight);
+        Coord3D near = unproject(inverse, ndcX, ndcY, -1);
+        Coord3D far = unproject(inverse, ndcX, ndcY, 1);
+        Coord3D ray = far.minus(near);
+        float length = (float) Math.sqrt(ray.x * ray.x + ray.y * ray.y + ray.z * ray.z);
+        if (length == 0) {
+            return null;
+        }
+        Coord3D direction = ray.scale(1 / length);
+
+        // The pick radius in metres grows with distance, as the view widens
+        double halfAngle = Math.toRadians(FIELD_OF_VIEW / 2);
+        float perMetre = (float) (radiusPixels * 2 * Math.tan(halfAngle) / viewportHeight);
+
+        Survey bestSurvey = null;
+        Octree.Hit<Station> bestStation = null;
+        for (Map.Entry<Survey, SurveyBuffers> entry : surveys.entrySet()) {
+            Octree.Hit<Station> hit =
+                    entry.getValue().geometry.getStationTree().pick(near, direction, 0, perMetre);
+            if (hit != null && (bestStation == null || hit.distance < bestStation.distance)) {
+                bestStation = hit;
+                bestSurvey = entry.getKey();
+            }
+        }
+        if (bestStation != null) {
+            return new Pick(bestSurvey, bestStation.item, null);
+        }
+
+        SurveyGeometry bestGeometry = null;
+        Octree.Hit<Leg> bestLeg = null;
+        for (Map.Entry<Survey, SurveyBuffers> entry : surveys.entrySet()) {
+            SurveyGeometry geometry = entry.getValue().geometry;
+            Octree.Hit<Leg> hit = geometry.getLegTree().pick(near, direction, 0, perMetre);
+            if (hit != null && (bestLeg == null || hit.distance < bestLeg.distance)) {
+                bestLeg = hit;
+                bestSurvey = entry.getKey();
+                bestGeometry = geometry;
+            }
+        }
+        if (bestLeg != null) {
+            Leg leg = bestLeg.item;
+            Station station =
+                    bestLeg.position < 0.5f ? bestGeometry.getLegOrigin(leg) : leg.getDestination();
+            return new Pick(bestSurvey, station, leg);
+        }
+
+        return null;
+    }
+
+    private static Coord3D unproject(float[] inverse, float x, float y, float z) {
+        float[] result = new float[4];
+        Matrix.multiplyMV(result, 0, inverse, 0, new float[] {x, y, z, 1}, 0);
+        return new Coord3D(result[0] / result[3], result[1] / result[3], result[2] / result[3]);
+    }
+
     @Override
     public void onSurfaceCreated(GL10 gl, EGLConfig config) {
         GLES20.glEnable(GLES20.GL_DEPTH_TEST);
@@ -156,13 +291,26 @@ public class SurveyRenderer implements GLSurfaceView.Renderer {
         mvpMatrixHandle = GLES20.glGetUniformLocation(programHandle, "uMVPMatrix");
         positionHandle = GLES20.glGetAttribLocation(programHandle, "vPosition");
         colourHandle = GLES20.glGetUniformLocation(programHandle, "vColor");
+
+        // A new surface means a new GL context, so any buffers we had are gone
+        for (SurveyBuffers buffers : surveys.values()) {
+            buffers.blockBuffers.clear();
+            buffers.uploadedGeneration = -1;
+        }
+        meshBuffers.clear();
     }
 
     @Override
     public void onSurfaceChanged(GL10 gl, int width, int height) {
         GLES20.glViewport(0, 0, width, height);
-        float ratio = (float) width / height;
-        Matrix.perspectiveM(projectionMatrix, 0, 45, ratio, 0.1f, 1000f);
+        viewportWidth = width;
+        viewportHeight = height;
+        aspectRatio = (float) width / height;
+        updateProjection();
+    }
+
+    private void updateProjection() {
+        Matrix.perspectiveM(projectionMatrix, 0, FIELD_OF_VIEW, aspectRatio, 0.1f, farPlane);
     }
 
     @Override
@@ -171,14 +319,22 @@ public class SurveyRenderer implements GLSurfaceView.Renderer {
                 backgroundColour[0], backgroundColour[1], backgroundColour[2], backgroundColour[3]);
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
 
-        if (space == null) {
+        SurveyData data = pendingData.getAndSet(null);
+        if (data != null) {
+            updateGeometry(data);
+        }
+
+        if (surveys.isEmpty()) {
             return;
         }
 
-        if (geometryDirty) {
-            buildGeometry();
-            geometryDirty = false;
+        int vertexCount = 0;
+        for (SurveyBuffers buffers : surveys.values()) {
+            vertexCount += syncBuffers(buffers);
         }
+        syncMeshBuffers();
+
+        long drawStart = System.nanoTime();
 
         // Camera position (spherical coordinates)
         // Survey data uses Z-up, so camera orbits around Z axis
@@ -204,139 +360,383 @@ public class SurveyRenderer implements GLSurfaceView.Renderer {
         GLES20.glUseProgram(programHandle);
         GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
 
-        // Draw legs
-        if (legVertexBuffer != null && legVertexCount > 0) {
-            drawLines(legVertexBuffer, legVertexCount, legColour);
+        GLES20.glEnableVertexAttribArray(positionHandle);
+
+        frustum.update(mvpMatrix);
+
+        // The eye in survey coordinates, for judging how far away each block is
+        float eyeModelX = eyeX + centreX - cameraPanX;
+        float eyeModelY = eyeY + centreY - cameraPanY;
+        float eyeModelZ = eyeZ + centreZ - cameraPanZ;
+        boolean useLevelOfDetail = vertexCount > DETAIL_VERTEX_THRESHOLD;
+
+        drawnBlockCount = 0;
+        culledBlockCount = 0;
+        for (SurveyBuffers surveyBuffers : surveys.values()) {
+            List<GeometryBlock> blocks = surveyBuffers.geometry.getBlocks();
+            for (int i = 0; i < surveyBuffers.blockBuffers.size(); i++) {
+                BoundingBox bounds = blocks.get(i).getBounds();
+                if (!frustum.intersects(bounds)) {
+                    culledBlockCount++;
+                    continue;
+                }
+                drawnBlockCount++;
+
+                boolean detailed =
+                        !useLevelOfDetail
+                                || bounds.getDistanceTo(eyeModelX, eyeModelY, eyeModelZ)
+                                        < DETAIL_DISTANCE;
+                drawBlock(surveyBuffers.blockBuffers.get(i), detailed);
+            }
         }
 
-        // Draw splays
-        if (showSplays && splayVertexBuffer != null && splayVertexCount > 0) {
+        if (mesh != null) {
+            // Walls are see-through so they don't hide the centreline; drawn last without
+            // writing depth so they blend over everything behind them
             GLES20.glEnable(GLES20.GL_BLEND);
             GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
-            drawLines(splayVertexBuffer, splayVertexCount, splayColour);
+            GLES20.glDepthMask(false);
+            List<PassageMesh.Block> blocks = mesh.getBlocks();
+            for (int i = 0; i < meshBuffers.size(); i++) {
+                BoundingBox bounds = blocks.get(i).getBounds();
+                if (!frustum.intersects(bounds)) {
+                    continue;
+                }
+                boolean detailed =
+                        bounds.getDistanceTo(eyeModelX, eyeModelY, eyeModelZ) < DETAIL_DISTANCE;
+                drawMeshBlock(meshBuffers.get(i), detailed);
+            }
+            GLES20.glDepthMask(true);
             GLES20.glDisable(GLES20.GL_BLEND);
         }
 
-        // Draw stations
-        if (stationVertexBuffer != null && stationVertexCount > 0) {
-            drawPoints(stationVertexBuffer, stationVertexCount, stationColour);
+        GLES20.glDisableVertexAttribArray(positionHandle);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+        if (debugMode) {
+            reportDrawTime(drawStart);
         }
     }
 
-    private void buildGeometry() {
-        if (space == null) {
+    private void drawBlock(BlockBuffers buffers, boolean detailed) {
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffers.handles[VERTICES]);
+        GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, 0, 0);
+
+        drawElements(GLES20.GL_LINES, buffers, LEG_INDICES, legColour);
+
+        if (!detailed) {
             return;
         }
 
-        Map<Station, Coord3D> stations = space.getStationMap();
-        Map<Leg, Line<Coord3D>> legs = space.getLegMap();
+        if (showSplays) {
+            GLES20.glEnable(GLES20.GL_BLEND);
+            GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+            drawElements(GLES20.GL_LINES, buffers, SPLAY_INDICES, splayColour);
+            GLES20.glDisable(GLES20.GL_BLEND);
+        }
+
+        drawElements(GLES20.GL_POINTS, buffers, STATION_INDICES, stationColour);
+    }
+
+    private void drawMeshBlock(BlockBuffers buffers, boolean detailed) {
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffers.handles[VERTICES]);
+        GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, 0, 0);
+        int slot = detailed ? TRIANGLE_INDICES : SIMPLIFIED_INDICES;
+        drawElements(GLES20.GL_TRIANGLES, buffers, slot, wallColour);
+    }
+
+    private void updateGeometry(SurveyData data) {
+        Map<Survey, Space<Coord3D>> spaces = data.spaces;
+
+        Iterator<Map.Entry<Survey, SurveyBuffers>> iterator = surveys.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Survey, SurveyBuffers> entry = iterator.next();
+            if (!spaces.containsKey(entry.getKey())) {
+                deleteBuffers(entry.getValue().blockBuffers);
+                iterator.remove();
+            }
+        }
+
+        for (Map.Entry<Survey, Space<Coord3D>> entry : spaces.entrySet()) {
+            SurveyBuffers buffers = surveys.get(entry.getKey());
+            if (buffers == null) {
+                buffers = new SurveyBuffers();
+                surveys.put(entry.getKey(), buffers);
+            }
+            if (entry.getKey() == data.survey) {
+                buffers.geometry.update(
+                        entry.getValue(), data.legsInChronoOrder, data.legEditCount);
+            } else {
+                buffers.geometry.update(entry.getValue());
+            }
+        }
 
-        // Calculate centre of bounding box
-        float minX = Float.MAX_VALUE, maxX = -Float.MAX_VALUE;
-        float minY = Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
-        float minZ = Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        fitCameraToGeometry();
+    }
 
-        for (Coord3D coord : stations.values()) {
-            minX = Math.min(minX, coord.x);
-            maxX = Math.max(maxX, coord.x);
-            minY = Math.min(minY, coord.y);
-            maxY = Math.max(maxY, coord.y);
-            minZ = Math.min(minZ, coord.z);
-            maxZ = Math.max(maxZ, coord.z);
+    private void fitCameraToGeometry() {
+        BoundingBox bounds = new BoundingBox();
+        for (SurveyBuffers buffers : surveys.values()) {
+            bounds.add(buffers.geometry.getBounds());
         }
+        if (bounds.isEmpty()) {
+            return;
+        }
+
+        // Keep the whole survey within reach as it grows, without moving the camera
+        float extent = bounds.getExtent();
+        maxCameraDistance = Math.max(MIN_MAX_CAMERA_DISTANCE, extent * 3);
+        farPlane = Math.max(MIN_FAR_PLANE, maxCameraDistance + extent * 2);
+        updateProjection();
 
-        centreX = (minX + maxX) / 2f;
-        centreY = (minY + maxY) / 2f;
-        centreZ = (minZ + maxZ) / 2f;
+        if (isCameraFramed) {
+            return;
+        }
 
-        // Set initial camera distance based on survey size
-        float extent = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ));
+        // Set initial camera distance based on survey size, making sure it all fits in view
+        Coord3D centre = bounds.getCentre();
+        centreX = centre.x;
+        centreY = centre.y;
+        centreZ = centre.z;
         if (extent > 0) {
             cameraDistance = extent * 1.5f;
+            isCameraFramed = true;
         }
+    }
 
-        // Build leg and splay buffers
-        int legCount = 0;
-        int splayCount = 0;
-        for (Leg leg : legs.keySet()) {
-            if (leg.hasDestination()) {
-                legCount++;
-            } else {
-                splayCount++;
-            }
+    /**
+     * Upload whatever has been added to a survey's geometry since the last frame. After a rebuild
+     * all of its buffers are recreated; otherwise only the new tail of each buffer is sent to the
+     * GPU. Returns the number of vertices in the geometry.
+     */
+    private int syncBuffers(SurveyBuffers surveyBuffers) {
+        long uploadStart = System.nanoTime();
+        int uploadedBytes = 0;
+        int vertexCount = 0;
+
+        SurveyGeometry geometry = surveyBuffers.geometry;
+        if (surveyBuffers.uploadedGeneration != geometry.getGeneration()) {
+            deleteBuffers(surveyBuffers.blockBuffers);
+            surveyBuffers.uploadedGeneration = geometry.getGeneration();
         }
 
-        float[] legVertices = new float[legCount * 6]; // 2 points * 3 coords per leg
-        float[] splayVertices = new float[splayCount * 6];
-        int legIndex = 0;
-        int splayIndex = 0;
-
-        for (Map.Entry<Leg, Line<Coord3D>> entry : legs.entrySet()) {
-            Leg leg = entry.getKey();
-            Line<Coord3D> line = entry.getValue();
-            Coord3D start = line.getStart();
-            Coord3D end = line.getEnd();
-
-            if (leg.hasDestination()) {
-                legVertices[legIndex++] = start.x;
-                legVertices[legIndex++] = start.y;
-                legVertices[legIndex++] = start.z;
-                legVertices[legIndex++] = end.x;
-                legVertices[legIndex++] = end.y;
-                legVertices[legIndex++] = end.z;
-            } else {
-                splayVertices[splayIndex++] = start.x;
-                splayVertices[splayIndex++] = start.y;
-                splayVertices[splayIndex++] = start.z;
-                splayVertices[splayIndex++] = end.x;
-                splayVertices[splayIndex++] = end.y;
-                splayVertices[splayIndex++] = end.z;
+        List<GeometryBlock> blocks = geometry.getBlocks();
+        List<BlockBuffers> blockBuffers = surveyBuffers.blockBuffers;
+        while (blockBuffers.size() < blocks.size()) {
+            blockBuffers.add(new BlockBuffers());
+        }
+
+        for (int i = 0; i < blocks.size(); i++) {
+            GeometryBlock block = blocks.get(i);
+            BlockBuffers buffers = blockBuffers.get(i);
+            vertexCount += block.getVertexCount();
+            uploadedBytes +=
+                    upload(
+                            GLES20.GL_ARRAY_BUFFER,
+                            buffers,
+                            VERTICES,
+                            block.getVertices(),
+                            block.getVertexCount() * 3);
+            uploadedBytes +=
+                    upload(
+                            GLES20.GL_ELEMENT_ARRAY_BUFFER,
+                            buffers,
+                            LEG_INDICES,
+                            block.getLegIndices(),
+                            block.getLegIndexCount());
+            uploadedBytes +=
+                    upload(
+                            GLES20.GL_ELEMENT_ARRAY_BUFFER,
+                            buffers,
+                            SPLAY_INDICES,
+                            block.getSplayIndices(),
+                            block.getSplayIndexCount());
+            uploadedBytes +=
+                    upload(
+                            GLES20.GL_ELEMENT_ARRAY_BUFFER,
+                            buffers,
+                            STATION_INDICES,
+                            block.getStationIndices(),
+                            block.getStationIndexCount());
+        }
+
+        if (debugMode && uploadedBytes > 0) {
+            float millis = (System.nanoTime() - uploadStart) / 1e6f;
+            Log.d("3D view uploaded " + uploadedBytes + " bytes in " + millis + " ms");
+        }
+        return vertexCount;
+    }
+
+    private int upload(int target, BlockBuffers buffers, int slot, float[] data, int count) {
+        int from = buffers.uploadedBytes[slot] / FLOAT_BYTES;
+        if (count == from) {
+            return 0;
+        }
+        boolean reallocate = count * FLOAT_BYTES > buffers.capacityBytes[slot];
+        int start = reallocate ? 0 : from;
+        int bytes = (reallocate ? data.length : count - start) * FLOAT_BYTES;
+        ByteBuffer buffer = getUploadBuffer(bytes);
+        buffer.asFloatBuffer().put(data, start, count - start);
+        return upload(target, buffers, slot, buffer, data.length, count, FLOAT_BYTES, reallocate);
+    }
+
+    private int upload(int target, BlockBuffers buffers, int slot, short[] data, int count) {
+        int from = buffers.uploadedBytes[slot] / SHORT_BYTES;
+        if (count == from) {
+            return 0;
+        }
+        boolean reallocate = count * SHORT_BYTES > buffers.capacityBytes[slot];
+        int start = reallocate ? 0 : from;
+        int bytes = (reallocate ? data.length : count - start) * SHORT_BYTES;
+        ByteBuffer buffer = getUploadBuffer(bytes);
+        buffer.asShortBuffer().put(data, start, count - start);
+        return upload(target, buffers, slot, buffer, data.length, count, SHORT_BYTES, reallocate);
+    }
+
+    private int upload(
+            int target,
+            BlockBuffers buffers,
+            int slot,
+            ByteBuffer buffer,
+            int capacity,
+            int count,
+            int elementBytes,
+            boolean reallocate) {
+
+        if (buffers.handles[slot] == 0) {
+            int[] handle = new int[1];
+            GLES20.glGenBuffers(1, handle, 0);
+            buffers.handles[slot] = handle[0];
+        }
+        GLES20.glBindBuffer(target, buffers.handles[slot]);
+
+        int sentBytes;
+        if (reallocate) {
+            // Allocate the block's whole backing array so later appends fit without reallocating
+            int capacityBytes = capacity * elementBytes;
+            GLES20.glBufferData(target, capacityBytes, buffer, GLES20.GL_DYNAMIC_DRAW);
+            buffers.capacityBytes[slot] = capacityBytes;
+            sentBytes = count * elementBytes;
+        } else {
+            int offset = buffers.uploadedBytes[slot];
+            sentBytes = count * elementBytes - offset;
+            GLES20.glBufferSubData(target, offset, sentBytes, buffer);
+        }
+
+        buffers.uploadedBytes[slot] = count * elementBytes;
+        GLES20.glBindBuffer(target, 0);
+        return sentBytes;
+    }
+
+    private ByteBuffer getUploadBuffer(int requiredBytes) {
+        // The staging buffer is reused across uploads as direct buffers are costly to allocate
+        if (uploadBuffer.capacity() < requiredBytes) {
+            int capacity = Math.max(requiredBytes, uploadBuffer.capacity() * 2);
+            uploadBuffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        }
+        uploadBuffer.clear();
+        return uploadBuffer;
+    }
+
+    /**
+     * Apply any changes to the passage mesh and upload what they touched (everything if the GL
+     * context was lost). Tubes that were built again are overwritten where they are, so only the
+     * vertices from the first one changed in each block are sent again.
+     */
+    private void syncMeshBuffers() {
+        PassageMesh.Changes changes;
+        while ((changes = pendingMeshChanges.poll()) != null) {
+            if (changes.isNewMesh()) {
+                deleteBuffers(meshBuffers);
+                mesh = null;
             }
+            mesh = changes.applyTo(mesh);
+        }
+
+        if (mesh == null) {
+            return;
         }
 
-        legVertexBuffer = createFloatBuffer(legVertices);
-        legVertexCount = legCount * 2;
-        splayVertexBuffer = createFloatBuffer(splayVertices);
-        splayVertexCount = splayCount * 2;
+        long uploadStart = System.nanoTime();
+        int uploadedBytes = 0;
+        List<PassageMesh.Block> blocks = mesh.getBlocks();
+        while (meshBuffers.size() < blocks.size()) {
+            meshBuffers.add(new BlockBuffers());
+        }
 
-        // Build station buffer
-        float[] stationVertices = new float[stations.size() * 3];
-        int stationIndex = 0;
-        for (Coord3D coord : stations.values()) {
-            stationVertices[stationIndex++] = coord.x;
-            stationVertices[stationIndex++] = coord.y;
-            stationVertices[stationIndex++] = coord.z;
+        for (int i = 0; i < blocks.size(); i++) {
+            PassageMesh.Block block = blocks.get(i);
+            BlockBuffers buffers = meshBuffers.get(i);
+            int changedBytes = block.getFirstChangedVertex() * 3 * FLOAT_BYTES;
+            if (changedBytes < buffers.uploadedBytes[VERTICES]) {
+                buffers.uploadedBytes[VERTICES] = changedBytes;
+            }
+            uploadedBytes +=
+                    upload(
+                            GLES20.GL_ARRAY_BUFFER,
+                            buffers,
+                            VERTICES,
+                            block.getVertices(),
+                            block.getVertexCount() * 3);
+            uploadedBytes +=
+                    upload(
+                            GLES20.GL_ELEMENT_ARRAY_BUFFER,
+                            buffers,
+                            TRIANGLE_INDICES,
+                            block.getTriangleIndices(),
+                            block.getTriangleIndexCount());
+            uploadedBytes +=
+                    upload(
+                            GLES20.GL_ELEMENT_ARRAY_BUFFER,
+                            buffers,
+                            SIMPLIFIED_INDICES,
+                            block.getSimplifiedIndices(),
+                            block.getSimplifiedIndexCount());
+            block.clearChanges();
         }
 
-        stationVertexBuffer = createFloatBuffer(stationVertices);
-        stationVertexCount = stations.size();
+        if (debugMode && uploadedBytes > 0) {
+            float millis = (System.nanoTime() - uploadStart) / 1e6f;
+            Log.d("3D view uploaded " + uploadedBytes + " bytes of walls in " + millis + " ms");
+        }
     }
 
-    private void drawLines(FloatBuffer buffer, int vertexCount, float[] colour) {
-        buffer.position(0);
-        GLES20.glEnableVertexAttribArray(positionHandle);
-        GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, 0, buffer);
-        GLES20.glUniform4fv(colourHandle, 1, colour, 0);
-        GLES20.glDrawArrays(GLES20.GL_LINES, 0, vertexCount);
-        GLES20.glDisableVertexAttribArray(positionHandle);
+    private void deleteBuffers(List<BlockBuffers> blockBuffers) {
+        for (BlockBuffers buffers : blockBuffers) {
+            GLES20.glDeleteBuffers(buffers.handles.length, buffers.handles, 0);
+        }
+        blockBuffers.clear();
     }
 
-    private void drawPoints(FloatBuffer buffer, int vertexCount, float[] colour) {
-        buffer.position(0);
-        GLES20.glEnableVertexAttribArray(positionHandle);
-        GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, 0, buffer);
+    private void drawElements(int mode, BlockBuffers buffers, int slot, float[] colour) {
+        int count = buffers.uploadedBytes[slot] / SHORT_BYTES;
+        if (count == 0) {
+            return;
+        }
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffers.handles[slot]);
         GLES20.glUniform4fv(colourHandle, 1, colour, 0);
-        GLES20.glDrawArrays(GLES20.GL_POINTS, 0, vertexCount);
-        GLES20.glDisableVertexAttribArray(positionHandle);
+        GLES20.glDrawElements(mode, count, GLES20.GL_UNSIGNED_SHORT, 0);
     }
 
-    private static FloatBuffer createFloatBuffer(float[] data) {
-        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(data.length * 4);
-        byteBuffer.order(ByteOrder.nativeOrder());
-        FloatBuffer floatBuffer = byteBuffer.asFloatBuffer();
-        floatBuffer.put(data);
-        floatBuffer.position(0);
-        return floatBuffer;
+    private void reportDrawTime(long drawStart) {
+        // Wait for the GPU so the timing covers the actual drawing, not just queuing the calls
+        GLES20.glFinish();
+        drawTimeTotalNanos += System.nanoTime() - drawStart;
+        drawTimeFrameCount++;
+        if (drawTimeFrameCount >= DRAW_TIMING_REPORT_INTERVAL) {
+            float averageMillis = drawTimeTotalNanos / 1e6f / drawTimeFrameCount;
+            Log.d(
+                    "3D view average draw time "
+                            + averageMillis
+                            + " ms ("
+                            + drawnBlockCount
+                            + " blocks drawn, "
+                            + culledBlockCount
+                            + " culled)");
+            drawTimeTotalNanos = 0;
+            drawTimeFrameCount = 0;
+        }
     }
 
     private static int compileShader(int type, String shaderCode) {
@@ -345,4 +745,37 @@ public class SurveyRenderer implements GLSurfaceView.Renderer {
         GLES20.glCompileShader(shader);
         return shader;
     }
+
+    /** Survey data handed over from the UI thread to be picked up on the next frame. */
+    private static class SurveyData {
+        final Map<Survey, Space<Coord3D>> spaces;
+        final Survey survey;
+        final List<Leg> legsInChronoOrder;
+        final int legEditCount;
+
+        SurveyData(
+                Map<Survey, Space<Coord3D>> spaces,
+                Survey survey,
+                List<Leg> legsInChronoOrder,
+                int legEditCount) {
+            this.spaces = spaces;
+            this.survey = survey;
+            this.legsInChronoOrder = legsInChronoOrder;
+            this.legEditCount = legEditCount;
+        }
+    }
+
+    /** A survey's geometry and the GL buffers mirroring its blocks (in the same order). */
+    private static class SurveyBuffers {
+        final SurveyGeometry geometry = new SurveyGeometry();
+        final List<BlockBuffers> blockBuffers = new ArrayList<>();
+        int uploadedGeneration = -1;
+    }
+
+    /** GL buffer handles for one geometry block, plus how much of each has been uploaded. */
+    private static class BlockBuffers {
+        final int[] handles = new int[4];
+        final int[] capacityBytes = new int[4];
+        final int[] uploadedBytes = new int[4];
+    }
 }
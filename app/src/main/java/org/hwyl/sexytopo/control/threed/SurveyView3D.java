@@ -4,6 +4,7 @@ import android.content.Context;
 import android.opengl.GLSurfaceView;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
+import android.view.ViewConfiguration;
 import org.hwyl.sexytopo.control.util.SketchPreferences;
 
 public class SurveyView3D extends GLSurfaceView {
@@ -21,6 +22,19 @@ public class SurveyView3D extends GLSurfaceView {
 
     private int touchMode = NONE;
 
+    // How close (in dp) a tap has to be to a station or leg to pick it
+    private static final float PICK_RADIUS_DP = 24;
+
+    private OnPickListener onPickListener = null;
+    private float downX;
+    private float downY;
+    private boolean isTap = false;
+
+    /** Called on the UI thread when the user taps the view. */
+    public interface OnPickListener {
+        void onPick(Pick pick, float x, float y);
+    }
+
     public SurveyView3D(Context context) {
         super(context);
         init();
@@ -42,6 +56,10 @@ public class SurveyView3D extends GLSurfaceView {
         return renderer;
     }
 
+    public void setOnPickListener(OnPickListener listener) {
+        this.onPickListener = listener;
+    }
+
     @Override
     public boolean onTouchEvent(MotionEvent event) {
         int pointerCount = event.getPointerCount();
@@ -50,10 +68,14 @@ public class SurveyView3D extends GLSurfaceView {
             case MotionEvent.ACTION_DOWN:
                 previousX = event.getX();
                 previousY = event.getY();
+                downX = event.getX();
+                downY = event.getY();
+                isTap = true;
                 touchMode = PAN;
                 break;
 
             case MotionEvent.ACTION_POINTER_DOWN:
+                isTap = false;
                 if (pointerCount == 2) {
                     previousSpacing = getSpacing(event);
                     previousX = getMidpointX(event);
@@ -63,6 +85,11 @@ public class SurveyView3D extends GLSurfaceView {
                 break;
 
             case MotionEvent.ACTION_MOVE:
+                float slop = ViewConfiguration.get(getContext()).getScaledTouchSlop();
+                if (Math.abs(event.getX() - downX) > slop
+                        || Math.abs(event.getY() - downY) > slop) {
+                    isTap = false;
+                }
                 if (pointerCount == 1 && touchMode == PAN) {
                     float dx = event.getX() - previousX;
                     float dy = event.getY() - previousY;
@@ -104,6 +131,12 @@ public class SurveyView3D extends GLSurfaceView {
                 break;
 
             case MotionEvent.ACTION_UP:
+                if (isTap) {
+                    pick(event.getX(), event.getY());
+                }
+                touchMode = NONE;
+                break;
+
             case MotionEvent.ACTION_POINTER_UP:
                 touchMode = NONE;
                 break;
@@ -112,6 +145,19 @@ public class SurveyView3D extends GLSurfaceView {
         return true;
     }
 
+    private void pick(float x, float y) {
+        if (onPickListener == null) {
+            return;
+        }
+        float radius = PICK_RADIUS_DP * getResources().getDisplayMetrics().density;
+        // The renderer's state belongs to the GL thread, so pick there and report back here
+        queueEvent(
+                () -> {
+                    Pick pick = renderer.pick(x, y, radius);
+                    post(() -> onPickListener.onPick(pick, x, y));
+                });
+    }
+
     private float getSpacing(MotionEvent event) {
         float dx = event.getX(0) - event.getX(1);
         float dy = event.getY(0) - event.getY(1);
@@ -0,0 +1,159 @@
+package org.hwyl.sexytopo.control.util;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Writes numbers to a fixed number of decimal places, always with a '.', straight into the
+ * caller's StringBuilder or Appendable. It's much quicker than String.format() or DecimalFormat,
+ * which exporters otherwise call for every coordinate, and unlike a shared DecimalFormat it's safe
+ * to use from several threads at once.
+ *
+ * <p>The output is exactly what the exporters used to get: append() rounds the way
+ * String.format("%.2f") does (half up, from the shortest decimal that reads back as the value)
+ * and appendHalfEven() the way DecimalFormat does (half even, from the exact binary value). The
+ * two only differ when a value is on or very near a half, which is also the only time this falls
+ * back to BigDecimal. Negative values that round to zero keep their minus sign, as they did.
+ */
+public class FixedPointFormatter {
+
+    private static final int MAX_DECIMAL_PLACES = 9;
+
+    private static final long[] POWERS_OF_TEN = {
+        1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L,
+        1_000_000_000L
+    };
+
+    // Above this, a double has too few bits after the point to round from safely.
+    private static final double MAX_FAST_SCALED_VALUE = 1e15;
+
+    // Generous bounds on how far value * 10^n in doubles can be from the exact product, relative
+    // to its size: a rounding error in the multiplication and up to half an ulp between the value
+    // and its shortest decimal.
+    private static final double RELATIVE_TOLERANCE = 1e-15;
+
+    private static final ThreadLocal<StringBuilder> scratch =
+            new ThreadLocal<StringBuilder>() {
+                @Override
+                protected StringBuilder initialValue() {
+                    return new StringBuilder(32);
+                }
+            };
+
+    /** As String.format(Locale.ROOT, "%.nf", value). */
+    public static StringBuilder append(StringBuilder builder, double value, int decimalPlaces) {
+        append(builder, value, decimalPlaces, false, false);
+        return builder;
+    }
+
+    /** As String.format(Locale.ROOT, "%+.nf", value). */
+    public static StringBuilder appendWithSign(
+            StringBuilder builder, double value, int decimalPlaces) {
+        append(builder, value, decimalPlaces, false, true);
+        return builder;
+    }
+
+    /** As a DecimalFormat of "0.00..." with n places and '.' as its decimal separator. */
+    public static StringBuilder appendHalfEven(
+            StringBuilder builder, double value, int decimalPlaces) {
+        append(builder, value, decimalPlaces, true, false);
+        return builder;
+    }
+
+    public static void append(Appendable appendable, double value, int decimalPlaces)
+            throws IOException {
+        append(appendable, value, decimalPlaces, false);
+    }
+
+    public static void appendHalfEven(Appendable appendable, double value, int decimalPlaces)
+            throws IOException {
+        append(appendable, value, decimalPlaces, true);
+    }
+
+    public static String format(double value, int decimalPlaces) {
+        return append(new StringBuilder(24), value, decimalPlaces).toString();
+    }
+
+    public static String formatHalfEven(double value, int decimalPlaces) {
+        return appendHalfEven(new StringBuilder(24), value, decimalPlaces).toString();
+    }
+
+    private static void append(
+            Appendable appendable, double value, int decimalPlaces, boolean isHalfEven)
+            throws IOException {
+        if (appendable instanceof StringBuilder) {
+            append((StringBuilder) appendable, value, decimalPlaces, isHalfEven, false);
+        } else {
+            StringBuilder builder = scratch.get();
+            builder.setLength(0);
+            append(builder, value, decimalPlaces, isHalfEven, false);
+            appendable.append(builder);
+        }
+    }
+
+    private static void append(
+            StringBuilder builder,
+            double value,
+            int decimalPlaces,
+            boolean isHalfEven,
+            boolean isSigned) {
+
+        if (decimalPlaces < 0 || decimalPlaces > MAX_DECIMAL_PLACES) {
+            throw new IllegalArgumentException("Can't format to " + decimalPlaces + " places");
+        }
+
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            if (isSigned && value > 0) {
+                builder.append('+');
+            }
+            builder.append(value);
+            return;
+        }
+
+        // The sign bit, so that -0.0 comes out as "-0.00" like it always has
+        if (Double.doubleToRawLongBits(value) < 0) {
+            builder.append('-');
+        } else if (isSigned) {
+            builder.append('+');
+        }
+
+        double magnitude = Math.abs(value);
+        long power = POWERS_OF_TEN[decimalPlaces];
+        double scaled = magnitude * power;
+
+        if (scaled < MAX_FAST_SCALED_VALUE) {
+            long whole = (long) scaled;
+            double fraction = scaled - whole; // exact at this size
+            if (Math.abs(fraction - 0.5) > scaled * RELATIVE_TOLERANCE) {
+                long rounded = fraction > 0.5 ? whole + 1 : whole;
+                appendScaled(builder, rounded, power);
+                return;
+            }
+        }
+
+        // On or near a half, or too big to scale exactly: do it the slow, certain way. Both start
+        // from the shortest decimal, but DecimalFormat settles ties by the exact value.
+        BigDecimal decimal = new BigDecimal(Double.toString(magnitude));
+        if (!isHalfEven) {
+            decimal = decimal.setScale(decimalPlaces, RoundingMode.HALF_UP);
+        } else if (decimal.scale() <= decimalPlaces) {
+            decimal = decimal.setScale(decimalPlaces);
+        } else {
+            decimal = new BigDecimal(magnitude).setScale(decimalPlaces, RoundingMode.HALF_EVEN);
+        }
+        builder.append(decimal.toPlainString());
+    }
+
+    private static void appendScaled(StringBuilder builder, long rounded, long power) {
+        builder.append(rounded / power);
+        if (power == 1) {
+            return;
+        }
+        builder.append('.');
+        long fraction = rounded % power;
+        for (long digit = power / 10; digit > 0; digit /= 10) {
+            builder.append((char) ('0' + (fraction / digit) % 10));
+        }
+    }
+}
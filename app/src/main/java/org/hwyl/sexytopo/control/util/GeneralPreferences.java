@@ -122,6 +122,11 @@ public class GeneralPreferences {
         return getBoolean("pref_developer_mode", false);
     }
 
+    /** Debug messages (e.g. every packet from the instrument) are only logged in developer mode. */
+    public static Log.Level getLogLevel() {
+        return isDevModeOn() ? Log.Level.DEBUG : Log.Level.INFO;
+    }
+
     public static String getOrientationMode() {
         return getString("pref_orientation", "auto");
     }
@@ -201,6 +206,10 @@ public class GeneralPreferences {
         return getBoolean("pref_legacy_cross_sections", false);
     }
 
+    public static boolean isCompactSketchFilesOn() {
+        return getBoolean("pref_compact_sketch_files", false);
+    }
+
     // ********** Sketching ***********
 
     public static boolean isAntialiasingModeOn() {
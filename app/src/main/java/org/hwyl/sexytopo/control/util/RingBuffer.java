@@ -0,0 +1,76 @@
+package org.hwyl.sexytopo.control.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the most recent items added to it, up to a fixed number, dropping the oldest to make
+ * room. Nothing is locked: any number of threads can add at once without waiting for each other
+ * or for someone reading.
+ *
+ * <p>Every item gets a position in the order it was added and goes in the slot for that position,
+ * recorded alongside it. A reader walks the positions it expects and skips any slot holding
+ * something else: an item whose writer hasn't finished yet, or one already replaced by a newer
+ * item.
+ */
+public class RingBuffer<T> {
+
+    private static class Entry<T> {
+        private final long position;
+        private final T item;
+
+        private Entry(long position, T item) {
+            this.position = position;
+            this.item = item;
+        }
+    }
+
+    private final int capacity;
+    private final AtomicReferenceArray<Entry<T>> slots;
+    private final AtomicLong end = new AtomicLong(0);
+    private volatile long start = 0;
+
+    public RingBuffer(int capacity) {
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    public void add(T item) {
+        long position = end.getAndIncrement();
+        int index = (int) (position % capacity);
+        Entry<T> entry = new Entry<>(position, item);
+
+        Entry<T> current;
+        do {
+            current = slots.get(index);
+            if (current != null && current.position > position) {
+                return; // a writer that started later got here first, so this is already gone
+            }
+        } while (!slots.compareAndSet(index, current, entry));
+    }
+
+    /** Everything currently held, oldest first. */
+    public List<T> toList() {
+        long last = end.get();
+        long first = Math.max(start, last - capacity);
+        List<T> items = new ArrayList<>((int) (last - first));
+        for (long position = first; position < last; position++) {
+            Entry<T> entry = slots.get((int) (position % capacity));
+            if (entry != null && entry.position == position) {
+                items.add(entry.item);
+            }
+        }
+        return items;
+    }
+
+    /** Forgets everything added so far. */
+    public void clear() {
+        start = end.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
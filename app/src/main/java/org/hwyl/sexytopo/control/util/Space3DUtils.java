@@ -1,7 +1,11 @@
 package org.hwyl.sexytopo.control.util;
 
+import java.util.Map;
 import org.hwyl.sexytopo.model.graph.Coord3D;
+import org.hwyl.sexytopo.model.graph.Line;
+import org.hwyl.sexytopo.model.graph.Space;
 import org.hwyl.sexytopo.model.survey.Leg;
+import org.hwyl.sexytopo.model.survey.Station;
 
 public class Space3DUtils {
 
@@ -43,4 +47,25 @@ public class Space3DUtils {
 
         return new Leg(distance, azimuth, inclination);
     }
+
+    public static Space<Coord3D> translate(Space<Coord3D> space, Coord3D translation) {
+
+        Space<Coord3D> newSpace = new Space<>();
+
+        Map<Station, Coord3D> stations = space.getStationMap();
+        for (Station station : stations.keySet()) {
+            Coord3D coord = stations.get(station);
+            newSpace.addStation(station, coord.plus(translation));
+        }
+
+        Map<Leg, Line<Coord3D>> legs = space.getLegMap();
+        for (Leg leg : legs.keySet()) {
+            Line<Coord3D> line = legs.get(leg);
+            Line<Coord3D> newLine =
+                    new Line<>(line.getStart().plus(translation), line.getEnd().plus(translation));
+            newSpace.addLeg(leg, newLine);
+        }
+
+        return newSpace;
+    }
 }
@@ -39,9 +39,9 @@ public class SurveyUpdater {
     public static synchronized boolean update(Survey survey, Leg leg, InputMode inputMode) {
         Station activeStation = survey.getActiveStation();
 
-        Log.i(R.string.survey_update_adding_leg, leg);
+        Log.d(R.string.survey_update_adding_leg, leg);
         activeStation.getOnwardLegs().add(leg);
-        survey.setSaved(false);
+        survey.setDataSaved(false);
         survey.addLegRecord(leg);
 
         boolean justCreatedNewStation = false;
@@ -76,9 +76,9 @@ public class SurveyUpdater {
     }
 
     public static void addLegFromStation(Survey survey, Station fromStation, Leg leg) {
-        Log.i(R.string.survey_update_adding_leg, leg);
+        Log.d(R.string.survey_update_adding_leg, leg);
         fromStation.getOnwardLegs().add(leg);
-        survey.setSaved(false);
+        survey.setDataSaved(false);
         survey.addLegRecord(leg);
         if (leg.hasDestination()) {
             survey.setActiveStation(leg.getDestination());
@@ -273,7 +273,7 @@ public class SurveyUpdater {
                         return false;
                     }
                 });
-        survey.setSaved(false);
+        survey.setDataSaved(false);
     }
 
     public static void renameStation(Survey survey, Station station, String name) {
@@ -287,6 +287,7 @@ public class SurveyUpdater {
         }
 
         station.setName(name);
+        // cross-sections refer to their station by name, so the sketches change too
         survey.setSaved(false);
         Log.i(R.string.survey_update_renamed_station, previousName, name);
     }
@@ -299,7 +300,8 @@ public class SurveyUpdater {
         Station originating = survey.getOriginatingStation(leg);
         originating.getOnwardLegs().remove(leg);
         newSource.addOnwardLeg(leg);
-        survey.setSaved(false);
+        survey.countLegEdit();
+        survey.setDataSaved(false);
         Log.i(R.string.survey_update_moved_leg, newSource.getName());
     }
 
@@ -331,7 +333,7 @@ public class SurveyUpdater {
         // Then remove the leg from its originating station
         fromStation.getOnwardLegs().remove(leg);
         survey.checkSurveyIntegrity();
-        survey.setSaved(false);
+        survey.setDataSaved(false);
     }
 
     public static void downgradeLeg(Survey survey, Leg leg) {
@@ -361,7 +363,7 @@ public class SurveyUpdater {
         }
 
         survey.checkSurveyIntegrity();
-        survey.setSaved(false);
+        survey.setDataSaved(false);
     }
 
     public static boolean areLegsAboutTheSame(List<Leg> legs) {
@@ -411,7 +413,7 @@ public class SurveyUpdater {
                         return false;
                     }
                 });
-        survey.setSaved(false);
+        survey.setDataSaved(false);
     }
 
     public static void setDirectionOfSubtree(Station station, Direction direction) {
@@ -4,13 +4,11 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import java.text.DateFormat;
 import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
-import java.util.Locale;
 import org.hwyl.sexytopo.R;
 import org.hwyl.sexytopo.control.activity.SexyTopoActivity;
 
@@ -19,15 +17,10 @@ public class TextTools {
     static final DecimalFormat dp0WithCommaFormatter = new DecimalFormat("#,##0");
     static final DecimalFormat dp2WithCommaFormatter = new DecimalFormat("#,##0.00");
     static final DecimalFormat dp2WithoutCommaFormatter = new DecimalFormat("##0.00");
-    static final DecimalFormat dp2WithoutCommaFormatterUk =
-            new DecimalFormat("##0.00", new DecimalFormatSymbols(Locale.UK));
 
     static final Character[] PROBLEMATIC = {' ', '\t', '\n', '\r', ':'};
     static final Character DEFAULT_JOINER = '-';
 
-    @SuppressLint("SimpleDateFormat")
-    public static final DateFormat ISO_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
-
     public static String pluralise(int n, String noun) {
         return n + " " + ((n == 1) ? noun : noun + "s");
     }
@@ -94,10 +87,6 @@ public class TextTools {
         return dp2WithoutCommaFormatter.format(number);
     }
 
-    public static String formatTo2dpWithDot(Number number) {
-        return dp2WithoutCommaFormatterUk.format(number);
-    }
-
     public static String formatTo0dpWithComma(Number number) {
         return dp0WithCommaFormatter.format(number);
     }
@@ -149,8 +138,11 @@ public class TextTools {
         return text.split("\\r?\\n");
     }
 
+    @SuppressLint("SimpleDateFormat")
     public static String toIsoDate(Date date) {
-        return ISO_DATE_FORMAT.format(date);
+        // Not shared: a DateFormat can't be used by more than one thread at a time
+        DateFormat isoDateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        return isoDateFormat.format(date);
     }
 
     public static String getFileAttribution(Context context) {
@@ -14,6 +14,14 @@ public final class Coord3D extends Coord<Coord3D> {
         this.z = z;
     }
 
+    public Coord3D plus(Coord3D coord3D) {
+        return new Coord3D(this.x + coord3D.x, this.y + coord3D.y, this.z + coord3D.z);
+    }
+
+    public Coord3D minus(Coord3D coord3D) {
+        return new Coord3D(this.x - coord3D.x, this.y - coord3D.y, this.z - coord3D.z);
+    }
+
     @Override
     public boolean equals(Object object) {
         if (object == null || getClass() != object.getClass()) {
@@ -1,5 +1,6 @@
 package org.hwyl.sexytopo.model.sketch;
 
+import java.util.List;
 import org.hwyl.sexytopo.control.util.Space3DUtils;
 import org.hwyl.sexytopo.model.graph.Coord2D;
 import org.hwyl.sexytopo.model.graph.Coord3D;
@@ -15,17 +16,35 @@ public class CrossSection {
     private final Station station;
     private final float angle;
 
+    // The projection is drawn every frame, so it is kept until the station's splays change.
+    // Legs are immutable (edits replace them) so comparing the splay list by identity is enough.
+    private List<Leg> projectedSplays = null;
+    private Space<Coord2D> projection = null;
+
     public CrossSection(Station station, float angle) {
         this.station = station;
         this.angle = angle;
     }
 
+    /**
+     * The splays of the station projected onto the plane of the cross-section, relative to the
+     * origin. The returned space is shared between calls and should not be modified.
+     */
     public Space<Coord2D> getProjection() {
+        List<Leg> splays = station.getUnconnectedOnwardLegs();
+        if (projection == null || !splays.equals(projectedSplays)) {
+            projection = project(splays);
+            projectedSplays = splays;
+        }
+        return projection;
+    }
+
+    private Space<Coord2D> project(List<Leg> splays) {
 
         Space<Coord2D> projection = new Space<>();
         projection.addStation(station, Coord2D.ORIGIN);
 
-        for (Leg leg : station.getUnconnectedOnwardLegs()) {
+        for (Leg leg : splays) {
             // first of all normalise to match the angle of the cross section
             Leg rotated = leg.rotate(-angle);
             Coord3D coord3D = Space3DUtils.toCartesian(Coord3D.ORIGIN, rotated);
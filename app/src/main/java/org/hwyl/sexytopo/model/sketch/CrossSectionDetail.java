@@ -17,6 +17,19 @@ public class CrossSectionDetail extends SinglePositionDetail {
     // The sub-sketch is the one mutable aspect of a cross-section detail:
     private Sketch sketch;
 
+    // Geometry positioned for drawing on the plan is cached so panning and zooming don't re-project
+    // every cross-section on every frame. Each cache is rebuilt only when its source (the splay
+    // projection or the sub-sketch), the cross-section scale or the display centre changes.
+    private Space<Coord2D> positionedProjectionSource = null;
+    private Space<Coord2D> positionedProjection = null;
+    private float positionedProjectionScale;
+    private Coord2D positionedProjectionCentre;
+
+    private Sketch positionedSketchSource = null;
+    private Sketch positionedSketch = null;
+    private float positionedSketchScale;
+    private Coord2D positionedSketchCentre;
+
     public CrossSectionDetail(CrossSection crossSection, Coord2D position) {
         this(crossSection, position, new Sketch());
     }
@@ -78,6 +91,41 @@ public class CrossSectionDetail extends SinglePositionDetail {
         return projection;
     }
 
+    /**
+     * The splay projection scaled by the cross-section scale and centred on the given point, ready
+     * for drawing. The returned space is shared between calls and should not be modified.
+     */
+    public Space<Coord2D> getPositionedProjection(float scale, Coord2D centre) {
+        Space<Coord2D> relativeProjection = crossSection.getProjection();
+        if (positionedProjection == null
+                || relativeProjection != positionedProjectionSource
+                || scale != positionedProjectionScale
+                || !centre.equals(positionedProjectionCentre)) {
+            positionedProjection = Space2DUtils.translate(relativeProjection.scale(scale), centre);
+            positionedProjectionSource = relativeProjection;
+            positionedProjectionScale = scale;
+            positionedProjectionCentre = centre;
+        }
+        return positionedProjection;
+    }
+
+    /**
+     * The sub-sketch scaled by the cross-section scale and centred on the given point, ready for
+     * drawing. The returned sketch is shared between calls and should not be modified.
+     */
+    public Sketch getPositionedSketch(float scale, Coord2D centre) {
+        if (positionedSketch == null
+                || sketch != positionedSketchSource
+                || scale != positionedSketchScale
+                || !centre.equals(positionedSketchCentre)) {
+            positionedSketch = sketch.scale(scale).translate(centre);
+            positionedSketchSource = sketch;
+            positionedSketchScale = scale;
+            positionedSketchCentre = centre;
+        }
+        return positionedSketch;
+    }
+
     /**
      * Return a new detail at the same position and with the same sub-sketch, but a new
      * cross-section angle (compass azimuth in degrees).
@@ -26,6 +26,8 @@ public class Sketch extends Shape {
     private float crossSectionScale = DEFAULT_XSECTION_SCALE;
 
     private boolean isSaved = true;
+    private boolean isAutosaved = false;
+    private int changeCount = 0;
 
     public Sketch() {}
 
@@ -44,6 +46,24 @@ public class Sketch extends Shape {
 
     public void setSaved(boolean isSaved) {
         this.isSaved = isSaved;
+        if (!isSaved) {
+            changeCount++;
+            isAutosaved = false;
+        }
+    }
+
+    /** How many times the sketch has changed; see Survey.getChangeCount(). */
+    public int getChangeCount() {
+        return changeCount;
+    }
+
+    /** Whether the sketch's full autosave file matches it (i.e. not just with a journal). */
+    public boolean isAutosaved() {
+        return isAutosaved;
+    }
+
+    public void setAutosaved(boolean isAutosaved) {
+        this.isAutosaved = isAutosaved;
     }
 
     public void setPathDetails(List<PathDetail> pathDetails) {
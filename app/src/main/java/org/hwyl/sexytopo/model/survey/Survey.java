@@ -6,14 +6,21 @@ import androidx.documentfile.provider.DocumentFile;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.Callable;
+import org.hwyl.sexytopo.R;
+import org.hwyl.sexytopo.control.Log;
 import org.hwyl.sexytopo.control.util.StationNamer;
 import org.hwyl.sexytopo.control.util.SurveyTools;
 import org.hwyl.sexytopo.control.util.Wrapper;
 import org.hwyl.sexytopo.model.graph.Projection2D;
+import org.hwyl.sexytopo.model.sketch.CrossSection;
+import org.hwyl.sexytopo.model.sketch.CrossSectionDetail;
+import org.hwyl.sexytopo.model.sketch.PathDetail;
 import org.hwyl.sexytopo.model.sketch.Sketch;
 
 public class Survey {
@@ -28,19 +35,38 @@ public class Survey {
     private Station origin = new Station(StationNamer.generateOriginName());
     private Station activeStation = origin;
 
-    private Sketch planSketch = new Sketch();
-    private Sketch elevationSketch = new Sketch();
+    private final LazySketch planSketch = new LazySketch();
+    private final LazySketch elevationSketch = new LazySketch();
 
     private Trip trip = null;
 
     private final Map<Station, Set<SurveyConnection>> stationsToSurveyConnections = new HashMap<>();
+    private Runnable connectionLoader = null;
+
+    // Whether each file matches the survey, so saving can skip files that haven't changed
+    private boolean isDataSaved = true;
+    private boolean isMetadataSaved = true;
+    private boolean isDataAutosaved = false;
+    private boolean isMetadataAutosaved = false;
 
-    private boolean isSaved = true;
     private boolean isAutosaved = true;
     private DocumentFile directory;
 
+    // Goes up with every change, so a save running on another thread can tell if it's stale
+    private int changeCount = 0;
+
     private final Stack<Leg> legsInChronoOrder = new Stack<>();
 
+    // Goes up whenever legs are removed, replaced or moved, but not when they're added, so views
+    // that append new legs as they arrive can tell when they have to start again
+    private int legEditCount = 0;
+
+    // The centreline copied for the last snapshot, which later ones share until the data changes
+    private Map<Station, Station> snapshotStations = null;
+    private List<Leg> snapshotLegs = null;
+    private int snapshotChangeCount;
+    private int snapshotLegEditCount;
+
     public Survey() {
         this.setName(DEFAULT_NAME);
     }
@@ -90,64 +116,213 @@ public class Survey {
     }
 
     public void setSaved(boolean isSaved) {
-        this.isSaved = isSaved;
+        setDataSaved(isSaved);
         planSketch.setSaved(isSaved);
         elevationSketch.setSaved(isSaved);
+    }
+
+    public boolean isSaved() {
+        return isDataSaved && isMetadataSaved && planSketch.isSaved() && elevationSketch.isSaved();
+    }
+
+    /** Unlike getSketch(projection).isSaved(), this doesn't load a sketch that isn't loaded yet. */
+    public boolean isSketchSaved(Projection2D projection) {
+        return getLazySketch(projection).isSaved();
+    }
+
+    /** Data changes usually move the active station as well, so they also mark the metadata. */
+    public void setDataSaved(boolean isDataSaved) {
+        this.isDataSaved = isDataSaved;
+        setMetadataSaved(isDataSaved);
+
+        if (!isDataSaved) {
+            isDataAutosaved = false;
+        }
+    }
 
-        if (!isSaved) {
+    public boolean isDataSaved() {
+        return isDataSaved;
+    }
+
+    public void setMetadataSaved(boolean isMetadataSaved) {
+        this.isMetadataSaved = isMetadataSaved;
+
+        if (!isMetadataSaved) {
+            changeCount++;
+            isMetadataAutosaved = false;
             // saving doesn't mean it's autosaved, but unsaved data means autosave required
             setAutosaved(false);
         }
     }
 
-    public boolean isSaved() {
-        return isSaved && planSketch.isSaved() && elevationSketch.isSaved();
+    public boolean isMetadataSaved() {
+        return isMetadataSaved;
     }
 
     public void setAutosaved(boolean isAutosaved) {
         this.isAutosaved = isAutosaved;
     }
 
+    /** Whether there are changes that haven't been autosaved in some form yet. */
     public boolean isAutosaved() {
         return isAutosaved;
     }
 
+    /** Whether the full data autosave file matches the survey (i.e. not just with a journal). */
+    public void setDataAutosaved(boolean isDataAutosaved) {
+        this.isDataAutosaved = isDataAutosaved;
+    }
+
+    public boolean isDataAutosaved() {
+        return isDataAutosaved;
+    }
+
+    public void setMetadataAutosaved(boolean isMetadataAutosaved) {
+        this.isMetadataAutosaved = isMetadataAutosaved;
+    }
+
+    public boolean isMetadataAutosaved() {
+        return isMetadataAutosaved;
+    }
+
+    /** How many times the data or metadata has changed; sketches keep their own count. */
+    public int getChangeCount() {
+        return changeCount;
+    }
+
+    /** How many times legs have been removed, replaced or moved; adding legs doesn't count. */
+    public int getLegEditCount() {
+        return legEditCount;
+    }
+
+    /** For changes to the legs made outside the survey, such as moving a leg to another station. */
+    public void countLegEdit() {
+        legEditCount++;
+    }
+
     public Leg getMostRecentLeg() {
         return legsInChronoOrder.empty() ? null : legsInChronoOrder.peek();
     }
 
     public void setPlanSketch(Sketch planSketch) {
-        this.planSketch = planSketch;
+        this.planSketch.set(planSketch);
     }
 
     public Sketch getPlanSketch() {
-        return planSketch;
+        return planSketch.get();
     }
 
     public void setElevationSketch(Sketch elevationSketch) {
-        this.elevationSketch = elevationSketch;
+        this.elevationSketch.set(elevationSketch);
     }
 
     public Sketch getElevationSketch() {
-        return elevationSketch;
+        return elevationSketch.get();
     }
 
     public Sketch getSketch(Projection2D projection) {
+        return getLazySketch(projection).get();
+    }
+
+    /** The sketch will be loaded when it's first asked for, on whichever thread asks. */
+    public void setSketchLoader(Projection2D projection, Callable<Sketch> loader) {
+        getLazySketch(projection).setReader(survey -> loader.call());
+    }
+
+    /**
+     * As setSketchLoader(), but for a sketch read from a file, which is then read for whichever
+     * survey asks. Snapshots taken before it's needed read the file for themselves.
+     */
+    public void setSketchReader(Projection2D projection, SketchReader reader) {
+        getLazySketch(projection).setReader(reader);
+    }
+
+    /** Reads a sketch whose cross-sections hang off the given survey's stations. */
+    public interface SketchReader {
+        Sketch read(Survey survey) throws Exception;
+    }
+
+    public boolean isSketchLoaded(Projection2D projection) {
+        return getLazySketch(projection).isLoaded();
+    }
+
+    private LazySketch getLazySketch(Projection2D projection) {
         if (projection == Projection2D.PLAN) {
-            return getPlanSketch();
+            return planSketch;
         } else if (projection == Projection2D.EXTENDED_ELEVATION) {
-            return getElevationSketch();
+            return elevationSketch;
         } else {
             throw new IllegalArgumentException("Unknown projection: " + projection);
         }
     }
 
+    /** A sketch that may not have been read from disk yet. */
+    private class LazySketch {
+        private Sketch sketch = new Sketch();
+        private SketchReader reader = null;
+        private boolean isSaved = true; // only used until the sketch is loaded
+
+        private synchronized Sketch get() {
+            if (reader != null) {
+                try {
+                    sketch = reader.read(Survey.this);
+                } catch (Exception exception) {
+                    Log.e(R.string.file_load_sketch_error);
+                    Log.e(exception);
+                    sketch = new Sketch();
+                }
+                reader = null;
+                sketch.setSaved(isSaved);
+            }
+            return sketch;
+        }
+
+        private synchronized void set(Sketch sketch) {
+            this.sketch = sketch;
+            reader = null;
+        }
+
+        private synchronized void setReader(SketchReader reader) {
+            this.reader = reader;
+            isSaved = true;
+        }
+
+        /** Returns false if the sketch has already been read, so there's nothing to share. */
+        private synchronized boolean shareReaderWith(LazySketch copy) {
+            if (reader == null) {
+                return false;
+            }
+            synchronized (copy) {
+                copy.reader = reader;
+                copy.isSaved = isSaved;
+            }
+            return true;
+        }
+
+        private synchronized boolean isLoaded() {
+            return reader == null;
+        }
+
+        private synchronized void setSaved(boolean isSaved) {
+            if (reader == null) {
+                sketch.setSaved(isSaved);
+            } else {
+                this.isSaved = isSaved;
+            }
+        }
+
+        private synchronized boolean isSaved() {
+            return reader == null ? sketch.isSaved() : isSaved;
+        }
+    }
+
     public Station getOrigin() {
         return origin;
     }
 
     public void setOrigin(Station origin) {
         this.origin = origin;
+        legEditCount++;
     }
 
     public boolean isOrigin(Station station) {
@@ -224,6 +399,7 @@ public class Survey {
 
         //noinspection ConstantConditions - this will not be null
         connections.add(connection);
+        setMetadataSaved(false);
     }
 
     public void disconnect(Station joinInThisSurvey, Survey otherSurvey) throws Exception {
@@ -235,6 +411,7 @@ public class Survey {
                 if (connections.isEmpty()) {
                     stationsToSurveyConnections.remove(joinInThisSurvey);
                 }
+                setMetadataSaved(false);
                 return;
             }
         }
@@ -263,9 +440,39 @@ public class Survey {
     }
 
     public Map<Station, Set<SurveyConnection>> getConnectedSurveys() {
+        loadConnections();
         return stationsToSurveyConnections;
     }
 
+    /** The connected surveys will be loaded when they're first asked for. */
+    public void setConnectionLoader(Runnable connectionLoader) {
+        this.connectionLoader = connectionLoader;
+    }
+
+    /** Whether asking for the connected surveys would mean loading them first. */
+    public boolean areConnectionsLoaded() {
+        return connectionLoader == null;
+    }
+
+    // Synchronized as views may load the connections in the background
+    private synchronized void loadConnections() {
+        if (connectionLoader == null) {
+            return;
+        }
+        Runnable loader = connectionLoader;
+        connectionLoader = null;
+
+        // Connecting normally marks the metadata as changed, but these connections are already
+        // in the metadata file
+        boolean wasMetadataSaved = isMetadataSaved;
+        boolean wasMetadataAutosaved = isMetadataAutosaved;
+        boolean wasAutosaved = isAutosaved;
+        loader.run();
+        isMetadataSaved = wasMetadataSaved;
+        isMetadataAutosaved = wasMetadataAutosaved;
+        isAutosaved = wasAutosaved;
+    }
+
     public Set<Survey> getRecursiveConnectedSurveys() {
         Set<Survey> allSurveys = new HashSet<>();
         getRecursiveConnectedSurveys(allSurveys, this);
@@ -273,7 +480,7 @@ public class Survey {
     }
 
     private void getRecursiveConnectedSurveys(Set<Survey> allSurveys, Survey survey) {
-        for (Set<SurveyConnection> set : survey.stationsToSurveyConnections.values()) {
+        for (Set<SurveyConnection> set : survey.getConnectedSurveys().values()) {
             for (SurveyConnection connection : set) {
                 Survey other = connection.otherSurvey;
                 if (!allSurveys.contains(other)) {
@@ -293,7 +500,7 @@ public class Survey {
     }
 
     public boolean hasLinkedSurveys(Station station) {
-        return stationsToSurveyConnections.containsKey(station);
+        return getConnectedSurveys().containsKey(station);
     }
 
     public void checkSurveyIntegrity() {
@@ -306,7 +513,9 @@ public class Survey {
                 badLegs.add(leg);
             }
         }
-        legsInChronoOrder.removeAll(badLegs);
+        if (legsInChronoOrder.removeAll(badLegs)) {
+            legEditCount++;
+        }
 
         if (!reachableStations.contains(activeStation)) {
             activeStation = findNewActiveStation();
@@ -341,11 +550,13 @@ public class Survey {
         int oldIndex = legsInChronoOrder.indexOf(oldLeg);
         legsInChronoOrder.insertElementAt(newLeg, oldIndex + 1);
         legsInChronoOrder.remove(oldIndex);
+        legEditCount++;
         checkSurveyIntegrity();
     }
 
     public void removeLegRecord(Leg leg) {
         legsInChronoOrder.remove(leg);
+        legEditCount++;
     }
 
     public Leg getReferringLeg(final Station station) {
@@ -391,6 +602,7 @@ public class Survey {
         }
 
         final Leg toDelete = legsInChronoOrder.pop();
+        legEditCount++;
         SurveyTools.traverseLegs(
                 this,
                 (origin, leg) -> {
@@ -406,7 +618,7 @@ public class Survey {
             checkSurveyIntegrity();
         }
 
-        setSaved(false);
+        setDataSaved(false);
     }
 
     public Station getStationByName(final String name) {
@@ -433,6 +645,128 @@ public class Survey {
         this.trip = trip;
     }
 
+    /**
+     * A copy of the survey as it is now, for saving or exporting on another thread while this one
+     * carries on changing. Nothing is locked, so it should be taken on the thread that changes the
+     * survey. Stations can change, so they're copied along with the legs leading to them; splays
+     * and finished sketch details never change, so they're shared rather than copied. Sketches and
+     * connected surveys that haven't been loaded yet stay that way until something asks for them.
+     *
+     * <p>Copying the centreline takes time in proportion to the size of the survey, so snapshots
+     * taken while only the sketches change (as when drawing) share the last one's copy. Anything
+     * that changes the centreline marks the data as unsaved, which is how they can tell.
+     */
+    public Survey createSnapshot() {
+        Survey copy = new Survey();
+        copy.name = name;
+        copy.directory = directory;
+        copy.trip = trip == null ? null : new Trip(trip);
+
+        if (snapshotStations == null
+                || snapshotChangeCount != changeCount
+                || snapshotLegEditCount != legEditCount
+                || !snapshotStations.containsKey(origin)) {
+            copyCentreline();
+        }
+        Map<Station, Station> stations = snapshotStations;
+
+        copy.origin = stations.get(origin);
+        Station activeStationCopy = stations.get(getActiveStation());
+        copy.activeStation = activeStationCopy == null ? copy.origin : activeStationCopy;
+        copy.legsInChronoOrder.addAll(snapshotLegs);
+
+        copySketchTo(copy, Projection2D.PLAN, stations);
+        copySketchTo(copy, Projection2D.EXTENDED_ELEVATION, stations);
+
+        if (connectionLoader == null) {
+            copyConnectionsTo(copy, stations);
+        } else {
+            copy.connectionLoader = () -> copyConnectionsTo(copy, stations);
+        }
+
+        return copy;
+    }
+
+    private void copyCentreline() {
+        Map<Station, Station> stations = new IdentityHashMap<>();
+        for (Station station : getAllStations()) {
+            Station stationCopy = new Station(station.getName(), station.getComment());
+            stationCopy.setExtendedElevationDirection(station.getExtendedElevationDirection());
+            stations.put(station, stationCopy);
+        }
+
+        Map<Leg, Leg> legs = new IdentityHashMap<>();
+        for (Map.Entry<Station, Station> entry : stations.entrySet()) {
+            for (Leg leg : entry.getKey().getOnwardLegs()) {
+                Leg legCopy = leg;
+                if (leg.hasDestination()) {
+                    legCopy = new Leg(leg, stations.get(leg.getDestination()));
+                    legCopy.setComment(leg.getComment());
+                    legs.put(leg, legCopy);
+                }
+                entry.getValue().addOnwardLeg(legCopy);
+            }
+        }
+
+        List<Leg> legsCopy = new ArrayList<>(legsInChronoOrder.size());
+        for (Leg leg : legsInChronoOrder) {
+            Leg legCopy = legs.get(leg);
+            legsCopy.add(legCopy == null ? leg : legCopy);
+        }
+
+        snapshotStations = stations;
+        snapshotLegs = legsCopy;
+        snapshotChangeCount = changeCount;
+        snapshotLegEditCount = legEditCount;
+    }
+
+    private void copySketchTo(
+            Survey copy, Projection2D projection, Map<Station, Station> stations) {
+        // A sketch that hasn't been read yet is just what's in its file, so rather than read it
+        // for this survey from another thread, the copy reads the file for itself
+        LazySketch copySketch = copy.getLazySketch(projection);
+        if (!getLazySketch(projection).shareReaderWith(copySketch)) {
+            copySketch.set(copySketch(getSketch(projection), stations));
+        }
+    }
+
+    private static Sketch copySketch(Sketch sketch, Map<Station, Station> stations) {
+        Sketch copy = new Sketch(sketch);
+
+        // The path being drawn is the one detail that's still changing
+        PathDetail activePath = sketch.getActivePath();
+        int activePathIndex = copy.getPathDetails().indexOf(activePath);
+        if (activePathIndex != -1) {
+            PathDetail pathSoFar =
+                    new PathDetail(new ArrayList<>(activePath.getPath()), activePath.getColour());
+            copy.getPathDetails().set(activePathIndex, pathSoFar);
+        }
+
+        // Cross-sections can be drawn in, and hang off stations
+        List<CrossSectionDetail> crossSections = new ArrayList<>();
+        for (CrossSectionDetail detail : copy.getCrossSectionDetails()) {
+            CrossSection crossSection = detail.getCrossSection();
+            Station station = stations.get(crossSection.getStation());
+            if (station != null) {
+                crossSection = new CrossSection(station, crossSection.getAngle());
+            }
+            Sketch crossSectionSketch = copySketch(detail.getSketch(), stations);
+            crossSections.add(
+                    new CrossSectionDetail(crossSection, detail.getPosition(), crossSectionSketch));
+        }
+        copy.setCrossSectionDetails(crossSections);
+
+        return copy;
+    }
+
+    private void copyConnectionsTo(Survey copy, Map<Station, Station> stations) {
+        for (Map.Entry<Station, Set<SurveyConnection>> entry : getConnectedSurveys().entrySet()) {
+            Station station = stations.get(entry.getKey());
+            copy.stationsToSurveyConnections.put(
+                    station == null ? entry.getKey() : station, new HashSet<>(entry.getValue()));
+        }
+    }
+
     @Override
     public boolean equals(Object object) {
         if (object == this) {
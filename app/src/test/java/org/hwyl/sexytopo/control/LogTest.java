@@ -0,0 +1,55 @@
+package org.hwyl.sexytopo.control;
+
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LogTest {
+
+    @After
+    public void resetLevel() {
+        Log.setLevel(Log.Level.INFO);
+    }
+
+    @Test
+    public void testSuppressedMessagesAreNeverBuilt() {
+        Log.setLevel(Log.Level.INFO);
+        Log.d(
+                () -> {
+                    Assert.fail("Debug message built at info level");
+                    return "";
+                });
+        Log.device(
+                Log.Level.DEBUG,
+                () -> {
+                    Assert.fail("Debug device message built at info level");
+                    return "";
+                });
+    }
+
+    @Test
+    public void testMessagesAtTheLevelAreLogged() {
+        Log.setLevel(Log.Level.DEBUG);
+        Log.d(() -> "debug message for LogTest");
+
+        Log.Message last = lastMessage(Log.LogType.SYSTEM);
+        Assert.assertEquals("debug message for LogTest", last.getText());
+    }
+
+    @Test
+    public void testErrorsAreAlwaysLogged() {
+        Log.setLevel(Log.Level.ERROR);
+        Log.i("info message for LogTest");
+        Log.e("error message for LogTest");
+
+        Log.Message last = lastMessage(Log.LogType.SYSTEM);
+        Assert.assertEquals("error message for LogTest", last.getText());
+        Assert.assertTrue(last.isError());
+    }
+
+    private static Log.Message lastMessage(Log.LogType logType) {
+        List<Log.Message> messages = Log.getLog(logType);
+        return messages.get(messages.size() - 1);
+    }
+}
@@ -4,8 +4,10 @@ import java.util.List;
 import java.util.Map;
 import org.hwyl.sexytopo.SexyTopoConstants;
 import org.hwyl.sexytopo.control.util.InputMode;
+import org.hwyl.sexytopo.control.util.Space3DTransformer;
 import org.hwyl.sexytopo.control.util.SurveyUpdater;
 import org.hwyl.sexytopo.model.graph.Coord2D;
+import org.hwyl.sexytopo.model.graph.Coord3D;
 import org.hwyl.sexytopo.model.graph.Projection2D;
 import org.hwyl.sexytopo.model.graph.Space;
 import org.hwyl.sexytopo.model.sketch.PathDetail;
@@ -130,6 +132,67 @@ public class ConnectedSurveysTest {
         Assert.assertEquals(-3.0, newStationPoint.y, SexyTopoConstants.ALLOWED_DOUBLE_DELTA);
     }
 
+    @Test
+    public void testConnectedSurveysArePositionedIn3D() {
+
+        Survey currentSurvey = getBasicSurvey("current");
+        Survey joinedSurvey0 = getBasicSurvey("joined-0");
+        Survey joinedSurvey1 = getBasicSurvey("joined-1");
+        connectTwoSurveys(
+                currentSurvey,
+                currentSurvey.getActiveStation(),
+                joinedSurvey0,
+                joinedSurvey0.getOrigin());
+        connectTwoSurveys(
+                joinedSurvey0,
+                joinedSurvey0.getActiveStation(),
+                joinedSurvey1,
+                joinedSurvey1.getOrigin());
+
+        Space3DTransformer transformer = new Space3DTransformer();
+        Space<Coord3D> space = transformer.transformTo3D(currentSurvey);
+        Map<Survey, Space<Coord3D>> translated =
+                ConnectedSurveys.getTranslatedConnectedSurveys3D(currentSurvey, space, transformer);
+
+        Assert.assertEquals(3, translated.size());
+        Assert.assertSame(space, translated.get(currentSurvey));
+
+        Map<Station, Coord3D> stations = translated.get(joinedSurvey1).getStationMap();
+        Coord3D newStationPoint = stations.get(joinedSurvey1.getStationByName("2"));
+        Assert.assertEquals(3.0, newStationPoint.y, SexyTopoConstants.ALLOWED_DOUBLE_DELTA);
+    }
+
+    @Test
+    public void testConnectionLayoutOnlyChangesWithTheConnections() {
+
+        Survey currentSurvey = getBasicSurvey("current");
+        Survey joinedSurvey0 = getBasicSurvey("joined-0");
+        Survey joinedSurvey1 = getBasicSurvey("joined-1");
+        connectTwoSurveys(
+                currentSurvey, currentSurvey.getOrigin(), joinedSurvey0, joinedSurvey0.getOrigin());
+
+        Space3DTransformer transformer = new Space3DTransformer();
+        Map<Station, ConnectedSurveys.ConnectionPoint> layout =
+                ConnectedSurveys.getConnectionLayout3D(
+                        currentSurvey, transformer.transformTo3D(currentSurvey));
+
+        SurveyUpdater.update(currentSurvey, new Leg(5, 90, 0));
+        Assert.assertEquals(
+                layout,
+                ConnectedSurveys.getConnectionLayout3D(
+                        currentSurvey, transformer.transformTo3D(currentSurvey)));
+
+        connectTwoSurveys(
+                currentSurvey,
+                currentSurvey.getActiveStation(),
+                joinedSurvey1,
+                joinedSurvey1.getOrigin());
+        Assert.assertNotEquals(
+                layout,
+                ConnectedSurveys.getConnectionLayout3D(
+                        currentSurvey, transformer.transformTo3D(currentSurvey)));
+    }
+
     private Survey getSurveyWithUri(Map<Survey, Space<Coord2D>> map, String uri) throws Exception {
         for (Survey survey : map.keySet()) {
             if (survey.getUri().toString().equals(uri)) {
@@ -172,6 +235,32 @@ public class ConnectedSurveysTest {
         Assert.assertEquals(new Coord2D(0, 0), coords.get(1));
     }
 
+    @Test
+    public void testConnectedSurveySketchIsOnlyLoadedWhenDrawn() {
+
+        Survey currentSurvey = getBasicSurvey("current");
+        Survey joinedSurvey = getBasicSurvey("joined");
+        joinedSurvey.setSketchLoader(Projection2D.PLAN, Sketch::new);
+        joinedSurvey.setSketchLoader(Projection2D.EXTENDED_ELEVATION, Sketch::new);
+        connectTwoSurveys(
+                currentSurvey,
+                currentSurvey.getActiveStation(),
+                joinedSurvey,
+                joinedSurvey.getOrigin());
+
+        Space<Coord2D> planProjection = Projection2D.PLAN.project(currentSurvey);
+        Map<Survey, Space<Coord2D>> translated =
+                ConnectedSurveys.getTranslatedConnectedSurveys(
+                        Projection2D.PLAN, currentSurvey, planProjection);
+        Survey translatedSurvey = translated.keySet().iterator().next();
+
+        Assert.assertFalse(joinedSurvey.isSketchLoaded(Projection2D.PLAN));
+        Assert.assertFalse(translatedSurvey.isSketchLoaded(Projection2D.PLAN));
+        translatedSurvey.getPlanSketch();
+        Assert.assertTrue(joinedSurvey.isSketchLoaded(Projection2D.PLAN));
+        Assert.assertFalse(joinedSurvey.isSketchLoaded(Projection2D.EXTENDED_ELEVATION));
+    }
+
     private static Survey getBasicSurvey(String uri) {
         Survey basicSurvey = new Survey();
         Leg l0 = new Leg(1.0f, 0.0f, 0.0f);
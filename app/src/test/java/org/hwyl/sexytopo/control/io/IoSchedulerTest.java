@@ -0,0 +1,113 @@
+package org.hwyl.sexytopo.control.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IoSchedulerTest {
+
+    // Jobs only run when the test says so; callbacks run straight away
+    private final List<Runnable> workerQueue = new ArrayList<>();
+    private final IoScheduler scheduler = new IoScheduler(workerQueue::add, Runnable::run);
+
+    private final List<String> events = new ArrayList<>();
+
+    @Test
+    public void testQueuedJobsRunOneAtATimeInOrder() {
+        scheduler.submitInOrder("files", task -> "one", new RecordingCallback());
+        scheduler.submitInOrder("files", task -> "two", new RecordingCallback());
+        Assert.assertEquals(1, workerQueue.size());
+
+        runWorkers();
+
+        Assert.assertEquals(Arrays.asList("success one", "success two"), events);
+    }
+
+    @Test
+    public void testOnlyTheLatestWaitingJobRuns() {
+        scheduler.submitLatest("files", task -> "one", new RecordingCallback());
+        scheduler.submitLatest("files", task -> "two", new RecordingCallback());
+        scheduler.submitInOrder("files", task -> "three", new RecordingCallback());
+        scheduler.submitLatest("files", task -> "four", new RecordingCallback());
+
+        runWorkers();
+
+        Assert.assertEquals(
+                Arrays.asList("success one", "success three", "success four"), events);
+    }
+
+    @Test
+    public void testCancelledJobIsNotRun() {
+        IoScheduler.Task task =
+                scheduler.submit(
+                        t -> {
+                            events.add("ran");
+                            return "one";
+                        },
+                        new RecordingCallback());
+        task.cancel();
+
+        runWorkers();
+
+        Assert.assertEquals(Collections.emptyList(), events);
+    }
+
+    @Test
+    public void testProgressAndErrorsAreReported() {
+        scheduler.submit(
+                task -> {
+                    task.setProgress(1, 2);
+                    throw new Exception("broken");
+                },
+                new RecordingCallback());
+
+        runWorkers();
+
+        Assert.assertEquals(Arrays.asList("progress 1/2", "error broken"), events);
+    }
+
+    @Test
+    public void testUnwantedCallbackIsNotCalled() {
+        RecordingCallback callback = new RecordingCallback();
+        callback.isWanted = false;
+        scheduler.submit(task -> "one", callback);
+
+        runWorkers();
+
+        Assert.assertTrue(events.isEmpty());
+    }
+
+    private void runWorkers() {
+        while (!workerQueue.isEmpty()) {
+            workerQueue.remove(0).run();
+        }
+    }
+
+    private class RecordingCallback implements IoScheduler.Callback<String> {
+
+        private boolean isWanted = true;
+
+        @Override
+        public void onSuccess(String result) {
+            events.add("success " + result);
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            events.add("error " + exception.getMessage());
+        }
+
+        @Override
+        public void onProgress(int done, int total) {
+            events.add("progress " + done + "/" + total);
+        }
+
+        @Override
+        public boolean isWanted() {
+            return isWanted;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package org.hwyl.sexytopo.control.io.basic;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.hwyl.sexytopo.control.util.SurveyUpdater;
+import org.hwyl.sexytopo.model.survey.Leg;
+import org.hwyl.sexytopo.model.survey.Station;
+import org.hwyl.sexytopo.model.survey.Survey;
+import org.hwyl.sexytopo.testutils.BasicTestSketchCreator;
+import org.hwyl.sexytopo.testutils.BasicTestSurveyCreator;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class AutosaveJournalTest {
+
+    @Test
+    public void testNoChangesGiveNoOperations() throws Exception {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        AutosaveJournal.Snapshot before = new AutosaveJournal.Snapshot(survey);
+        List<JSONObject> operations = before.getChangesTo(new AutosaveJournal.Snapshot(survey));
+        Assert.assertEquals(0, operations.size());
+    }
+
+    @Test
+    public void testNewLegsAreReplayed() throws Exception {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        Survey copy = copyOf(survey);
+        AutosaveJournal.Snapshot before = new AutosaveJournal.Snapshot(survey);
+
+        SurveyUpdater.updateWithNewStation(survey, new Leg(5, 90, 0));
+        SurveyUpdater.update(survey, new Leg(2, 180, 10));
+
+        List<JSONObject> operations = before.getChangesTo(new AutosaveJournal.Snapshot(survey));
+        Assert.assertEquals(2, operations.size());
+        assertReplayGivesSameSurvey(survey, copy, operations);
+    }
+
+    @Test
+    public void testRenamesAndDeletionsAreReplayed() throws Exception {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        SurveyUpdater.update(survey, new Leg(2, 180, 10));
+        Survey copy = copyOf(survey);
+        AutosaveJournal.Snapshot before = new AutosaveJournal.Snapshot(survey);
+
+        Station station = survey.getStationByName("2");
+        SurveyUpdater.renameStation(survey, station, "2a");
+        Station active = survey.getActiveStation();
+        Leg splay = active.getUnconnectedOnwardLegs().get(0);
+        SurveyUpdater.deleteLeg(survey, active, splay);
+        SurveyUpdater.updateWithNewStation(survey, new Leg(5, 90, 0));
+
+        List<JSONObject> operations = before.getChangesTo(new AutosaveJournal.Snapshot(survey));
+        assertReplayGivesSameSurvey(survey, copy, operations);
+    }
+
+    @Test
+    public void testSketchChangesAreReplayed() throws Exception {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        BasicTestSketchCreator.drawOneHorizontalLine(survey.getPlanSketch());
+        Survey copy = copyOf(survey);
+        AutosaveJournal.Snapshot before = new AutosaveJournal.Snapshot(survey);
+
+        BasicTestSketchCreator.drawOneHorizontalLine(survey.getPlanSketch());
+        BasicTestSketchCreator.drawOneHorizontalLine(survey.getElevationSketch());
+        survey.getPlanSketch().getPathDetails().remove(0);
+
+        List<JSONObject> operations = before.getChangesTo(new AutosaveJournal.Snapshot(survey));
+        Assert.assertEquals(3, operations.size());
+        assertReplayGivesSameSurvey(survey, copy, operations);
+    }
+
+    @Test
+    public void testEditedLegIsReplayed() throws Exception {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        Survey copy = copyOf(survey);
+        AutosaveJournal.Snapshot before = new AutosaveJournal.Snapshot(survey);
+
+        Leg toEdit = survey.getAllLegsInChronoOrder().get(0);
+        Leg edited = new Leg(6, 0, 0, toEdit.getDestination(), new Leg[] {}, false);
+        SurveyUpdater.editLeg(survey, toEdit, edited);
+        SurveyUpdater.renameStation(survey, edited.getDestination(), "1a");
+
+        List<JSONObject> operations = before.getChangesTo(new AutosaveJournal.Snapshot(survey));
+        Assert.assertEquals(2, operations.size());
+        Assert.assertEquals(
+                AutosaveJournal.REPLACE_LEG_OPERATION,
+                operations.get(1).getString(AutosaveJournal.OPERATION_TAG));
+        assertReplayGivesSameSurvey(survey, copy, operations);
+    }
+
+    @Test
+    public void testLegEditedAfterRemovalIsReplayed() throws Exception {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        SurveyUpdater.update(survey, new Leg(2, 180, 10));
+        SurveyUpdater.updateWithNewStation(survey, new Leg(5, 90, 0));
+        Survey copy = copyOf(survey);
+        AutosaveJournal.Snapshot before = new AutosaveJournal.Snapshot(survey);
+
+        List<Leg> legs = survey.getAllLegsInChronoOrder();
+        Leg splay = legs.get(legs.size() - 2);
+        SurveyUpdater.deleteLeg(survey, survey.getOriginatingStation(splay), splay);
+        Leg toEdit = legs.get(legs.size() - 1);
+        Leg edited = new Leg(4, 80, 0, toEdit.getDestination(), new Leg[] {}, false);
+        SurveyUpdater.editLeg(survey, toEdit, edited);
+
+        List<JSONObject> operations = before.getChangesTo(new AutosaveJournal.Snapshot(survey));
+        Assert.assertEquals(2, operations.size());
+        assertReplayGivesSameSurvey(survey, copy, operations);
+    }
+
+    @Test
+    public void testLegMovedToAnotherStationCannotBeJournaled() throws Exception {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        SurveyUpdater.update(survey, new Leg(2, 180, 10));
+        SurveyUpdater.update(survey, new Leg(3, 170, 10));
+        AutosaveJournal.Snapshot before = new AutosaveJournal.Snapshot(survey);
+
+        List<Leg> legs = survey.getAllLegsInChronoOrder();
+        Leg splay = legs.get(legs.size() - 2);
+        Station from = survey.getOriginatingStation(splay);
+        Leg moved = new Leg(2, 180, 10);
+        from.getOnwardLegs().remove(splay);
+        survey.getOrigin().getOnwardLegs().add(moved);
+        survey.replaceLegInRecord(splay, moved);
+
+        Assert.assertNull(before.getChangesTo(new AutosaveJournal.Snapshot(survey)));
+    }
+
+    @Test
+    public void testLegCommentCannotBeJournaled() throws Exception {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        AutosaveJournal.Snapshot before = new AutosaveJournal.Snapshot(survey);
+
+        survey.getAllLegsInChronoOrder().get(0).setComment("Squeeze");
+
+        Assert.assertNull(before.getChangesTo(new AutosaveJournal.Snapshot(survey)));
+    }
+
+    @Test
+    public void testTruncatedLineIsIgnored() throws Exception {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        Survey copy = copyOf(survey);
+        AutosaveJournal.Snapshot before = new AutosaveJournal.Snapshot(survey);
+        SurveyUpdater.updateWithNewStation(survey, new Leg(5, 90, 0));
+        List<JSONObject> operations = before.getChangesTo(new AutosaveJournal.Snapshot(survey));
+
+        List<String> lines = toLines(operations);
+        lines.add("[{\"op\":\"add-le");
+        AutosaveJournal.replay(copy, lines);
+
+        Assert.assertEquals(toText(survey), toText(copy));
+    }
+
+    @Test
+    public void testSwappedStationNamesAreReplayed() throws Exception {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        Survey copy = copyOf(survey);
+        AutosaveJournal.Snapshot before = new AutosaveJournal.Snapshot(survey);
+
+        Station one = survey.getStationByName("1");
+        Station two = survey.getStationByName("2");
+        SurveyUpdater.renameStation(survey, one, "temp");
+        SurveyUpdater.renameStation(survey, two, "1");
+        SurveyUpdater.renameStation(survey, one, "2");
+
+        List<JSONObject> operations = before.getChangesTo(new AutosaveJournal.Snapshot(survey));
+        assertReplayGivesSameSurvey(survey, copy, operations);
+    }
+
+    @Test
+    public void testLineWithBadOperationIsNotAppliedAtAll() throws Exception {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        Survey copy = copyOf(survey);
+        AutosaveJournal.Snapshot before = new AutosaveJournal.Snapshot(survey);
+        String expected = toText(survey);
+        SurveyUpdater.updateWithNewStation(survey, new Leg(5, 90, 0));
+        List<JSONObject> operations = before.getChangesTo(new AutosaveJournal.Snapshot(survey));
+
+        JSONObject badOperation = new JSONObject();
+        badOperation.put(AutosaveJournal.OPERATION_TAG, AutosaveJournal.REMOVE_LEG_OPERATION);
+        badOperation.put(AutosaveJournal.INDEX_TAG, 100);
+        operations.add(badOperation);
+        AutosaveJournal.replay(copy, toLines(operations));
+
+        Assert.assertEquals(expected, toText(copy));
+    }
+
+    @Test
+    public void testJournalLeftBySaveHasNoUnsavedChanges() throws Exception {
+        List<String> lines = toLines(new ArrayList<>());
+        Assert.assertTrue(AutosaveJournal.hasUnsavedChanges(lines));
+        Assert.assertFalse(AutosaveJournal.hasUnsavedChanges(lines.subList(0, 1)));
+    }
+
+    private static void assertReplayGivesSameSurvey(
+            Survey survey, Survey copy, List<JSONObject> operations) throws Exception {
+        AutosaveJournal.replay(copy, toLines(operations));
+        Assert.assertEquals(toText(survey), toText(copy));
+        Assert.assertEquals(
+                SketchJsonTranslater.translate(survey.getPlanSketch(), survey, "test", 0),
+                SketchJsonTranslater.translate(copy.getPlanSketch(), copy, "test", 0));
+        Assert.assertEquals(
+                SketchJsonTranslater.translate(survey.getElevationSketch(), survey, "test", 0),
+                SketchJsonTranslater.translate(copy.getElevationSketch(), copy, "test", 0));
+    }
+
+    private static List<String> toLines(List<JSONObject> operations) throws Exception {
+        List<String> lines = new ArrayList<>();
+        JSONObject header = new JSONObject();
+        header.put(AutosaveJournal.BASE_TAG, AutosaveJournal.BASE_SAVED);
+        lines.add(header.toString());
+        lines.add(new JSONArray(operations).toString());
+        return lines;
+    }
+
+    private static Survey copyOf(Survey survey) throws Exception {
+        Survey copy = new Survey();
+        SurveyJsonTranslater.populateSurvey(copy, toText(survey));
+        copy.setPlanSketch(
+                SketchJsonTranslater.translate(
+                        copy,
+                        SketchJsonTranslater.translate(survey.getPlanSketch(), survey, "test", 0)));
+        copy.setElevationSketch(
+                SketchJsonTranslater.translate(
+                        copy,
+                        SketchJsonTranslater.translate(
+                                survey.getElevationSketch(), survey, "test", 0)));
+        return copy;
+    }
+
+    private static String toText(Survey survey) throws Exception {
+        return SurveyJsonTranslater.toText(survey, "test", 0);
+    }
+}
@@ -0,0 +1,51 @@
+package org.hwyl.sexytopo.control.io.basic;
+
+import org.hwyl.sexytopo.model.survey.Survey;
+import org.hwyl.sexytopo.testhelpers.SurveyMocker;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConnectedSurveyCacheTest {
+
+    @After
+    public void tearDown() {
+        ConnectedSurveyCache.clear();
+    }
+
+    @Test
+    public void testCachedSurveyIsReturned() {
+        Survey survey = getSurvey("cached");
+        ConnectedSurveyCache.put(survey);
+        Assert.assertSame(survey, ConnectedSurveyCache.get(survey.getUri()));
+    }
+
+    @Test
+    public void testSavingACachedSurveyEmptiesTheCache() {
+        Survey survey = getSurvey("cached");
+        Survey other = getSurvey("other");
+        ConnectedSurveyCache.put(survey);
+        ConnectedSurveyCache.put(other);
+
+        ConnectedSurveyCache.onSaved(survey);
+
+        Assert.assertNull(ConnectedSurveyCache.get(survey.getUri()));
+        Assert.assertNull(ConnectedSurveyCache.get(other.getUri()));
+    }
+
+    @Test
+    public void testSavingAnUncachedSurveyKeepsTheCache() {
+        Survey survey = getSurvey("cached");
+        ConnectedSurveyCache.put(survey);
+
+        ConnectedSurveyCache.onSaved(getSurvey("uncached"));
+
+        Assert.assertSame(survey, ConnectedSurveyCache.get(survey.getUri()));
+    }
+
+    private static Survey getSurvey(String uri) {
+        Survey survey = new Survey();
+        SurveyMocker.mockSurveyUri(survey, uri);
+        return survey;
+    }
+}
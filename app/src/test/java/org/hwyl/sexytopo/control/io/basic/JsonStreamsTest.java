@@ -0,0 +1,123 @@
+package org.hwyl.sexytopo.control.io.basic;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.hwyl.sexytopo.model.sketch.Sketch;
+import org.hwyl.sexytopo.model.survey.Survey;
+import org.hwyl.sexytopo.testutils.BasicTestSketchCreator;
+import org.hwyl.sexytopo.testutils.BasicTestSurveyCreator;
+import org.hwyl.sexytopo.testutils.ExampleSurveyCreator;
+import org.hwyl.sexytopo.testutils.SurveyChecker;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class JsonStreamsTest {
+
+    @Test
+    public void testStreamedSurveyMatchesTree() throws Exception {
+        Survey survey = ExampleSurveyCreator.create(10, 10);
+        assertStreamedSurveyMatchesTree(survey);
+    }
+
+    @Test
+    public void testStreamedSurveyWithTripMatchesTree() throws Exception {
+        Survey survey = BasicTestSurveyCreator.createStraightNorthWithTrip();
+        assertStreamedSurveyMatchesTree(survey);
+    }
+
+    @Test
+    public void testStreamedSurveyIsParsed() throws Exception {
+        Survey survey = ExampleSurveyCreator.create(10, 10);
+        String text = writeSurvey(survey);
+
+        Survey newSurvey = new Survey();
+        SurveyJsonTranslater.populateSurvey(newSurvey, text);
+
+        Assert.assertEquals(survey.getAllStations().size(), newSurvey.getAllStations().size());
+        Assert.assertEquals(survey.getAllLegs().size(), newSurvey.getAllLegs().size());
+        Assert.assertEquals(
+                survey.getAllLegsInChronoOrder().toString(),
+                newSurvey.getAllLegsInChronoOrder().toString());
+    }
+
+    @Test
+    public void testStreamedSketchIsParsed() throws Exception {
+        Survey survey = ExampleSurveyCreator.create(10, 10, true);
+        Sketch sketch = survey.getPlanSketch();
+        BasicTestSketchCreator.drawOneHorizontalLine(sketch);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        SketchJsonTranslater.write(sketch, survey, "test", 0, outputStream);
+        String text = outputStream.toString(StandardCharsets.UTF_8.name());
+        Assert.assertEquals(SketchJsonTranslater.translate(sketch, survey, "test", 0), text);
+
+        Sketch newSketch = SketchJsonTranslater.translate(survey, text);
+        Assert.assertEquals(sketch.getPathDetails().size(), newSketch.getPathDetails().size());
+        Assert.assertEquals(
+                sketch.getCrossSectionDetails().size(),
+                newSketch.getCrossSectionDetails().size());
+        Assert.assertEquals(
+                sketch.getCrossSectionScale(), newSketch.getCrossSectionScale(), 0.0001);
+    }
+
+    @Test
+    public void testSurveyReadFromStreamMatchesTree() throws Exception {
+        Survey survey = ExampleSurveyCreator.create(10, 10);
+        String text = SurveyJsonTranslater.toText(survey, "test", 0);
+
+        Survey fromTree = new Survey();
+        SurveyJsonTranslater.populateSurvey(fromTree, text);
+        Survey fromStream = SurveyJsonReader.read(new Survey(), toStream(text));
+
+        Assert.assertEquals(
+                SurveyJsonTranslater.toText(fromTree, "test", 0),
+                SurveyJsonTranslater.toText(fromStream, "test", 0));
+    }
+
+    @Test
+    public void testSurveyWithTripReadFromStreamMatchesOriginal() throws Exception {
+        Survey survey = BasicTestSurveyCreator.createStraightNorthWithTrip();
+        String text = writeSurvey(survey);
+
+        Survey fromStream = SurveyJsonReader.read(new Survey(), toStream(text));
+
+        Assert.assertEquals(text, writeSurvey(fromStream));
+    }
+
+    @Test
+    public void testSketchReadFromStreamMatchesTree() throws Exception {
+        Survey survey = ExampleSurveyCreator.create(10, 10, true);
+        Sketch sketch = survey.getPlanSketch();
+        BasicTestSketchCreator.drawOneHorizontalLine(sketch);
+        String text = SketchJsonTranslater.translate(sketch, survey, "test", 0);
+
+        Sketch fromTree = SketchJsonTranslater.translate(survey, text);
+        Sketch fromStream = SketchJsonReader.read(survey, toStream(text));
+
+        Assert.assertEquals(
+                SketchJsonTranslater.translate(fromTree, survey, "test", 0),
+                SketchJsonTranslater.translate(fromStream, survey, "test", 0));
+    }
+
+    private static InputStream toStream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void assertStreamedSurveyMatchesTree(Survey survey) throws Exception {
+        String tree = SurveyJsonTranslater.toText(survey, "test", 0);
+        Assert.assertEquals(tree, writeSurvey(survey));
+    }
+
+    private static String writeSurvey(Survey survey) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        SurveyJsonTranslater.write(survey, "test", 0, outputStream);
+        return outputStream.toString(StandardCharsets.UTF_8.name());
+    }
+}
@@ -0,0 +1,46 @@
+package org.hwyl.sexytopo.control.io.basic;
+
+import android.content.Context;
+import java.util.Arrays;
+import java.util.List;
+import org.hwyl.sexytopo.control.io.SurveyFile;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class LoaderTest {
+
+    private final Context context = Mockito.mock(Context.class);
+
+    @Test
+    public void testJournalOnSavedFilesIgnoresOlderSketchAutosave() {
+        SurveyFile sketchFile = mockFileWithAutosave();
+        List<String> journal = Arrays.asList("{\"base\":\"saved\"}", "[]");
+        Assert.assertSame(sketchFile, Loader.getFileToRestore(context, sketchFile, journal));
+    }
+
+    @Test
+    public void testJournalOnAutosaveFilesReadsSketchAutosave() {
+        SurveyFile sketchFile = mockFileWithAutosave();
+        List<String> journal = Arrays.asList("{\"base\":\"autosave\"}", "[]");
+        Assert.assertSame(
+                sketchFile.getAutosaveVersion(),
+                Loader.getFileToRestore(context, sketchFile, journal));
+    }
+
+    @Test
+    public void testNoJournalReadsSketchAutosave() {
+        SurveyFile sketchFile = mockFileWithAutosave();
+        Assert.assertSame(
+                sketchFile.getAutosaveVersion(),
+                Loader.getFileToRestore(context, sketchFile, null));
+    }
+
+    private SurveyFile mockFileWithAutosave() {
+        SurveyFile surveyFile = Mockito.mock(SurveyFile.class);
+        SurveyFile autosave = Mockito.mock(SurveyFile.class);
+        Mockito.when(surveyFile.getAutosaveVersion()).thenReturn(autosave);
+        Mockito.when(autosave.exists(context)).thenReturn(true);
+        return surveyFile;
+    }
+}
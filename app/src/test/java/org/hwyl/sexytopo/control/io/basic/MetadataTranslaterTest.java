@@ -1,8 +1,6 @@
 package org.hwyl.sexytopo.control.io.basic;
 
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyBoolean;
-import static org.mockito.ArgumentMatchers.anySet;
 
 import org.hwyl.sexytopo.model.survey.Station;
 import org.hwyl.sexytopo.model.survey.Survey;
@@ -77,7 +75,7 @@ public class MetadataTranslaterTest {
 
         try (MockedStatic<Loader> mockLoader = Mockito.mockStatic(Loader.class)) {
             mockLoader
-                    .when(() -> Loader.loadSurvey(any(), any(), anySet(), anyBoolean()))
+                    .when(() -> Loader.loadConnectedSurvey(any(), any()))
                     .thenReturn(connected);
         }
 
@@ -0,0 +1,127 @@
+package org.hwyl.sexytopo.control.io.basic;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.hwyl.sexytopo.control.io.SurveyFile;
+import org.hwyl.sexytopo.control.util.SurveyUpdater;
+import org.hwyl.sexytopo.model.graph.Projection2D;
+import org.hwyl.sexytopo.model.survey.Leg;
+import org.hwyl.sexytopo.model.survey.Survey;
+import org.hwyl.sexytopo.testutils.BasicTestSketchCreator;
+import org.hwyl.sexytopo.testutils.BasicTestSurveyCreator;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SaverTest {
+
+    @Test
+    public void testSavedSurveyWritesNothing() {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        survey.setSaved(true);
+        Assert.assertEquals(Collections.emptyList(), Saver.getFileTypesToSave(survey));
+    }
+
+    @Test
+    public void testNewLegWritesOnlyDataAndMetadata() {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        survey.setSaved(true);
+
+        SurveyUpdater.updateWithNewStation(survey, new Leg(5, 0, 0));
+
+        Assert.assertEquals(
+                Arrays.asList(SurveyFile.METADATA, SurveyFile.DATA),
+                Saver.getFileTypesToSave(survey));
+    }
+
+    @Test
+    public void testSketchChangeWritesOnlyThatSketch() {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        survey.setSaved(true);
+
+        BasicTestSketchCreator.drawOneHorizontalLine(survey.getElevationSketch());
+
+        Assert.assertEquals(
+                Collections.singletonList(SurveyFile.SKETCH_EXT_ELEVATION),
+                Saver.getFileTypesToSave(survey));
+    }
+
+    @Test
+    public void testAutosaveTracksFilesSeparatelyFromSave() {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        survey.setSaved(true);
+        survey.setDataAutosaved(true);
+        survey.setMetadataAutosaved(true);
+        survey.getPlanSketch().setAutosaved(true);
+        survey.getElevationSketch().setAutosaved(true);
+
+        BasicTestSketchCreator.drawOneHorizontalLine(survey.getPlanSketch());
+        survey.setSaved(true);
+
+        Assert.assertEquals(Collections.emptyList(), Saver.getFileTypesToSave(survey));
+        Assert.assertEquals(
+                Collections.singletonList(SurveyFile.SKETCH_PLAN),
+                Saver.getFileTypesToAutosave(survey));
+    }
+
+    @Test
+    public void testUnloadedSketchIsNotLoadedToWorkOutWhatToSave() {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        survey.setSketchLoader(
+                Projection2D.PLAN,
+                () -> {
+                    throw new AssertionError("Sketch should not have been loaded");
+                });
+        survey.setSaved(true);
+
+        SurveyUpdater.updateWithNewStation(survey, new Leg(5, 0, 0));
+
+        Assert.assertEquals(
+                Arrays.asList(SurveyFile.METADATA, SurveyFile.DATA),
+                Saver.getFileTypesToSave(survey));
+        Assert.assertTrue(Saver.getFileTypesToAutosave(survey).contains(SurveyFile.SKETCH_PLAN));
+        Assert.assertFalse(survey.isSketchLoaded(Projection2D.PLAN));
+    }
+
+    @Test
+    public void testSnapshotNoticesLaterChanges() {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        survey.setSaved(true);
+
+        SurveySnapshot snapshot = new SurveySnapshot(survey);
+        Assert.assertTrue(snapshot.isCurrent());
+
+        BasicTestSketchCreator.drawOneHorizontalLine(survey.getPlanSketch());
+        Assert.assertFalse(snapshot.isCurrent());
+
+        snapshot = new SurveySnapshot(survey);
+        SurveyUpdater.updateWithNewStation(survey, new Leg(5, 0, 0));
+        Assert.assertFalse(snapshot.isCurrent());
+    }
+
+    @Test
+    public void testSurveyChangedDuringSaveStaysUnsaved() {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        SurveySnapshot snapshot = new SurveySnapshot(survey);
+
+        // The files are written from the snapshot while the survey changes on the UI thread
+        snapshot.recordSave();
+        SurveyUpdater.updateWithNewStation(survey, new Leg(5, 0, 0));
+        snapshot.markWritten();
+
+        Assert.assertFalse(survey.isSaved());
+        Assert.assertTrue(Saver.getFileTypesToSave(survey).contains(SurveyFile.DATA));
+    }
+
+    @Test
+    public void testUnchangedSurveyIsMarkedSavedOnceWritten() {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        SurveySnapshot snapshot = new SurveySnapshot(survey);
+
+        snapshot.markWritten();
+        Assert.assertFalse(survey.isSaved());
+
+        snapshot.recordSave();
+        snapshot.markWritten();
+        Assert.assertTrue(survey.isSaved());
+    }
+}
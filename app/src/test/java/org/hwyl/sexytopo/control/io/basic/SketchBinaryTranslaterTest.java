@@ -0,0 +1,138 @@
+package org.hwyl.sexytopo.control.io.basic;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.hwyl.sexytopo.model.graph.Coord2D;
+import org.hwyl.sexytopo.model.sketch.Colour;
+import org.hwyl.sexytopo.model.sketch.CrossSection;
+import org.hwyl.sexytopo.model.sketch.CrossSectionDetail;
+import org.hwyl.sexytopo.model.sketch.PathDetail;
+import org.hwyl.sexytopo.model.sketch.Sketch;
+import org.hwyl.sexytopo.model.sketch.TextDetail;
+import org.hwyl.sexytopo.model.survey.Survey;
+import org.hwyl.sexytopo.testutils.BasicTestSurveyCreator;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class SketchBinaryTranslaterTest {
+
+    @Test
+    public void testBinaryRoundTripGivesSameBytes() throws Exception {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        Sketch sketch = createSketch(survey, 20, 50);
+
+        byte[] binary = toBinary(sketch, survey);
+        Sketch read = SketchBinaryTranslater.read(survey, new ByteArrayInputStream(binary));
+
+        Assert.assertArrayEquals(binary, toBinary(read, survey));
+        Assert.assertEquals(sketch.getPathDetails().size(), read.getPathDetails().size());
+        Assert.assertEquals(sketch.getTextDetails().size(), read.getTextDetails().size());
+        Assert.assertEquals(
+                sketch.getCrossSectionDetails().size(), read.getCrossSectionDetails().size());
+        Assert.assertEquals(sketch.getCrossSectionScale(), read.getCrossSectionScale(), 0);
+    }
+
+    @Test
+    public void testConvertingToBinaryAndBackLosesNothing() throws Exception {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        String json = toJson(createSketch(survey, 20, 50), survey);
+
+        // Reading JSON simplifies paths, so compare with JSON that has been through that too
+        Sketch fromJson = SketchJsonReader.read(survey, toStream(json));
+        String expected = toJson(fromJson, survey);
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        SketchBinaryTranslater.convertToBinary(survey, toStream(json), "test", 0, binary);
+        ByteArrayOutputStream converted = new ByteArrayOutputStream();
+        SketchBinaryTranslater.convertToJson(
+                survey, new ByteArrayInputStream(binary.toByteArray()), "test", 0, converted);
+
+        Assert.assertEquals(expected, converted.toString(StandardCharsets.UTF_8.name()));
+    }
+
+    @Test
+    public void testFormatIsDetected() throws Exception {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        Sketch sketch = createSketch(survey, 5, 10);
+        String expected = toJson(sketch, survey);
+
+        Sketch fromBinary =
+                SketchBinaryTranslater.readEitherFormat(
+                        survey, new ByteArrayInputStream(toBinary(sketch, survey)));
+        Sketch fromJson = SketchBinaryTranslater.readEitherFormat(survey, toStream(expected));
+
+        Assert.assertEquals(expected, toJson(fromBinary, survey));
+        Assert.assertEquals(
+                fromJson.getPathDetails().size(), fromBinary.getPathDetails().size());
+    }
+
+    @Test
+    public void testBinaryIsMuchSmallerThanJson() throws Exception {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        Sketch sketch = createSketch(survey, 200, 100);
+
+        int jsonSize = toJson(sketch, survey).getBytes(StandardCharsets.UTF_8).length;
+        int binarySize = toBinary(sketch, survey).length;
+
+        Assert.assertTrue(binarySize * 10 < jsonSize);
+    }
+
+    /** Random wiggly paths on the binary format's grid, plus a label and a cross-section. */
+    private static Sketch createSketch(Survey survey, int pathCount, int pointsPerPath) {
+        Random random = new Random(42);
+        Sketch sketch = new Sketch();
+
+        List<PathDetail> paths = new ArrayList<>();
+        for (int i = 0; i < pathCount; i++) {
+            List<Coord2D> points = new ArrayList<>();
+            int x = random.nextInt(100000);
+            int y = random.nextInt(100000);
+            for (int j = 0; j < pointsPerPath; j++) {
+                x += random.nextInt(2001) - 1000;
+                y += random.nextInt(2001) - 1000;
+                points.add(new Coord2D(x / 10000f, y / 10000f));
+            }
+            paths.add(new PathDetail(points, i % 2 == 0 ? Colour.BLACK : Colour.BROWN));
+        }
+        sketch.setPathDetails(paths);
+
+        List<TextDetail> labels = new ArrayList<>();
+        labels.add(new TextDetail(new Coord2D(1.5f, -2.25f), "Sump ünd café", Colour.BLUE, 12));
+        sketch.setTextDetails(labels);
+
+        Sketch subSketch = new Sketch();
+        List<PathDetail> subPaths = new ArrayList<>();
+        subPaths.add(paths.get(0));
+        subSketch.setPathDetails(subPaths);
+        List<CrossSectionDetail> crossSections = new ArrayList<>();
+        CrossSection crossSection = new CrossSection(survey.getStationByName("1"), 45.5f);
+        crossSections.add(new CrossSectionDetail(crossSection, new Coord2D(3, 4), subSketch));
+        sketch.setCrossSectionDetails(crossSections);
+
+        sketch.setCrossSectionScale(2.5f);
+        return sketch;
+    }
+
+    private static byte[] toBinary(Sketch sketch, Survey survey) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        SketchBinaryTranslater.write(sketch, survey, "test", 0, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private static String toJson(Sketch sketch, Survey survey) throws Exception {
+        return SketchJsonTranslater.translate(sketch, survey, "test", 0);
+    }
+
+    private static ByteArrayInputStream toStream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -5,6 +5,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.List;
 import org.hwyl.sexytopo.model.sketch.Colour;
 import org.hwyl.sexytopo.model.sketch.PathDetail;
@@ -178,6 +179,29 @@ public class PocketTopoImporterTest {
         PocketTopoImporter.parseSurvey(new ByteArrayInputStream(data));
     }
 
+    @Test
+    public void testTruncatedDrawingThrows() throws IOException {
+        byte[] data = buildMinimalTopFile();
+        byte[] truncated = Arrays.copyOf(data, data.length - 20); // part way through the polygon
+        try {
+            PocketTopoImporter.parseSurvey(new ByteArrayInputStream(truncated));
+            Assert.fail("Expected an IOException");
+        } catch (IOException exception) {
+            Assert.assertTrue(exception.getMessage().contains("plan drawing"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testImpossibleCountThrows() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('T');
+        out.write('o');
+        out.write('p');
+        out.write(3);
+        writeInt32(out, Integer.MAX_VALUE); // far more trips than the file has room for
+        PocketTopoImporter.parseSurvey(new ByteArrayInputStream(out.toByteArray()));
+    }
+
     @Test
     public void testOriginStationName() throws IOException {
         byte[] data = buildMinimalTopFile();
@@ -0,0 +1,248 @@
+package org.hwyl.sexytopo.control.io.thirdparty.survextherion;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.hwyl.sexytopo.control.io.thirdparty.survextherion.SurvexTherionLexer.DataStyle;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SurvexTherionLexerTest {
+
+    @Test
+    public void testBlockRestoresEnclosingDataStyleAfterItsEndLine() throws Exception {
+        String text =
+                "*data normal from to tape compass clino\n"
+                        + "1 2 5.0 0 0\n"
+                        + "*begin inner\n"
+                        + "*data passage station left right up down\n"
+                        + "2 1 1 1 1\n"
+                        + "*end inner\n"
+                        + "2 3 4.0 90 0\n";
+
+        List<DataStyle> styles = readDataStyles(text, SurveyFormat.SURVEX);
+
+        Assert.assertEquals(
+                Arrays.asList(
+                        DataStyle.NORMAL,
+                        DataStyle.NORMAL,
+                        DataStyle.NORMAL,
+                        DataStyle.PASSAGE,
+                        DataStyle.PASSAGE,
+                        DataStyle.PASSAGE,
+                        DataStyle.NORMAL),
+                styles);
+    }
+
+    @Test
+    public void testNestedBlocksUnwindOneAtATime() throws Exception {
+        String text =
+                "*begin outer\n"
+                        + "*data normal from to tape compass clino\n"
+                        + "*begin\tinner\n"
+                        + "*data passage station left right up down\n"
+                        + "*end inner\n"
+                        + "1 2 5.0 0 0\n"
+                        + "*end outer\n"
+                        + "1 2 5.0 0 0\n";
+
+        List<DataStyle> styles = readDataStyles(text, SurveyFormat.SURVEX);
+
+        Assert.assertEquals(DataStyle.NORMAL, styles.get(5));
+        Assert.assertEquals(DataStyle.NONE, styles.get(7));
+    }
+
+    @Test
+    public void testUnmatchedEndAndLookalikeCommandsAreIgnored() throws Exception {
+        String text =
+                "*data normal from to tape compass clino\n"
+                        + "*end\n"
+                        + "*beginning\n"
+                        + "*endnote\n"
+                        + "1 2 5.0 0 0\n";
+
+        List<DataStyle> styles = readDataStyles(text, SurveyFormat.SURVEX);
+
+        Assert.assertEquals(Collections.nCopies(5, DataStyle.NORMAL), styles);
+    }
+
+    @Test
+    public void testDataCommandsAreRecognisedForEachFormat() throws Exception {
+        SurvexTherionLexer survex =
+                lex(
+                        "*data normal from to tape compass clino\n*data diving\n1 2\n",
+                        SurveyFormat.SURVEX);
+        survex.nextLine();
+        Assert.assertTrue(survex.isDataCommand());
+        Assert.assertEquals(DataStyle.NORMAL, survex.getDataStyle());
+        survex.nextLine();
+        Assert.assertTrue(survex.isDataCommand());
+        Assert.assertEquals(DataStyle.OTHER, survex.getDataStyle());
+        survex.nextLine();
+        Assert.assertFalse(survex.isDataCommand());
+        Assert.assertEquals(DataStyle.OTHER, survex.getDataStyle());
+
+        SurvexTherionLexer therion =
+                lex("data dimensions station left right up down\n", SurveyFormat.THERION);
+        therion.nextLine();
+        Assert.assertTrue(therion.isDataCommand());
+        Assert.assertEquals(DataStyle.PASSAGE, therion.getDataStyle());
+    }
+
+    @Test
+    public void testTherionCentrelineBlocksAreTracked() throws Exception {
+        String text =
+                "survey test\n"
+                        + "centreline\n"
+                        + "data normal from to length compass clino\n"
+                        + "endcentreline\n"
+                        + "centreline\n"
+                        + "endcentreline\n"
+                        + "endsurvey\n";
+        SurvexTherionLexer lexer = lex(text, SurveyFormat.THERION);
+
+        List<Boolean> inCentreline = new ArrayList<>();
+        while (lexer.nextLine()) {
+            inCentreline.add(lexer.isInCentreline());
+        }
+
+        Assert.assertEquals(
+                Arrays.asList(false, false, true, false, false, false, false), inCentreline);
+        Assert.assertEquals(2, lexer.getCentrelineCount());
+    }
+
+    @Test
+    public void testCentrelineOpenedTwiceIsRejected() throws Exception {
+        assertRejected("centreline\ncentreline\nendcentreline\n");
+    }
+
+    @Test
+    public void testCentrelineClosedBeforeOpeningIsRejected() throws Exception {
+        assertRejected("endcentreline\n");
+    }
+
+    @Test
+    public void testUnclosedCentrelineIsRejectedAtTheEnd() throws Exception {
+        assertRejected("centreline\ndata normal from to length compass clino\n");
+    }
+
+    @Test
+    public void testWholeSurvexFileCountsAsCentreline() throws Exception {
+        SurvexTherionLexer lexer = lex("1 2 5.0 0 0\n", SurveyFormat.SURVEX);
+        lexer.nextLine();
+        Assert.assertTrue(lexer.isInCentreline());
+        Assert.assertEquals(0, lexer.getCentrelineCount());
+    }
+
+    @Test
+    public void testTokensAreSplitOnAnyWhitespace() throws Exception {
+        SurvexTherionLexer lexer = lex("  1\t2 \t 5.0   0\u000B0  \n", null);
+        lexer.nextLine();
+
+        Assert.assertEquals("1\t2 \t 5.0   0\u000B0", lexer.getLine());
+        Assert.assertEquals(Arrays.asList("1", "2", "5.0", "0", "0"), lexer.getTokens());
+        Assert.assertEquals("2 \t 5.0   0\u000B0", lexer.getTextAfterFirstToken());
+    }
+
+    @Test
+    public void testQuotedTextIsNotJoinedIntoOneToken() throws Exception {
+        SurvexTherionLexer lexer = lex("*team \"Alice Smith\" compass\n", null);
+        lexer.nextLine();
+
+        Assert.assertEquals(
+                Arrays.asList("*team", "\"Alice", "Smith\"", "compass"), lexer.getTokens());
+        Assert.assertEquals("\"Alice Smith\" compass", lexer.getTextAfterFirstToken());
+    }
+
+    @Test
+    public void testCommentsInEitherStyle() throws Exception {
+        SurvexTherionLexer lexer = lex("; a comment\n#1 2\n# 1  2\n1 2 5.0 0 0 ; note\n", null);
+
+        lexer.nextLine();
+        Assert.assertTrue(lexer.isComment());
+        Assert.assertEquals(Arrays.asList("a", "comment"), lexer.getCommentTokens());
+
+        lexer.nextLine();
+        Assert.assertTrue(lexer.isComment());
+        Assert.assertEquals(Arrays.asList("1", "2"), lexer.getCommentTokens());
+
+        lexer.nextLine();
+        Assert.assertEquals(Arrays.asList("1", "2"), lexer.getCommentTokens());
+
+        lexer.nextLine();
+        Assert.assertFalse(lexer.isComment());
+        List<String> tokens = lexer.getTokens();
+        Assert.assertEquals(";", tokens.get(5));
+        Assert.assertEquals("note", SurvexTherionLexer.joinTokens(tokens, 6));
+    }
+
+    @Test
+    public void testCrlfAndCrLineEndingsAreStripped() throws Exception {
+        SurvexTherionLexer lexer =
+                lex("*begin a\r\n1 2 5.0 0 0\r\n\r\n*end a\r2 3\r\n", SurveyFormat.SURVEX);
+
+        List<String> rawLines = new ArrayList<>();
+        while (lexer.nextLine()) {
+            rawLines.add(lexer.getRawLine());
+        }
+
+        Assert.assertEquals(
+                Arrays.asList("*begin a", "1 2 5.0 0 0", "", "*end a", "2 3"), rawLines);
+    }
+
+    @Test
+    public void testBlankLinesHaveNoTokens() throws Exception {
+        SurvexTherionLexer lexer = lex(" \t\nsingle\n", null);
+
+        lexer.nextLine();
+        Assert.assertTrue(lexer.isBlank());
+        Assert.assertTrue(lexer.getTokens().isEmpty());
+        Assert.assertEquals("", lexer.getTextAfterFirstToken());
+
+        lexer.nextLine();
+        Assert.assertEquals("", lexer.getTextAfterFirstToken());
+        Assert.assertFalse(lexer.nextLine());
+        Assert.assertNull(lexer.getLine());
+    }
+
+    @Test
+    public void testNumbersWithExponentsStayWhole() throws Exception {
+        SurvexTherionLexer lexer = lex("1 2 1.5e1 2.5E-1 -3e+0\n", null);
+        lexer.nextLine();
+
+        List<String> tokens = lexer.getTokens();
+        Assert.assertEquals(Arrays.asList("1", "2", "1.5e1", "2.5E-1", "-3e+0"), tokens);
+        Assert.assertEquals(15.0, Double.parseDouble(tokens.get(2)), 0.0);
+        Assert.assertEquals(0.25, Double.parseDouble(tokens.get(3)), 0.0);
+        Assert.assertEquals(-3.0, Double.parseDouble(tokens.get(4)), 0.0);
+    }
+
+    private static SurvexTherionLexer lex(String text, SurveyFormat format) {
+        return new SurvexTherionLexer(new StringReader(text), format);
+    }
+
+    private static List<DataStyle> readDataStyles(String text, SurveyFormat format)
+            throws IOException {
+        SurvexTherionLexer lexer = lex(text, format);
+        List<DataStyle> styles = new ArrayList<>();
+        while (lexer.nextLine()) {
+            styles.add(lexer.getDataStyle());
+        }
+        return styles;
+    }
+
+    private static void assertRejected(String text) {
+        SurvexTherionLexer lexer = lex(text, SurveyFormat.THERION);
+        try {
+            while (lexer.nextLine()) {
+                // read to the end
+            }
+            Assert.fail("Expected the centreline blocks to be rejected");
+        } catch (IOException exception) {
+            Assert.assertTrue(exception.getMessage().contains("centreline"));
+        }
+    }
+}
@@ -13,7 +13,7 @@ import org.junit.Test;
 public class Th2ExporterTest {
 
     @Test
-    public void testHappyPath() {
+    public void testHappyPath() throws Exception {
         Survey survey = BasicTestSurveyCreator.createWithCrossSections();
         float scale = TherionExporter.getScale();
         Projection2D projection = Projection2D.PLAN;
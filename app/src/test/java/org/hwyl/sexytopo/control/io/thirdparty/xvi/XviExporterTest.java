@@ -15,7 +15,7 @@ import org.junit.Test;
 public class XviExporterTest {
 
     @Test
-    public void testLineIsPassedThroughToXvi() {
+    public void testLineIsPassedThroughToXvi() throws Exception {
         Survey testSurvey = BasicTestSurveyCreator.createWithCrossSections();
         Projection2D projection = Projection2D.PLAN;
         Sketch sketch = testSurvey.getSketch(projection);
@@ -0,0 +1,224 @@
+package org.hwyl.sexytopo.control.io.thirdparty.xvi;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import org.hwyl.sexytopo.model.graph.Coord2D;
+import org.hwyl.sexytopo.model.sketch.Colour;
+import org.hwyl.sexytopo.model.sketch.PathDetail;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class XviLexerTest {
+
+    private static final String GRID = "set XVIgrid {-100.0 -100.0 10.0 0.0 0.0 10.0 20 20}\n";
+
+    private static final String MULTI_LINE_FILE =
+            "set XVIgrids {1.0 m}\n"
+                    + "set XVIstations {\n"
+                    + "\t{0.00\t0.00\t1}\n"
+                    + "\t{10.00 0.00 2}\n"
+                    + "}\n"
+                    + "set XVIshots {\n"
+                    + "\t{0.00 0.00 10.00 0.00}\n"
+                    + "\t{10.00 0.00 10.00 5.00}\n"
+                    + "}\n"
+                    + "set XVIsketchlines {\n"
+                    + "\t{connect 0.00 0.00 10.00 0.00}\n"
+                    + "\t{brown\t1.00 2.00\n"
+                    + "\t\t3.00 4.00 5.00 6.00}\n"
+                    + "\t{BLUE 10.0 20.0 30.0 40.0}\n"
+                    + "}\n"
+                    + GRID;
+
+    @Test
+    public void testMultiLineBlocksAreRead() throws Exception {
+        XviLexer lexer = read(MULTI_LINE_FILE);
+
+        Assert.assertTrue(lexer.hasSketchlines());
+        List<PathDetail> paths = lexer.getPathDetails(10);
+        Assert.assertEquals(3, paths.size());
+
+        Assert.assertEquals(Colour.BLACK, paths.get(0).getColour());
+        Assert.assertEquals(
+                Arrays.asList(new Coord2D(0, 0), new Coord2D(1, 0)), paths.get(0).getPath());
+
+        Assert.assertEquals(Colour.BROWN, paths.get(1).getColour());
+        Assert.assertEquals(
+                Arrays.asList(
+                        new Coord2D(0.1f, -0.2f),
+                        new Coord2D(0.3f, -0.4f),
+                        new Coord2D(0.5f, -0.6f)),
+                paths.get(1).getPath());
+
+        Assert.assertEquals(Colour.BLUE, paths.get(2).getColour());
+        Assert.assertEquals(
+                Arrays.asList(new Coord2D(1, -2), new Coord2D(3, -4)), paths.get(2).getPath());
+    }
+
+    @Test
+    public void testGridIsReadAfterTheSketchlines() throws Exception {
+        XviImporter.Grid grid = read(MULTI_LINE_FILE).getGrid();
+
+        Assert.assertEquals(-100.0, grid.x, 0.0);
+        Assert.assertEquals(-100.0, grid.y, 0.0);
+        Assert.assertEquals(10.0, grid.dx, 0.0);
+        Assert.assertEquals(10.0, grid.dy, 0.0);
+        Assert.assertEquals(20.0, grid.nx, 0.0);
+        Assert.assertEquals(20.0, grid.ny, 0.0);
+    }
+
+    @Test
+    public void testCrlfLineEndingsReadTheSame() throws Exception {
+        XviLexer lexer = read(MULTI_LINE_FILE.replace("\n", "\r\n"));
+
+        Assert.assertEquals(
+                read(MULTI_LINE_FILE).getPathDetails(10).get(1).getPath(),
+                lexer.getPathDetails(10).get(1).getPath());
+        Assert.assertEquals(20.0, lexer.getGrid().ny, 0.0);
+    }
+
+    @Test
+    public void testTextSplitAcrossReadsIsReadTheSame() throws Exception {
+        XviLexer lexer = new XviLexer(new OneCharacterReader(MULTI_LINE_FILE));
+        lexer.read();
+
+        List<PathDetail> paths = lexer.getPathDetails(10);
+        Assert.assertEquals(3, paths.size());
+        Assert.assertEquals(
+                read(MULTI_LINE_FILE).getPathDetails(10).get(1).getPath(),
+                paths.get(1).getPath());
+    }
+
+    @Test
+    public void testNestedBracesInSkippedBlocksAreMatched() throws Exception {
+        XviLexer lexer =
+                read("set XVIstations {{0 0 {1}}}\nset XVIsketchlines {{red 1 2 3 4}}\n" + GRID);
+
+        Assert.assertEquals(Colour.RED, lexer.getPathDetails(1).get(0).getColour());
+    }
+
+    @Test
+    public void testFileWithoutSketchlines() throws Exception {
+        XviLexer lexer = read("set XVIstations {\n\t{0.00 0.00 1}\n}\n" + GRID);
+
+        Assert.assertFalse(lexer.hasSketchlines());
+        Assert.assertTrue(lexer.getPathDetails(1).isEmpty());
+    }
+
+    @Test
+    public void testNumbersThatNeedFullParsing() throws Exception {
+        XviLexer lexer =
+                read("set XVIsketchlines {{black 1.5e1 -2.5E-1 123456789012345678901 0.1}}\n");
+
+        List<Coord2D> path = lexer.getPathDetails(1).get(0).getPath();
+        Assert.assertEquals(15f, path.get(0).x, 0f);
+        Assert.assertEquals(0.25f, path.get(0).y, 0f);
+        Assert.assertEquals(Float.parseFloat("123456789012345678901"), path.get(1).x, 0f);
+        Assert.assertEquals(-0.1f, path.get(1).y, 0f);
+    }
+
+    @Test
+    public void testUnclosedSketchlinesBlockIsRejected() {
+        assertRejected(IOException.class, "set XVIsketchlines {\n\t{black 1 2 3 4}\n");
+    }
+
+    @Test
+    public void testUnclosedEntryIsRejected() {
+        assertRejected(IOException.class, "set XVIsketchlines {\n\t{black 1 2 3 4\n}\n");
+    }
+
+    @Test
+    public void testUnclosedSkippedBlockIsRejected() {
+        assertRejected(IOException.class, "set XVIshots {\n\t{0 0 1 1}\n");
+    }
+
+    @Test
+    public void testOddNumberOfCoordinatesIsRejected() {
+        assertRejected(
+                IllegalArgumentException.class, "set XVIsketchlines {{black 1 2 3}}\n" + GRID);
+    }
+
+    @Test
+    public void testEntryWithoutCoordinatesIsRejected() {
+        assertRejected(IllegalArgumentException.class, "set XVIsketchlines {{black}}\n" + GRID);
+    }
+
+    @Test
+    public void testShortConnectionIsRejected() {
+        assertRejected(
+                IllegalArgumentException.class, "set XVIsketchlines {{connect 1 2}}\n" + GRID);
+    }
+
+    @Test
+    public void testUnknownColourIsRejected() {
+        assertRejected(
+                IllegalArgumentException.class, "set XVIsketchlines {{mauvish 1 2 3 4}}\n" + GRID);
+    }
+
+    @Test
+    public void testBadNumberIsRejected() {
+        assertRejected(
+                NumberFormatException.class, "set XVIsketchlines {{black 1 2 3 x4}}\n" + GRID);
+    }
+
+    @Test(expected = Exception.class)
+    public void testMissingGridIsRejected() throws Exception {
+        read("set XVIsketchlines {{black 1 2 3 4}}\n").getGrid();
+    }
+
+    @Test(expected = Exception.class)
+    public void testShortGridIsRejected() throws Exception {
+        read("set XVIgrid {-100.0 -100.0 10.0 0.0}\n").getGrid();
+    }
+
+    @Test
+    public void testSingleEntryUpToTheEnd() throws Exception {
+        XviLexer lexer = new XviLexer(new StringReader("\tgreen 1.0\t2.0\r\n3.0 4.0\r\n"));
+        lexer.readSketchEntry(XviLexer.END);
+
+        PathDetail path = lexer.getPathDetails(1).get(0);
+        Assert.assertEquals(Colour.GREEN, path.getColour());
+        Assert.assertEquals(
+                Arrays.asList(new Coord2D(1, -2), new Coord2D(3, -4)), path.getPath());
+    }
+
+    private static XviLexer read(String text) throws IOException {
+        XviLexer lexer = new XviLexer(new StringReader(text));
+        lexer.read();
+        return lexer;
+    }
+
+    private static void assertRejected(Class<? extends Exception> expected, String text) {
+        try {
+            read(text);
+            Assert.fail("Expected " + expected.getSimpleName());
+        } catch (Exception exception) {
+            Assert.assertTrue("Unexpected " + exception, expected.isInstance(exception));
+        }
+    }
+
+    // Hands out the text a character at a time, so every token crosses a buffer refill
+    private static class OneCharacterReader extends Reader {
+        private final String text;
+        private int position = 0;
+
+        private OneCharacterReader(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (position == text.length()) {
+                return -1;
+            }
+            buffer[offset] = text.charAt(position++);
+            return 1;
+        }
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,122 @@
+package org.hwyl.sexytopo.control.io.translation;
+
+import android.content.Context;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.hwyl.sexytopo.model.graph.Coord2D;
+import org.hwyl.sexytopo.model.graph.Projection2D;
+import org.hwyl.sexytopo.model.graph.Space;
+import org.hwyl.sexytopo.model.survey.Survey;
+import org.hwyl.sexytopo.testutils.BasicTestSurveyCreator;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParallelExporterTest {
+
+    private static final ParallelExporter.ProgressListener IGNORE_PROGRESS = (done, total) -> {};
+
+    private static class RecordingExporter extends Exporter {
+        private final boolean isFailing;
+        private Space<Coord2D> plan;
+
+        private RecordingExporter(boolean isFailing) {
+            this.isFailing = isFailing;
+        }
+
+        @Override
+        public void run(Context context, Survey survey) {
+            plan = getProjection(survey, Projection2D.PLAN);
+            if (isFailing) {
+                throw new IllegalStateException("Export went wrong");
+            }
+        }
+
+        @Override
+        public String getExportTypeName(Context context) {
+            return "Recording";
+        }
+
+        @Override
+        protected String getExportDirectoryName() {
+            return "recording";
+        }
+    }
+
+    @Test
+    public void testExportersShareOneProjection() throws Exception {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        List<RecordingExporter> exporters =
+                Arrays.asList(
+                        new RecordingExporter(false),
+                        new RecordingExporter(false),
+                        new RecordingExporter(false));
+
+        ParallelExporter.exportAll(null, survey, exporters, IGNORE_PROGRESS);
+
+        for (RecordingExporter exporter : exporters) {
+            Assert.assertNotNull(exporter.plan);
+            Assert.assertSame(exporters.get(0).plan, exporter.plan);
+        }
+    }
+
+    @Test
+    public void testOneFailureDoesNotStopTheOthers() {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        RecordingExporter failing = new RecordingExporter(true);
+        RecordingExporter working = new RecordingExporter(false);
+
+        try {
+            ParallelExporter.exportAll(
+                    null, survey, Arrays.asList(failing, working), IGNORE_PROGRESS);
+            Assert.fail("Expected the failure to be reported");
+        } catch (Exception exception) {
+            Assert.assertEquals("Export went wrong", exception.getMessage());
+        }
+        Assert.assertNotNull(working.plan);
+    }
+
+    @Test
+    public void testProgressIsReportedForEachExporter() {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        List<String> progress = new ArrayList<>();
+
+        try {
+            ParallelExporter.exportAll(
+                    null,
+                    survey,
+                    Arrays.asList(
+                            new RecordingExporter(false),
+                            new RecordingExporter(true),
+                            new RecordingExporter(false)),
+                    (done, total) -> progress.add(done + "/" + total));
+            Assert.fail("Expected the failure to be reported");
+        } catch (Exception exception) {
+            Assert.assertEquals("Export went wrong", exception.getMessage());
+        }
+        Assert.assertEquals(Arrays.asList("1/3", "2/3", "3/3"), progress);
+    }
+
+    @Test
+    public void testEachExportGetsItsOwnExporters() {
+        List<Exporter> first = SelectableExporters.createExporters();
+        List<Exporter> second = SelectableExporters.createExporters();
+
+        Assert.assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); i++) {
+            Assert.assertNotSame(first.get(i), second.get(i));
+        }
+    }
+
+    @Test
+    public void testProjectionsAreWorkedOutOnce() {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        SurveyProjections projections = new SurveyProjections(survey);
+
+        Space<Coord2D> plan = projections.get(Projection2D.PLAN);
+
+        Assert.assertSame(plan, projections.get(Projection2D.PLAN));
+        Assert.assertEquals(
+                Projection2D.PLAN.project(survey).getStationMap(), plan.getStationMap());
+    }
+}
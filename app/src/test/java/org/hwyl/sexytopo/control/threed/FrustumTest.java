@@ -0,0 +1,46 @@
+package org.hwyl.sexytopo.control.threed;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FrustumTest {
+
+    private static final float[] IDENTITY = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+
+    @Test
+    public void testBoxInsideViewIntersects() {
+        Frustum frustum = new Frustum();
+        frustum.update(IDENTITY);
+        Assert.assertTrue(frustum.intersects(box(-0.5f, -0.5f, -0.5f, 0.5f, 0.5f, 0.5f)));
+    }
+
+    @Test
+    public void testBoxStraddlingEdgeIntersects() {
+        Frustum frustum = new Frustum();
+        frustum.update(IDENTITY);
+        Assert.assertTrue(frustum.intersects(box(0.5f, 0, 0, 5, 1, 1)));
+    }
+
+    @Test
+    public void testBoxOutsideViewIsCulled() {
+        Frustum frustum = new Frustum();
+        frustum.update(IDENTITY);
+        Assert.assertFalse(frustum.intersects(box(2, 0, 0, 3, 0.5f, 0.5f)));
+        Assert.assertFalse(frustum.intersects(box(0, 0, -5, 0.5f, 0.5f, -2)));
+    }
+
+    @Test
+    public void testEmptyBoxIsCulled() {
+        Frustum frustum = new Frustum();
+        frustum.update(IDENTITY);
+        Assert.assertFalse(frustum.intersects(new BoundingBox()));
+    }
+
+    private static BoundingBox box(
+            float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        BoundingBox box = new BoundingBox();
+        box.add(minX, minY, minZ);
+        box.add(maxX, maxY, maxZ);
+        return box;
+    }
+}
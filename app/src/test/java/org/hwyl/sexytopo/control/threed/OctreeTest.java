@@ -0,0 +1,94 @@
+package org.hwyl.sexytopo.control.threed;
+
+import java.util.Random;
+import org.hwyl.sexytopo.model.graph.Coord3D;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OctreeTest {
+
+    private static final Coord3D DOWN = new Coord3D(0, 0, -1);
+
+    @Test
+    public void testEmptyTreePicksNothing() {
+        Octree<String> tree = new Octree<>();
+        Assert.assertNull(tree.pick(new Coord3D(0, 0, 10), DOWN, 0.5f, 0));
+    }
+
+    @Test
+    public void testNearestPointAlongRayIsPicked() {
+        Octree<String> tree = new Octree<>();
+        tree.insertPoint("low", new Coord3D(0, 0, 0));
+        tree.insertPoint("high", new Coord3D(0, 0, 5));
+        tree.insertPoint("aside", new Coord3D(3, 0, 8));
+
+        Octree.Hit<String> hit = tree.pick(new Coord3D(0, 0, 10), DOWN, 0.5f, 0);
+        Assert.assertEquals("high", hit.item);
+        Assert.assertEquals(5, hit.distance, 0.001);
+    }
+
+    @Test
+    public void testToleranceWidensWithDistance() {
+        Octree<String> tree = new Octree<>();
+        tree.insertPoint("far", new Coord3D(2, 0, -90));
+
+        Assert.assertNull(tree.pick(new Coord3D(0, 0, 10), DOWN, 0.5f, 0));
+        Assert.assertNotNull(tree.pick(new Coord3D(0, 0, 10), DOWN, 0.5f, 0.05f));
+    }
+
+    @Test
+    public void testSegmentIsPickedWithPositionAlongIt() {
+        Octree<String> tree = new Octree<>();
+        tree.insertSegment("leg", new Coord3D(-10, 0, 0), new Coord3D(10, 0, 0));
+
+        Octree.Hit<String> hit = tree.pick(new Coord3D(5, 0, 10), DOWN, 0.1f, 0);
+        Assert.assertEquals("leg", hit.item);
+        Assert.assertEquals(0.75, hit.position, 0.001);
+    }
+
+    @Test
+    public void testTreeGrowsToTakeDistantItems() {
+        Octree<String> tree = new Octree<>();
+        tree.insertPoint("origin", Coord3D.ORIGIN);
+        tree.insertPoint("distant", new Coord3D(-5000, 3000, -200));
+
+        Octree.Hit<String> hit = tree.pick(new Coord3D(-5000, 3000, 0), DOWN, 0.5f, 0);
+        Assert.assertEquals("distant", hit.item);
+        Assert.assertEquals(2, tree.size());
+    }
+
+    @Test
+    public void testPickMatchesBruteForceOnLargeTree() {
+        Random random = new Random(42);
+        int count = 50000;
+        Coord3D[] points = new Coord3D[count];
+        Octree<Integer> tree = new Octree<>();
+        for (int i = 0; i < count; i++) {
+            points[i] =
+                    new Coord3D(
+                            random.nextFloat() * 2000,
+                            random.nextFloat() * 2000,
+                            random.nextFloat() * 200);
+            tree.insertPoint(i, points[i]);
+        }
+
+        for (int i = 0; i < 100; i++) {
+            Coord3D origin = new Coord3D(random.nextFloat() * 2000, random.nextFloat() * 2000, 300);
+            Octree.Hit<Integer> hit = tree.pick(origin, DOWN, 5, 0);
+
+            Integer expected = null;
+            float expectedDistance = Float.MAX_VALUE;
+            for (int j = 0; j < count; j++) {
+                float dx = points[j].x - origin.x;
+                float dy = points[j].y - origin.y;
+                float distance = origin.z - points[j].z;
+                if (dx * dx + dy * dy <= 25 && distance < expectedDistance) {
+                    expected = j;
+                    expectedDistance = distance;
+                }
+            }
+
+            Assert.assertEquals(expected, hit == null ? null : hit.item);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.hwyl.sexytopo.control.threed;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import org.hwyl.sexytopo.control.util.Space3DTransformer;
+import org.hwyl.sexytopo.control.util.SurveyUpdater;
+import org.hwyl.sexytopo.model.graph.Coord3D;
+import org.hwyl.sexytopo.model.graph.Space;
+import org.hwyl.sexytopo.model.survey.Leg;
+import org.hwyl.sexytopo.model.survey.Station;
+import org.hwyl.sexytopo.model.survey.Survey;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PassageMeshBuilderTest {
+
+    private static final int SEGMENTS = PassageMeshBuilder.RING_SEGMENTS;
+
+    private final Space3DTransformer transformer = new Space3DTransformer();
+
+    @Test
+    public void testLegBetweenStationsWithSplaysBecomesTube() {
+        Survey survey = createPassage();
+        PassageMesh mesh = build(new PassageMeshBuilder(), survey);
+
+        Assert.assertEquals(1, mesh.getBlocks().size());
+        PassageMesh.Block block = mesh.getBlocks().get(0);
+        Assert.assertEquals(SEGMENTS * 2, block.getVertexCount());
+        Assert.assertEquals(SEGMENTS * 6, block.getTriangleIndexCount());
+        Assert.assertEquals(SEGMENTS * 3, block.getSimplifiedIndexCount());
+    }
+
+    @Test
+    public void testRingReachesOutToSplays() {
+        Survey survey = createPassage();
+        PassageMesh mesh = build(new PassageMeshBuilder(), survey);
+
+        // Splays go out 2m either side of the passage, which runs north
+        BoundingBox bounds = mesh.getBlocks().get(0).getBounds();
+        Assert.assertEquals(-2, bounds.getMinX(), 0.5);
+        Assert.assertEquals(2, bounds.getMaxX(), 0.5);
+    }
+
+    @Test
+    public void testLegWithoutSplaysHasNoWalls() {
+        Survey survey = new Survey();
+        SurveyUpdater.updateWithNewStation(survey, new Leg(5, 0, 0));
+        PassageMesh mesh = build(new PassageMeshBuilder(), survey);
+        Assert.assertTrue(mesh.getBlocks().isEmpty());
+    }
+
+    @Test
+    public void testOnlyChangedStationsAreRemeshed() {
+        Survey survey = createPassage();
+        PassageMeshBuilder builder = new PassageMeshBuilder();
+        build(builder, survey);
+        Assert.assertEquals(2, builder.getRebuiltRingCount());
+
+        SurveyUpdater.update(survey, new Leg(1, 0, 90));
+        build(builder, survey);
+        Assert.assertEquals(1, builder.getRebuiltRingCount());
+    }
+
+    @Test
+    public void testOnlyChangedStationsAreSnapshotted() {
+        Survey survey = createPassage();
+        PassageMeshBuilder.Snapshotter snapshotter = new PassageMeshBuilder.Snapshotter();
+        PassageMeshBuilder builder = new PassageMeshBuilder();
+        PassageMesh.Changes first = builder.build(take(snapshotter, survey));
+        Assert.assertTrue(first.isNewMesh());
+        Assert.assertEquals(1, first.getTubeCount());
+
+        SurveyUpdater.update(survey, new Leg(1, 0, 90));
+        PassageMesh.Changes second = builder.build(take(snapshotter, survey));
+        Assert.assertFalse(second.isNewMesh());
+        Assert.assertEquals(1, builder.getRebuiltRingCount());
+        Assert.assertEquals(1, second.getTubeCount());
+    }
+
+    @Test
+    public void testNewLegIsAddedToTheMesh() {
+        Survey survey = createPassage();
+        PassageMeshBuilder.Snapshotter snapshotter = new PassageMeshBuilder.Snapshotter();
+        PassageMeshBuilder builder = new PassageMeshBuilder();
+        PassageMesh mesh = builder.build(take(snapshotter, survey)).applyTo(null);
+
+        SurveyUpdater.updateWithNewStation(survey, new Leg(5, 0, 0));
+        addWallSplays(survey, survey.getActiveStation());
+        PassageMesh.Changes changes = builder.build(take(snapshotter, survey));
+        Assert.assertFalse(changes.isNewMesh());
+        Assert.assertSame(mesh, changes.applyTo(mesh));
+
+        // The first tube is rebuilt where it was, as the passage now runs on past its end
+        PassageMesh.Block block = mesh.getBlocks().get(0);
+        Assert.assertEquals(SEGMENTS * 4, block.getVertexCount());
+        Assert.assertEquals(SEGMENTS * 12, block.getTriangleIndexCount());
+
+        // Tubes may be in a different order, but should be the same as if built from scratch
+        PassageMesh.Block fullBlock = build(new PassageMeshBuilder(), survey).getBlocks().get(0);
+        Assert.assertEquals(getVertices(fullBlock), getVertices(block));
+    }
+
+    @Test
+    public void testEditedSurveyIsMeshedFromScratch() {
+        Survey survey = createPassage();
+        PassageMeshBuilder.Snapshotter snapshotter = new PassageMeshBuilder.Snapshotter();
+        PassageMeshBuilder builder = new PassageMeshBuilder();
+        builder.build(take(snapshotter, survey));
+
+        Leg first = survey.getOrigin().getOnwardLegs().get(0);
+        SurveyUpdater.deleteLeg(survey, survey.getOrigin(), first);
+        Assert.assertTrue(builder.build(take(snapshotter, survey)).isNewMesh());
+    }
+
+    private PassageMesh build(PassageMeshBuilder builder, Survey survey) {
+        Space<Coord3D> space = transformer.transformTo3D(survey);
+        PassageMeshBuilder.Snapshot snapshot =
+                PassageMeshBuilder.snapshot(Collections.singletonList(space));
+        return builder.build(snapshot).applyTo(null);
+    }
+
+    private PassageMeshBuilder.Snapshot take(
+            PassageMeshBuilder.Snapshotter snapshotter, Survey survey) {
+        Space<Coord3D> space = transformer.transformTo3D(survey);
+        return snapshotter.take(Collections.singletonMap(survey, space), survey);
+    }
+
+    private static List<String> getVertices(PassageMesh.Block block) {
+        List<String> vertices = new ArrayList<>();
+        float[] coords = block.getVertices();
+        for (int i = 0; i < block.getVertexCount() * 3; i += 3) {
+            vertices.add(
+                    String.format(
+                            Locale.UK, "%.3f %.3f %.3f", coords[i], coords[i + 1], coords[i + 2]));
+        }
+        Collections.sort(vertices);
+        return vertices;
+    }
+
+    private static Survey createPassage() {
+        Survey survey = new Survey();
+        addWallSplays(survey, survey.getOrigin());
+        SurveyUpdater.updateWithNewStation(survey, new Leg(5, 0, 0));
+        addWallSplays(survey, survey.getActiveStation());
+        return survey;
+    }
+
+    private static void addWallSplays(Survey survey, Station station) {
+        survey.setActiveStation(station);
+        SurveyUpdater.update(survey, new Leg(2, 90, 0));
+        SurveyUpdater.update(survey, new Leg(2, 270, 0));
+    }
+}
@@ -0,0 +1,129 @@
+package org.hwyl.sexytopo.control.threed;
+
+import java.util.ArrayList;
+import org.hwyl.sexytopo.control.util.Space3DTransformer;
+import org.hwyl.sexytopo.control.util.SurveyUpdater;
+import org.hwyl.sexytopo.model.graph.Coord3D;
+import org.hwyl.sexytopo.model.graph.Space;
+import org.hwyl.sexytopo.model.survey.Leg;
+import org.hwyl.sexytopo.model.survey.Survey;
+import org.hwyl.sexytopo.testutils.BasicTestSurveyCreator;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SurveyGeometryTest {
+
+    private final Space3DTransformer transformer = new Space3DTransformer();
+
+    @Test
+    public void testLegsShareStationVertices() {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        SurveyGeometry geometry = new SurveyGeometry();
+        update(geometry, survey);
+
+        GeometryBlock block = geometry.getBlocks().get(0);
+        int stationCount = survey.getAllStations().size();
+        Assert.assertEquals(stationCount, block.getVertexCount());
+        Assert.assertEquals(stationCount, block.getStationIndexCount());
+        Assert.assertEquals(survey.getAllLegs().size() * 2, block.getLegIndexCount());
+    }
+
+    @Test
+    public void testNewLegIsAppendedWithoutRebuilding() {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        SurveyGeometry geometry = new SurveyGeometry();
+        update(geometry, survey);
+        int generation = geometry.getGeneration();
+        int vertexCount = geometry.getBlocks().get(0).getVertexCount();
+
+        SurveyUpdater.update(survey, new Leg(2, 90, 0));
+        boolean rebuilt = update(geometry, survey);
+
+        Assert.assertFalse(rebuilt);
+        Assert.assertEquals(generation, geometry.getGeneration());
+        Assert.assertEquals(survey.getAllStations().size(), geometry.getStationTree().size());
+        GeometryBlock block = geometry.getBlocks().get(0);
+        Assert.assertEquals(vertexCount + 1, block.getVertexCount());
+        Assert.assertEquals(2, block.getSplayIndexCount());
+    }
+
+    @Test
+    public void testEditedLegCausesRebuild() {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        SurveyGeometry geometry = new SurveyGeometry();
+        update(geometry, survey);
+        int generation = geometry.getGeneration();
+
+        Leg first = survey.getOrigin().getOnwardLegs().get(0);
+        Leg edited = new Leg(7, 10, 0, first.getDestination(), new Leg[] {});
+        SurveyUpdater.editLeg(survey, first, edited);
+        boolean rebuilt = update(geometry, survey);
+
+        Assert.assertTrue(rebuilt);
+        Assert.assertNotEquals(generation, geometry.getGeneration());
+    }
+
+    @Test
+    public void testMovedLegCausesRebuild() {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        SurveyGeometry geometry = new SurveyGeometry();
+        update(geometry, survey);
+        int generation = geometry.getGeneration();
+
+        Leg last = survey.getMostRecentLeg();
+        SurveyUpdater.moveLeg(survey, last, survey.getOrigin());
+        boolean rebuilt = update(geometry, survey);
+
+        Assert.assertTrue(rebuilt);
+        Assert.assertNotEquals(generation, geometry.getGeneration());
+    }
+
+    @Test
+    public void testUnchangedSpaceIsLeftAlone() {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        SurveyGeometry geometry = new SurveyGeometry();
+        Space<Coord3D> space = transformer.transformTo3D(survey);
+        geometry.update(space);
+        int generation = geometry.getGeneration();
+
+        Assert.assertFalse(geometry.update(space));
+        Assert.assertEquals(generation, geometry.getGeneration());
+        Assert.assertTrue(geometry.update(transformer.transformTo3D(survey)));
+    }
+
+    @Test
+    public void testDistantLegsGoInSeparateBlocks() {
+        Survey survey = new Survey();
+        SurveyUpdater.updateWithNewStation(survey, new Leg(SurveyGeometry.CELL_SIZE * 1.5f, 0, 0));
+        SurveyUpdater.updateWithNewStation(survey, new Leg(10, 0, 0));
+        SurveyGeometry geometry = new SurveyGeometry();
+        update(geometry, survey);
+
+        // The first leg starts in the origin's cell, the second in the next cell north
+        Assert.assertEquals(2, geometry.getBlocks().size());
+        int farBlockCount = 0;
+        for (GeometryBlock block : geometry.getBlocks()) {
+            if (block.getBounds().getMinY() > SurveyGeometry.CELL_SIZE) {
+                farBlockCount++;
+            }
+        }
+        Assert.assertEquals(1, farBlockCount);
+    }
+
+    @Test
+    public void testBlockIsFullAtMaxVertices() {
+        GeometryBlock block = new GeometryBlock();
+        for (int i = 0; i < GeometryBlock.MAX_VERTICES - 1; i++) {
+            block.addVertex(Coord3D.ORIGIN);
+        }
+        Assert.assertTrue(block.hasRoomFor(1));
+        Assert.assertFalse(block.hasRoomFor(2));
+    }
+
+    private boolean update(SurveyGeometry geometry, Survey survey) {
+        return geometry.update(
+                transformer.transformTo3D(survey),
+                new ArrayList<>(survey.getAllLegsInChronoOrder()),
+                survey.getLegEditCount());
+    }
+}
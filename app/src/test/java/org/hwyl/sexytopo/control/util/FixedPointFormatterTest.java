@@ -0,0 +1,78 @@
+package org.hwyl.sexytopo.control.util;
+
+import java.io.StringWriter;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FixedPointFormatterTest {
+
+    private static final double[] AWKWARD_VALUES = {
+        0.0, -0.0, 0.5, 1.5, 2.5, -2.5, 0.125, 0.375, 1.005, 1.015, 2.675, 9.995, 99.995, -0.001,
+        -0.004, 0.005, 0.015, 0.045, 4.35, 1e-10, 123456789012.345, 1e15, 1e20, 0.1f, 0.7f, 100.125f
+    };
+
+    @Test
+    public void testMatchesStringFormat() {
+        for (double value : getTestValues()) {
+            for (int places = 0; places <= 5; places++) {
+                Assert.assertEquals(
+                        String.format(Locale.ROOT, "%." + places + "f", value),
+                        FixedPointFormatter.format(value, places));
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesStringFormatWithSign() {
+        for (double value : getTestValues()) {
+            Assert.assertEquals(
+                    String.format(Locale.ROOT, "%+.2f", value),
+                    FixedPointFormatter.appendWithSign(new StringBuilder(), value, 2).toString());
+        }
+    }
+
+    @Test
+    public void testHalfEvenMatchesDecimalFormat() {
+        DecimalFormat decimalFormat =
+                new DecimalFormat("##0.00", new DecimalFormatSymbols(Locale.UK));
+        for (double value : getTestValues()) {
+            Assert.assertEquals(
+                    decimalFormat.format(value), FixedPointFormatter.formatHalfEven(value, 2));
+        }
+    }
+
+    @Test
+    public void testAppendsToTheEnd() {
+        StringBuilder builder = new StringBuilder("x=");
+        FixedPointFormatter.append(builder, 1.23456, 2).append(';');
+        Assert.assertEquals("x=1.23;", builder.toString());
+    }
+
+    @Test
+    public void testAppendsToAnyAppendable() throws Exception {
+        StringWriter writer = new StringWriter();
+        FixedPointFormatter.append(writer, -3.14159, 3);
+        writer.append(' ');
+        FixedPointFormatter.appendHalfEven(writer, 0.125, 2);
+        Assert.assertEquals("-3.142 0.12", writer.toString());
+    }
+
+    private static double[] getTestValues() {
+        Random random = new Random(1);
+        double[] values = new double[AWKWARD_VALUES.length + 10000];
+        System.arraycopy(AWKWARD_VALUES, 0, values, 0, AWKWARD_VALUES.length);
+        for (int i = AWKWARD_VALUES.length; i < values.length; i++) {
+            if (i % 2 == 0) {
+                values[i] = (float) ((random.nextDouble() - 0.5) * 20000);
+            } else {
+                // Exactly on a half at two places, or as near as a double gets
+                values[i] = (random.nextInt(2000000) - 1000000 + 0.5) / 100;
+            }
+        }
+        return values;
+    }
+}
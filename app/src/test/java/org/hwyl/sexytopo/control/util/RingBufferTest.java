@@ -0,0 +1,69 @@
+package org.hwyl.sexytopo.control.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RingBufferTest {
+
+    @Test
+    public void testItemsComeBackInOrder() {
+        RingBuffer<String> buffer = new RingBuffer<>(3);
+        buffer.add("a");
+        buffer.add("b");
+        Assert.assertEquals(Arrays.asList("a", "b"), buffer.toList());
+    }
+
+    @Test
+    public void testOldestItemsAreDropped() {
+        RingBuffer<String> buffer = new RingBuffer<>(3);
+        for (String item : new String[] {"a", "b", "c", "d", "e"}) {
+            buffer.add(item);
+        }
+        Assert.assertEquals(Arrays.asList("c", "d", "e"), buffer.toList());
+    }
+
+    @Test
+    public void testClearForgetsEverythingAddedSoFar() {
+        RingBuffer<String> buffer = new RingBuffer<>(3);
+        buffer.add("a");
+        buffer.add("b");
+        buffer.clear();
+        Assert.assertEquals(Collections.emptyList(), buffer.toList());
+
+        buffer.add("c");
+        Assert.assertEquals(Collections.singletonList("c"), buffer.toList());
+    }
+
+    @Test
+    public void testAddingFromSeveralThreadsKeepsTheLatestItems() throws Exception {
+        int threadCount = 4;
+        int perThread = 10000;
+        RingBuffer<Integer> buffer = new RingBuffer<>(100);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            int offset = t * perThread;
+            Thread thread =
+                    new Thread(
+                            () -> {
+                                for (int i = 0; i < perThread; i++) {
+                                    buffer.add(offset + i);
+                                }
+                            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        List<Integer> items = buffer.toList();
+        Assert.assertEquals(100, items.size());
+        Assert.assertEquals(100, new HashSet<>(items).size());
+    }
+}
@@ -3,6 +3,8 @@ package org.hwyl.sexytopo.model.sketch;
 import java.util.ArrayList;
 import java.util.List;
 import org.hwyl.sexytopo.model.graph.Coord2D;
+import org.hwyl.sexytopo.model.graph.Space;
+import org.hwyl.sexytopo.model.survey.Leg;
 import org.hwyl.sexytopo.model.survey.Station;
 import org.junit.Assert;
 import org.junit.Test;
@@ -32,4 +34,44 @@ public class CrossSectionDetailTest {
         Assert.assertNotNull(detail.getSketch());
         Assert.assertTrue(detail.getSketch().getPathDetails().isEmpty());
     }
+
+    @Test
+    public void testProjectionIsReusedUntilSplaysChange() {
+        Station station = new Station("A1");
+        station.addOnwardLeg(new Leg(2, 90, 0));
+        CrossSection crossSection = new CrossSection(station, 0f);
+
+        Space<Coord2D> first = crossSection.getProjection();
+        Assert.assertSame(first, crossSection.getProjection());
+
+        station.addOnwardLeg(new Leg(3, 270, 0));
+        Space<Coord2D> updated = crossSection.getProjection();
+        Assert.assertNotSame(first, updated);
+        Assert.assertEquals(2, updated.getLegMap().size());
+    }
+
+    @Test
+    public void testPositionedProjectionIsReusedUntilCentreChanges() {
+        Station station = new Station("A1");
+        station.addOnwardLeg(new Leg(2, 90, 0));
+        CrossSectionDetail detail =
+                new CrossSectionDetail(new CrossSection(station, 0f), Coord2D.ORIGIN);
+
+        Space<Coord2D> first = detail.getPositionedProjection(1, new Coord2D(5, 5));
+        Assert.assertSame(first, detail.getPositionedProjection(1, new Coord2D(5, 5)));
+        Assert.assertNotSame(first, detail.getPositionedProjection(1, new Coord2D(6, 5)));
+        Assert.assertNotSame(first, detail.getPositionedProjection(2, new Coord2D(5, 5)));
+    }
+
+    @Test
+    public void testPositionedSketchIsRebuiltWhenSubSketchReplaced() {
+        CrossSectionDetail detail =
+                new CrossSectionDetail(new CrossSection(new Station("A1"), 0f), Coord2D.ORIGIN);
+
+        Sketch first = detail.getPositionedSketch(1, new Coord2D(5, 5));
+        Assert.assertSame(first, detail.getPositionedSketch(1, new Coord2D(5, 5)));
+
+        detail.setSketch(new Sketch());
+        Assert.assertNotSame(first, detail.getPositionedSketch(1, new Coord2D(5, 5)));
+    }
 }
@@ -1,6 +1,12 @@
 package org.hwyl.sexytopo.model.survey;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import org.hwyl.sexytopo.control.util.SurveyUpdater;
+import org.hwyl.sexytopo.model.graph.Coord2D;
+import org.hwyl.sexytopo.model.graph.Projection2D;
+import org.hwyl.sexytopo.model.sketch.Sketch;
 import org.hwyl.sexytopo.testutils.BasicTestSurveyCreator;
 import org.junit.Assert;
 import org.junit.Test;
@@ -42,4 +48,110 @@ public class SurveyTest {
         Assert.assertFalse(baseSurvey.isConnectedTo(otherSurvey));
         Assert.assertEquals(0, baseSurvey.getConnectedSurveys().size());
     }
+
+    @Test
+    public void testSketchIsOnlyLoadedWhenAskedFor() {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        Sketch loaded = new Sketch();
+        int[] loadCount = {0};
+        survey.setSketchLoader(
+                Projection2D.PLAN,
+                () -> {
+                    loadCount[0]++;
+                    return loaded;
+                });
+
+        survey.setSaved(false);
+        Assert.assertFalse(survey.isSaved());
+        Assert.assertFalse(survey.isSketchLoaded(Projection2D.PLAN));
+        Assert.assertEquals(0, loadCount[0]);
+
+        Assert.assertSame(loaded, survey.getPlanSketch());
+        Assert.assertSame(loaded, survey.getSketch(Projection2D.PLAN));
+        Assert.assertEquals(1, loadCount[0]);
+        Assert.assertFalse(loaded.isSaved());
+    }
+
+    @Test
+    public void testConnectionsAreOnlyLoadedWhenAskedFor() {
+        Survey baseSurvey = BasicTestSurveyCreator.createStraightNorth();
+        Survey otherSurvey = BasicTestSurveyCreator.createRightRight();
+        baseSurvey.setSaved(true);
+        int[] loadCount = {0};
+        baseSurvey.setConnectionLoader(
+                () -> {
+                    loadCount[0]++;
+                    baseSurvey.connect(
+                            baseSurvey.getActiveStation(),
+                            otherSurvey,
+                            otherSurvey.getActiveStation());
+                });
+        Assert.assertEquals(0, loadCount[0]);
+
+        Assert.assertTrue(baseSurvey.isConnectedTo(otherSurvey));
+        Assert.assertEquals(1, baseSurvey.getConnectedSurveys().size());
+        Assert.assertEquals(1, loadCount[0]);
+        Assert.assertTrue(baseSurvey.isMetadataSaved());
+    }
+
+    @Test
+    public void testSnapshotIsUnaffectedByLaterChanges() {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        String splayStation = survey.getActiveStation().getName();
+        SurveyUpdater.update(survey, new Leg(5, 0, 0));
+        Sketch sketch = survey.getPlanSketch();
+        sketch.startNewPath(new Coord2D(0, 0)).lineTo(new Coord2D(1, 0));
+
+        Survey snapshot = survey.createSnapshot();
+        SurveyUpdater.updateWithNewStation(survey, new Leg(5, 0, 0));
+        survey.getStationByName("1").setName("renamed");
+        sketch.getActivePath().lineTo(new Coord2D(2, 0));
+
+        Assert.assertEquals(4, snapshot.getAllStations().size());
+        Assert.assertNotNull(snapshot.getStationByName("1"));
+        Assert.assertEquals(
+                survey.getAllLegsInChronoOrder().size() - 1,
+                snapshot.getAllLegsInChronoOrder().size());
+        Assert.assertEquals(2, snapshot.getPlanSketch().getPathDetails().get(0).getPath().size());
+
+        // Splays can't change, so they're shared
+        Assert.assertSame(
+                survey.getStationByName(splayStation).getOnwardLegs().get(0),
+                snapshot.getStationByName(splayStation).getOnwardLegs().get(0));
+    }
+
+    @Test
+    public void testSnapshotReadsUnloadedSketchForItself() {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        List<Survey> readFor = new ArrayList<>();
+        survey.setSketchReader(
+                Projection2D.PLAN,
+                owner -> {
+                    readFor.add(owner);
+                    return new Sketch();
+                });
+
+        Survey snapshot = survey.createSnapshot();
+        Assert.assertFalse(snapshot.isSketchLoaded(Projection2D.PLAN));
+        snapshot.getPlanSketch();
+
+        Assert.assertEquals(Collections.singletonList(snapshot), readFor);
+        Assert.assertFalse(survey.isSketchLoaded(Projection2D.PLAN));
+    }
+
+    @Test
+    public void testSnapshotsShareCentrelineUntilDataChanges() {
+        Survey survey = BasicTestSurveyCreator.createStraightNorth();
+        Survey first = survey.createSnapshot();
+        survey.getPlanSketch().startNewPath(new Coord2D(0, 0)).lineTo(new Coord2D(1, 0));
+
+        Survey second = survey.createSnapshot();
+        Assert.assertSame(first.getStationByName("1"), second.getStationByName("1"));
+        Assert.assertEquals(1, second.getPlanSketch().getPathDetails().size());
+
+        SurveyUpdater.updateWithNewStation(survey, new Leg(5, 0, 0));
+        Survey third = survey.createSnapshot();
+        Assert.assertNotSame(second.getStationByName("1"), third.getStationByName("1"));
+        Assert.assertEquals(second.getAllStations().size() + 1, third.getAllStations().size());
+    }
 }
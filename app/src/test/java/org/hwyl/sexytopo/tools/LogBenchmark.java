@@ -0,0 +1,120 @@
+package org.hwyl.sexytopo.tools;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.hwyl.sexytopo.control.Log;
+import org.hwyl.sexytopo.control.util.RingBuffer;
+import org.junit.Test;
+
+/**
+ * Measures how fast messages can be logged from several threads at once while the log is being
+ * read (as the log screens do each time they're told about a new message), compared with the
+ * locked queue the logs used to be kept in. Not run with the other tests; run it with ./gradlew
+ * runBenchmarks.
+ */
+public class LogBenchmark {
+
+    private static final int THREAD_COUNT = 4;
+    private static final int MESSAGES_PER_THREAD = 250_000;
+    private static final int WARM_UP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    private interface Logger {
+        void log(Log.Message message);
+    }
+
+    private interface Reader {
+        int read();
+    }
+
+    @Test
+    public void benchmarkLogging() throws Exception {
+        Queue<Log.Message> lockedQueue = new LinkedList<>();
+        measure(
+                "synchronized LinkedList",
+                message -> {
+                    synchronized (lockedQueue) {
+                        if (lockedQueue.size() >= 1000) {
+                            lockedQueue.remove();
+                        }
+                        lockedQueue.add(message);
+                    }
+                },
+                () -> {
+                    synchronized (lockedQueue) {
+                        return new ArrayList<>(lockedQueue).size();
+                    }
+                });
+
+        RingBuffer<Log.Message> ringBuffer = new RingBuffer<>(1000);
+        measure("RingBuffer", ringBuffer::add, () -> ringBuffer.toList().size());
+
+        measure(
+                "Log.device",
+                message -> Log.device(message.getText()),
+                () -> Log.getLog(Log.LogType.DEVICE).size());
+    }
+
+    private static void measure(String name, Logger logger, Reader reader) throws Exception {
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            run(logger, reader);
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            best = Math.min(best, run(logger, reader));
+        }
+        long messages = (long) THREAD_COUNT * MESSAGES_PER_THREAD;
+        System.out.printf(
+                "%-24s %6d ms for %d messages from %d threads (%.1f million/s)%n",
+                name, best / 1_000_000, messages, THREAD_COUNT, messages * 1000.0 / best);
+    }
+
+    private static long run(Logger logger, Reader reader) throws Exception {
+        Log.Message message = new Log.Message("Packet received");
+        CountDownLatch ready = new CountDownLatch(THREAD_COUNT);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREAD_COUNT; t++) {
+            Thread thread =
+                    new Thread(
+                            () -> {
+                                ready.countDown();
+                                try {
+                                    go.await();
+                                } catch (InterruptedException exception) {
+                                    return;
+                                }
+                                for (int i = 0; i < MESSAGES_PER_THREAD; i++) {
+                                    logger.log(message);
+                                }
+                            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        AtomicBoolean isWriting = new AtomicBoolean(true);
+        Thread readerThread =
+                new Thread(
+                        () -> {
+                            while (isWriting.get()) {
+                                reader.read();
+                            }
+                        });
+
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        readerThread.start();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long duration = System.nanoTime() - start;
+        isWriting.set(false);
+        readerThread.join();
+        return duration;
+    }
+}
@@ -0,0 +1,144 @@
+package org.hwyl.sexytopo.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import org.hwyl.sexytopo.control.io.thirdparty.pockettopo.PocketTopoImporter;
+import org.hwyl.sexytopo.model.survey.Survey;
+import org.junit.Test;
+
+/**
+ * Times the PocketTopo .top import of files of increasing size, built the same way as the
+ * PocketTopoImporterTest fixtures but with many more shots and densely drawn plans and
+ * elevations, which is where most of a real file's bytes are. Not run with the other tests; run it
+ * with ./gradlew runBenchmarks.
+ */
+public class PocketTopoImportBenchmark {
+
+    // {stations, polygons per drawing, points per polygon}
+    private static final int[][] FILE_SIZES = {{50, 200, 50}, {200, 1000, 100}, {500, 4000, 200}};
+    private static final int SPLAYS_PER_STATION = 4;
+    private static final int WARM_UP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    @Test
+    public void benchmarkImport() throws Exception {
+        for (int[] size : FILE_SIZES) {
+            byte[] data = buildTopFile(size[0], size[1], size[2]);
+            String description =
+                    size[0] + " stations, " + size[1] + " x " + size[2] + "-point polygons";
+
+            for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+                PocketTopoImporter.parseSurvey(new ByteArrayInputStream(data));
+            }
+            long best = Long.MAX_VALUE;
+            int stationCount = 0;
+            for (int i = 0; i < ROUNDS; i++) {
+                long start = System.nanoTime();
+                Survey survey = PocketTopoImporter.parseSurvey(new ByteArrayInputStream(data));
+                best = Math.min(best, System.nanoTime() - start);
+                stationCount = survey.getAllStations().size();
+            }
+            double megabytes = data.length / (1024.0 * 1024.0);
+            System.out.printf(
+                    "%-50s %8.1f ms (%.1f MB, %.0f MB/s, %d stations)%n",
+                    description, best / 1e6, megabytes, megabytes / (best / 1e9), stationCount);
+        }
+    }
+
+    private static byte[] buildTopFile(int stationCount, int polygonCount, int pointsPerPolygon)
+            throws IOException {
+        Random random = new Random(1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Header: "Top" + version 3
+        out.write('T');
+        out.write('o');
+        out.write('p');
+        out.write(3);
+
+        // 1 trip
+        writeInt32(out, 1);
+        writeInt64(out, 621355968000000000L); // 1 Jan 1970
+        writeString(out, "Benchmark trip");
+        writeInt16(out, (short) 0); // declination
+
+        // A line of stations 0.0, 0.1, 0.2... each with a few splays
+        writeInt32(out, (stationCount - 1) * (1 + SPLAYS_PER_STATION));
+        for (int i = 1; i < stationCount; i++) {
+            writeShot(out, i - 1, i, random);
+            for (int j = 0; j < SPLAYS_PER_STATION; j++) {
+                writeShot(out, i, 0x80000000, random);
+            }
+        }
+
+        // 0 references
+        writeInt32(out, 0);
+
+        // Overview mapping
+        writeInt32(out, 0);
+        writeInt32(out, 0);
+        writeInt32(out, 1000);
+
+        writeDrawing(out, polygonCount, pointsPerPolygon, random); // plan
+        writeDrawing(out, polygonCount, pointsPerPolygon, random); // elevation
+
+        return out.toByteArray();
+    }
+
+    private static void writeShot(ByteArrayOutputStream out, int from, int to, Random random) {
+        writeInt32(out, from);
+        writeInt32(out, to);
+        writeInt32(out, 1000 + random.nextInt(9000)); // 1-10m
+        writeInt16(out, (short) random.nextInt(0x10000)); // azimuth
+        writeInt16(out, (short) (random.nextInt(0x8000) - 0x4000)); // inclination
+        out.write(0); // flags
+        out.write(0); // roll
+        writeInt16(out, (short) 0); // tripIndex
+    }
+
+    private static void writeDrawing(
+            ByteArrayOutputStream out, int polygonCount, int pointsPerPolygon, Random random) {
+        writeInt32(out, 0); // mapping origin x
+        writeInt32(out, 0); // mapping origin y
+        writeInt32(out, 1000); // mapping scale
+        for (int i = 0; i < polygonCount; i++) {
+            out.write(1); // element id = polygon
+            writeInt32(out, pointsPerPolygon);
+            int x = random.nextInt(200_000) - 100_000;
+            int y = random.nextInt(200_000) - 100_000;
+            for (int j = 0; j < pointsPerPolygon; j++) {
+                x += random.nextInt(201) - 100;
+                y += random.nextInt(201) - 100;
+                writeInt32(out, x);
+                writeInt32(out, y);
+            }
+            out.write(1 + random.nextInt(7)); // colour
+        }
+        out.write(0); // end of elements
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes("UTF-8");
+        out.write(bytes.length); // short enough for a one-byte length
+        out.write(bytes);
+    }
+
+    private static void writeInt16(ByteArrayOutputStream out, short value) {
+        out.write(value & 0xFF);
+        out.write((value >> 8) & 0xFF);
+    }
+
+    private static void writeInt32(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xFF);
+        out.write((value >> 8) & 0xFF);
+        out.write((value >> 16) & 0xFF);
+        out.write((value >> 24) & 0xFF);
+    }
+
+    private static void writeInt64(ByteArrayOutputStream out, long value) {
+        writeInt32(out, (int) (value & 0xFFFFFFFFL));
+        writeInt32(out, (int) ((value >> 32) & 0xFFFFFFFFL));
+    }
+}
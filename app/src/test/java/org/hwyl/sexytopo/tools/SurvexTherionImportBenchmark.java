@@ -0,0 +1,157 @@
+package org.hwyl.sexytopo.tools;
+
+import java.io.StringReader;
+import java.util.Locale;
+import java.util.Random;
+import org.hwyl.sexytopo.control.io.thirdparty.survex.SurvexImporter;
+import org.hwyl.sexytopo.control.io.thirdparty.therion.TherionImporter;
+import org.hwyl.sexytopo.model.survey.Survey;
+import org.junit.Test;
+
+/**
+ * Times the Survex .svx and Therion .th imports of files of increasing size, laid out the way
+ * SexyTopo exports them: metadata, a passage block of station comments, the centreline with splays
+ * and promoted legs, then the extended elevation directions. Not run with the other tests; run it
+ * with ./gradlew runBenchmarks.
+ */
+public class SurvexTherionImportBenchmark {
+
+    private static final int[] LEG_COUNTS = {1_000, 5_000, 20_000};
+    private static final int SPLAYS_PER_STATION = 3;
+    private static final int BRANCH_INTERVAL = 50;
+    private static final int WARM_UP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    private interface Parser {
+        Survey parse(String text) throws Exception;
+    }
+
+    @Test
+    public void benchmarkSurvexImport() throws Exception {
+        for (int legCount : LEG_COUNTS) {
+            String text = buildSurvexFile(legCount);
+            time("Survex, " + legCount + " legs", text, t -> SurvexImporter.parse(reader(t)));
+        }
+    }
+
+    @Test
+    public void benchmarkTherionImport() throws Exception {
+        for (int legCount : LEG_COUNTS) {
+            String text = buildTherionFile(legCount);
+            time("Therion, " + legCount + " legs", text, t -> TherionImporter.parseTh(reader(t)));
+        }
+    }
+
+    private static StringReader reader(String text) {
+        return new StringReader(text);
+    }
+
+    private static void time(String description, String text, Parser parser) throws Exception {
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            parser.parse(text);
+        }
+        long best = Long.MAX_VALUE;
+        int legCount = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            Survey survey = parser.parse(text);
+            best = Math.min(best, System.nanoTime() - start);
+            legCount = survey.getAllLegs().size();
+        }
+        double megabytes = text.length() / (1024.0 * 1024.0);
+        System.out.printf(
+                "%-30s %8.1f ms (%.1f MB, %.0f MB/s, %d legs and splays)%n",
+                description, best / 1e6, megabytes, megabytes / (best / 1e9), legCount);
+    }
+
+    private static String buildSurvexFile(int legCount) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("*begin benchmark\n");
+        builder.append("; Created with SexyTopo 1.12.0 on 2026-01-05\n\n");
+        builder.append("*date 2026.01.05\n");
+        builder.append("*instrument insts \"DistoX2\"\n");
+        builder.append("*team \"Alice\" instruments\n");
+        builder.append("*team \"Bob\" notes\n\n");
+        builder.append("*date explored 2026.01.05\n\n");
+        appendPassageData(builder, "*data passage", legCount);
+        appendCentreline(builder, "*data normal", ';', legCount);
+        appendExtends(builder, "*extend", legCount);
+        builder.append("*end benchmark\n");
+        return builder.toString();
+    }
+
+    private static String buildTherionFile(int legCount) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("encoding  utf-8\n");
+        builder.append("survey benchmark\n");
+        builder.append("# Created with SexyTopo 1.12.0 on 2026-01-05\n\n");
+        builder.append("input \"benchmark plan.th2\"\n\n\n");
+        builder.append("centreline\n");
+        builder.append("date 2026.01.05\n");
+        builder.append("instrument insts \"DistoX2\"\n");
+        builder.append("team \"Alice\" instruments\n");
+        builder.append("team \"Bob\" notes\n\n");
+        builder.append("explo-date 2026.01.05\n");
+        builder.append("explo-team \"Alice\"\n\n");
+        appendPassageData(builder, "data dimensions", legCount);
+        appendCentreline(builder, "data normal", '#', legCount);
+        appendExtends(builder, "extend", legCount);
+        builder.append("endcentreline\n");
+        builder.append("endsurvey\n");
+        return builder.toString();
+    }
+
+    private static void appendPassageData(StringBuilder builder, String command, int legCount) {
+        builder.append(command).append(" station left right up down ignoreall\n");
+        for (int station = 5; station <= legCount; station += 5) {
+            builder.append(station).append("\t-\t-\t-\t-\tPassage at ").append(station);
+            builder.append("\n");
+        }
+        builder.append("\n");
+    }
+
+    // Stations 1, 2, 3... each with a few splays, mostly in a line but with a side passage off an
+    // earlier station every so often; every tenth leg was promoted from two shots and every
+    // seventh has a comment. Splays are written as "-", which both formats accept.
+    private static void appendCentreline(
+            StringBuilder builder, String command, char commentChar, int legCount) {
+        Random random = new Random(1);
+        builder.append(command).append(" from to tape compass clino ignoreall\n");
+        for (int to = 2; to <= legCount + 1; to++) {
+            int from = to % BRANCH_INTERVAL == 0 ? 1 + random.nextInt(to - 1) : to - 1;
+            for (int i = 0; i < SPLAYS_PER_STATION; i++) {
+                appendShot(builder, from, "-", random);
+                builder.append("\n");
+            }
+            appendShot(builder, from, Integer.toString(to), random);
+            if (to % 7 == 0) {
+                builder.append("Leg comment ").append(to);
+            }
+            builder.append("\n");
+            if (to % 10 == 0) {
+                for (int i = 0; i < 2; i++) {
+                    builder.append(commentChar);
+                    appendShot(builder, from, Integer.toString(to), random);
+                    builder.append("\n");
+                }
+            }
+        }
+        builder.append("\n");
+    }
+
+    private static void appendShot(StringBuilder builder, int from, String to, Random random) {
+        builder.append(from).append('\t').append(to).append('\t');
+        builder.append(
+                String.format(
+                        Locale.ROOT,
+                        "%.3f\t%.2f\t%.2f\t",
+                        1 + random.nextDouble() * 9,
+                        random.nextDouble() * 360,
+                        random.nextDouble() * 180 - 90));
+    }
+
+    private static void appendExtends(StringBuilder builder, String command, int legCount) {
+        builder.append(command).append(" start 1\n");
+        builder.append(command).append(" left ").append(legCount / 2).append("\n");
+    }
+}
@@ -0,0 +1,58 @@
+package org.hwyl.sexytopo.tools;
+
+import org.hwyl.sexytopo.control.io.thirdparty.svg.SvgExporter;
+import org.hwyl.sexytopo.model.graph.Projection2D;
+import org.hwyl.sexytopo.model.survey.Survey;
+import org.hwyl.sexytopo.testutils.ExampleSurveyCreator;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Times the SVG export of example surveys of increasing size, with the current streaming exporter
+ * and with the old DOM-based one (see LegacySvgExporter). Not run with the other tests; run it
+ * with ./gradlew runBenchmarks. It runs under Robolectric because the old exporter needs
+ * android.util.Xml.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SvgExportBenchmark {
+
+    private static final int[][] SURVEY_SIZES = {{10, 5}, {50, 20}, {200, 40}};
+    private static final int WARM_UP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    private interface Export {
+        String run() throws Exception;
+    }
+
+    @Test
+    public void benchmarkSvgExport() throws Exception {
+        SvgExporter exporter = new SvgExporter();
+        LegacySvgExporter legacyExporter = new LegacySvgExporter();
+        for (int[] size : SURVEY_SIZES) {
+            Survey survey = ExampleSurveyCreator.create(size[0], size[1], true, true, false);
+            String description = size[0] + " stations x " + size[1] + " branches";
+
+            measure(
+                    description + ", old DOM exporter",
+                    () -> legacyExporter.getContent(survey, Projection2D.PLAN));
+            measure(
+                    description + ", streaming exporter",
+                    () -> exporter.getContent(survey, Projection2D.PLAN));
+        }
+    }
+
+    private static void measure(String name, Export export) throws Exception {
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            export.run();
+        }
+        long best = Long.MAX_VALUE;
+        int length = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            length = export.run().length();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-50s %8.1f ms (%d chars)%n", name, best / 1e6, length);
+    }
+}
@@ -0,0 +1,81 @@
+package org.hwyl.sexytopo.tools;
+
+import java.io.StringReader;
+import java.util.Locale;
+import java.util.Random;
+import org.hwyl.sexytopo.control.io.thirdparty.xvi.XviImporter;
+import org.hwyl.sexytopo.model.sketch.Colour;
+import org.hwyl.sexytopo.model.sketch.Sketch;
+import org.junit.Test;
+
+/**
+ * Times the XVI sketch import of files of increasing size, shaped like a scanned or traced sketch
+ * from another tool: many long polylines of two-decimal-place points, with the odd connecting line.
+ * Not run with the other tests; run it with ./gradlew runBenchmarks.
+ */
+public class XviImportBenchmark {
+
+    private static final int[] LINE_COUNTS = {1_000, 10_000, 50_000};
+    private static final int MAX_POINTS_PER_LINE = 60;
+    private static final int CONNECT_INTERVAL = 50;
+    private static final Colour[] COLOURS = {
+        Colour.BLACK, Colour.BROWN, Colour.BLUE, Colour.RED, Colour.GREEN
+    };
+    private static final int WARM_UP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    @Test
+    public void benchmarkXviImport() throws Exception {
+        for (int lineCount : LINE_COUNTS) {
+            String text = buildXviFile(lineCount);
+            time(lineCount + " sketch lines", text);
+        }
+    }
+
+    private static void time(String description, String text) throws Exception {
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            XviImporter.parseSketch(new StringReader(text));
+        }
+        long best = Long.MAX_VALUE;
+        int pathCount = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            Sketch sketch = XviImporter.parseSketch(new StringReader(text));
+            best = Math.min(best, System.nanoTime() - start);
+            pathCount = sketch.getPathDetails().size();
+        }
+        double megabytes = text.length() / (1024.0 * 1024.0);
+        System.out.printf(
+                "%-30s %8.1f ms (%.1f MB, %.0f MB/s, %d paths)%n",
+                description, best / 1e6, megabytes, megabytes / (best / 1e9), pathCount);
+    }
+
+    // Laid out as the XVI exporter writes it, with the grid last
+    private static String buildXviFile(int lineCount) {
+        Random random = new Random(1);
+        StringBuilder builder = new StringBuilder();
+        builder.append("set XVIgrids {1 m}\n");
+        builder.append("set XVIstations {\n\t{0.00 0.00 1}\n}\n");
+        builder.append("set XVIshots {\n}\n");
+        builder.append("set XVIsketchlines {\n");
+        for (int line = 0; line < lineCount; line++) {
+            builder.append("\t {");
+            int pointCount;
+            if (line % CONNECT_INTERVAL == 0) {
+                builder.append("connect");
+                pointCount = 2;
+            } else {
+                builder.append(COLOURS[random.nextInt(COLOURS.length)].toString());
+                pointCount = 2 + random.nextInt(MAX_POINTS_PER_LINE - 1);
+            }
+            for (int i = 0; i < pointCount * 2; i++) {
+                builder.append(
+                        String.format(Locale.ROOT, " %.2f", random.nextDouble() * 10000 - 5000));
+            }
+            builder.append("}\n");
+        }
+        builder.append("}\n");
+        builder.append("set XVIgrid {-5000.00 -5000.00 39.37 0.0 0.0 39.37 254 254}\n");
+        return builder.toString();
+    }
+}